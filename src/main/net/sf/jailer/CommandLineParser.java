@@ -106,12 +106,16 @@ public class CommandLineParser {
         System.out.println("  jailer export [options] <extraction-model> <jdbc-driver-class> <db-URL> <db-user> <db-password>");
         System.out.println("    extracts data (see option '-e') and optionally creates a delete-script (see option '-d')");
         System.out.println("    -where subject condition. Optional, overrides condition in extraction-model");
-        System.out.println("    -format [SQL, XML, DBUNIT_FLAT_XML or LIQUIBASE_XML]");
+        System.out.println("    -format [SQL, XML, DBUNIT_FLAT_XML, LIQUIBASE_XML or BINARY]");
         System.out.println("    -xml-root root tag of XML export file");
         System.out.println("    -xml-date pattern for dates in XML and LIQUIBASE_XML export file");
         System.out.println("    -xml-time pattern for times in XML and LIQUIBASE_XML export file");
         System.out.println("    -xml-timestamp pattern for time-stamps in XML and LIQUIBASE_XML export file");
+        System.out.println("    -xml-streaming writes XML files directly instead of using a JAXP transformer (faster)");
+        System.out.println("    -xml-no-indent writes XML files without indentation (with -xml-streaming)");
+        System.out.println("    -xml-batch-size number of rows whose aggregated rows are read with one query (XML export)");
         System.out.println("    -t prevents deletion of entities from 'tabu'-tables");
+        System.out.println("    -resume makes the export resumable and continues an interrupted one (scope GLOBAL only)");
         System.out.println();
         System.out.println("  jailer create-ddl");
         System.out.println("    creates the DDL for the working-tables and prints it to stdout");
@@ -119,15 +123,20 @@ public class CommandLineParser {
         System.out.println("  jailer create-ddl <jdbc-driver-class> <db-URL> <db-user> <db-password>");
         System.out.println("    creates the DDL for the working-tables and executes it");
         System.out.println();
-        System.out.println("  jailer build-model [-schema <schema>] <jdbc-driver-class> <db-URL> <db-user> <db-password>");
+        System.out.println("  jailer build-model [-schema <schema>] [-threads <#threads>] <jdbc-driver-class> <db-URL> <db-user> <db-password>");
         System.out.println("    automatically retrieves datamodel elements using the 'model-finder' beans");
         System.out.println("    reduces JDBC-Introspection to schema <schema>");
+        System.out.println("    -threads reads keys of the tables concurrently, each thread with a connection of its own");
+        System.out.println("    -incremental analyses only tables changed since the previous analysis (see model-builder-fingerprint.csv)");
         System.out.println();
         System.out.println("  jailer check-domainmodel [options] {<restriction-model>}*");
         System.out.println("    checks the domain model (directory 'domainmodel')");
         System.out.println();
         System.out.println("  jailer import <sql-script> <jdbc-driver-class> <db-URL> <db-user> <db-password>");
         System.out.println("    imports data (with C|BLOB support)");
+        System.out.println("    -threads executes the statements of a level of the script concurrently");
+        System.out.println("    -batch-size executes consecutive statements as JDBC batch");
+        System.out.println("    -resume continues an interrupted import");
         System.out.println();
         System.out.println("options:");
         getInstance().cmdLineParser.setUsageWidth(120);
@@ -202,7 +211,7 @@ public class CommandLineParser {
     @Option(name="-UTF8",usage="use UTF-8 encoding")
     public boolean uTF8 = false;
     
-    @Option(name="-format",usage="export file format: SQL, XML, DBUNIT_FLAT_XML or LIQUIBASE_XML")
+    @Option(name="-format",usage="export file format: SQL, XML, DBUNIT_FLAT_XML, LIQUIBASE_XML or BINARY")
     public String format = "SQL";
     
     @Option(name="-xml",usage="export entities into XML file (deprecated, use -format XML instead)")
@@ -219,6 +228,15 @@ public class CommandLineParser {
 
     @Option(name="-xml-timestamp",usage="pattern for time-stamps in XML and LIQUIBASE_XML export file",metaVar="pattern")
     public String xmlTimeStampPattern = "yyyy-MM-dd-HH.mm.ss";
+
+    @Option(name="-xml-streaming",usage="write XML, DBUNIT_FLAT_XML and LIQUIBASE_XML files directly instead of using a JAXP transformer")
+    public boolean xmlStreaming = false;
+
+    @Option(name="-xml-no-indent",usage="don't indent elements of XML files (with -xml-streaming)")
+    public boolean xmlNoIndent = false;
+
+    @Option(name="-xml-batch-size",usage="number of rows whose aggregated rows are read with one query (XML export, default 1: one query per row)",metaVar="rows")
+    public int xmlBatchSize = 1;
     
     @Option(name="-c",usage="print restricted data-model with closures")
     public boolean withClosures = false;
@@ -241,6 +259,9 @@ public class CommandLineParser {
     @Option(name="-qualifyNames",usage="add schema prefix to table names after DB-introspection", metaVar="export-script")
     public boolean qualifyNames = false;
 
+    @Option(name="-incremental",usage="analyses only new and changed tables, takes the other ones from the previous analysis (build-model)")
+    public boolean incremental = false;
+
     @Option(name="-d",usage="name of the delete-script file (compressed if it ends with '.zip' or '.gz')", metaVar="delete-script")
     public String deleteScriptFileName = null;
 
@@ -268,7 +289,7 @@ public class CommandLineParser {
     @Option(name="-upsert-only",usage="generate 'upsert'-statements for all entities (in export-file)")
     public boolean upsertOnly = false;
     
-    @Option(name="-scope",usage="scope of working tables, GLOBAL, SESSION_LOCAL or LOCAL_DATABASE")
+    @Option(name="-scope",usage="scope of working tables, GLOBAL, SESSION_LOCAL, LOCAL_DATABASE or IN_MEMORY")
     public String scope = null;
 
 	@Option(name="-datamodel", usage="folder holding the data model. Defaults to './datamodel'")
@@ -289,9 +310,45 @@ public class CommandLineParser {
 	@Option(name="-no-sorting", usage="if set, the exported rows will not be sorted according to foreign key constraints")
     public boolean noSorting = false;
 	
+	@Option(name="-sort-in-memory", usage="if set, the rows of tables with cyclic dependencies are sorted topologically in memory instead of by repeated SQL statements")
+    public boolean sortInMemory = false;
+	
 	@Option(name="-transactional", usage="if set, import rows transactional")
     public boolean transactional = false;
 	
+	@Option(name="-frontier", usage="if set, associations are resolved by joining only with the rows collected the day before (frontier) instead of with all collected rows")
+    public boolean frontier = false;
+	
+	@Option(name="-concurrent-destinations", usage="if set, associations with the same destination table are resolved concurrently (see -threads)")
+    public boolean concurrentDestinations = false;
+	
+	@Option(name="-virtual-threads", usage="if set, jobs are executed by virtual threads (requires Java 21 or higher)")
+    public boolean virtualThreads = false;
+	
+	@Option(name="-pipeline", usage="if set, associations are resolved as soon as new rows are collected instead of day by day (implies -concurrent-destinations)")
+    public boolean pipeline = false;
+	
+	@Option(name="-bloom-filter", usage="if set, a Bloom filter of the collected primary keys is used to skip the duplicate check for new rows (working-table-scope LOCAL_DATABASE only)")
+    public boolean bloomFilter = false;
+	
+	@Option(name="-max-connections", usage="maximum number of connections to the database (default is unlimited)", metaVar="#connections")
+    public int maxConnections = 0;
+	
+	@Option(name="-parallel-segments", usage="if set, the rows of each table are written into a temporary file of their own, the files are joined at the end (SQL export only)")
+    public boolean parallelSegments = false;
+	
+	@Option(name="-gzip-threads", usage="number of threads compressing .gz/.zip files (default is the number of processors)", metaVar="#threads")
+    public int gzipThreads = 0;
+	
+	@Option(name="-gzip-block-size", usage="size in KB of the blocks compressed independently in .gz/.zip files (default is 128)", metaVar="#KB")
+    public int gzipBlockSize = 128;
+	
+	@Option(name="-batch-size", usage="number of consecutive DML statements executed as one JDBC batch on import, committed together unless -transactional (default is 1)", metaVar="#statements")
+    public int batchSize = 1;
+	
+	@Option(name="-resume", usage="import: continue an interrupted import after the last statement committed (see checkpoint file <script>.checkpoint); export: make the export resumable (working tables of scope GLOBAL only) and continue an interrupted one (see <script>.export-checkpoint)")
+    public boolean resume = false;
+	
 	@Argument
     public List<String> arguments = new ArrayList<String>();
 
@@ -22,6 +22,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 
 import net.sf.jailer.database.SQLDialect;
@@ -79,6 +80,12 @@ public class Configuration {
     
     private Integer varcharLengthLimit = null;
     
+    /**
+     * Query for the time-stamps of the last change of the definitions of the tables of a schema
+     * (table name, time-stamp), with %s as placeholder for the schema. <code>null</code> if the DBMS doesn't expose them.
+     */
+    private String tableChangeTimestampQuery = null;
+    
 	/**
      * Maps characters to escape sequences according to {@link #stringLiteralEscapeSequences}.
      */
@@ -97,6 +104,17 @@ public class Configuration {
      */
     private boolean identityInserts = false;
     
+    /**
+     * Fetch size for queries, <code>null</code> for the driver's default.
+     * (<code>Integer.MIN_VALUE</code> lets the MySQL driver stream the rows.)
+     */
+    private Integer fetchSize = null;
+    
+    /**
+     * <code>true</code> if the driver respects the fetch size only if auto-commit is off (PostgreSQL).
+     */
+    private boolean fetchSizeRequiresTransaction = false;
+    
     public SimpleDateFormat dateFormat = null;
 
 	public char nanoSep = '.';
@@ -223,7 +241,7 @@ public class Configuration {
     /**
      * Holds configurations.
      */
-    private static Map<String, Configuration> perUrl = new HashMap<String, Configuration>();
+    private static Map<String, Configuration> perUrl = new ConcurrentHashMap<String, Configuration>();
 
     /**
      * Gets DBMS specific configuration.
@@ -231,11 +249,22 @@ public class Configuration {
      * @param session connected to the DBMS
      * @return configuration for the DBMS to which the {@link Session} is connected to
      */
-	@SuppressWarnings("unchecked")
-	public static synchronized Configuration forDbms(Session session) {
+	public static Configuration forDbms(Session session) {
 		if (session == null) {
 			return defaultConfiguration;
 		}
+		Configuration configuration = perUrl.get(session.dbUrl);
+		if (configuration != null) {
+			return configuration;
+		}
+		return lookUp(session);
+	}
+
+	/**
+	 * Looks up the DBMS specific configuration for a session.
+	 */
+	@SuppressWarnings("unchecked")
+	private static synchronized Configuration lookUp(Session session) {
 		if (perUrl.containsKey(session.dbUrl)) {
 			return perUrl.get(session.dbUrl);
 		}
@@ -479,6 +508,20 @@ public class Configuration {
 		this.varcharLengthLimit = varcharLengthLimit;
 	}
 
+	/**
+	 * @return the tableChangeTimestampQuery
+	 */
+	public String getTableChangeTimestampQuery() {
+		return tableChangeTimestampQuery;
+	}
+
+	/**
+	 * @param tableChangeTimestampQuery the tableChangeTimestampQuery to set
+	 */
+	public void setTableChangeTimestampQuery(String tableChangeTimestampQuery) {
+		this.tableChangeTimestampQuery = tableChangeTimestampQuery;
+	}
+
 	/**
 	 * @return the timestampPattern
 	 */
@@ -507,4 +550,32 @@ public class Configuration {
 		this.ncharPrefix = ncharPrefix;
 	}
 
+	/**
+	 * @return the fetch size for queries, <code>null</code> for the driver's default
+	 */
+	public Integer getFetchSize() {
+		return fetchSize;
+	}
+
+	/**
+	 * @param fetchSize the fetch size for queries, <code>null</code> for the driver's default
+	 */
+	public void setFetchSize(Integer fetchSize) {
+		this.fetchSize = fetchSize;
+	}
+
+	/**
+	 * @return <code>true</code> if the driver respects the fetch size only if auto-commit is off
+	 */
+	public boolean isFetchSizeRequiresTransaction() {
+		return fetchSizeRequiresTransaction;
+	}
+
+	/**
+	 * @param fetchSizeRequiresTransaction <code>true</code> if the driver respects the fetch size only if auto-commit is off
+	 */
+	public void setFetchSizeRequiresTransaction(boolean fetchSizeRequiresTransaction) {
+		this.fetchSizeRequiresTransaction = fetchSizeRequiresTransaction;
+	}
+
 }
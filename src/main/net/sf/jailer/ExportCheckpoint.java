@@ -0,0 +1,289 @@
+/*
+ * Copyright 2007 - 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.jailer;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import net.sf.jailer.datamodel.Association;
+import net.sf.jailer.datamodel.DataModel;
+import net.sf.jailer.datamodel.Table;
+
+/**
+ * State of the collection of an export, persisted in a side file
+ * (script name + ".export-checkpoint") after each day of the collection.
+ * An interrupted export can be resumed with the entity-graph
+ * (in the working tables) the checkpoint refers to.
+ *
+ * @author Ralf Wisser
+ */
+public class ExportCheckpoint {
+
+	/**
+	 * The checkpoint file.
+	 */
+	private final File file;
+
+	/**
+	 * Identifies the export (extraction model, condition and database).
+	 */
+	private final String exportKey;
+
+	/**
+	 * ID of the entity-graph.
+	 */
+	private int graphID;
+
+	/**
+	 * Birthday of the subject rows.
+	 */
+	private int birthdayOfSubject;
+
+	/**
+	 * Whether the collection is completed.
+	 */
+	private boolean collected;
+
+	/**
+	 * The day of the collection whose progress is recorded.
+	 */
+	private int day;
+
+	/**
+	 * Tables from which entities are added on that day and the associations which lead to them.
+	 */
+	private Map<Table, Collection<Association>> progress = new HashMap<Table, Collection<Association>>();
+
+	/**
+	 * Tables from which entities are added so far.
+	 */
+	private Set<Table> totalProgress = new HashSet<Table>();
+
+	/**
+	 * Whether the checkpoint file exists.
+	 */
+	private boolean written = false;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param scriptFile the export script
+	 * @param exportKey identifies the export (extraction model, condition and database)
+	 */
+	public ExportCheckpoint(File scriptFile, String exportKey) {
+		this.file = new File(scriptFile.getPath() + ".export-checkpoint");
+		this.exportKey = exportKey;
+	}
+
+	/**
+	 * Reads the checkpoint of an interrupted export.
+	 *
+	 * @param dataModel the data model
+	 * @return <code>false</code> if there is no checkpoint
+	 */
+	public boolean read(DataModel dataModel) throws IOException {
+		if (!file.exists()) {
+			return false;
+		}
+		Properties properties = new Properties();
+		InputStream in = new FileInputStream(file);
+		try {
+			properties.load(in);
+		} finally {
+			in.close();
+		}
+		if (!exportKey.equals(properties.getProperty("export"))) {
+			throw new RuntimeException("checkpoint '" + file + "' belongs to another export (" + properties.getProperty("export") + ")");
+		}
+		graphID = Integer.parseInt(properties.getProperty("graph"));
+		birthdayOfSubject = Integer.parseInt(properties.getProperty("birthdayOfSubject"));
+		collected = Boolean.valueOf(properties.getProperty("collected"));
+		day = Integer.parseInt(properties.getProperty("day"));
+		progress.clear();
+		for (int i = 0; properties.getProperty("progress." + i) != null; ++i) {
+			Collection<Association> associations = new ArrayList<Association>();
+			for (String name: properties.getProperty("progress." + i + ".associations").split("\n")) {
+				if (name.length() > 0) {
+					associations.add(association(dataModel, name));
+				}
+			}
+			progress.put(table(dataModel, properties.getProperty("progress." + i)), associations);
+		}
+		totalProgress.clear();
+		for (int i = 0; properties.getProperty("total." + i) != null; ++i) {
+			totalProgress.add(table(dataModel, properties.getProperty("total." + i)));
+		}
+		written = true;
+		return true;
+	}
+
+	private Table table(DataModel dataModel, String name) {
+		Table table = dataModel.getTable(name);
+		if (table == null) {
+			throw new RuntimeException("checkpoint '" + file + "': unknown table " + name);
+		}
+		return table;
+	}
+
+	private Association association(DataModel dataModel, String name) {
+		Association association = dataModel.namedAssociations.get(name);
+		if (association == null) {
+			throw new RuntimeException("checkpoint '" + file + "': unknown association " + name);
+		}
+		return association;
+	}
+
+	/**
+	 * Starts the collection.
+	 *
+	 * @param graphID ID of the entity-graph
+	 * @param birthdayOfSubject birthday of the subject rows
+	 */
+	public void start(int graphID, int birthdayOfSubject) {
+		this.graphID = graphID;
+		this.birthdayOfSubject = birthdayOfSubject;
+	}
+
+	/**
+	 * Records the progress of a day of the collection.
+	 *
+	 * @param day the day
+	 * @param progress tables from which entities are added on that day and the associations which lead to them
+	 * @param totalProgress tables from which entities are added so far
+	 */
+	public void writeProgress(int day, Map<Table, Collection<Association>> progress, Set<Table> totalProgress) throws IOException {
+		this.collected = false;
+		this.day = day;
+		this.progress = new HashMap<Table, Collection<Association>>(progress);
+		this.totalProgress = new HashSet<Table>(totalProgress);
+		write();
+	}
+
+	/**
+	 * Records the completion of the collection.
+	 *
+	 * @param totalProgress tables from which entities are added
+	 */
+	public void writeCollected(Set<Table> totalProgress) throws IOException {
+		this.collected = true;
+		this.progress = new HashMap<Table, Collection<Association>>();
+		this.totalProgress = new HashSet<Table>(totalProgress);
+		write();
+	}
+
+	private void write() throws IOException {
+		Properties properties = new Properties();
+		properties.setProperty("export", exportKey);
+		properties.setProperty("graph", String.valueOf(graphID));
+		properties.setProperty("birthdayOfSubject", String.valueOf(birthdayOfSubject));
+		properties.setProperty("collected", String.valueOf(collected));
+		properties.setProperty("day", String.valueOf(day));
+		int i = 0;
+		for (Map.Entry<Table, Collection<Association>> e: progress.entrySet()) {
+			StringBuilder associations = new StringBuilder();
+			for (Association association: e.getValue()) {
+				associations.append(association.getName()).append("\n");
+			}
+			properties.setProperty("progress." + i, e.getKey().getName());
+			properties.setProperty("progress." + i + ".associations", associations.toString());
+			++i;
+		}
+		i = 0;
+		for (Table table: totalProgress) {
+			properties.setProperty("total." + i++, table.getName());
+		}
+		File tmp = new File(file.getPath() + ".tmp");
+		OutputStream out = new FileOutputStream(tmp);
+		try {
+			properties.store(out, "Jailer export checkpoint, use -resume to continue the export");
+		} finally {
+			out.close();
+		}
+		if (!tmp.renameTo(file) && !(file.delete() && tmp.renameTo(file))) {
+			throw new IOException("can't rename '" + tmp + "' to '" + file + "'");
+		}
+		written = true;
+	}
+
+	/**
+	 * Deletes the checkpoint after the export is completed.
+	 */
+	public void delete() {
+		file.delete();
+		written = false;
+	}
+
+	/**
+	 * Whether the checkpoint file exists, so that the entity-graph must be kept.
+	 */
+	public boolean isWritten() {
+		return written;
+	}
+
+	/**
+	 * Gets the ID of the entity-graph.
+	 */
+	public int getGraphID() {
+		return graphID;
+	}
+
+	/**
+	 * Gets the birthday of the subject rows.
+	 */
+	public int getBirthdayOfSubject() {
+		return birthdayOfSubject;
+	}
+
+	/**
+	 * Whether the collection is completed.
+	 */
+	public boolean isCollected() {
+		return collected;
+	}
+
+	/**
+	 * Gets the day of the collection whose progress is recorded.
+	 */
+	public int getDay() {
+		return day;
+	}
+
+	/**
+	 * Gets the tables from which entities are added on that day and the associations which lead to them.
+	 */
+	public Map<Table, Collection<Association>> getProgress() {
+		return progress;
+	}
+
+	/**
+	 * Gets the tables from which entities are added so far.
+	 */
+	public Set<Table> getTotalProgress() {
+		return totalProgress;
+	}
+
+}
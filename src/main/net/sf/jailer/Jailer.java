@@ -15,14 +15,16 @@
  */
 package net.sf.jailer;
 
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
 import java.io.StringReader;
+import java.io.Writer;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.nio.charset.Charset;
@@ -41,11 +43,12 @@ import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 import java.util.TreeSet;
-import java.util.zip.GZIPOutputStream;
 
 import javax.xml.transform.sax.TransformerHandler;
 import javax.xml.transform.stream.StreamResult;
 
+import net.sf.jailer.binary.BinaryFormat;
+import net.sf.jailer.binary.BinaryTransformer;
 import net.sf.jailer.database.DMLTransformer;
 import net.sf.jailer.database.DeletionTransformer;
 import net.sf.jailer.database.Session;
@@ -63,6 +66,7 @@ import net.sf.jailer.dbunit.FlatXMLTransformer;
 import net.sf.jailer.domainmodel.DomainModel;
 import net.sf.jailer.enhancer.ScriptEnhancer;
 import net.sf.jailer.entitygraph.EntityGraph;
+import net.sf.jailer.entitygraph.inmemory.InMemoryEntityGraph;
 import net.sf.jailer.entitygraph.local.LocalEntityGraph;
 import net.sf.jailer.entitygraph.remote.RemoteEntityGraph;
 import net.sf.jailer.extractionmodel.ExtractionModel;
@@ -72,13 +76,16 @@ import net.sf.jailer.progress.ProgressListener;
 import net.sf.jailer.progress.ProgressListenerRegistry;
 import net.sf.jailer.render.DataModelRenderer;
 import net.sf.jailer.restrictionmodel.RestrictionModel;
+import net.sf.jailer.util.AsyncOutputStreamWriter;
 import net.sf.jailer.util.CancellationException;
 import net.sf.jailer.util.CancellationHandler;
 import net.sf.jailer.util.ClasspathUtil;
 import net.sf.jailer.util.CsvFile;
 import net.sf.jailer.util.CycleFinder;
 import net.sf.jailer.util.JobManager;
+import net.sf.jailer.util.ParallelGZIPOutputStream;
 import net.sf.jailer.util.PrintUtil;
+import net.sf.jailer.util.ScriptSegments;
 import net.sf.jailer.util.SqlScriptExecutor;
 import net.sf.jailer.util.SqlUtil;
 import net.sf.jailer.xml.XmlExportTransformer;
@@ -121,6 +128,11 @@ public class Jailer {
 	 */
 	private EntityGraph entityGraph;
 
+	/**
+	 * Persists the state of the collection, <code>null</code> if the export is not resumable.
+	 */
+	private ExportCheckpoint checkpoint;
+
 	/**
 	 * The job-manager to be used for concurrent execution of jobs.
 	 */
@@ -136,6 +148,11 @@ public class Jailer {
 	 */
 	private StringBuffer commentHeader = new StringBuffer();
 	
+	/**
+	 * Binary export file being written, <code>null</code> if the script format isn't {@link ScriptFormat#BINARY}.
+	 */
+	private DataOutputStream binaryOutputStream = null;
+	
 	/**
 	 * Constructor.
 	 * 
@@ -143,7 +160,7 @@ public class Jailer {
 	 *            number of threads
 	 */
 	public Jailer(int threads) throws Exception {
-		jobManager = new JobManager(threads);
+		jobManager = new JobManager(threads, CommandLineParser.getInstance().virtualThreads);
 	}
 
 	/**
@@ -225,14 +242,84 @@ public class Jailer {
 		}
 		Set<Table> totalProgress = new HashSet<Table>();
 
+		if (!progress.isEmpty() && isPipelined()) {
+			_log.info("pipelined collection, day " + today + ", progress: " + asString(progress.keySet()));
+			totalProgress.addAll(resolveAssociationsPipelined(today, progress));
+			progress = new HashMap<Table, Collection<Association>>();
+		}
+
+		collect(today, progress, totalProgress);
+		return finishExport(table, condition, totalProgress);
+	}
+
+	/**
+	 * Continues the collection of an interrupted export.
+	 * 
+	 * @param table
+	 *            the table
+	 * @param condition
+	 *            the condition (in SQL) the exported rows must fulfill
+	 * 
+	 * @return set of tables from which entities are added
+	 */
+	private Set<Table> resumeExport(Table table, String condition) throws Exception {
+		Set<Table> totalProgress = new HashSet<Table>(checkpoint.getTotalProgress());
+		// the frontier and the sets of entities being added by the interrupted export
+		entityGraph.removeSets();
+		if (checkpoint.isCollected()) {
+			_log.info("resuming export, collection is completed");
+		} else {
+			_log.info("resuming collection, day " + checkpoint.getDay());
+			// the entities found on the interrupted day are not part of its progress, collect them again
+			long rc = entityGraph.removeEntitiesBornAfter(checkpoint.getDay());
+			_log.info(rc + " entities of the interrupted day removed");
+			collect(checkpoint.getDay(), checkpoint.getProgress(), totalProgress);
+		}
+		return finishExport(table, condition, totalProgress);
+	}
+
+	/**
+	 * Resolves the associations day by day until no more entities are found.
+	 * 
+	 * @param today
+	 *            birthday of the entities to start with
+	 * @param progress
+	 *            tables from which entities are added on that day and the associations which lead to them
+	 * @param totalProgress
+	 *            collects the tables from which entities are added
+	 */
+	private void collect(int today, Map<Table, Collection<Association>> progress, Set<Table> totalProgress) throws Exception {
 		while (!progress.isEmpty()) {
 			totalProgress.addAll(progress.keySet());
 			_log.info("day " + today + ", progress: " + asString(progress.keySet()));
+			if (checkpoint != null) {
+				checkpoint.writeProgress(today, progress, totalProgress);
+			}
 			++today;
 			entityGraph.setAge(today + 1);
+			if (CommandLineParser.getInstance().frontier) {
+				entityGraph.swapFrontier(today - 1);
+			}
 			progress = resolveAssociations(today, progress);
 		}
+		if (CommandLineParser.getInstance().frontier) {
+			entityGraph.removeFrontier();
+		}
+	}
 
+	/**
+	 * Logs the export statistic and appends it to the comment-header.
+	 * 
+	 * @param table
+	 *            the table
+	 * @param condition
+	 *            the condition (in SQL) the exported rows must fulfill
+	 * @param totalProgress
+	 *            set of tables from which entities are added
+	 * 
+	 * @return totalProgress
+	 */
+	private Set<Table> finishExport(Table table, String condition, Set<Table> totalProgress) throws Exception {
 		_log.info("exported " + datamodel.getDisplayName(table) + " Where " + condition.replace('\n', ' ').replace('\r', ' '));
 		_log.info("total progress: " + asString(totalProgress));
 		_log.info("export statistic:");
@@ -330,54 +417,15 @@ public class Jailer {
 	private Map<Table, Collection<Association>> resolveAssociations(final int today, Map<Table, Collection<Association>> progressOfYesterday) throws Exception {
 		final Map<Table, Collection<Association>> progress = new HashMap<Table, Collection<Association>>();
 
-		// resolve associations with same dest-type sequentially
+		// resolve associations with same dest-type sequentially (unless the entity-graph supports concurrent resolution)
 		Map<Table, List<JobManager.Job>> jobsPerDestination = new HashMap<Table, List<JobManager.Job>>();
 
 		for (final Table table : progressOfYesterday.keySet()) {
 			for (final Association association : table.associations) {
-				if (initialDataTables.contains(association.destination)) {
-					// optimization: initial data tables
-					_log.info("skip association with initial table " + datamodel.getDisplayName(table) + " -> "
-							+ datamodel.getDisplayName(association.destination));
+				if (!isResolutionNeeded(table, association, progressOfYesterday.get(table))) {
 					continue;
 				}
-
-				Collection<Association> as = progressOfYesterday.get(table);
-				if (as != null && as.size() == 1 && as.iterator().next() == association.reversalAssociation) {
-					if (association.getCardinality() == Cardinality.MANY_TO_ONE || association.getCardinality() == Cardinality.ONE_TO_ONE) {
-						_log.info("skip reversal association " + datamodel.getDisplayName(table) + " -> " + datamodel.getDisplayName(association.destination));
-						continue;
-					}
-				}
-
-				String jc = association.getJoinCondition();
-		        if (jc != null) {
-		        	ProgressListenerRegistry.getProgressListener().collectionJobEnqueued(today, association);
-		        }
-				JobManager.Job job = new JobManager.Job() {
-					public void run() throws Exception {
-						runstats(false);
-						if (association.getJoinCondition() != null) {
-							_log.info("resolving " + datamodel.getDisplayName(table) + " -> " + association.toString(0, true) + "...");
-						}
-						ProgressListenerRegistry.getProgressListener().collectionJobStarted(today, association);
-						long rc = entityGraph.resolveAssociation(table, association, today);
-						ProgressListenerRegistry.getProgressListener().collected(today, association, rc);
-						if (rc >= 0) {
-							_log.info(rc + " entities found resolving " + datamodel.getDisplayName(table) + " -> " + association.toString(0, true));
-						}
-						synchronized (progress) {
-							if (rc > 0) {
-								Collection<Association> as = progress.get(association.destination);
-								if (as == null) {
-									as = new ArrayList<Association>();
-									progress.put(association.destination, as);
-								}
-								as.add(association);
-							}
-						}
-					}
-				};
+				JobManager.Job job = createResolutionJob(table, association, today, progress);
 				List<JobManager.Job> jobList = jobsPerDestination.get(association.destination);
 				if (jobList == null) {
 					jobList = new ArrayList<JobManager.Job>();
@@ -388,6 +436,11 @@ public class Jailer {
 		}
 		List<JobManager.Job> jobs = new ArrayList<JobManager.Job>();
 		for (final Map.Entry<Table, List<JobManager.Job>> entry : jobsPerDestination.entrySet()) {
+			if (entityGraph.isConcurrentResolution()) {
+				// the entity-graph takes care of duplicates
+				jobs.addAll(entry.getValue());
+				continue;
+			}
 			jobs.add(new JobManager.Job() {
 				public void run() throws Exception {
 					for (JobManager.Job job : entry.getValue()) {
@@ -405,6 +458,280 @@ public class Jailer {
 		return progress;
 	}
 
+	/**
+	 * Checks whether an association must be resolved for the entities of a table born yesterday.
+	 * 
+	 * @param table the table
+	 * @param association the association
+	 * @param associationsOfYesterday the associations which lead to the entities born yesterday
+	 */
+	private boolean isResolutionNeeded(Table table, Association association, Collection<Association> associationsOfYesterday) {
+		if (initialDataTables.contains(association.destination)) {
+			// optimization: initial data tables
+			_log.info("skip association with initial table " + datamodel.getDisplayName(table) + " -> "
+					+ datamodel.getDisplayName(association.destination));
+			return false;
+		}
+
+		Collection<Association> as = associationsOfYesterday;
+		if (as != null && as.size() == 1 && as.iterator().next() == association.reversalAssociation) {
+			if (association.getCardinality() == Cardinality.MANY_TO_ONE || association.getCardinality() == Cardinality.ONE_TO_ONE) {
+				_log.info("skip reversal association " + datamodel.getDisplayName(table) + " -> " + datamodel.getDisplayName(association.destination));
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Creates a job which resolves an association.
+	 * 
+	 * @param table the table
+	 * @param association the association
+	 * @param today birthday of newly created entities
+	 * @param progress collects the destination tables for which entities are found and the associations which lead to them
+	 */
+	private JobManager.Job createResolutionJob(final Table table, final Association association, final int today, final Map<Table, Collection<Association>> progress) {
+		String jc = association.getJoinCondition();
+        if (jc != null) {
+        	ProgressListenerRegistry.getProgressListener().collectionJobEnqueued(today, association);
+        }
+		return new JobManager.Job() {
+			public void run() throws Exception {
+				runstats(false);
+				if (association.getJoinCondition() != null) {
+					_log.info("resolving " + datamodel.getDisplayName(table) + " -> " + association.toString(0, true) + "...");
+				}
+				ProgressListenerRegistry.getProgressListener().collectionJobStarted(today, association);
+				long rc = entityGraph.resolveAssociation(table, association, today);
+				ProgressListenerRegistry.getProgressListener().collected(today, association, rc);
+				if (rc >= 0) {
+					_log.info(rc + " entities found resolving " + datamodel.getDisplayName(table) + " -> " + association.toString(0, true));
+				}
+				synchronized (progress) {
+					if (rc > 0) {
+						Collection<Association> as = progress.get(association.destination);
+						if (as == null) {
+							as = new ArrayList<Association>();
+							progress.put(association.destination, as);
+						}
+						as.add(association);
+					}
+				}
+			}
+		};
+	}
+
+	/**
+	 * Entities of a table born on a given day, for pipelined collection.
+	 */
+	private class Generation {
+		final Table table;
+		final int birthday;
+
+		/**
+		 * The associations which lead to the entities.
+		 */
+		final Set<Association> associations = new HashSet<Association>();
+
+		/**
+		 * Whether a job resolving the associations of the entities is enqueued but not yet started.
+		 */
+		boolean enqueued = false;
+
+		/**
+		 * Whether the resolution of the associations has been started.
+		 */
+		boolean started = false;
+
+		/**
+		 * Whether entities are found which are not yet taken into account by a resolution.
+		 */
+		boolean hasNewEntities = false;
+
+		/**
+		 * Number of enqueued or running jobs which may find entities of this generation.
+		 */
+		int pendingJobs = 0;
+
+		Generation(Table table, int birthday) {
+			this.table = table;
+			this.birthday = birthday;
+		}
+	}
+
+	/**
+	 * Resolves the associations of generations without a barrier between the days (see {@link #resolveAssociationsPipelined(int, Map)}).
+	 * 
+	 * The resolution of a generation is enqueued as soon as entities are found and no job is pending
+	 * which may find further entities of it. A generation is only resolved again if entities are found
+	 * by jobs enqueued after the resolution has been started.
+	 */
+	private class GenerationHandler {
+
+		/**
+		 * The generations per table and birthday.
+		 */
+		private final Map<Table, Map<Integer, Generation>> generations = new HashMap<Table, Map<Integer, Generation>>();
+
+		/**
+		 * Tables from which entities are added.
+		 */
+		private final Set<Table> totalProgress = new HashSet<Table>();
+
+		/**
+		 * Maximum birthday of the entities found.
+		 */
+		private int maxBirthday;
+
+		GenerationHandler(int today) {
+			maxBirthday = today;
+		}
+
+		/**
+		 * Gets a generation, creates it if not exists. Caller must hold the lock on {@link #generations}.
+		 */
+		private Generation getGeneration(Table table, int birthday) {
+			Map<Integer, Generation> generationPerDay = generations.get(table);
+			if (generationPerDay == null) {
+				generationPerDay = new HashMap<Integer, Generation>();
+				generations.put(table, generationPerDay);
+			}
+			Generation generation = generationPerDay.get(birthday);
+			if (generation == null) {
+				generation = new Generation(table, birthday);
+				generationPerDay.put(birthday, generation);
+			}
+			return generation;
+		}
+
+		/**
+		 * Registers newly found entities and enqueues resolution of their associations, if possible.
+		 */
+		void found(Table table, int birthday, Collection<Association> associations) {
+			synchronized (generations) {
+				totalProgress.add(table);
+				maxBirthday = Math.max(maxBirthday, birthday);
+				Generation generation = getGeneration(table, birthday);
+				generation.associations.addAll(associations);
+				generation.hasNewEntities = true;
+				enqueueIfReady(generation);
+			}
+		}
+
+		/**
+		 * Enqueues resolution of a generation if it has new entities and no job is pending which may find further ones.
+		 * Caller must hold the lock on {@link #generations}.
+		 */
+		private void enqueueIfReady(final Generation generation) {
+			if (generation.enqueued || !generation.hasNewEntities || generation.pendingJobs > 0) {
+				return;
+			}
+			generation.enqueued = true;
+			jobManager.addFollowUpJob(new JobManager.Job() {
+				public void run() throws Exception {
+					resolve(generation);
+				}
+			});
+		}
+
+		/**
+		 * Enqueues resolution of all associations of a generation.
+		 */
+		private void resolve(final Generation generation) {
+			Collection<Association> associationsOfYesterday;
+			synchronized (generations) {
+				generation.enqueued = false;
+				generation.hasNewEntities = false;
+				if (generation.started) {
+					_log.info("resolving " + datamodel.getDisplayName(generation.table) + " (day " + generation.birthday + ") again, entities were found after the resolution had started");
+				}
+				generation.started = true;
+				associationsOfYesterday = new ArrayList<Association>(generation.associations);
+			}
+			final int today = generation.birthday + 1;
+			for (final Association association : generation.table.associations) {
+				if (!isResolutionNeeded(generation.table, association, associationsOfYesterday)) {
+					continue;
+				}
+				final Generation destination;
+				synchronized (generations) {
+					destination = getGeneration(association.destination, today);
+					++destination.pendingJobs;
+				}
+				final Map<Table, Collection<Association>> progress = new HashMap<Table, Collection<Association>>();
+				final JobManager.Job job = createResolutionJob(generation.table, association, today, progress);
+				jobManager.addFollowUpJob(new JobManager.Job() {
+					public void run() throws Exception {
+						try {
+							job.run();
+							if (EntityGraph.maxTotalRowcount > 0 && EntityGraph.maxTotalRowcount < entityGraph.getTotalRowcount()) {
+								throw new RuntimeException("found more than " + EntityGraph.maxTotalRowcount + " entities.");
+							}
+						} finally {
+							synchronized (generations) {
+								--destination.pendingJobs;
+								if (!progress.isEmpty()) {
+									found(association.destination, today, Collections.singleton(association));
+								} else {
+									enqueueIfReady(destination);
+								}
+							}
+						}
+					}
+				});
+			}
+		}
+	}
+
+	/**
+	 * Resolves all associations without a barrier between the days. As soon as entities of a table are found,
+	 * resolution of the associations of this table is enqueued (see {@link GenerationHandler}).
+	 * Terminates when no job is left.
+	 * 
+	 * @param today birthday of the entities to start with
+	 * @param progress tables from which entities are added on that day and the associations which lead to them
+	 * 
+	 * @return set of tables from which entities are added
+	 */
+	private Set<Table> resolveAssociationsPipelined(int today, Map<Table, Collection<Association>> progress) throws Exception {
+		final GenerationHandler handler = new GenerationHandler(today);
+		List<JobManager.Job> jobs = new ArrayList<JobManager.Job>();
+		for (final Map.Entry<Table, Collection<Association>> entry : progress.entrySet()) {
+			final int birthday = today;
+			jobs.add(new JobManager.Job() {
+				public void run() throws Exception {
+					handler.found(entry.getKey(), birthday, entry.getValue());
+				}
+			});
+		}
+		jobManager.executeJobsAndFollowUps(jobs);
+		synchronized (handler.generations) {
+			entityGraph.setAge(handler.maxBirthday + 1);
+			return new HashSet<Table>(handler.totalProgress);
+		}
+	}
+
+	/**
+	 * Checks whether collection can be pipelined.
+	 */
+	private boolean isPipelined() {
+		if (!CommandLineParser.getInstance().pipeline || !entityGraph.isConcurrentResolution()) {
+			return false;
+		}
+		for (Table table : datamodel.getTables()) {
+			for (Association association : table.associations) {
+				String jc = association.getJoinCondition();
+				if (jc != null && !jc.equals(SqlUtil.resolvePseudoColumns(jc, "A", "B", 0, 0))) {
+					// the pseudo-columns refer to the distance from the subject, which is the birthday only if collected day by day
+					_log.info("no pipelined collection, association " + association.getName() + " uses pseudo-columns");
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
 	/**
 	 * Adds all dependencies.
 	 * 
@@ -483,7 +810,7 @@ public class Jailer {
 	 * @param orderByPK
 	 *            if <code>true</code>, result will be ordered by primary keys
 	 */
-	private void writeEntities(OutputStreamWriter result, TransformerHandler transformerHandler, ScriptType scriptType, Table table, boolean orderByPK, String filepath)
+	private void writeEntities(Writer result, TransformerHandler transformerHandler, ScriptType scriptType, Table table, boolean orderByPK, String filepath)
 			throws Exception {
 		ResultSetReader reader = createResultSetReader(result, transformerHandler, scriptType, table, filepath);
 		entityGraph.readEntities(table, reader, orderByPK);
@@ -505,7 +832,7 @@ public class Jailer {
 	 * 
 	 * @return result set reader for processing the rows to be exported
 	 */
-	private ResultSetReader createResultSetReader(OutputStreamWriter outputWriter, TransformerHandler transformerHandler, ScriptType scriptType, Table table, String filepath)
+	private ResultSetReader createResultSetReader(Writer outputWriter, TransformerHandler transformerHandler, ScriptType scriptType, Table table, String filepath)
 			throws SQLException {
 		Session targetSession = entityGraph.getTargetSession();
 		if (scriptType == ScriptType.INSERT) {
@@ -516,6 +843,8 @@ public class Jailer {
 						CommandLineParser.getInstance().xmlDatePattern,
 						CommandLineParser.getInstance().xmlTimePattern,
 						CommandLineParser.getInstance().xmlTimeStampPattern);
+			} else if (ScriptFormat.BINARY.equals(CommandLineParser.getInstance().getScriptFormat())) {
+				return new BinaryTransformer(table, binaryOutputStream, targetSession.getMetaData());
 			} else {
 				return new DMLTransformer(table, outputWriter, CommandLineParser.getInstance().upsertOnly, CommandLineParser.getInstance().numberOfEntities,
 						targetSession.getMetaData(), targetSession);
@@ -537,207 +866,283 @@ public class Jailer {
 	public void writeEntities(final String sqlScriptFile, final ScriptType scriptType, final Set<Table> progress, Session session) throws Exception {
 		_log.info("writing file '" + sqlScriptFile + "'...");
 
-		OutputStream outputStream = new FileOutputStream(sqlScriptFile);
-		if (sqlScriptFile.toLowerCase().endsWith(".zip") || sqlScriptFile.toLowerCase().endsWith(".gz")) {
-			outputStream = new GZIPOutputStream(outputStream);
-		}
-		TransformerHandler transformerHandler = null;
-		OutputStreamWriter result = null;
+		boolean compress = sqlScriptFile.toLowerCase().endsWith(".zip") || sqlScriptFile.toLowerCase().endsWith(".gz");
 		Charset charset = Charset.defaultCharset();
 		if (CommandLineParser.getInstance().uTF8) {
 			charset = Charset.forName("UTF8");
 		}
-		if (scriptType == ScriptType.INSERT && ScriptFormat.DBUNIT_FLAT_XML.equals(CommandLineParser.getInstance().getScriptFormat())) {
-			StreamResult streamResult = new StreamResult(new OutputStreamWriter(outputStream, charset));
-			transformerHandler = XmlUtil.createTransformerHandler(commentHeader.toString(), "dataset", streamResult, charset);
-		} else if(scriptType == ScriptType.INSERT && ScriptFormat.LIQUIBASE_XML.equals(CommandLineParser.getInstance().getScriptFormat())){
-			StreamResult streamResult = new StreamResult(
-					new OutputStreamWriter(outputStream,
-							charset));
-			
-		
-			transformerHandler = XmlUtil.createTransformerHandler(commentHeader.toString(), "", streamResult, charset);	//root tag removed to add namespaces 
-
-			AttributesImpl attrdatabaseChangeLog = new AttributesImpl();
-			attrdatabaseChangeLog.addAttribute("", "", "xmlns:xsi", "", "http://www.w3.org/2001/XMLSchema-instance");
-			attrdatabaseChangeLog.addAttribute("", "", "xmlns:ext", "", "http://www.liquibase.org/xml/ns/dbchangelog-ext");
-			attrdatabaseChangeLog.addAttribute("", "", "xsi:schemaLocation", "", "http://www.liquibase.org/xml/ns/dbchangelog http://www.liquibase.org/xml/ns/dbchangelog/dbchangelog-3.0.xsd http://www.liquibase.org/xml/ns/dbchangelog-ext http://www.liquibase.org/xml/ns/dbchangelog/dbchangelog-ext.xsd");
-			transformerHandler.startElement("http://www.liquibase.org/xml/ns/dbchangelog", "", "databaseChangeLog",attrdatabaseChangeLog);
-			
-			AttributesImpl attrchangeset = new AttributesImpl();
-			attrchangeset.addAttribute("", "", "id", "","JailerExport" );
-			attrchangeset.addAttribute("", "", "author", "",System.getProperty("user.name") );
-			
-			transformerHandler.startElement("", "", "changeSet", attrchangeset);
-		} else {
-			if (CommandLineParser.getInstance().uTF8) {
-				result = new OutputStreamWriter(outputStream, charset);
-			} else {
-				result = new OutputStreamWriter(outputStream);
-			}
-			result.append(commentHeader);
-			// result.append(System.getProperty("line.separator"));
-			for (ScriptEnhancer enhancer : Configuration.getScriptEnhancer()) {
-				enhancer.addComments(result, scriptType, session, entityGraph, progress);
+		boolean isXml = scriptType == ScriptType.INSERT && (ScriptFormat.DBUNIT_FLAT_XML.equals(CommandLineParser.getInstance().getScriptFormat()) || ScriptFormat.LIQUIBASE_XML.equals(CommandLineParser.getInstance().getScriptFormat()));
+		boolean isBinary = scriptType == ScriptType.INSERT && ScriptFormat.BINARY.equals(CommandLineParser.getInstance().getScriptFormat());
+		ScriptSegments segments = null;
+		if (CommandLineParser.getInstance().parallelSegments && !isXml && !isBinary) {
+			segments = new ScriptSegments(new File(sqlScriptFile), compress, charset);
+		}
+		try {
+			writeEntities(sqlScriptFile, scriptType, progress, session, compress, charset, isBinary, segments);
+		} finally {
+			if (segments != null) {
+				// joined segments are already deleted, the segments of a failed export are deleted here
+				segments.delete();
 			}
-			// result.append(System.getProperty("line.separator"));
-			// result.append(System.getProperty("line.separator"));
-			for (ScriptEnhancer enhancer : Configuration.getScriptEnhancer()) {
-				enhancer.addProlog(result, scriptType, session, entityGraph, progress);
+		}
+	}
+
+	/**
+	 * Writes entities into extract-SQL-script.
+	 * 
+	 * @param segments
+	 *            segments of the script, <code>null</code> if the script is written sequentially
+	 */
+	private void writeEntities(final String sqlScriptFile, final ScriptType scriptType, final Set<Table> progress, Session session,
+			boolean compress, Charset charset, boolean isBinary, final ScriptSegments segments) throws Exception {
+		OutputStream outputStream = null;
+		if (segments == null) {
+			outputStream = new FileOutputStream(sqlScriptFile);
+			if (compress) {
+				outputStream = createGZIPOutputStream(outputStream);
 			}
 		}
+		TransformerHandler transformerHandler = null;
+		Writer result = null;
+		Writer xmlWriter = null;
+		try {
+			if (scriptType == ScriptType.INSERT && ScriptFormat.DBUNIT_FLAT_XML.equals(CommandLineParser.getInstance().getScriptFormat())) {
+				if (CommandLineParser.getInstance().xmlStreaming) {
+					transformerHandler = XmlUtil.createStreamingHandler(commentHeader.toString(), "dataset", outputStream, charset, !CommandLineParser.getInstance().xmlNoIndent);
+				} else {
+					xmlWriter = new AsyncOutputStreamWriter(outputStream, charset);
+					StreamResult streamResult = new StreamResult(xmlWriter);
+					transformerHandler = XmlUtil.createTransformerHandler(commentHeader.toString(), "dataset", streamResult, charset);
+				}
+			} else if(scriptType == ScriptType.INSERT && ScriptFormat.LIQUIBASE_XML.equals(CommandLineParser.getInstance().getScriptFormat())){
+				if (CommandLineParser.getInstance().xmlStreaming) {
+					transformerHandler = XmlUtil.createStreamingHandler(commentHeader.toString(), "", outputStream, charset, !CommandLineParser.getInstance().xmlNoIndent);	//root tag removed to add namespaces 
+				} else {
+					xmlWriter = new AsyncOutputStreamWriter(outputStream, charset);
+					StreamResult streamResult = new StreamResult(xmlWriter);
+					transformerHandler = XmlUtil.createTransformerHandler(commentHeader.toString(), "", streamResult, charset);	//root tag removed to add namespaces 
+				}
 
-		// first write entities of independent tables
-		final Set<Table> dependentTables = writeEntitiesOfIndependentTables(result, transformerHandler, scriptType, progress, sqlScriptFile);
+				AttributesImpl attrdatabaseChangeLog = new AttributesImpl();
+				attrdatabaseChangeLog.addAttribute("", "", "xmlns:xsi", "", "http://www.w3.org/2001/XMLSchema-instance");
+				attrdatabaseChangeLog.addAttribute("", "", "xmlns:ext", "", "http://www.liquibase.org/xml/ns/dbchangelog-ext");
+				attrdatabaseChangeLog.addAttribute("", "", "xsi:schemaLocation", "", "http://www.liquibase.org/xml/ns/dbchangelog http://www.liquibase.org/xml/ns/dbchangelog/dbchangelog-3.0.xsd http://www.liquibase.org/xml/ns/dbchangelog-ext http://www.liquibase.org/xml/ns/dbchangelog/dbchangelog-ext.xsd");
+				transformerHandler.startElement("http://www.liquibase.org/xml/ns/dbchangelog", "", "databaseChangeLog",attrdatabaseChangeLog);
+				
+				AttributesImpl attrchangeset = new AttributesImpl();
+				attrchangeset.addAttribute("", "", "id", "","JailerExport" );
+				attrchangeset.addAttribute("", "", "author", "",System.getProperty("user.name") );
+				
+				transformerHandler.startElement("", "", "changeSet", attrchangeset);
+			} else if (isBinary) {
+				binaryOutputStream = new DataOutputStream(new BufferedOutputStream(outputStream, 64 * 1024));
+				BinaryFormat.writeHeader(binaryOutputStream, commentHeader.toString());
+			} else {
+				if (segments != null) {
+					result = segments.newSegment();
+				} else if (CommandLineParser.getInstance().uTF8) {
+					result = new AsyncOutputStreamWriter(outputStream, charset);
+				} else {
+					result = new AsyncOutputStreamWriter(outputStream);
+				}
+				result.append(commentHeader);
+				result.append(SqlScriptExecutor.LEVELS_MARKED + "\n");
+				// result.append(System.getProperty("line.separator"));
+				for (ScriptEnhancer enhancer : Configuration.getScriptEnhancer()) {
+					enhancer.addComments(result, scriptType, session, entityGraph, progress);
+				}
+				// result.append(System.getProperty("line.separator"));
+				// result.append(System.getProperty("line.separator"));
+				for (ScriptEnhancer enhancer : Configuration.getScriptEnhancer()) {
+					enhancer.addProlog(result, scriptType, session, entityGraph, progress);
+				}
+			}
 
-		// then write entities of tables having cyclic-dependencies
-		_log.info("cyclic dependencies for: " + asString(dependentTables));
-		if (!CommandLineParser.getInstance().noSorting) {
-			addDependencies(dependentTables, false);
-			runstats(true);
-			removeSingleRowCycles(progress, session);
-		} else {
-			_log.warn("skipping topological sorting");
-		}
-
-		final TransformerHandler fTransformerHandler = transformerHandler;
-		final OutputStreamWriter fResult = result;
-		long rest;
-
-		if (scriptType == ScriptType.INSERT && (ScriptFormat.DBUNIT_FLAT_XML.equals(CommandLineParser.getInstance().getScriptFormat())||ScriptFormat.LIQUIBASE_XML.equals(CommandLineParser.getInstance().getScriptFormat()))) {
-			Set<Table> remaining = new HashSet<Table>(dependentTables);
-
-			// topologically sort remaining tables while ignoring reflexive
-			// dependencies
-			// and dependencies for which no edge exists in entity graph
-			Set<Association> relevantAssociations = new HashSet<Association>(datamodel.namedAssociations.values());
-			Set<Integer> existingEdges = entityGraph.getDistinctDependencyIDs();
-			for (Iterator<Association> i = relevantAssociations.iterator(); i.hasNext();) {
-				Association association = i.next();
-				if (association.source.equals(association.destination)) {
-					i.remove();
-				} else if (!existingEdges.contains(association.getId())) {
-					if (association.isInsertDestinationBeforeSource()) {
-						_log.info("irrelevant dependency: " + datamodel.getDisplayName(association.source) + " -> "
-								+ datamodel.getDisplayName(association.destination));
-					}
-					i.remove();
+			// first write entities of independent tables
+			final Set<Table> dependentTables = writeEntitiesOfIndependentTables(result, transformerHandler, scriptType, progress, sqlScriptFile, segments);
+
+			// then write entities of tables having cyclic-dependencies
+			_log.info("cyclic dependencies for: " + asString(dependentTables));
+			if (!CommandLineParser.getInstance().noSorting) {
+				addDependencies(dependentTables, false);
+				runstats(true);
+				removeSingleRowCycles(progress, session);
+			} else {
+				_log.warn("skipping topological sorting");
+			}
+
+			final TransformerHandler fTransformerHandler = transformerHandler;
+			final Writer fResult = result;
+			long rest;
+			int levels = -1;
+			boolean isXmlFormat = scriptType == ScriptType.INSERT && (ScriptFormat.DBUNIT_FLAT_XML.equals(CommandLineParser.getInstance().getScriptFormat())||ScriptFormat.LIQUIBASE_XML.equals(CommandLineParser.getInstance().getScriptFormat()));
+			if (CommandLineParser.getInstance().sortInMemory && !isXmlFormat && !dependentTables.isEmpty()) {
+				levels = entityGraph.sortTopologically();
+				if (levels < 0) {
+					_log.warn("entity-graph doesn't support sorting in memory");
 				}
 			}
-			Set<Table> independentTables = datamodel.getIndependentTables(remaining, relevantAssociations);
-			rest = entityGraph.getSize();
-			while (!independentTables.isEmpty()) {
-				_log.info("independent tables: " + asString(independentTables));
-				for (final Table independentTable : independentTables) {
-					rest = entityGraph.getSize();
-					for (;;) {
-						entityGraph.markIndependentEntities(independentTable);
-						// don't use jobManager, export rows sequentially, don't
-						// mix rows of different tables in a dataset!
-						ResultSetReader reader = createResultSetReader(fResult, fTransformerHandler, scriptType, independentTable, sqlScriptFile);
-						entityGraph.readMarkedEntities(independentTable, reader, true);
-						entityGraph.deleteIndependentEntities(independentTable);
-						long newRest = entityGraph.getSize();
-						if (rest == newRest) {
-							break;
+
+			if (isXmlFormat) {
+				Set<Table> remaining = new HashSet<Table>(dependentTables);
+
+				// topologically sort remaining tables while ignoring reflexive
+				// dependencies
+				// and dependencies for which no edge exists in entity graph
+				Set<Association> relevantAssociations = new HashSet<Association>(datamodel.namedAssociations.values());
+				Set<Integer> existingEdges = entityGraph.getDistinctDependencyIDs();
+				for (Iterator<Association> i = relevantAssociations.iterator(); i.hasNext();) {
+					Association association = i.next();
+					if (association.source.equals(association.destination)) {
+						i.remove();
+					} else if (!existingEdges.contains(association.getId())) {
+						if (association.isInsertDestinationBeforeSource()) {
+							_log.info("irrelevant dependency: " + datamodel.getDisplayName(association.source) + " -> "
+									+ datamodel.getDisplayName(association.destination));
 						}
-						rest = newRest;
+						i.remove();
 					}
 				}
-				remaining.removeAll(independentTables);
-				independentTables = datamodel.getIndependentTables(remaining, relevantAssociations);
-			}
-		} else {
-			rest = entityGraph.getSize();
-			for (;;) {
-				for (final Table table : dependentTables) {
-					entityGraph.markIndependentEntities(table);
-				}
-				List<JobManager.Job> jobs = new ArrayList<JobManager.Job>();
-				for (final Table table : dependentTables) {
-					jobs.add(new JobManager.Job() {
-						public void run() throws Exception {
-							ResultSetReader reader = createResultSetReader(fResult, fTransformerHandler, scriptType, table, sqlScriptFile);
-							entityGraph.readMarkedEntities(table, reader, false);
+				Set<Table> independentTables = datamodel.getIndependentTables(remaining, relevantAssociations);
+				rest = entityGraph.getSize();
+				while (!independentTables.isEmpty()) {
+					_log.info("independent tables: " + asString(independentTables));
+					for (final Table independentTable : independentTables) {
+						rest = entityGraph.getSize();
+						for (;;) {
+							entityGraph.markIndependentEntities(independentTable);
+							// don't use jobManager, export rows sequentially, don't
+							// mix rows of different tables in a dataset!
+							ResultSetReader reader = createResultSetReader(fResult, fTransformerHandler, scriptType, independentTable, sqlScriptFile);
+							entityGraph.readMarkedEntities(independentTable, reader, true);
+							entityGraph.deleteIndependentEntities(independentTable);
+							long newRest = entityGraph.getSize();
+							if (rest == newRest) {
+								break;
+							}
+							rest = newRest;
 						}
-					});
+					}
+					remaining.removeAll(independentTables);
+					independentTables = datamodel.getIndependentTables(remaining, relevantAssociations);
 				}
-				jobManager.executeJobs(jobs);
-				for (final Table table : dependentTables) {
-					entityGraph.deleteIndependentEntities(table);
+			} else if (levels >= 0) {
+				// sorted in memory, write level by level
+				for (int level = 0; level < levels; ++level) {
+					entityGraph.markLevel(level);
+					writeMarkedEntities(fResult, fTransformerHandler, scriptType, dependentTables, sqlScriptFile, segments);
+					entityGraph.deleteMarkedEntities();
 				}
-				long newRest = entityGraph.getSize();
-				if (rest == newRest) {
-					break;
+				rest = entityGraph.getSize();
+			} else {
+				rest = entityGraph.getSize();
+				for (;;) {
+					for (final Table table : dependentTables) {
+						entityGraph.markIndependentEntities(table);
+					}
+					writeMarkedEntities(fResult, fTransformerHandler, scriptType, dependentTables, sqlScriptFile, segments);
+					for (final Table table : dependentTables) {
+						entityGraph.deleteIndependentEntities(table);
+					}
+					long newRest = entityGraph.getSize();
+					if (rest == newRest) {
+						break;
+					}
+					rest = newRest;
 				}
-				rest = newRest;
 			}
-		}
 
-		if (result != null) {
-			// write epilogs
-			for (ScriptEnhancer enhancer : Configuration.getScriptEnhancer()) {
-				enhancer.addEpilog(result, scriptType, session, entityGraph, progress);
+			if (result != null) {
+				if (segments != null) {
+					// the epilogs follow the segments of the tables
+					result.close();
+					result = segments.newSegment();
+				}
+				// write epilogs
+				for (ScriptEnhancer enhancer : Configuration.getScriptEnhancer()) {
+					enhancer.addEpilog(result, scriptType, session, entityGraph, progress);
+				}
+				result.close();
+				if (segments != null) {
+					segments.join();
+				}
 			}
-			result.close();
-		}
 
-		if (transformerHandler != null) {
-			String content = "\n";
-			transformerHandler.characters(content.toCharArray(), 0, content.length());
-			if (ScriptFormat.LIQUIBASE_XML.equals(CommandLineParser.getInstance().getScriptFormat())) {
+			if (transformerHandler != null) {
+				String content = "\n";
+				transformerHandler.characters(content.toCharArray(), 0, content.length());
+				if (ScriptFormat.LIQUIBASE_XML.equals(CommandLineParser.getInstance().getScriptFormat())) {
 
-				transformerHandler.endElement("","", "changeSet");
-				transformerHandler.endElement("","", "databaseChangeLog");
-				
-			} else if (ScriptFormat.DBUNIT_FLAT_XML.equals(CommandLineParser.getInstance().getScriptFormat())) {
-				transformerHandler.endElement("", "", "dataset");			
+					transformerHandler.endElement("","", "changeSet");
+					transformerHandler.endElement("","", "databaseChangeLog");
+					
+				} else if (ScriptFormat.DBUNIT_FLAT_XML.equals(CommandLineParser.getInstance().getScriptFormat())) {
+					transformerHandler.endElement("", "", "dataset");			
+				}
+				transformerHandler.endDocument();
+				if (xmlWriter != null) {
+					xmlWriter.close();
+				} else {
+					outputStream.close();
+				}
 			}
-			transformerHandler.endDocument();
 
-		}
-
-		if (rest > 0) {
-			try {
-				new File(sqlScriptFile).renameTo(new File(sqlScriptFile + ".failed"));
-			} catch (Exception e) {
-				_log.warn(e.getMessage());
+			if (binaryOutputStream != null) {
+				binaryOutputStream.writeByte(BinaryFormat.END);
+				binaryOutputStream.close();
+				binaryOutputStream = null;
 			}
-			Set<Table> cycle = CycleFinder.getCycle(dependentTables);
-			String msgTitel = rest + " entities not exported due to cyclic dependencies.\n";
-			String msg = msgTitel + (cycle.size() == 1? "Table" : "Tables") + " with cyclic dependencies: " + asString(cycle);
-			_log.error(msg);
-			try {
-				// try to get a more sophisticated error message
-				_log.info("starting cycle analysis...");
-				ProgressListenerRegistry.getProgressListener().newStage("cycle error, analysing...", true, false);
-				String sMsg = msgTitel + "Paths:\n";
-				int i = 0;
-				for (CycleFinder.Path path: CycleFinder.findCycle(datamodel, cycle)) {
-					List<Table> pList = new ArrayList<Table>();
-					path.fillPath(pList);
-					sMsg += "[ ";
-					boolean ft = true;
-					for (Table t: pList) {
-						if (!ft) {
-							sMsg += " -> ";
+
+			if (rest > 0) {
+				try {
+					new File(sqlScriptFile).renameTo(new File(sqlScriptFile + ".failed"));
+				} catch (Exception e) {
+					_log.warn(e.getMessage());
+				}
+				Set<Table> cycle = CycleFinder.getCycle(dependentTables);
+				String msgTitel = rest + " entities not exported due to cyclic dependencies.\n";
+				String msg = msgTitel + (cycle.size() == 1? "Table" : "Tables") + " with cyclic dependencies: " + asString(cycle);
+				_log.error(msg);
+				try {
+					// try to get a more sophisticated error message
+					_log.info("starting cycle analysis...");
+					ProgressListenerRegistry.getProgressListener().newStage("cycle error, analysing...", true, false);
+					String sMsg = msgTitel + "Paths:\n";
+					int i = 0;
+					for (CycleFinder.Path path: CycleFinder.findCycle(datamodel, cycle)) {
+						List<Table> pList = new ArrayList<Table>();
+						path.fillPath(pList);
+						sMsg += "[ ";
+						boolean ft = true;
+						for (Table t: pList) {
+							if (!ft) {
+								sMsg += " -> ";
+							}
+							ft = false;
+							sMsg += datamodel.getDisplayName(t);
+						}
+						sMsg += " ]\n";
+						if (++i > 30) {
+							sMsg += "...\n";
+							break;
 						}
-						ft = false;
-						sMsg += datamodel.getDisplayName(t);
-					}
-					sMsg += " ]\n";
-					if (++i > 30) {
-						sMsg += "...\n";
-						break;
 					}
+					msg = sMsg + "\nConsider to disable the option \"sort topologically\" in the Data Export dialog";
+				} catch (CancellationException e) {
+					CancellationHandler.reset(null);
+				} catch (Throwable t) {
+					_log.warn("cycle analysis failed: " + t.getMessage());
 				}
-				msg = sMsg + "\nConsider to disable the option \"sort topologically\" in the Data Export dialog";
-			} catch (CancellationException e) {
-				CancellationHandler.reset(null);
-			} catch (Throwable t) {
-				_log.warn("cycle analysis failed: " + t.getMessage());
+				throw new RuntimeException(msg);
+			}
+		} finally {
+			// stops the writer threads if the export fails
+			if (result instanceof AsyncOutputStreamWriter) {
+				((AsyncOutputStreamWriter) result).stop();
+			}
+			if (xmlWriter instanceof AsyncOutputStreamWriter) {
+				((AsyncOutputStreamWriter) xmlWriter).stop();
 			}
-			throw new RuntimeException(msg);
 		}
 		_log.info("file '" + sqlScriptFile + "' written.");
 	}
@@ -778,7 +1183,7 @@ public class Jailer {
 
 		OutputStream outputStream = new FileOutputStream(xmlFile);
 		if (xmlFile.toLowerCase().endsWith(".zip") || xmlFile.toLowerCase().endsWith(".gz")) {
-			outputStream = new GZIPOutputStream(outputStream);
+			outputStream = createGZIPOutputStream(outputStream);
 		}
 
 		// then write entities of tables having cyclic-dependencies
@@ -847,17 +1252,25 @@ public class Jailer {
 		
 		XmlExportTransformer reader = new XmlExportTransformer(outputStream, commentHeader.toString(), entityGraph, progress, cyclicAggregatedTables,
 				CommandLineParser.getInstance().xmlRootTag, CommandLineParser.getInstance().xmlDatePattern,
-				CommandLineParser.getInstance().xmlTimeStampPattern, entityGraph.getTargetSession(), charset);
+				CommandLineParser.getInstance().xmlTimeStampPattern, entityGraph.getTargetSession(), charset, CommandLineParser.getInstance().xmlBatchSize);
 
-		for (Table table : sortedTables) {
-			entityGraph.markRoots(table);
-		}
-		for (Table table : sortedTables) {
-			_log.info("exporting table " + datamodel.getDisplayName(table));
-			reader.setTable(table);
-			entityGraph.readMarkedEntities(table, reader, reader.getTableMapping(table).selectionSchema, reader.getTableMapping(table).originalPKAliasPrefix, true);
+		// the reader reads the dependent entities while the result set is open
+		Session.disableStreaming();
+		try {
+			for (Table table : sortedTables) {
+				entityGraph.markRoots(table);
+			}
+			for (Table table : sortedTables) {
+				_log.info("exporting table " + datamodel.getDisplayName(table));
+				reader.setTable(table);
+				entityGraph.readMarkedEntities(table, reader, reader.getTableMapping(table).selectionSchema, reader.getTableMapping(table).originalPKAliasPrefix, true);
+			}
+			reader.endDocument();
+		} finally {
+			Session.enableStreaming();
+			// stops the writer thread if the export fails
+			reader.stop();
 		}
-		reader.endDocument();
 
 		outputStream.close();
 		checkCompletenessOfXmlExport(cyclicAggregatedTables);
@@ -921,11 +1334,14 @@ public class Jailer {
 	 *            a writer for the extract-script
 	 * @param progress
 	 *            set of tables involved in export
+	 * @param segments
+	 *            if not <code>null</code>, each table is written into its own segment
+	 *            instead of <code>result</code>
 	 * 
 	 * @return set of tables from which no entities are written
 	 */
-	Set<Table> writeEntitiesOfIndependentTables(final OutputStreamWriter result, final TransformerHandler transformerHandler, final ScriptType scriptType,
-			Set<Table> progress, final String filepath) throws Exception {
+	Set<Table> writeEntitiesOfIndependentTables(final Writer result, final TransformerHandler transformerHandler, final ScriptType scriptType,
+			Set<Table> progress, final String filepath, final ScriptSegments segments) throws Exception {
 		Set<Table> tables = new HashSet<Table>(progress);
 
 		Set<Table> independentTables = datamodel.getIndependentTables(tables);
@@ -938,15 +1354,23 @@ public class Jailer {
 					// tables in a dataset!
 					writeEntities(result, transformerHandler, scriptType, independentTable, true, filepath);
 				} else {
+					final Writer segment = segments == null? result : segments.newSegment();
 					jobs.add(new JobManager.Job() {
 						public void run() throws Exception {
-							writeEntities(result, transformerHandler, scriptType, independentTable, false, filepath);
+							try {
+								writeEntities(segment, transformerHandler, scriptType, independentTable, false, filepath);
+							} finally {
+								if (segments != null) {
+									segment.close();
+								}
+							}
 						}
 					});
 				}
 			}
 			if (!jobs.isEmpty()) {
 				jobManager.executeJobs(jobs);
+				writeLevelBarrier(result, segments);
 			}
 			tables.removeAll(independentTables);
 			independentTables = datamodel.getIndependentTables(tables);
@@ -955,6 +1379,60 @@ public class Jailer {
 		return tables;
 	}
 
+	/**
+	 * Writes the marked entities of some tables (concurrently) followed by a level barrier.
+	 * 
+	 * @param result
+	 *            a writer for the extract-script
+	 * @param transformerHandler
+	 *            SAX transformer handler for generating XML. <code>null</code>
+	 *            if script format is not XML.
+	 * @param tables
+	 *            the tables
+	 * @param segments
+	 *            segments of the script, <code>null</code> if the script is written sequentially
+	 */
+	private void writeMarkedEntities(final Writer result, final TransformerHandler transformerHandler, final ScriptType scriptType, Set<Table> tables,
+			final String sqlScriptFile, final ScriptSegments segments) throws Exception {
+		List<JobManager.Job> jobs = new ArrayList<JobManager.Job>();
+		for (final Table table : tables) {
+			final Writer segment = segments == null? result : segments.newSegment();
+			jobs.add(new JobManager.Job() {
+				public void run() throws Exception {
+					try {
+						ResultSetReader reader = createResultSetReader(segment, transformerHandler, scriptType, table, sqlScriptFile);
+						entityGraph.readMarkedEntities(table, reader, false);
+					} finally {
+						if (segments != null) {
+							segment.close();
+						}
+					}
+				}
+			});
+		}
+		jobManager.executeJobs(jobs);
+		writeLevelBarrier(result, segments);
+	}
+
+	/**
+	 * Marks the end of a level of the script. The rows of a level don't
+	 * depend on each other, so the importer may insert them concurrently.
+	 * 
+	 * @param result
+	 *            a writer for the extract-script, <code>null</code> if the script is not a SQL script
+	 * @param segments
+	 *            if not <code>null</code>, the mark is written into a new segment
+	 */
+	private void writeLevelBarrier(Writer result, ScriptSegments segments) throws IOException {
+		if (segments != null) {
+			Writer segment = segments.newSegment();
+			segment.write(SqlScriptExecutor.LEVEL_BARRIER + "\n");
+			segment.close();
+		} else if (result != null) {
+			result.write(SqlScriptExecutor.LEVEL_BARRIER + "\n");
+		}
+	}
+
 	/**
 	 * Prevents multiple shutdowns.
 	 */
@@ -971,6 +1449,21 @@ public class Jailer {
 		}
 	}
 
+	/**
+	 * Creates a stream which compresses the data in GZIP format.
+	 * 
+	 * @param outputStream
+	 *            the underlying output stream
+	 * @return compressing stream
+	 */
+	private static OutputStream createGZIPOutputStream(OutputStream outputStream) throws IOException {
+		int threads = CommandLineParser.getInstance().gzipThreads;
+		if (threads <= 0) {
+			threads = Runtime.getRuntime().availableProcessors();
+		}
+		return new ParallelGZIPOutputStream(outputStream, threads, CommandLineParser.getInstance().gzipBlockSize * 1024);
+	}
+
 	/**
 	 * Stringifies progress-set.
 	 * 
@@ -998,7 +1491,7 @@ public class Jailer {
 	 * Runs script for updating the DB-statistics.
 	 */
 	private synchronized void runstats(boolean force) throws Exception {
-		if (entityGraph != null) {
+		if (entityGraph != null && !(entityGraph instanceof InMemoryEntityGraph)) {
 			Session session = entityGraph.getSession();
 			if (force || lastRunstats == 0 || (lastRunstats * 2 <= entityGraph.getTotalRowcount() && entityGraph.getTotalRowcount() > 1000)) {
 				lastRunstats = entityGraph.getTotalRowcount();
@@ -1118,8 +1611,9 @@ public class Jailer {
 				} else {
 					Session session = new Session(clp.arguments.get(2), clp.arguments.get(3), clp.arguments.get(4),
 							clp.arguments.get(5), null, clp.transactional);
+					session.setMaxConnections(clp.maxConnections);
 					try {
-						SqlScriptExecutor.executeScript(clp.arguments.get(1), session, clp.transactional);
+						SqlScriptExecutor.executeScript(clp.arguments.get(1), session, clp.transactional, clp.numberOfThreads, clp.batchSize, clp.resume);
 					} finally {
 						try {
 							session.shutDown();
@@ -1214,6 +1708,7 @@ public class Jailer {
 		_log.info("exporting '" + extractionModelFileName + "' to '" + scriptFile + "'");
 
 		Session session = new Session(driverClassName, dbUrl, dbUser, dbPassword, CommandLineParser.getInstance().getTemporaryTableScope(), false);
+		session.setMaxConnections(CommandLineParser.getInstance().maxConnections);
 		if (CommandLineParser.getInstance().getTemporaryTableScope() == TemporaryTableScope.SESSION_LOCAL
 		 || CommandLineParser.getInstance().getTemporaryTableScope() == TemporaryTableScope.TRANSACTION_LOCAL) {
 			DDLCreator.createDDL(session, CommandLineParser.getInstance().getTemporaryTableScope());
@@ -1226,11 +1721,14 @@ public class Jailer {
 		EntityGraph entityGraph;
 		if (CommandLineParser.getInstance().getTemporaryTableScope() == TemporaryTableScope.LOCAL_DATABASE) {
 			entityGraph = LocalEntityGraph.create(extractionModel.dataModel, EntityGraph.createUniqueGraphID(), session);
+		} else if (CommandLineParser.getInstance().getTemporaryTableScope() == TemporaryTableScope.IN_MEMORY) {
+			entityGraph = InMemoryEntityGraph.create(extractionModel.dataModel, EntityGraph.createUniqueGraphID(), session, extractionModel.dataModel.getUniversalPrimaryKey(session));
 		} else {
 			entityGraph = RemoteEntityGraph.create(extractionModel.dataModel, EntityGraph.createUniqueGraphID(), session, extractionModel.dataModel.getUniversalPrimaryKey(session));
 		}
 
 		entityGraph.setExplain(explain);
+		entityGraph.setConcurrentResolution(CommandLineParser.getInstance().concurrentDestinations || CommandLineParser.getInstance().pipeline);
 		final Jailer jailer = new Jailer(threads);
 
 		Charset charset = Charset.defaultCharset();
@@ -1272,19 +1770,54 @@ public class Jailer {
 			jailer.appendCommentHeader("");
 		}
 		
+		boolean resumed = false;
+		if (CommandLineParser.getInstance().resume) {
+			if (CommandLineParser.getInstance().getTemporaryTableScope() == TemporaryTableScope.GLOBAL) {
+				jailer.checkpoint = new ExportCheckpoint(CommandLineParser.getInstance().newFile(scriptFile),
+						extractionModelFileName + ": " + extractionModel.condition + " (" + dbUrl + ", " + dbUser + ")");
+				if (jailer.checkpoint.read(extractionModel.dataModel)) {
+					_log.info("resuming with entity-graph " + jailer.checkpoint.getGraphID());
+					EntityGraph resumedGraph = entityGraph.find(jailer.checkpoint.getGraphID(), session, extractionModel.dataModel.getUniversalPrimaryKey(session));
+					entityGraph.delete();
+					entityGraph = resumedGraph;
+					entityGraph.setBirthdayOfSubject(jailer.checkpoint.getBirthdayOfSubject());
+					entityGraph.setExplain(explain);
+					entityGraph.setConcurrentResolution(CommandLineParser.getInstance().concurrentDestinations || CommandLineParser.getInstance().pipeline);
+					resumed = true;
+				}
+			} else {
+				_log.warn("export can only be resumed with working tables of scope GLOBAL");
+			}
+		}
+		
 		EntityGraph graph = entityGraph;
 		jailer.setEntityGraph(graph);
 		jailer.setDataModel(extractionModel.dataModel);
 		EntityGraph exportedEntities = null;
+		EntityGraph collectedEntities = null;
 		
 		try {
 			jailer.readInitialDataTables(CommandLineParser.getInstance().getSourceSchemaMapping(), extractionModel.subject);
 			jailer.runstats(false);
 			ProgressListenerRegistry.getProgressListener().newStage("collecting rows", false, false);
-			Set<Table> progress = jailer.exportInitialData(extractionModel.subject);
-			entityGraph.setBirthdayOfSubject(entityGraph.getAge());
-			progress.addAll(jailer.export(extractionModel.subject, extractionModel.condition, progress, extractionModel.limit));
+			Set<Table> progress;
+			if (resumed) {
+				progress = jailer.resumeExport(extractionModel.subject, extractionModel.condition);
+			} else {
+				progress = jailer.exportInitialData(extractionModel.subject);
+				entityGraph.setBirthdayOfSubject(entityGraph.getAge());
+				if (jailer.checkpoint != null) {
+					jailer.checkpoint.start(entityGraph.graphID, entityGraph.getAge());
+				}
+				progress.addAll(jailer.export(extractionModel.subject, extractionModel.condition, progress, extractionModel.limit));
+			}
 			totalProgress.addAll(progress);
+			if (jailer.checkpoint != null) {
+				jailer.checkpoint.writeCollected(totalProgress);
+				// writing consumes the entity-graph, keep the collected one until the export is completed
+				collectedEntities = entityGraph;
+				entityGraph = collectedEntities.copy(EntityGraph.createUniqueGraphID(), session);
+			}
 			subjects.add(extractionModel.subject);
 	
 			if (explain) {
@@ -1296,7 +1829,7 @@ public class Jailer {
 			subjects = jailer.datamodel.normalize(subjects);
 	
 			if (deleteScriptFileName != null) {
-				exportedEntities = entityGraph.copy(EntityGraph.createUniqueGraphID(), session);
+				exportedEntities = (collectedEntities != null? collectedEntities : entityGraph).copy(EntityGraph.createUniqueGraphID(), session);
 			}
 
 			ProgressListenerRegistry.getProgressListener().newStage("exporting rows", false, false);
@@ -1321,6 +1854,10 @@ public class Jailer {
 				exportedEntities.shutDown();
 				jailer.setEntityGraph(entityGraph);
 			}
+			if (collectedEntities != null) {
+				collectedEntities.delete();
+				jailer.checkpoint.delete();
+			}
 			entityGraph.close();
 		} catch (CancellationException e) {
 			try {
@@ -1328,6 +1865,12 @@ public class Jailer {
 				CancellationHandler.reset(null);
 				jailer.entityGraph.getSession().rollbackAll();
 				jailer.entityGraph.delete();
+				if (collectedEntities != null) {
+					collectedEntities.delete();
+				}
+				if (jailer.checkpoint != null) {
+					jailer.checkpoint.delete();
+				}
 				if (exportedEntities != null) {
 					if (jailer.entityGraph.getSession().scope == TemporaryTableScope.GLOBAL) {
 						exportedEntities.delete();
@@ -1345,7 +1888,14 @@ public class Jailer {
 		} catch (Exception e) {
 			try {
 				_log.info("cleaning up...");
-				jailer.entityGraph.delete();
+				if (jailer.checkpoint != null && jailer.checkpoint.isWritten()) {
+					if (jailer.entityGraph.graphID != jailer.checkpoint.getGraphID()) {
+						jailer.entityGraph.delete();
+					}
+					_log.info("keeping entity-graph " + jailer.checkpoint.getGraphID() + ", use -resume to continue the export");
+				} else {
+					jailer.entityGraph.delete();
+				}
 				if (exportedEntities != null) {
 					if (jailer.entityGraph.getSession().scope == TemporaryTableScope.GLOBAL) {
 						exportedEntities.delete();
@@ -38,7 +38,12 @@ public enum ScriptFormat {
 	DBUNIT_FLAT_XML("DbUnit flat dataset", "DbUnit flat dataset Export", ".xml"),
 	
 	
-	LIQUIBASE_XML("Liquibase", "Liquibase Export", ".xml");
+	LIQUIBASE_XML("Liquibase", "Liquibase Export", ".xml"),
+	
+	/**
+	 * Typed rows in a compact binary format, can be imported with the 'import' command.
+	 */
+	BINARY("Binary", "Binary Export", ".jbin");
 
 	/**
 	 * Constructor.
@@ -0,0 +1,233 @@
+/*
+ * Copyright 2007 - 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.jailer.binary;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.sql.Date;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.Arrays;
+
+/**
+ * Layout of the binary export format.
+ *
+ * A file consists of a header, a sequence of blocks and an end marker.
+ * <ul>
+ * <li>header: {@link #MAGIC}, version (int), comment (string)</li>
+ * <li>block: {@link #BLOCK}, length of the rest of the block (int), table name (string),
+ *     whether the table has an identity column (boolean), number of columns (int), per column: name (string) and SQL type (int, {@link java.sql.Types}),
+ *     number of rows (int), the rows' values</li>
+ * <li>end marker: {@link #END}</li>
+ * </ul>
+ * Each value starts with a type tag (byte) followed by the value's data. Strings are stored as
+ * length (int) and UTF-8 encoded characters.
+ *
+ * The blocks follow the order in which the rows have to be inserted.
+ *
+ * @author Ralf Wisser
+ */
+public final class BinaryFormat {
+
+	/**
+	 * Identifies binary export files.
+	 */
+	public static final byte[] MAGIC = new byte[] { 'J', 'A', 'I', 'L', 'E', 'R', 'B', 'I', 'N' };
+
+	/**
+	 * Current version of the format.
+	 */
+	public static final int VERSION = 1;
+
+	/**
+	 * Starts a block of rows.
+	 */
+	public static final byte BLOCK = 1;
+
+	/**
+	 * Marks the end of the file.
+	 */
+	public static final byte END = 0;
+
+	// value type tags
+	static final byte NULL = 0;
+	static final byte STRING = 1;
+	static final byte LONG = 2;
+	static final byte DECIMAL = 3;
+	static final byte DOUBLE = 4;
+	static final byte BOOLEAN = 5;
+	static final byte DATE = 6;
+	static final byte TIME = 7;
+	static final byte TIMESTAMP = 8;
+	static final byte BYTES = 9;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private BinaryFormat() {
+	}
+
+	/**
+	 * Writes the file header.
+	 *
+	 * @param out the file
+	 * @param comment comment describing the export
+	 */
+	public static void writeHeader(DataOutputStream out, String comment) throws IOException {
+		out.write(MAGIC);
+		out.writeInt(VERSION);
+		writeString(out, comment);
+	}
+
+	/**
+	 * Reads the file header.
+	 *
+	 * @param in the file
+	 * @return the comment
+	 */
+	public static String readHeader(DataInputStream in) throws IOException {
+		byte[] magic = new byte[MAGIC.length];
+		in.readFully(magic);
+		if (!Arrays.equals(magic, MAGIC)) {
+			throw new IOException("not a binary export file");
+		}
+		int version = in.readInt();
+		if (version != VERSION) {
+			throw new IOException("unsupported version of binary export file: " + version);
+		}
+		return readString(in);
+	}
+
+	/**
+	 * Checks whether a stream starts with {@link #MAGIC}.
+	 *
+	 * @param in the stream, will not be closed
+	 */
+	public static boolean isBinary(InputStream in) throws IOException {
+		for (int i = 0; i < MAGIC.length; ++i) {
+			if (in.read() != MAGIC[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	static void writeString(DataOutputStream out, String string) throws IOException {
+		byte[] bytes = string.getBytes(UTF8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	static String readString(DataInputStream in) throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, UTF8);
+	}
+
+	/**
+	 * Writes a value. Values of types not supported by the format are written as strings.
+	 *
+	 * @param out the stream
+	 * @param value the value (String, Number, Boolean, Date, Time, Timestamp, byte[] or <code>null</code>)
+	 */
+	static void writeValue(DataOutputStream out, Object value) throws IOException {
+		if (value == null) {
+			out.writeByte(NULL);
+		} else if (value instanceof String) {
+			out.writeByte(STRING);
+			writeString(out, (String) value);
+		} else if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+			out.writeByte(LONG);
+			out.writeLong(((Number) value).longValue());
+		} else if (value instanceof BigDecimal || value instanceof BigInteger) {
+			BigDecimal decimal = value instanceof BigInteger? new BigDecimal((BigInteger) value) : (BigDecimal) value;
+			byte[] unscaled = decimal.unscaledValue().toByteArray();
+			out.writeByte(DECIMAL);
+			out.writeInt(decimal.scale());
+			out.writeInt(unscaled.length);
+			out.write(unscaled);
+		} else if (value instanceof Double || value instanceof Float) {
+			out.writeByte(DOUBLE);
+			out.writeDouble(((Number) value).doubleValue());
+		} else if (value instanceof Boolean) {
+			out.writeByte(BOOLEAN);
+			out.writeBoolean((Boolean) value);
+		} else if (value instanceof Timestamp) {
+			out.writeByte(TIMESTAMP);
+			out.writeLong(((Timestamp) value).getTime());
+			out.writeInt(((Timestamp) value).getNanos());
+		} else if (value instanceof Date) {
+			out.writeByte(DATE);
+			out.writeLong(((Date) value).getTime());
+		} else if (value instanceof Time) {
+			out.writeByte(TIME);
+			out.writeLong(((Time) value).getTime());
+		} else if (value instanceof byte[]) {
+			out.writeByte(BYTES);
+			out.writeInt(((byte[]) value).length);
+			out.write((byte[]) value);
+		} else {
+			out.writeByte(STRING);
+			writeString(out, value.toString());
+		}
+	}
+
+	/**
+	 * Reads a value written by {@link #writeValue(DataOutputStream, Object)}.
+	 */
+	static Object readValue(DataInputStream in) throws IOException {
+		byte tag = in.readByte();
+		switch (tag) {
+		case NULL:
+			return null;
+		case STRING:
+			return readString(in);
+		case LONG:
+			return in.readLong();
+		case DECIMAL: {
+			int scale = in.readInt();
+			byte[] unscaled = new byte[in.readInt()];
+			in.readFully(unscaled);
+			return new BigDecimal(new BigInteger(unscaled), scale);
+		}
+		case DOUBLE:
+			return in.readDouble();
+		case BOOLEAN:
+			return in.readBoolean();
+		case DATE:
+			return new Date(in.readLong());
+		case TIME:
+			return new Time(in.readLong());
+		case TIMESTAMP: {
+			Timestamp timestamp = new Timestamp(in.readLong());
+			timestamp.setNanos(in.readInt());
+			return timestamp;
+		}
+		case BYTES: {
+			byte[] bytes = new byte[in.readInt()];
+			in.readFully(bytes);
+			return bytes;
+		}
+		default:
+			throw new IOException("invalid type tag " + tag);
+		}
+	}
+
+}
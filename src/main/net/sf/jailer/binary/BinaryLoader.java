@@ -0,0 +1,181 @@
+/*
+ * Copyright 2007 - 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.jailer.binary;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import net.sf.jailer.Configuration;
+import net.sf.jailer.database.Session;
+import net.sf.jailer.util.CancellationHandler;
+import net.sf.jailer.util.Pair;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Imports a binary export file (see {@link BinaryFormat}).
+ * The rows of each block are inserted with a single batch of prepared statements.
+ * Identity-inserts are switched on for consecutive blocks of a table with identity column
+ * if the DBMS needs it (MSSQL/Sybase).
+ *
+ * @author Ralf Wisser
+ */
+public class BinaryLoader {
+
+	/**
+	 * The logger.
+	 */
+	private static final Logger _log = Logger.getLogger(BinaryLoader.class);
+
+	/**
+	 * Checks whether a file is a binary export file.
+	 *
+	 * @param file the file
+	 */
+	public static boolean isBinaryFile(File file) {
+		try {
+			InputStream in = open(file);
+			try {
+				return BinaryFormat.isBinary(in);
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			// not readable or not in GZIP format, leave error handling to the script executor
+			return false;
+		}
+	}
+
+	/**
+	 * Imports a binary export file.
+	 *
+	 * @param file the file
+	 * @param session for execution of statements
+	 *
+	 * @return Pair(number of blocks, row count)
+	 */
+	public static Pair<Integer, Long> load(File file, Session session) throws IOException, SQLException {
+		_log.info("reading binary file '" + file + "'");
+		DataInputStream in = new DataInputStream(open(file));
+		int blocks = 0;
+		long totalRowCount = 0;
+		boolean identityInserts = Configuration.forDbms(session).isIdentityInserts();
+		String identityInsertTable = null;
+		try {
+			String comment = BinaryFormat.readHeader(in);
+			_log.info(comment);
+			long t = System.currentTimeMillis();
+			for (;;) {
+				byte tag = in.readByte();
+				if (tag == BinaryFormat.END) {
+					break;
+				}
+				if (tag != BinaryFormat.BLOCK) {
+					throw new IOException("invalid block tag " + tag);
+				}
+				byte[] block = new byte[in.readInt()];
+				in.readFully(block);
+				DataInputStream blockIn = new DataInputStream(new ByteArrayInputStream(block));
+				String tableName = BinaryFormat.readString(blockIn);
+				boolean tableHasIdentityColumn = blockIn.readBoolean();
+				if (identityInsertTable != null && !identityInsertTable.equals(tableName)) {
+					session.execute("SET IDENTITY_INSERT " + identityInsertTable + " OFF");
+					identityInsertTable = null;
+				}
+				if (identityInserts && tableHasIdentityColumn && identityInsertTable == null) {
+					session.execute("SET IDENTITY_INSERT " + tableName + " ON");
+					identityInsertTable = tableName;
+				}
+				totalRowCount += loadBlock(tableName, blockIn, session);
+				++blocks;
+				if (System.currentTimeMillis() > t + 1000) {
+					t = System.currentTimeMillis();
+					_log.info(totalRowCount + " rows");
+				}
+				CancellationHandler.checkForCancellation(null);
+			}
+			if (identityInsertTable != null) {
+				session.execute("SET IDENTITY_INSERT " + identityInsertTable + " OFF");
+			}
+		} finally {
+			in.close();
+		}
+		_log.info(blocks + " blocks, " + totalRowCount + " rows");
+		_log.info("successfully read file '" + file + "'");
+		return new Pair<Integer, Long>(blocks, totalRowCount);
+	}
+
+	/**
+	 * Inserts the rows of a block.
+	 *
+	 * @param tableName name of the table
+	 * @param in the rest of the block, following the block's table name and identity column flag
+	 * @return row count
+	 */
+	private static long loadBlock(String tableName, DataInputStream in, Session session) throws IOException, SQLException {
+		int columnCount = in.readInt();
+		int[] types = new int[columnCount];
+		StringBuilder sql = new StringBuilder("Insert into " + tableName + "(");
+		StringBuilder values = new StringBuilder(") values (");
+		for (int i = 0; i < columnCount; ++i) {
+			if (i > 0) {
+				sql.append(", ");
+				values.append(", ");
+			}
+			sql.append(BinaryFormat.readString(in));
+			types[i] = in.readInt();
+			values.append("?");
+		}
+		sql.append(values).append(")");
+		int rowCount = in.readInt();
+		List<Object[]> rows = new ArrayList<Object[]>(rowCount);
+		for (int r = 0; r < rowCount; ++r) {
+			Object[] row = new Object[columnCount];
+			for (int i = 0; i < columnCount; ++i) {
+				row[i] = BinaryFormat.readValue(in);
+			}
+			rows.add(row);
+		}
+		return session.executeBatch(sql.toString(), rows, types);
+	}
+
+	/**
+	 * Opens a (possibly compressed) file.
+	 */
+	private static InputStream open(File file) throws IOException {
+		InputStream in = new BufferedInputStream(new FileInputStream(file), 64 * 1024);
+		String name = file.getName().toLowerCase();
+		if (name.endsWith(".gz") || name.endsWith(".zip")) {
+			try {
+				in = new BufferedInputStream(new GZIPInputStream(in), 64 * 1024);
+			} catch (IOException e) {
+				in.close();
+				throw e;
+			}
+		}
+		return in;
+	}
+
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright 2007 - 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.jailer.binary;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLXML;
+import java.util.HashMap;
+import java.util.Map;
+
+import net.sf.jailer.CommandLineParser;
+import net.sf.jailer.database.Session.AbstractResultSetReader;
+import net.sf.jailer.datamodel.Column;
+import net.sf.jailer.datamodel.Table;
+import net.sf.jailer.util.Quoting;
+import net.sf.jailer.util.SqlUtil;
+
+/**
+ * Reads a JDBC result set and writes the read rows as blocks
+ * of a binary export file (see {@link BinaryFormat}).
+ *
+ * @author Ralf Wisser
+ */
+public class BinaryTransformer extends AbstractResultSetReader {
+
+	/**
+	 * Maximum number of rows per block.
+	 */
+	private static final int MAX_ROWS_PER_BLOCK = 1000;
+
+	/**
+	 * Maximum size (in bytes) of the rows of a block.
+	 */
+	private static final int MAX_BLOCK_SIZE = 1024 * 1024;
+
+	/**
+	 * The file to write to. Blocks are written while holding the lock of this stream.
+	 */
+	private final DataOutputStream out;
+
+	/**
+	 * Qualified name of the table.
+	 */
+	private final String tableName;
+
+	/**
+	 * Whether the table has an identity column (MSSQL/Sybase).
+	 */
+	private final boolean tableHasIdentityColumn;
+
+	/**
+	 * For quoting of column names.
+	 */
+	private final Quoting quoting;
+
+	/**
+	 * The block's header: table name and columns.
+	 */
+	private byte[] blockHeader = null;
+
+	/**
+	 * Number of columns.
+	 */
+	private int columnCount;
+
+	/**
+	 * Rows of the current block.
+	 */
+	private final ByteArrayOutputStream rows = new ByteArrayOutputStream();
+	private final DataOutputStream rowsOut = new DataOutputStream(rows);
+	private int rowCount = 0;
+
+	/**
+	 * Maps clear text SQL-types to {@link java.sql.Types}.
+	 */
+	private Map<Integer, Integer> typeCache = new HashMap<Integer, Integer>();
+
+	/**
+	 * Constructor.
+	 *
+	 * @param table the table to read from
+	 * @param out the file to write to
+	 * @param metaData database meta data
+	 */
+	public BinaryTransformer(Table table, DataOutputStream out, DatabaseMetaData metaData) throws SQLException {
+		this.out = out;
+		this.tableName = qualifiedTableName(table);
+		boolean hasIdentityColumn = false;
+		for (Column c: table.getColumns()) {
+			if (c.isIdentityColumn) {
+				hasIdentityColumn = true;
+				break;
+			}
+		}
+		this.tableHasIdentityColumn = hasIdentityColumn;
+		this.quoting = new Quoting(metaData);
+	}
+
+	/**
+	 * Gets qualified table name.
+	 *
+	 * @param t the table
+	 * @return qualified name of t
+	 */
+	private String qualifiedTableName(Table t) {
+		String schema = t.getOriginalSchema("");
+		String mappedSchema = CommandLineParser.getInstance().getSchemaMapping().get(schema);
+		if (mappedSchema != null) {
+			schema = mappedSchema;
+		}
+		if (schema.length() == 0) {
+			return t.getUnqualifiedName();
+		}
+		return schema + "." + t.getUnqualifiedName();
+	}
+
+	/**
+	 * Reads result-set and writes into export-file.
+	 */
+	public void readCurrentRow(ResultSet resultSet) throws SQLException {
+		try {
+			if (blockHeader == null) {
+				columnCount = getMetaData(resultSet).getColumnCount();
+				ByteArrayOutputStream header = new ByteArrayOutputStream();
+				DataOutputStream headerOut = new DataOutputStream(header);
+				BinaryFormat.writeString(headerOut, tableName);
+				headerOut.writeBoolean(tableHasIdentityColumn);
+				headerOut.writeInt(columnCount);
+				for (int i = 1; i <= columnCount; ++i) {
+					BinaryFormat.writeString(headerOut, quoting.quote(getMetaData(resultSet).getColumnLabel(i)));
+					headerOut.writeInt(getMetaData(resultSet).getColumnType(i));
+				}
+				headerOut.close();
+				blockHeader = header.toByteArray();
+			}
+			for (int i = 1; i <= columnCount; ++i) {
+				Object content = SqlUtil.getObject(resultSet, getMetaData(resultSet), i, typeCache);
+				if (resultSet.wasNull()) {
+					content = null;
+				}
+				BinaryFormat.writeValue(rowsOut, toValue(content));
+			}
+			++rowCount;
+			if (rowCount >= MAX_ROWS_PER_BLOCK || rows.size() >= MAX_BLOCK_SIZE) {
+				writeBlock();
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Reads LOBs. (Other values of types not supported by the format are written as strings.)
+	 */
+	private Object toValue(Object content) throws SQLException {
+		if (content instanceof Clob) {
+			Clob clob = (Clob) content;
+			return clob.getSubString(1, (int) clob.length());
+		}
+		if (content instanceof Blob) {
+			Blob blob = (Blob) content;
+			return blob.getBytes(1, (int) blob.length());
+		}
+		if (content instanceof SQLXML) {
+			return ((SQLXML) content).getString();
+		}
+		return content;
+	}
+
+	/**
+	 * Writes the current block into the file.
+	 */
+	private void writeBlock() throws IOException {
+		if (rowCount == 0) {
+			return;
+		}
+		rowsOut.flush();
+		synchronized (out) {
+			out.writeByte(BinaryFormat.BLOCK);
+			out.writeInt(blockHeader.length + 4 + rows.size());
+			out.write(blockHeader);
+			out.writeInt(rowCount);
+			rows.writeTo(out);
+		}
+		rows.reset();
+		rowCount = 0;
+	}
+
+	/**
+	 * Flushes the current block.
+	 */
+	public void close() {
+		try {
+			writeBlock();
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+}
@@ -0,0 +1,620 @@
+/*
+ * Copyright 2007 - 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.jailer.database;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Bounded pool of connections of a {@link Session}.
+ *
+ * A connection is bound to the thread which uses it, so that session state
+ * (like open transactions) is preserved as long as possible.
+ * A connection is returned to the pool if the thread terminates, if it's idle
+ * for more than {@link #IDLE_TIMEOUT} ms, or if the maximum number of connections
+ * is reached and another thread needs a connection while the owner doesn't use it.
+ * Connections with an open transaction or with modified session state are never
+ * handed over to another thread or evicted. The maximum number of connections is never exceeded,
+ * a thread waits for a connection as long as one might be handed over to it.
+ *
+ * @author Ralf Wisser
+ */
+public class ConnectionPool {
+
+	/**
+	 * Opens and closes connections.
+	 */
+	interface Factory {
+
+		/**
+		 * Opens a new connection.
+		 */
+		Connection createConnection() throws SQLException;
+
+		/**
+		 * Called after a connection has been closed by the pool.
+		 */
+		void connectionClosed(Connection connection);
+	}
+
+	/**
+	 * Connections being idle for more than that (in ms) are closed.
+	 */
+	private static final long IDLE_TIMEOUT = 5L * 60L * 1000L;
+
+	/**
+	 * Connections being idle for more than that (in ms) are validated before they are used again.
+	 */
+	private static final long VALIDATION_INTERVAL = 30L * 1000L;
+
+	/**
+	 * Timeout (in sec) for validation.
+	 */
+	private static final int VALIDATION_TIMEOUT = 5;
+
+	/**
+	 * Default time (in ms) to wait for a connection if all connections are bound to their threads.
+	 */
+	private static final long PINNED_TIMEOUT = 60L * 1000L;
+
+	/**
+	 * Evicts idle connections.
+	 */
+	private static final Timer evictionTimer = new Timer("connection-pool eviction", true);
+
+	/**
+	 * The logger.
+	 */
+	private static final Logger _log = Logger.getLogger(ConnectionPool.class);
+
+	/**
+	 * A pooled connection.
+	 */
+	private static class Entry {
+		final Connection connection;
+		Thread owner;
+		int depth = 0;
+		long lastUsed = System.currentTimeMillis();
+		boolean stale = false;
+
+		/**
+		 * Auto-commit was off when the connection has been released (a transaction may be open).
+		 */
+		boolean inTransaction = false;
+
+		/**
+		 * The session state has been modified (SET IDENTITY_INSERT ..., ALTER SESSION ...).
+		 */
+		boolean sessionState = false;
+
+		Entry(Connection connection) {
+			this.connection = connection;
+		}
+
+		/**
+		 * Whether the connection must stay with its owner.
+		 */
+		boolean isPinned() {
+			return inTransaction || sessionState;
+		}
+	}
+
+	private final Factory factory;
+	private final List<Entry> entries = new ArrayList<Entry>();
+	private final TimerTask evictionTask;
+
+	/**
+	 * Number of connections being opened.
+	 */
+	private int opening = 0;
+
+	/**
+	 * Maximum number of connections, <code>0</code> for unlimited.
+	 */
+	private int maxConnections = 0;
+
+	/**
+	 * Time (in ms) to wait for a connection if all connections are bound to their threads.
+	 */
+	private long pinnedTimeout = PINNED_TIMEOUT;
+
+	// statistics
+	private final long creationTime = System.currentTimeMillis();
+	private long acquisitions = 0;
+	private long waits = 0;
+	private long totalWaitTime = 0;
+	private long maxWaitTime = 0;
+	private int inUse = 0;
+	private int peakInUse = 0;
+	private double inUseTime = 0;
+	private long lastChange = creationTime;
+	private long opened = 0;
+	private long evicted = 0;
+	private long invalid = 0;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param factory opens and closes connections
+	 */
+	ConnectionPool(Factory factory) {
+		this.factory = factory;
+		evictionTask = new TimerTask() {
+			@Override
+			public void run() {
+				evictIdleConnections(System.currentTimeMillis());
+			}
+		};
+		evictionTimer.schedule(evictionTask, IDLE_TIMEOUT / 5, IDLE_TIMEOUT / 5);
+	}
+
+	/**
+	 * Sets the maximum number of connections.
+	 *
+	 * @param maxConnections maximum number of connections, <code>0</code> for unlimited
+	 */
+	public synchronized void setMaxConnections(int maxConnections) {
+		this.maxConnections = maxConnections;
+		notifyAll();
+	}
+
+	/**
+	 * Sets the time to wait for a connection if all connections are bound to their threads.
+	 *
+	 * @param pinnedTimeout the timeout in ms
+	 */
+	synchronized void setPinnedTimeout(long pinnedTimeout) {
+		this.pinnedTimeout = pinnedTimeout;
+	}
+
+	/**
+	 * Gets the maximum number of connections.
+	 *
+	 * @return maximum number of connections, <code>0</code> for unlimited
+	 */
+	public synchronized int getMaxConnections() {
+		return maxConnections;
+	}
+
+	/**
+	 * Gets the connection for the current thread. Waits if the maximum number of connections is reached.
+	 * Each call must be followed by a call of {@link #release(Connection)}.
+	 * Connections are opened and validated outside of the pool's monitor.
+	 *
+	 * @return the connection
+	 * @throws SQLException if all connections stay bound to other threads for more than the pinned-timeout
+	 */
+	Connection acquire() throws SQLException {
+		Thread thread = Thread.currentThread();
+		long startTime = System.currentTimeMillis();
+		boolean waited = false;
+		while (true) {
+			Entry entry;
+			synchronized (this) {
+				entry = find(thread);
+				if (entry != null && entry.depth > 0) {
+					++entry.depth;
+					return entry.connection;
+				}
+				if (entry == null) {
+					entry = findFree();
+				}
+				if (entry == null) {
+					if (maxConnections <= 0 || entries.size() + opening < maxConnections) {
+						++opening;
+					} else {
+						entry = findUnused();
+						if (entry == null) {
+							if (removeOrphans()) {
+								continue;
+							}
+							if (!hasUnpinnedConnection() && System.currentTimeMillis() - startTime > pinnedTimeout) {
+								throw new SQLException("no connection available, all " + entries.size() + " connections (max. " + maxConnections + ") are bound to the threads " + getPinningThreads());
+							}
+							waited = true;
+							try {
+								wait(1000);
+							} catch (InterruptedException e) {
+								Thread.currentThread().interrupt();
+								throw new SQLException("interrupted while waiting for a connection");
+							}
+							continue;
+						}
+					}
+				}
+				if (entry != null) {
+					// reserve it
+					entry.owner = thread;
+					entry.depth = 1;
+					changeInUse(1);
+				}
+			}
+			if (entry == null) {
+				Connection connection;
+				try {
+					connection = factory.createConnection();
+				} catch (SQLException e) {
+					synchronized (this) {
+						--opening;
+						if (entries.isEmpty()) {
+							throw e;
+						}
+						// the database refuses more connections
+						_log.warn("can't open more than " + entries.size() + " connections: " + e.getMessage());
+						maxConnections = entries.size();
+						notifyAll();
+					}
+					continue;
+				}
+				synchronized (this) {
+					--opening;
+					++opened;
+					entry = new Entry(connection);
+					entry.owner = thread;
+					entry.depth = 1;
+					entries.add(entry);
+					changeInUse(1);
+				}
+			} else if (System.currentTimeMillis() - entry.lastUsed > VALIDATION_INTERVAL && !isValid(entry.connection)) {
+				synchronized (this) {
+					++invalid;
+					changeInUse(-1);
+					remove(entry);
+				}
+				continue;
+			}
+			synchronized (this) {
+				++acquisitions;
+				if (waited) {
+					long waitTime = System.currentTimeMillis() - startTime;
+					++waits;
+					totalWaitTime += waitTime;
+					maxWaitTime = Math.max(maxWaitTime, waitTime);
+				}
+			}
+			return entry.connection;
+		}
+	}
+
+	/**
+	 * Releases a connection acquired by {@link #acquire()}.
+	 * The connection remains bound to the current thread.
+	 *
+	 * @param connection the connection
+	 */
+	void release(Connection connection) {
+		boolean autoCommit;
+		try {
+			autoCommit = connection.getAutoCommit();
+		} catch (SQLException e) {
+			autoCommit = true;
+		}
+		release(connection, autoCommit);
+	}
+
+	private synchronized void release(Connection connection, boolean autoCommit) {
+		for (Entry entry: entries) {
+			if (entry.connection == connection) {
+				if (entry.depth > 0 && --entry.depth == 0) {
+					entry.lastUsed = System.currentTimeMillis();
+					if (!autoCommit) {
+						entry.inTransaction = true;
+					}
+					changeInUse(-1);
+					if (entry.stale) {
+						remove(entry);
+					}
+					notifyAll();
+				}
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Keeps a connection bound to its thread because the session state has been modified.
+	 *
+	 * @param connection the connection
+	 */
+	synchronized void keepSessionState(Connection connection) {
+		for (Entry entry: entries) {
+			if (entry.connection == connection) {
+				entry.sessionState = true;
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Called after all connections have been committed. Connections which
+	 * are bound to their threads only because of an open transaction are released.
+	 */
+	synchronized void transactionsEnded() {
+		for (Entry entry: entries) {
+			entry.inTransaction = false;
+		}
+		notifyAll();
+	}
+
+	/**
+	 * Gets all open connections.
+	 *
+	 * @return all open connections
+	 */
+	synchronized List<Connection> getConnections() {
+		List<Connection> connections = new ArrayList<Connection>();
+		for (Entry entry: entries) {
+			connections.add(entry.connection);
+		}
+		return connections;
+	}
+
+	/**
+	 * Closes all connections. Connections being in use are closed after they are released.
+	 */
+	synchronized void reconnect() {
+		for (Entry entry: new ArrayList<Entry>(entries)) {
+			if (entry.depth == 0) {
+				remove(entry);
+			} else {
+				entry.stale = true;
+			}
+		}
+	}
+
+	/**
+	 * Removes all connections from the pool. (The connections are not closed.)
+	 */
+	synchronized void clear() {
+		for (Entry entry: entries) {
+			if (entry.depth > 0) {
+				changeInUse(-1);
+			}
+		}
+		entries.clear();
+		notifyAll();
+	}
+
+	/**
+	 * Closes all connections and stops eviction.
+	 */
+	synchronized void close() throws SQLException {
+		evictionTask.cancel();
+		if (!entries.isEmpty()) {
+			_log.info(this);
+		}
+		SQLException exception = null;
+		for (Entry entry: entries) {
+			try {
+				entry.connection.close();
+			} catch (SQLException e) {
+				exception = e;
+			}
+			factory.connectionClosed(entry.connection);
+		}
+		clear();
+		if (exception != null) {
+			throw exception;
+		}
+	}
+
+	/**
+	 * Closes connections being idle for more than {@link #IDLE_TIMEOUT} ms.
+	 * Connections with an open transaction are kept, and so are connections with
+	 * modified session state as long as the owner lives.
+	 *
+	 * @param now the current time
+	 */
+	synchronized void evictIdleConnections(long now) {
+		for (Entry entry: new ArrayList<Entry>(entries)) {
+			boolean needed = entry.inTransaction || (entry.sessionState && entry.owner != null && entry.owner.isAlive());
+			if (entry.depth == 0 && !needed && now - entry.lastUsed > IDLE_TIMEOUT) {
+				++evicted;
+				remove(entry);
+			}
+		}
+	}
+
+	private Entry find(Thread thread) {
+		for (Entry entry: entries) {
+			if (entry.owner == thread) {
+				return entry;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Finds a connection without (living) owner.
+	 */
+	private Entry findFree() {
+		for (Entry entry: entries) {
+			if ((entry.owner == null || !entry.owner.isAlive()) && !entry.isPinned()) {
+				if (entry.depth > 0) {
+					// owner died while using the connection
+					entry.depth = 0;
+					changeInUse(-1);
+				}
+				return entry;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Finds the least recently used connection which is currently not in use
+	 * and can be handed over to another thread.
+	 */
+	private Entry findUnused() {
+		Entry lru = null;
+		for (Entry entry: entries) {
+			if (entry.depth == 0 && !entry.isPinned() && (lru == null || entry.lastUsed < lru.lastUsed)) {
+				lru = entry;
+			}
+		}
+		return lru;
+	}
+
+	/**
+	 * Closes connections which are bound to terminated threads because of modified session state.
+	 *
+	 * @return <code>true</code> if a connection has been closed
+	 */
+	private boolean removeOrphans() {
+		boolean removed = false;
+		for (Entry entry: new ArrayList<Entry>(entries)) {
+			if (entry.sessionState && !entry.inTransaction && entry.owner != null && !entry.owner.isAlive()) {
+				if (entry.depth > 0) {
+					changeInUse(-1);
+				}
+				remove(entry);
+				removed = true;
+			}
+		}
+		return removed;
+	}
+
+	/**
+	 * Gets the names of the threads to which the connections are bound, for error messages.
+	 */
+	private String getPinningThreads() {
+		StringBuilder sb = new StringBuilder();
+		for (Entry entry: entries) {
+			if (sb.length() > 0) {
+				sb.append(", ");
+			}
+			sb.append("'" + (entry.owner == null? "-" : entry.owner.getName()) + "'");
+			if (entry.inTransaction) {
+				sb.append(" (open transaction)");
+			} else if (entry.sessionState) {
+				sb.append(" (modified session state)");
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Whether there is a connection which might be handed over to another thread once it's released.
+	 */
+	private boolean hasUnpinnedConnection() {
+		for (Entry entry: entries) {
+			if (!entry.isPinned()) {
+				return true;
+			}
+		}
+		return opening > 0;
+	}
+
+	/**
+	 * Removes and closes a connection.
+	 */
+	private void remove(Entry entry) {
+		entries.remove(entry);
+		try {
+			entry.connection.close();
+		} catch (SQLException e) {
+			_log.warn("can't close connection: " + e.getMessage());
+		}
+		factory.connectionClosed(entry.connection);
+		notifyAll();
+	}
+
+	private boolean isValid(Connection connection) {
+		try {
+			return connection.isValid(VALIDATION_TIMEOUT);
+		} catch (SQLException e) {
+			return false;
+		} catch (Throwable t) {
+			// JDBC driver doesn't support validation
+			return true;
+		}
+	}
+
+	private void changeInUse(int delta) {
+		long now = System.currentTimeMillis();
+		inUseTime += inUse * (double) (now - lastChange);
+		lastChange = now;
+		inUse += delta;
+		peakInUse = Math.max(peakInUse, inUse);
+	}
+
+	/**
+	 * Gets the number of connections currently in use.
+	 */
+	public synchronized int getInUse() {
+		return inUse;
+	}
+
+	/**
+	 * Gets the maximum number of connections being in use at the same time.
+	 */
+	public synchronized int getPeakInUse() {
+		return peakInUse;
+	}
+
+	/**
+	 * Gets the average number of connections in use.
+	 */
+	public synchronized double getAverageInUse() {
+		long now = System.currentTimeMillis();
+		double time = inUseTime + inUse * (double) (now - lastChange);
+		return now == creationTime? inUse : time / (now - creationTime);
+	}
+
+	/**
+	 * Gets the number of times a connection has been assigned to a thread.
+	 */
+	public synchronized long getAcquisitions() {
+		return acquisitions;
+	}
+
+	/**
+	 * Gets the number of times a thread had to wait for a connection.
+	 */
+	public synchronized long getWaits() {
+		return waits;
+	}
+
+	/**
+	 * Gets the total time (in ms) threads have waited for connections.
+	 */
+	public synchronized long getTotalWaitTime() {
+		return totalWaitTime;
+	}
+
+	/**
+	 * Gets the maximum time (in ms) a thread has waited for a connection.
+	 */
+	public synchronized long getMaxWaitTime() {
+		return maxWaitTime;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "connection pool: " + opened + " opened, " + entries.size() + " open, "
+			+ "peak " + peakInUse + " in use, avg. " + String.format("%.2f", getAverageInUse()) + " in use"
+			+ (maxConnections > 0? " (max. " + maxConnections + ")" : "") + ", "
+			+ acquisitions + " acquisitions, " + waits + " waits (" + totalWaitTime + " ms total, " + maxWaitTime + " ms max), "
+			+ evicted + " evicted, " + invalid + " invalid";
+	}
+
+}
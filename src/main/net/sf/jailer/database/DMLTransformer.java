@@ -18,8 +18,8 @@ package net.sf.jailer.database;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStreamWriter;
 import java.io.Reader;
+import java.io.Writer;
 import java.sql.Blob;
 import java.sql.Clob;
 import java.sql.DatabaseMetaData;
@@ -30,9 +30,11 @@ import java.sql.SQLXML;
 import java.sql.Timestamp;
 import java.sql.Types;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.WeakHashMap;
 
 import net.sf.jailer.CommandLineParser;
 import net.sf.jailer.Configuration;
@@ -41,6 +43,7 @@ import net.sf.jailer.database.Session.ResultSetReader;
 import net.sf.jailer.datamodel.Column;
 import net.sf.jailer.datamodel.Table;
 import net.sf.jailer.util.Base64;
+import net.sf.jailer.util.LiteralFormatter;
 import net.sf.jailer.util.Quoting;
 import net.sf.jailer.util.SqlScriptExecutor;
 import net.sf.jailer.util.SqlUtil;
@@ -61,7 +64,7 @@ public class DMLTransformer extends AbstractResultSetReader {
     /**
      * The file to write to.
      */
-    private final OutputStreamWriter scriptFileWriter;
+    private final Writer scriptFileWriter;
     
     /**
      * Number of columns.
@@ -138,6 +141,11 @@ public class DMLTransformer extends AbstractResultSetReader {
      */
     private final Session session;
     
+    /**
+     * Converts cell-contents to SQL-literals.
+     */
+    private final LiteralFormatter literalFormatter;
+    
     /**
      * Maps clear text SQL-types to {@link java.sql.Types}.
      */
@@ -156,7 +164,7 @@ public class DMLTransformer extends AbstractResultSetReader {
      * @param maxBodySize maximum length of SQL values list (for generated inserts)
      * @param upsertOnly use 'upsert' statements for all entities
      */
-    public DMLTransformer(Table table, OutputStreamWriter scriptFileWriter, boolean upsertOnly, int maxBodySize, DatabaseMetaData metaData, Session session) throws SQLException {
+    public DMLTransformer(Table table, Writer scriptFileWriter, boolean upsertOnly, int maxBodySize, DatabaseMetaData metaData, Session session) throws SQLException {
         this.maxBodySize = maxBodySize;
         this.upsertOnly = upsertOnly;
         this.table = table;
@@ -165,6 +173,7 @@ public class DMLTransformer extends AbstractResultSetReader {
         this.insertStatementBuilder = new StatementBuilder(currentDialect.supportsMultiRowInserts || session.dbms == DBMS.ORACLE || session.dbms == DBMS.SQLITE? maxBodySize : 1);
         this.quoting = new Quoting(metaData);
         this.session = session;
+        this.literalFormatter = session.getLiteralFormatter();
         tableHasIdentityColumn = false;
         if (Configuration.forDbms(session).isIdentityInserts()) {
         	for (Column c: table.getColumns()) {
@@ -230,7 +239,7 @@ public class DMLTransformer extends AbstractResultSetReader {
                 	valueList.append(", ");
                 }
                 f = false;
-                String cVal = SqlUtil.toSql(content, session);
+                String cVal = literalFormatter.toSql(content);
             	if (content != null && emptyLobValue[i] != null) {
             		cVal = emptyLobValue[i];
             	}
@@ -250,7 +259,7 @@ public class DMLTransformer extends AbstractResultSetReader {
                     if (resultSet.wasNull()) {
                         content = null;
                     }
-                    String cVal = SqlUtil.toSql(content, session);
+                    String cVal = literalFormatter.toSql(content);
                     if (SqlUtil.dbms == DBMS.POSTGRESQL && (content instanceof Date || content instanceof Timestamp)) {
                     	// explicit cast needed
                     	cVal = "timestamp " + cVal;
@@ -495,7 +504,7 @@ public class DMLTransformer extends AbstractResultSetReader {
 	                if (resultSet.wasNull()) {
 	                    content = null;
 	                }
-	                String cVal = SqlUtil.toSql(content, session);
+	                String cVal = literalFormatter.toSql(content);
 	                val.put(columnLabel[j], cVal);
 	            }
 				boolean f = true;
@@ -612,35 +621,47 @@ public class DMLTransformer extends AbstractResultSetReader {
     public void close() {
     	flush();
     	synchronized (scriptFileWriter) {
-    		if (identityInsertTable != null) {
+    		if (identityInsertTable.get(scriptFileWriter) == table) {
     			try {
-					scriptFileWriter.write("SET IDENTITY_INSERT " + qualifiedTableName(identityInsertTable) + " OFF;\n");
-				} catch (IOException e) {
-					throw new RuntimeException(e);
-				}
-    			identityInsertTable = null;
+    				scriptFileWriter.write("SET IDENTITY_INSERT " + qualifiedTableName(table) + " OFF;\n");
+    			} catch (IOException e) {
+    				throw new RuntimeException(e);
+    			}
+    			identityInsertTable.remove(scriptFileWriter);
     		}
     	}
     }
     
     /**
-     * Table which is currently enabled for identity-inserts.
+     * Table for which identity-inserts are enabled, per script file writer.
+     * A script file (segment) may be shared with transformers of other tables and
+     * only one table per session can be enabled for identity-inserts.
      */
-    private static Table identityInsertTable = null;
+    private static final Map<Writer, Table> identityInsertTable = Collections.synchronizedMap(new WeakHashMap<Writer, Table>());
     
     /**
      * Writes into script.
+     * Identity-inserts are switched on once per table and script file (segment) and
+     * switched off when another table is written into the same file or the transformer is closed.
+     * 
+     * @param content the content
+     * @param wrap <code>true</code> if content is a block of DML statements, <code>false</code> for LOB-content
      */
     private void writeToScriptFile(String content, boolean wrap) throws IOException {
+    	if (content.length() == 0) {
+    		return;
+    	}
         synchronized (scriptFileWriter) {
-        	if (tableHasIdentityColumn) {
-        		if (identityInsertTable != table) {
-        			if (identityInsertTable != null) {
-        				scriptFileWriter.write("SET IDENTITY_INSERT " + qualifiedTableName(identityInsertTable) + " OFF;\n");
-            			identityInsertTable = null;
-        			}
+        	if (wrap) {
+        		Table current = identityInsertTable.get(scriptFileWriter);
+        		if (current != null && current != table) {
+        			scriptFileWriter.write("SET IDENTITY_INSERT " + qualifiedTableName(current) + " OFF;\n");
+        			identityInsertTable.remove(scriptFileWriter);
+        			current = null;
+        		}
+        		if (current == null && tableHasIdentityColumn) {
         			scriptFileWriter.write("SET IDENTITY_INSERT " + qualifiedTableName(table) + " ON;\n");
-        			identityInsertTable = table;
+        			identityInsertTable.put(scriptFileWriter, table);
         		}
         	}
         	if (wrap && SqlUtil.dbms == DBMS.ORACLE) {
@@ -16,7 +16,7 @@
 package net.sf.jailer.database;
 
 import java.io.IOException;
-import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.sql.DatabaseMetaData;
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -48,7 +48,7 @@ public class DeletionTransformer extends AbstractResultSetReader {
     /**
      * The file to write to.
      */
-    private final OutputStreamWriter scriptFileWriter;
+    private final Writer scriptFileWriter;
     
     /**
      * For building compact delete-statements.
@@ -77,7 +77,7 @@ public class DeletionTransformer extends AbstractResultSetReader {
      * @param scriptFileWriter the file to write to
      * @param maxBodySize maximum length of SQL values list (for generated deletes)
      */
-    public DeletionTransformer(Table table, OutputStreamWriter scriptFileWriter, int maxBodySize, DatabaseMetaData metaData, Session session) throws SQLException {
+    public DeletionTransformer(Table table, Writer scriptFileWriter, int maxBodySize, DatabaseMetaData metaData, Session session) throws SQLException {
         this.table = table;
         this.scriptFileWriter = scriptFileWriter;
         deleteStatementBuilder = new StatementBuilder(maxBodySize);
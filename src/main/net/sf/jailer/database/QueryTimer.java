@@ -0,0 +1,90 @@
+/*
+ * Copyright 2007 - 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.jailer.database;
+
+/**
+ * Measures the time the current thread spends in executing statements,
+ * without the time the {@link Session.ResultSetReader}s need to process the rows.
+ *
+ * Timers can be nested, a timer started inside a reader measures
+ * the statements executed until it is stopped.
+ *
+ * @author Ralf Wisser
+ */
+public class QueryTimer {
+
+	/**
+	 * The innermost running timer of the current thread.
+	 */
+	private static final ThreadLocal<QueryTimer> current = new ThreadLocal<QueryTimer>();
+
+	private final QueryTimer outer;
+	private final long startTime;
+
+	/**
+	 * Time (in ns) spent in readers.
+	 */
+	private long readerTime = 0;
+	private long readerStartTime;
+	private int readerDepth = 0;
+
+	private QueryTimer(QueryTimer outer) {
+		this.outer = outer;
+		this.startTime = System.nanoTime();
+	}
+
+	/**
+	 * Starts a timer for the current thread.
+	 *
+	 * @return the timer, must be stopped by the same thread
+	 */
+	public static QueryTimer start() {
+		QueryTimer timer = new QueryTimer(current.get());
+		current.set(timer);
+		return timer;
+	}
+
+	/**
+	 * Stops the timer.
+	 *
+	 * @return time (in ms) spent in executing statements since the timer has been started
+	 */
+	public long stop() {
+		current.set(outer);
+		return (System.nanoTime() - startTime - readerTime) / 1000000;
+	}
+
+	/**
+	 * Called before a reader processes a row.
+	 */
+	static void enterReader() {
+		QueryTimer timer = current.get();
+		if (timer != null && timer.readerDepth++ == 0) {
+			timer.readerStartTime = System.nanoTime();
+		}
+	}
+
+	/**
+	 * Called after a reader has processed a row.
+	 */
+	static void leaveReader() {
+		QueryTimer timer = current.get();
+		if (timer != null && --timer.readerDepth == 0) {
+			timer.readerTime += System.nanoTime() - timer.readerStartTime;
+		}
+	}
+
+}
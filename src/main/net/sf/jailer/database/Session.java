@@ -32,13 +32,15 @@ import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.SQLFeatureNotSupportedException;
 import java.sql.Statement;
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 
+import net.sf.jailer.Configuration;
 import net.sf.jailer.util.CancellationHandler;
+import net.sf.jailer.util.LiteralFormatter;
 import net.sf.jailer.util.SqlUtil;
 
 import org.apache.log4j.Logger;
@@ -52,19 +54,19 @@ import org.apache.log4j.Logger;
 public class Session {
 
     /**
-     * Hold a connection for each thread.
+     * Holds the connections, each one bound to a thread.
      */
-    private ThreadLocal<Connection> connection = new ThreadLocal<Connection>();
+    private final ConnectionPool connectionPool;
     
     /**
-     * Holds all connections.
+     * The session in which temporary tables lives, if any.
      */
-    private final Collection<Connection> connections = Collections.synchronizedCollection(new ArrayList<Connection>());
+    private static volatile Connection temporaryTableSession = null;
     
     /**
-     * The session in which temporary tables lives, if any.
+     * Guards opening and closing the session in which temporary tables lives.
      */
-    private static Connection temporaryTableSession = null;
+    private static final Object temporaryTableSessionLock = new Object();
         
     /**
      * Shared scope of temporary tables.
@@ -143,7 +145,19 @@ public class Session {
      * Connection factory.
      */
     private interface ConnectionFactory {
+    	
+    	/**
+    	 * Gets the connection of the current thread.
+    	 * Each call must be followed by a call of {@link #releaseConnection(Connection)}.
+    	 */
         Connection getConnection() throws SQLException;
+        
+        /**
+         * Releases a connection got by {@link #getConnection()}.
+         * 
+         * @param connection the connection, may be <code>null</code>
+         */
+        void releaseConnection(Connection connection);
     };
     
     /**
@@ -186,6 +200,25 @@ public class Session {
      */
     public final DBMS dbms;
     
+    /**
+     * Converts cell-contents to SQL-literals, created on demand.
+     */
+    private volatile LiteralFormatter literalFormatter;
+    
+    /**
+     * Gets the formatter for SQL-literals of the DBMS.
+     * 
+     * @return the formatter
+     */
+    public LiteralFormatter getLiteralFormatter() {
+    	LiteralFormatter formatter = literalFormatter;
+    	if (formatter == null) {
+    		formatter = new LiteralFormatter(Configuration.forDbms(this));
+    		literalFormatter = formatter;
+    	}
+    	return formatter;
+    }
+    
     /**
      * Wraps a Jdbc-Driver.
      */
@@ -269,83 +302,43 @@ public class Session {
         	closeTemporaryTableSession();
         	temporaryTableScope = scope;
         }
+        connectionPool = new ConnectionPool(new ConnectionPool.Factory() {
+        	public Connection createConnection() throws SQLException {
+        		return openConnection();
+        	}
+        	public void connectionClosed(Connection connection) {
+        		removeFromStatementCache(connection);
+        	}
+        });
         connectionFactory = new ConnectionFactory() {
-        	private Connection defaultConnection = null;
             public Connection getConnection() throws SQLException {
-                Connection con = local? connection.get() : temporaryTableSession == null? connection.get() : temporaryTableSession;
-                
-                if (con == null) {
-                	try {
-                		if (dbUrl.startsWith("jdbc:mysql:")) {
-	                		try {
-	                			 java.util.Properties info = new java.util.Properties();
-	                			 if (user != null) {
-	                				 info.put("user", user);
-	                			 }
-	                			 if (password != null) {
-	                				 info.put("password", password);
-	                			 }
-	                			 info.put("noDatetimeStringSync", "true");
-	                			 con = DriverManager.getConnection(dbUrl, info);
-	                		} catch (SQLException e2) {
-	                			// ignore
-	                		}
-                		}
-                		if (con == null) {
-                			con = DriverManager.getConnection(dbUrl, user, password);
-                		}
-                		defaultConnection = con;
-                	} catch (SQLException e) {
-                		if (defaultConnection != null) {
-                			// fall back to default connection
-                			con = defaultConnection;
-                		} else {
-                			throw e;
-                		}
-                	}
-                    boolean ac = scope == null || scope != TemporaryTableScope.TRANSACTION_LOCAL;
-                    if (Session.this.transactional) {
-                    	ac = false;
-                    }
-                    _log.info("set auto commit to " + ac);
-                    con.setAutoCommit(ac);
-                    try {
-                    	DatabaseMetaData meta = con.getMetaData();
-                		String productName = meta.getDatabaseProductName();
-                		if (productName != null) {
-                			if ((!"ASE".equals(productName)) && !productName.toUpperCase().contains("ADAPTIVE SERVER")) {
-                				// Sybase don't handle UR level correctly, see http://docs.sun.com/app/docs/doc/819-4728/gawlc?a=view
-                				if (!productName.toUpperCase().startsWith("HSQL")) {
-                					// HSQL don't allow write access at UR level
-                        			con.setTransactionIsolation(Connection.TRANSACTION_READ_UNCOMMITTED);
-                				}
-                      		}
-                		}
-                    } catch (SQLException e) {
-                        _log.info("can't set isolation level to UR. Reason: " + e.getMessage());
-                    }
-                	if (scope != null && scope != TemporaryTableScope.GLOBAL) {
-                		temporaryTableSession = con;
-                	} else {
-                        connection.set(con);
-                        boolean addCon = true;
-                        for (Connection c: connections) {
-                        	if (c == con) {
-                        		addCon = false;
-                        		break;
-                        	}
-                        }
-                        if (addCon) {
-                        	connections.add(con);
-                        }
-                	}
-                }
-                return con;
+            	if (!local && scope != null && scope != TemporaryTableScope.GLOBAL) {
+            		synchronized (temporaryTableSessionLock) {
+            			if (temporaryTableSession == null) {
+            				temporaryTableSession = openConnection();
+            			}
+            			return temporaryTableSession;
+            		}
+            	}
+            	Connection temporaryTableConnection = temporaryTableSession;
+            	if (!local && temporaryTableConnection != null) {
+            		return temporaryTableConnection;
+            	}
+            	return connectionPool.acquire();
+            }
+            public void releaseConnection(Connection connection) {
+            	if (connection != null && connection != temporaryTableSession) {
+            		connectionPool.release(connection);
+            	}
             }
         };
         // fail fast
         Connection connection = connectionFactory.getConnection();
-        dbms = logDriverInfo(connection);
+        try {
+        	dbms = logDriverInfo(connection);
+        } finally {
+        	connectionFactory.releaseConnection(connection);
+        }
         
         // TODO: remove this ugly hack
         if (!local) {
@@ -354,27 +347,87 @@ public class Session {
     }
 
     /**
-     * Closes current connection and opens a new one.
+     * Opens a new connection.
+     * 
+     * @return the new connection
      */
-    public void reconnect() throws SQLException {
-    	Connection con = connection.get();
-    	if (con != null) {
-    		if (temporaryTableScope == TemporaryTableScope.TRANSACTION_LOCAL) {
-    			con.commit();
-    		}
-    		con.close();
-    		connection.set(null);
-    		if (con == temporaryTableSession) {
-    			temporaryTableSession = null;
-    			return;
+    private Connection openConnection() throws SQLException {
+    	Connection con = null;
+		if (dbUrl.startsWith("jdbc:mysql:")) {
+    		try {
+    			 java.util.Properties info = new java.util.Properties();
+    			 if (dbUser != null) {
+    				 info.put("user", dbUser);
+    			 }
+    			 if (dbPassword != null) {
+    				 info.put("password", dbPassword);
+    			 }
+    			 info.put("noDatetimeStringSync", "true");
+    			 con = DriverManager.getConnection(dbUrl, info);
+    		} catch (SQLException e2) {
+    			// ignore
     		}
-    	}
-    	if (temporaryTableSession != null) {
-    		if (temporaryTableScope == TemporaryTableScope.TRANSACTION_LOCAL) {
-    			temporaryTableSession.commit();
+		}
+		if (con == null) {
+			con = DriverManager.getConnection(dbUrl, dbUser, dbPassword);
+		}
+        boolean ac = scope == null || scope != TemporaryTableScope.TRANSACTION_LOCAL;
+        if (transactional) {
+        	ac = false;
+        }
+        _log.info("set auto commit to " + ac);
+        con.setAutoCommit(ac);
+        try {
+        	DatabaseMetaData meta = con.getMetaData();
+    		String productName = meta.getDatabaseProductName();
+    		if (productName != null) {
+    			if ((!"ASE".equals(productName)) && !productName.toUpperCase().contains("ADAPTIVE SERVER")) {
+    				// Sybase don't handle UR level correctly, see http://docs.sun.com/app/docs/doc/819-4728/gawlc?a=view
+    				if (!productName.toUpperCase().startsWith("HSQL")) {
+    					// HSQL don't allow write access at UR level
+            			con.setTransactionIsolation(Connection.TRANSACTION_READ_UNCOMMITTED);
+    				}
+          		}
     		}
-    		temporaryTableSession.close();
-    		temporaryTableSession = null;
+        } catch (SQLException e) {
+            _log.info("can't set isolation level to UR. Reason: " + e.getMessage());
+        }
+        return con;
+    }
+
+    /**
+     * Gets the pool holding the connections of this session.
+     * 
+     * @return the connection pool
+     */
+    public ConnectionPool getConnectionPool() {
+    	return connectionPool;
+    }
+
+    /**
+     * Sets the maximum number of connections of this session.
+     * 
+     * @param maxConnections maximum number of connections, <code>0</code> for unlimited
+     */
+    public void setMaxConnections(int maxConnections) {
+    	connectionPool.setMaxConnections(maxConnections);
+    }
+
+    /**
+     * Closes all connections and opens new ones on demand.
+     * Connections being in use are closed after the current statement.
+     */
+    public void reconnect() throws SQLException {
+    	clearStatementCache();
+    	connectionPool.reconnect();
+    	synchronized (temporaryTableSessionLock) {
+	    	if (temporaryTableSession != null) {
+	    		if (temporaryTableScope == TemporaryTableScope.TRANSACTION_LOCAL) {
+	    			temporaryTableSession.commit();
+	    		}
+	    		temporaryTableSession.close();
+	    		temporaryTableSession = null;
+	    	}
     	}
     }
     
@@ -472,9 +525,23 @@ public class Session {
     public long executeQuery(String sqlQuery, ResultSetReader reader, String alternativeSQL, Object context, int limit, int timeout) throws SQLException {
         _log.info(sqlQuery);
         long rc = 0;
+        Connection con = null;
+        Boolean autoCommit = null;
         try {
         	CancellationHandler.checkForCancellation(context);
-	        Statement statement = connectionFactory.getConnection().createStatement();
+        	con = connectionFactory.getConnection();
+	        Statement statement;
+	        if (getFetchSize() != null) {
+	        	// fetch the rows in chunks (or stream them) instead of buffering the entire result
+	        	statement = con.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+	        	if (limit > 0) {
+	        		// don't read the remaining rows of a streamed result when closing it
+	        		statement.setMaxRows(limit);
+	        	}
+	        	autoCommit = applyFetchSize(con, statement);
+	        } else {
+	        	statement = con.createStatement();
+	        }
 	        CancellationHandler.begin(statement, context);
 	        ResultSet resultSet;
 	        try {
@@ -493,7 +560,7 @@ public class Session {
 	        	}
 	        }
 	        while (resultSet.next()) {
-	            reader.readCurrentRow(resultSet);
+	            readCurrentRow(reader, resultSet);
 	            ++rc;
 	            if (rc % 100 == 0) {
 	            	CancellationHandler.checkForCancellation(context);
@@ -502,7 +569,7 @@ public class Session {
 	            	break;
 	            }
 	        }
-	        reader.close();
+	        closeReader(reader);
 	        resultSet.close();
 	        statement.close();
 	        CancellationHandler.end(statement, context);
@@ -517,9 +584,113 @@ public class Session {
         		throw e;
         	}
 	    	throw new SqlException("\"" + e.getMessage() + "\" in statement \"" + sqlQuery + "\"", sqlQuery, e);
+        } finally {
+        	restoreAutoCommit(con, autoCommit);
+        	connectionFactory.releaseConnection(con);
         }
     }
 
+    /**
+     * Number of active {@link #disableStreaming()} calls per thread.
+     */
+    private static final ThreadLocal<int[]> streamingDisabled = new ThreadLocal<int[]>() {
+    	@Override
+    	protected int[] initialValue() {
+    		return new int[1];
+    	}
+    };
+
+    /**
+     * Lets the queries of the current thread read their results with the driver's default fetch size
+     * until {@link #enableStreaming()} is called.
+     * Must be called before reading with readers which execute statements, because
+     * some drivers (MySQL) reject statements on a connection while a streamed result set is open.
+     */
+    public static void disableStreaming() {
+    	++streamingDisabled.get()[0];
+    }
+
+    /**
+     * Reverts {@link #disableStreaming()}.
+     */
+    public static void enableStreaming() {
+    	--streamingDisabled.get()[0];
+    }
+
+    /**
+     * Gets the fetch size for queries of the current thread.
+     * 
+     * @return the fetch size, <code>null</code> for the driver's default
+     */
+    private Integer getFetchSize() {
+    	if (streamingDisabled.get()[0] > 0) {
+    		return null;
+    	}
+    	return Configuration.forDbms(this).getFetchSize();
+    }
+
+    /**
+     * Applies the fetch size to a query statement.
+     * Auto-commit is turned off if the driver needs a transaction for it, unless the connection is
+     * already inside a transaction (transactional session or auto-commit off).
+     * 
+     * @return the previous auto-commit state if auto-commit has been turned off and must be restored
+     *  by {@link #restoreAutoCommit(Connection, Boolean)} after the result is read, <code>null</code> otherwise
+     */
+    private Boolean applyFetchSize(Connection con, Statement statement) throws SQLException {
+    	statement.setFetchSize(getFetchSize());
+    	if (Configuration.forDbms(this).isFetchSizeRequiresTransaction() && !transactional) {
+    		boolean autoCommit = con.getAutoCommit();
+    		if (autoCommit) {
+    			con.setAutoCommit(false);
+    			return autoCommit;
+    		}
+    	}
+    	return null;
+    }
+
+    /**
+     * Restores the auto-commit state after a query.
+     * 
+     * @param autoCommit the state returned by {@link #applyFetchSize(Connection, Statement)}, <code>null</code> if unchanged
+     */
+    private void restoreAutoCommit(Connection con, Boolean autoCommit) {
+    	if (autoCommit == null) {
+    		return;
+    	}
+    	try {
+    		con.setAutoCommit(autoCommit);
+    	} catch (SQLException e) {
+    		_log.warn("can't restore auto commit: " + e.getMessage());
+    	}
+    }
+
+    /**
+     * Lets a reader read the current row. The time the reader needs is not
+     * counted by a {@link QueryTimer}.
+     */
+    private static void readCurrentRow(ResultSetReader reader, ResultSet resultSet) throws SQLException {
+    	QueryTimer.enterReader();
+    	try {
+    		reader.readCurrentRow(resultSet);
+    	} finally {
+    		QueryTimer.leaveReader();
+    	}
+    }
+
+    /**
+     * Closes a reader. The time the reader needs is not
+     * counted by a {@link QueryTimer}.
+     */
+    private static void closeReader(ResultSetReader reader) throws SQLException {
+    	QueryTimer.enterReader();
+    	try {
+    		reader.close();
+    	} finally {
+    		QueryTimer.leaveReader();
+    	}
+    }
+
     /**
      * Executes a SQL-Query (SELECT).
      * 
@@ -566,8 +737,10 @@ public class Session {
 	        boolean serializeAccess = false;
 	        while (!ok) {
 	            Statement statement = null;
+	            Connection con = null;
 	            try {
-	                statement = connectionFactory.getConnection().createStatement();
+	            	con = connectionFactory.getConnection();
+	                statement = con.createStatement();
 		        	CancellationHandler.begin(statement, null);
 		        	if (serializeAccess) {
 	                    synchronized (DB_LOCK) {
@@ -592,6 +765,7 @@ public class Session {
 	                if (statement != null) {
 	                    try { statement.close(); } catch (SQLException e) { }
 	                }
+	                connectionFactory.releaseConnection(con);
 	            }
 	        }
 	        return rowCount;
@@ -613,25 +787,26 @@ public class Session {
      * @return update-count
      */
     public int executeUpdate(String sqlUpdate, Object[] parameter) throws SQLException {
-        _log.info(sqlUpdate);
+        _log.info(sqlUpdate + parameterComment(parameter));
         try {
         	CancellationHandler.checkForCancellation(null);
 	        int rowCount = 0;
+	        Connection con = connectionFactory.getConnection();
 	        PreparedStatement statement = null;
+	        boolean ok = false;
 	        try {
-	        	statement = connectionFactory.getConnection().prepareStatement(sqlUpdate);
+	        	statement = prepareStatement(con, sqlUpdate);
 	        	CancellationHandler.begin(statement, null);
-	        	int i = 1;
-	        	for (Object p: parameter) {
-	            	statement.setObject(i++, p);
-	            }
+	        	setParameters(statement, parameter);
 	        	rowCount = statement.executeUpdate();
 	        	CancellationHandler.end(statement, null);
 	            _log.info("" + rowCount + " row(s)");
+	            ok = true;
 	        } finally {
 	            if (statement != null) {
-	                try { statement.close(); } catch (SQLException e) { }
+	            	releaseStatement(con, sqlUpdate, statement, ok);
 	            }
+	            connectionFactory.releaseConnection(con);
 	        }
 	        return rowCount;
 	    } catch (SQLException e) {
@@ -639,10 +814,340 @@ public class Session {
 	    	if (!silent) {
 	    		_log.error("Error executing statement", e);
 	    	}
+	    	if (e instanceof SqlException) {
+	    		throw e;
+	    	}
 	    	throw new SqlException("\"" + e.getMessage() + "\" in statement \"" + sqlUpdate + "\"", sqlUpdate, e);
 	    }
     }
 
+    /**
+     * Executes a SQL-Update (INSERT, DELETE or UPDATE) once per parameter row, as a single batch.
+     * 
+     * @param sqlUpdate the update in SQL
+     * @param parameters the parameters, one array per execution
+     * @param types the {@link java.sql.Types} of the parameters (used for <code>null</code> values)
+     * 
+     * @return update-count
+     */
+    public long executeBatch(String sqlUpdate, List<Object[]> parameters, int[] types) throws SQLException {
+        _log.info(sqlUpdate + " -- " + parameters.size() + " parameter row(s)");
+        try {
+        	CancellationHandler.checkForCancellation(null);
+	        long rowCount = 0;
+	        Connection con = connectionFactory.getConnection();
+	        PreparedStatement statement = null;
+	        boolean ok = false;
+	        try {
+	        	statement = prepareStatement(con, sqlUpdate);
+	        	CancellationHandler.begin(statement, null);
+	        	for (Object[] parameter: parameters) {
+	        		for (int i = 0; i < parameter.length; ++i) {
+	        			if (parameter[i] == null) {
+	        				statement.setNull(i + 1, types[i]);
+	        			} else {
+	        				statement.setObject(i + 1, parameter[i]);
+	        			}
+	        		}
+	        		statement.addBatch();
+	        	}
+	        	rowCount = sumUpdateCounts(statement.executeBatch());
+	        	CancellationHandler.end(statement, null);
+	            _log.info("" + rowCount + " row(s)");
+	            ok = true;
+	        } finally {
+	            if (statement != null) {
+	            	releaseStatement(con, sqlUpdate, statement, ok);
+	            }
+	            connectionFactory.releaseConnection(con);
+	        }
+	        return rowCount;
+	    } catch (SQLException e) {
+        	CancellationHandler.checkForCancellation(null);
+	    	if (!silent) {
+	    		_log.error("Error executing statement", e);
+	    	}
+	    	if (e instanceof SqlException) {
+	    		throw e;
+	    	}
+	    	throw new SqlException("\"" + e.getMessage() + "\" in statement \"" + sqlUpdate + "\"", sqlUpdate, e);
+	    }
+    }
+
+    /**
+     * Executes SQL-Updates (INSERT, DELETE or UPDATE) as a single batch.
+     * If auto-commit is on, the batch is executed in a transaction of its own.
+     * 
+     * @param statements the updates in SQL
+     * 
+     * @return update-count
+     */
+    public long executeBatch(List<String> statements) throws SQLException {
+        _log.info("batch of " + statements.size() + " statement(s)");
+        if (_log.isDebugEnabled()) {
+        	for (String sql: statements) {
+        		_log.debug(sql);
+        	}
+        }
+        try {
+        	CancellationHandler.checkForCancellation(null);
+	        long rowCount = 0;
+	        Connection con = connectionFactory.getConnection();
+	        Statement statement = null;
+	        boolean restoreAutoCommit = false;
+	        try {
+	        	if (con.getAutoCommit()) {
+	        		con.setAutoCommit(false);
+	        		restoreAutoCommit = true;
+	        	}
+	        	statement = con.createStatement();
+	        	CancellationHandler.begin(statement, null);
+	        	for (String sql: statements) {
+	        		statement.addBatch(sql);
+	        	}
+	        	rowCount = sumUpdateCounts(statement.executeBatch());
+	        	CancellationHandler.end(statement, null);
+	        	if (restoreAutoCommit) {
+	        		con.commit();
+	        	}
+	            _log.info("" + rowCount + " row(s)");
+	        } catch (SQLException e) {
+	        	if (restoreAutoCommit) {
+	        		con.rollback();
+	        	}
+	        	throw e;
+	        } finally {
+	        	if (statement != null) {
+	        		statement.close();
+	        	}
+	        	if (restoreAutoCommit) {
+	        		con.setAutoCommit(true);
+	        	}
+	            connectionFactory.releaseConnection(con);
+	        }
+	        return rowCount;
+	    } catch (SQLException e) {
+        	CancellationHandler.checkForCancellation(null);
+	    	if (!silent) {
+	    		_log.error("Error executing batch", e);
+	    	}
+	    	if (e instanceof SqlException) {
+	    		throw e;
+	    	}
+	    	String first = statements.isEmpty()? "" : statements.get(0);
+	    	throw new SqlException("\"" + e.getMessage() + "\" in batch starting with statement \"" + first + "\"", first, e);
+	    }
+    }
+
+    /**
+     * Sums up the update counts of a batch.
+     * A statement which succeeded without a count is counted as one row,
+     * other negative counts (such as {@link Statement#EXECUTE_FAILED}) are not counted.
+     */
+    private static long sumUpdateCounts(int[] updateCounts) {
+    	long rowCount = 0;
+    	for (int count: updateCounts) {
+    		if (count == Statement.SUCCESS_NO_INFO) {
+    			++rowCount;
+    		} else if (count > 0) {
+    			rowCount += count;
+    		}
+    	}
+    	return rowCount;
+    }
+
+    /**
+     * Executes a SQL-Query (SELECT) with parameters.
+     * 
+     * @param sqlQuery the query in SQL
+     * @param parameter the parameters
+     * @param reader the reader for the result
+     * 
+     * @return row-count
+     */
+    public long executeQuery(String sqlQuery, Object[] parameter, ResultSetReader reader) throws SQLException {
+        _log.info(sqlQuery + parameterComment(parameter));
+        long rc = 0;
+        try {
+        	CancellationHandler.checkForCancellation(null);
+	        Connection con = connectionFactory.getConnection();
+	        PreparedStatement statement;
+	        try {
+	        	statement = prepareStatement(con, sqlQuery);
+	        } catch (SQLException e) {
+	        	connectionFactory.releaseConnection(con);
+	        	throw e;
+	        }
+	        boolean ok = false;
+	        Boolean autoCommit = null;
+	        try {
+	        	if (getFetchSize() != null) {
+	        		autoCommit = applyFetchSize(con, statement);
+	        	} else {
+	        		// the statement may have been cached with a fetch size
+	        		statement.setFetchSize(0);
+	        	}
+		        CancellationHandler.begin(statement, null);
+		        setParameters(statement, parameter);
+		        ResultSet resultSet = statement.executeQuery();
+		        while (resultSet.next()) {
+		            readCurrentRow(reader, resultSet);
+		            ++rc;
+		            if (rc % 100 == 0) {
+		            	CancellationHandler.checkForCancellation(null);
+		            }
+		        }
+		        closeReader(reader);
+		        resultSet.close();
+		        CancellationHandler.end(statement, null);
+		        ok = true;
+	        } finally {
+	        	releaseStatement(con, sqlQuery, statement, ok);
+	        	restoreAutoCommit(con, autoCommit);
+	        	connectionFactory.releaseConnection(con);
+	        }
+	        _log.info(rc + " row(s)");
+	        return rc;
+        } catch (SQLException e) {
+        	CancellationHandler.checkForCancellation(null);
+        	if (!silent) {
+        		_log.error("Error executing query", e);
+        	}
+        	if (e instanceof SqlException) {
+        		throw e;
+        	}
+	    	throw new SqlException("\"" + e.getMessage() + "\" in statement \"" + sqlQuery + "\"", sqlQuery, e);
+        }
+    }
+
+    /**
+     * Maximum number of cached prepared statements per connection.
+     */
+    private static final int STATEMENT_CACHE_SIZE = 100;
+
+    /**
+     * Idle prepared statements per connection and SQL, in LRU order.
+     */
+    private final Map<Connection, Map<String, PreparedStatement>> statementCache = new HashMap<Connection, Map<String, PreparedStatement>>();
+
+    /**
+     * Gets a prepared statement from the cache or prepares a new one.
+     * The statement is removed from the cache while it is in use, so that
+     * threads sharing a connection never share a statement.
+     */
+    private PreparedStatement prepareStatement(Connection con, String sql) throws SQLException {
+    	synchronized (statementCache) {
+    		Map<String, PreparedStatement> cache = statementCache.get(con);
+    		if (cache != null) {
+    			PreparedStatement statement = cache.remove(sql);
+    			if (statement != null) {
+    				return statement;
+    			}
+    		}
+    	}
+    	return con.prepareStatement(sql);
+    }
+
+    /**
+     * Puts a statement back into the cache.
+     * 
+     * @param ok <code>false</code> if the statement failed, such statements are closed
+     */
+    private void releaseStatement(Connection con, String sql, PreparedStatement statement, boolean ok) {
+    	if (ok) {
+    		try {
+    			statement.clearParameters();
+    			PreparedStatement replaced;
+    			synchronized (statementCache) {
+    				Map<String, PreparedStatement> cache = statementCache.get(con);
+    				if (cache == null) {
+    					cache = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+    						private static final long serialVersionUID = 7036563117419513427L;
+    						@Override
+    						protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+    							if (size() > STATEMENT_CACHE_SIZE) {
+    								closeStatement(eldest.getValue());
+    								return true;
+    							}
+    							return false;
+    						}
+    					};
+    					statementCache.put(con, cache);
+    				}
+    				replaced = cache.put(sql, statement);
+    			}
+    			if (replaced != null) {
+    				closeStatement(replaced);
+    			}
+    			return;
+    		} catch (SQLException e) {
+    			// close it
+    		}
+    	}
+    	closeStatement(statement);
+    }
+
+    /**
+     * Closes a statement, ignoring errors.
+     */
+    private static void closeStatement(Statement statement) {
+    	try {
+    		statement.close();
+    	} catch (SQLException e) {
+    		// ignore
+    	}
+    }
+
+    /**
+     * Removes the cached statements of a closed connection.
+     */
+    private void removeFromStatementCache(Connection con) {
+    	synchronized (statementCache) {
+    		statementCache.remove(con);
+    	}
+    }
+
+    /**
+     * Closes all cached statements.
+     */
+    private void clearStatementCache() {
+    	synchronized (statementCache) {
+    		for (Map<String, PreparedStatement> cache: statementCache.values()) {
+    			for (PreparedStatement statement: cache.values()) {
+    				closeStatement(statement);
+    			}
+    		}
+    		statementCache.clear();
+    	}
+    }
+
+    /**
+     * Sets the parameters of a prepared statement.
+     */
+    private void setParameters(PreparedStatement statement, Object[] parameter) throws SQLException {
+    	int i = 1;
+    	for (Object p: parameter) {
+        	statement.setObject(i++, p);
+        }
+    }
+
+    /**
+     * Gets the parameters as SQL comment for logging.
+     */
+    private String parameterComment(Object[] parameter) {
+    	if (parameter.length == 0) {
+    		return "";
+    	}
+    	StringBuilder sb = new StringBuilder(" -- ");
+    	for (int i = 0; i < parameter.length; ++i) {
+    		if (i > 0) {
+    			sb.append(", ");
+    		}
+    		sb.append(parameter[i]);
+    	}
+    	return sb.toString();
+    }
+
     /**
      * Inserts a CLob.
      */
@@ -650,8 +1155,10 @@ public class Session {
     	String sqlUpdate = "Update " + table + " set " + column + "=? where " + where;
         _log.info(sqlUpdate);
         PreparedStatement statement = null;
+        Connection con = null;
         try {
-	        statement = connectionFactory.getConnection().prepareStatement(sqlUpdate);
+        	con = connectionFactory.getConnection();
+	        statement = con.prepareStatement(sqlUpdate);
 	        CancellationHandler.begin(statement, null);
 	        InputStreamReader inputStreamReader = new InputStreamReader(new FileInputStream(lobFile));
 			statement.setCharacterStream(1, inputStreamReader, (int) length);
@@ -662,6 +1169,8 @@ public class Session {
         } catch (SQLException e) {
         	CancellationHandler.checkForCancellation(null);
         	throw e;
+        } finally {
+        	connectionFactory.releaseConnection(con);
         }
     }
 
@@ -672,8 +1181,10 @@ public class Session {
     	String sqlUpdate = "Update " + table + " set " + column + "=? where " + where;
         _log.info(sqlUpdate);
         PreparedStatement statement = null;
+        Connection con = null;
         try {
-	        statement = connectionFactory.getConnection().prepareStatement(sqlUpdate);
+        	con = connectionFactory.getConnection();
+	        statement = con.prepareStatement(sqlUpdate);
 	        CancellationHandler.begin(statement, null);
 	        InputStreamReader inputStreamReader = new InputStreamReader(new FileInputStream(lobFile));
 			statement.setCharacterStream(1, inputStreamReader, (int) length);
@@ -684,6 +1195,8 @@ public class Session {
         } catch (SQLException e) {
         	CancellationHandler.checkForCancellation(null);
         	throw e;
+        } finally {
+        	connectionFactory.releaseConnection(con);
         }
     }
 
@@ -694,8 +1207,10 @@ public class Session {
     	String sqlUpdate = "Update " + table + " set " + column + "=? where " + where;
         _log.info(sqlUpdate);
         PreparedStatement statement = null;
+        Connection con = null;
         try {
-	        statement = connectionFactory.getConnection().prepareStatement(sqlUpdate);
+        	con = connectionFactory.getConnection();
+	        statement = con.prepareStatement(sqlUpdate);
 	        CancellationHandler.begin(statement, null);
 	        FileInputStream fileInputStream = new FileInputStream(lobFile);
 			statement.setBinaryStream(1, fileInputStream, (int) lobFile.length());
@@ -706,6 +1221,8 @@ public class Session {
 	    } catch (SQLException e) {
 	    	CancellationHandler.checkForCancellation(null);
 	    	throw e;
+	    } finally {
+	    	connectionFactory.releaseConnection(con);
 	    }
     }
 
@@ -717,31 +1234,85 @@ public class Session {
     public long execute(String sql) throws SQLException {
         _log.info(sql);
         long rc = 0;
+        Connection con = null;
         try {
         	CancellationHandler.checkForCancellation(null);
-	        Statement statement = connectionFactory.getConnection().createStatement();
+        	con = connectionFactory.getConnection();
+	        Statement statement = con.createStatement();
 	        CancellationHandler.begin(statement, null);
 	        rc = statement.executeUpdate(sql);
 	        statement.close();
 	        CancellationHandler.end(statement, null);
+	        if (changesSessionState(sql)) {
+	        	connectionPool.keepSessionState(con);
+	        }
 	    } catch (SQLException e) {
         	CancellationHandler.checkForCancellation(null);
 	    	if (!silent) {
     			_log.error("Error executing statement", e);
 	    	}
 	    	throw new SqlException("\"" + e.getMessage() + "\" in statement \"" + sql + "\"", sql, e);
+	    } finally {
+	    	connectionFactory.releaseConnection(con);
 	    }
         return rc;
     }
     
+    /**
+     * Checks whether a statement modifies the state of the session (SET IDENTITY_INSERT ..., ALTER SESSION ...).
+     * The connection then stays bound to the current thread.
+     * 
+     * @param sql the statement
+     */
+    public static boolean changesSessionState(String sql) {
+    	String s = sql.trim().toLowerCase();
+    	return s.startsWith("set ") || s.startsWith("alter session") || s.startsWith("use ");
+    }
+
+    /**
+     * Reads DB meta data.
+     */
+    public interface MetaDataReader<T> {
+    	
+    	/**
+    	 * Reads DB meta data.
+    	 * 
+    	 * @param metaData meta data of the connection of the current thread
+    	 * @return the result
+    	 */
+    	T read(DatabaseMetaData metaData) throws Exception;
+    }
+
+    /**
+     * Reads DB meta data. The connection of the current thread is held until the reader is done,
+     * so that it can't be handed over to another thread while reading result sets of the meta data.
+     * 
+     * @param reader the reader
+     * @return the result of the reader
+     */
+    public <T> T readMetaData(MetaDataReader<T> reader) throws Exception {
+        Connection connection = connectionFactory.getConnection();
+        try {
+        	return reader.read(connection.getMetaData());
+        } finally {
+        	connectionFactory.releaseConnection(connection);
+        }
+    }
+
     /**
      * Gets DB meta data.
+     * The connection is released before returning, use {@link #readMetaData(MetaDataReader)}
+     * if the connection might be used by other threads meanwhile.
      * 
      * @return DB meta data
      */
     public DatabaseMetaData getMetaData() throws SQLException {
         Connection connection = connectionFactory.getConnection();
-        return connection.getMetaData();
+        try {
+        	return connection.getMetaData();
+        } finally {
+        	connectionFactory.releaseConnection(connection);
+        }
     }
 
     /**
@@ -758,9 +1329,8 @@ public class Session {
      */
     public void shutDown() throws SQLException {
     	_log.info("closing connection...");
-        for (Connection con: connections) {
-            con.close();
-        }
+    	clearStatementCache();
+    	connectionPool.close();
     	_log.info("connection closed");
     }
     
@@ -768,7 +1338,8 @@ public class Session {
      * Rolls back and closes all connections.
      */
     public void rollbackAll() throws SQLException {
-    	for (Connection con: connections) {
+    	clearStatementCache();
+    	for (Connection con: connectionPool.getConnections()) {
             try {
             	con.rollback();
             } catch(SQLException e) {
@@ -780,20 +1351,21 @@ public class Session {
         		_log.warn(e.getMessage());
         	}
     	}
-    	connection = new ThreadLocal<Connection>();
+    	connectionPool.clear();
     }
     
     /**
      * Commits all connections.
      */
     public void commitAll() throws SQLException {
-    	for (Connection con: connections) {
+    	for (Connection con: connectionPool.getConnections()) {
             try {
             	con.commit();
             } catch(SQLException e) {
         		_log.warn(e.getMessage());
         	}
      	}
+    	connectionPool.transactionsEnded();
     }
     
     /**
@@ -818,17 +1390,19 @@ public class Session {
      * Closes the session in which temporary tables lives, if any.
      */
     public static void closeTemporaryTableSession() {
-    	try {
-    		if (temporaryTableSession != null) {
-    			if (temporaryTableScope == TemporaryTableScope.TRANSACTION_LOCAL) {
-    				temporaryTableSession.commit();
-    			}
-    			temporaryTableSession.close();
-    		}
-    	} catch(SQLException e) {
-    		_log.error("can't close connection", e);
+    	synchronized (temporaryTableSessionLock) {
+	    	try {
+	    		if (temporaryTableSession != null) {
+	    			if (temporaryTableScope == TemporaryTableScope.TRANSACTION_LOCAL) {
+	    				temporaryTableSession.commit();
+	    			}
+	    			temporaryTableSession.close();
+	    		}
+	    	} catch(SQLException e) {
+	    		_log.error("can't close connection", e);
+	    	}
+	    	temporaryTableSession = null;
     	}
-    	temporaryTableSession = null;
     }
 
     /**
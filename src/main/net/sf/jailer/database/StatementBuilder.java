@@ -32,7 +32,12 @@ public class StatementBuilder {
     /**
      * The maximal size of a body-list.
      */
-    private final int maxBodySize;
+    private int maxBodySize;
+
+    /**
+     * Length of the statement built so far.
+     */
+    private int length = 0;
 
     /**
      * The head of the statement.
@@ -103,6 +108,7 @@ public class StatementBuilder {
             sqlStatement.append(terminator);
             head = null;
             body.clear();
+            length = 0;
             return sqlStatement.toString();
         }
         return "";
@@ -120,9 +126,15 @@ public class StatementBuilder {
         if (this.head != null && !this.head.equals(head)) {
             throw new IllegalStateException("can't append, '" + this.head + "'!='" + head + "'");
         }
+        if (this.head == null) {
+        	length = head.length() + terminator.length();
+        } else {
+        	length += separator.length();
+        }
         this.head = head;
         this.terminator = terminator;
         this.separator = separator;
+        length += item.length();
         body.add(item);
     }
 
@@ -141,5 +153,21 @@ public class StatementBuilder {
 	public int size() {
 		return body.size();
 	}
+
+	/**
+	 * Returns the length of the current statement.
+	 */
+	public int length() {
+		return length;
+	}
+
+	/**
+	 * Sets the maximal size of a body-list.
+	 * 
+	 * @param maxBodySize the maximal size of a body-list
+	 */
+	public void setMaxBodySize(int maxBodySize) {
+		this.maxBodySize = maxBodySize;
+	}
     
 }
@@ -24,5 +24,6 @@ public enum TemporaryTableScope {
 	GLOBAL,
 	SESSION_LOCAL,
 	TRANSACTION_LOCAL, // not supported
-	LOCAL_DATABASE
+	LOCAL_DATABASE,
+	IN_MEMORY
 }
@@ -98,6 +98,7 @@ public class Column {
     private static Pattern typeWithSizeAndPrecision = Pattern.compile("([^ ]+) +([^ \\(]+) *\\( *([0-9]+) *, *([0-9]+) *\\)");
     private static Pattern typeWithSize = Pattern.compile("([^ ]+) +([^ \\(]+) *\\( *([0-9]+) *\\)");
     private static Pattern typeWithoutSize = Pattern.compile("([^ ]+) +([^ \\(]+)");
+    private static Pattern identity = Pattern.compile("(\\(\\))? +[iI][dD][eE][nN][tT][iI][tT][yY]");
 	
     /**
      * Parses a column declaration in SQL syntax.
@@ -109,7 +110,7 @@ public class Column {
     	columnDeclaration = columnDeclaration.trim();
     	
     	// work-around for bug 2849047
-    	String normalizedcolumnDeclaration = columnDeclaration.replaceFirst("(\\(\\))? +[iI][dD][eE][nN][tT][iI][tT][yY]", "");
+    	String normalizedcolumnDeclaration = identity.matcher(columnDeclaration).replaceFirst("");
     	if (!normalizedcolumnDeclaration.equals(columnDeclaration)) {
     		columnDeclaration = normalizedcolumnDeclaration + " identity";
     	}
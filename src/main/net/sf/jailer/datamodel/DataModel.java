@@ -324,10 +324,11 @@ public class DataModel {
     public DataModel(String additionalTablesFile, String additionalAssociationsFile, Map<String, String> sourceSchemaMapping, LineFilter assocFilter, PrimaryKeyFactory primaryKeyFactory) throws Exception {
     	this.primaryKeyFactory = primaryKeyFactory;
     	try {
+    		DataModelSnapshot snapshot = new DataModelSnapshot(CommandLineParser.getInstance().newFile(getDatamodelFolder()), CommandLineParser.getInstance().newFile("tmp"));
+    		
 	    	// tables
 	    	File nTablesFile = CommandLineParser.getInstance().newFile(getTablesFile());
-			CsvFile tablesFile = new CsvFile(nTablesFile);
-	        List<CsvFile.Line> tableList = new ArrayList<CsvFile.Line>(tablesFile.getLines());
+	        List<CsvFile.Line> tableList = snapshot.getLines(nTablesFile);
 	        if (additionalTablesFile != null) {
 	            tableList.addAll(new CsvFile(CommandLineParser.getInstance().newFile(additionalTablesFile)).getLines());
 	        }
@@ -358,8 +359,7 @@ public class DataModel {
 	        // columns
 	        File file = CommandLineParser.getInstance().newFile(getColumnsFile());
 	        if (file.exists()) {
-		    	CsvFile columnsFile = new CsvFile(file);
-		        List<CsvFile.Line> columnsList = new ArrayList<CsvFile.Line>(columnsFile.getLines());
+		        List<CsvFile.Line> columnsList = snapshot.getLines(file);
 		        for (CsvFile.Line line: columnsList) {
 		            List<Column> columns = new ArrayList<Column>();
 		            for (int j = 1; j < line.cells.size() && line.cells.get(j).toString().length() > 0; ++j) {
@@ -378,7 +378,14 @@ public class DataModel {
 	        }
 	        
 	        // associations
-	        List<CsvFile.Line> associationList = new ArrayList<CsvFile.Line>(new CsvFile(CommandLineParser.getInstance().newFile(getAssociationsFile()), assocFilter).getLines());
+	        List<CsvFile.Line> associationList;
+	        File associationsFile = CommandLineParser.getInstance().newFile(getAssociationsFile());
+	        if (assocFilter == null) {
+	        	associationList = snapshot.getLines(associationsFile);
+	        } else {
+	        	// the filter applies to the lines of the file, not to the lines of included files
+	        	associationList = new ArrayList<CsvFile.Line>(new CsvFile(associationsFile, assocFilter).getLines());
+	        }
 	        if (additionalAssociationsFile != null) {
 	            associationList.addAll(new CsvFile(CommandLineParser.getInstance().newFile(additionalAssociationsFile)).getLines());
 	        }
@@ -432,7 +439,7 @@ public class DataModel {
 	                throw new RuntimeException(location + ": " + e.getMessage(), e);
 	            }
 	        }
-	        initDisplayNames();
+	        initDisplayNames(snapshot);
 	        
 	        // model name
 	        File nameFile = CommandLineParser.getInstance().newFile(getModelNameFile());
@@ -441,7 +448,7 @@ public class DataModel {
 	        try {
 	        	lastModified = nTablesFile.lastModified();
 		        if (nameFile.exists()) {
-		        	List<CsvFile.Line> nameList = new ArrayList<CsvFile.Line>(new CsvFile(nameFile).getLines());
+		        	List<CsvFile.Line> nameList = snapshot.getLines(nameFile);
 		        	if (nameList.size() > 0) {
 		        		CsvFile.Line line =  nameList.get(0);
 		        		name = line.cells.get(0);
@@ -451,6 +458,7 @@ public class DataModel {
 	        } catch (Throwable t) {
 	        	// keep defaults
 	        }
+	        snapshot.write();
     	} catch (Exception e) {
     		_log.error("failed to load data-model " + getDatamodelFolder() + File.separator, e);
     		throw e;
@@ -459,8 +467,10 @@ public class DataModel {
 
     /**
      * Initializes display names.
+     * 
+     * @param snapshot snapshot of the data model files
      */
-    private void initDisplayNames() throws Exception {
+    private void initDisplayNames(DataModelSnapshot snapshot) throws Exception {
     	Set<String> unqualifiedNames = new HashSet<String>();
     	Set<String> nonUniqueUnqualifiedNames = new HashSet<String>();
     	
@@ -498,7 +508,7 @@ public class DataModel {
     	Map<String, String> userDefinedDisplayNames = new TreeMap<String, String>();
         File dnFile = CommandLineParser.getInstance().newFile(DataModel.getDisplayNamesFile());
         if (dnFile.exists()) {
-        	for (CsvFile.Line dnl: new CsvFile(dnFile).getLines()) {
+        	for (CsvFile.Line dnl: snapshot.getLines(dnFile)) {
         		userDefinedDisplayNames.put(dnl.cells.get(0), dnl.cells.get(1));
         	}
         }
@@ -0,0 +1,305 @@
+/*
+ * Copyright 2007 - 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.jailer.datamodel;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.sf.jailer.util.CsvFile;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Snapshot of the parsed CSV files of a data model (tables, columns, associations, display names and model name),
+ * stored in a binary file inside the folder for temporary files and loaded with one sequential read.
+ * The snapshot is not stored in the data model folder, which is usually under version control.
+ *
+ * The lines of a file are taken from the snapshot as long as the file (and all files it includes)
+ * has the length and modification time recorded in the snapshot. Otherwise the file is parsed
+ * and the snapshot is written again. The snapshot contains the lines as they are in the files,
+ * mapping of source schemas is done by the data model afterwards.
+ *
+ * @author Ralf Wisser
+ */
+class DataModelSnapshot {
+
+	/**
+	 * The logger.
+	 */
+	private static final Logger _log = Logger.getLogger(DataModelSnapshot.class);
+
+	/**
+	 * Prefix of the name of a snapshot file.
+	 */
+	private static final String SNAPSHOT_FILE_PREFIX = "datamodel-";
+
+	/**
+	 * Identifies the format of the snapshot file. Must be incremented on each change of the format.
+	 */
+	private static final String FORMAT = "Jailer data model snapshot, version 1";
+
+	/**
+	 * Files modified less than this number of milliseconds ago are not recorded,
+	 * since a further modification might not change the modification time.
+	 */
+	private static final long MIN_AGE = 2000;
+
+	/**
+	 * Lines of a CSV file and the files they are read from.
+	 */
+	private static class Entry {
+		final List<String> paths = new ArrayList<String>();
+		final List<Long> lengths = new ArrayList<Long>();
+		final List<Long> lastModified = new ArrayList<Long>();
+		List<CsvFile.Line> lines;
+
+		/**
+		 * Whether the files are unchanged since the entry was created.
+		 */
+		boolean isUpToDate() {
+			for (int i = 0; i < paths.size(); ++i) {
+				File file = new File(paths.get(i));
+				if (!file.exists() || file.length() != lengths.get(i) || file.lastModified() != lastModified.get(i)) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * The snapshot file.
+	 */
+	private final File file;
+
+	/**
+	 * Entries read from the snapshot file, per path of CSV file.
+	 */
+	private final Map<String, Entry> snapshot = new HashMap<String, Entry>();
+
+	/**
+	 * Entries of the CSV files read, per path.
+	 */
+	private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>();
+
+	/**
+	 * Whether a file has been parsed.
+	 */
+	private boolean parsed = false;
+
+	/**
+	 * Constructor. Reads the snapshot file, if it exists.
+	 *
+	 * @param dataModelFolder the data model folder
+	 * @param snapshotFolder the folder containing the snapshot files
+	 */
+	DataModelSnapshot(File dataModelFolder, File snapshotFolder) {
+		this.file = getSnapshotFile(dataModelFolder, snapshotFolder);
+		if (file.exists()) {
+			try {
+				read();
+			} catch (Exception e) {
+				_log.warn("can't read data model snapshot '" + file + "': " + e.getMessage());
+				snapshot.clear();
+			}
+		}
+	}
+
+	/**
+	 * Gets the snapshot file of a data model folder.
+	 *
+	 * @param dataModelFolder the data model folder
+	 * @param snapshotFolder the folder containing the snapshot files
+	 * @return the snapshot file
+	 */
+	static File getSnapshotFile(File dataModelFolder, File snapshotFolder) {
+		String path = dataModelFolder.getAbsolutePath();
+		return new File(snapshotFolder, SNAPSHOT_FILE_PREFIX + Integer.toHexString(path.hashCode()) + ".snapshot");
+	}
+
+	/**
+	 * Gets the lines of a CSV file, from the snapshot if the file is unchanged.
+	 *
+	 * @param csvFile the CSV file
+	 * @return the lines
+	 */
+	List<CsvFile.Line> getLines(File csvFile) throws Exception {
+		String path = csvFile.getAbsolutePath();
+		Entry entry = snapshot.get(path);
+		if (entry == null || !entry.isUpToDate()) {
+			CsvFile csv = new CsvFile(csvFile);
+			entry = new Entry();
+			long now = System.currentTimeMillis();
+			for (File f: csv.getFiles()) {
+				long lastModified = f.lastModified();
+				if (lastModified > now - MIN_AGE) {
+					entry = null;
+					break;
+				}
+				entry.paths.add(f.getAbsolutePath());
+				entry.lengths.add(f.length());
+				entry.lastModified.add(lastModified);
+			}
+			parsed = true;
+			if (entry == null) {
+				entries.remove(path);
+				return csv.getLines();
+			}
+			entry.lines = csv.getLines();
+		}
+		entries.put(path, entry);
+		return new ArrayList<CsvFile.Line>(entry.lines);
+	}
+
+	/**
+	 * Writes the snapshot file if a CSV file has been parsed.
+	 * Failures are logged only, the working folder might be read-only.
+	 */
+	void write() {
+		if (!parsed) {
+			return;
+		}
+		File tmp = null;
+		try {
+			File folder = file.getAbsoluteFile().getParentFile();
+			folder.mkdirs();
+			tmp = File.createTempFile(SNAPSHOT_FILE_PREFIX, ".tmp", folder);
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 64 * 1024));
+			try {
+				writeString(out, FORMAT);
+				out.writeInt(entries.size());
+				for (Map.Entry<String, Entry> e: entries.entrySet()) {
+					Entry entry = e.getValue();
+					writeString(out, e.getKey());
+					out.writeInt(entry.paths.size());
+					for (int i = 0; i < entry.paths.size(); ++i) {
+						writeString(out, entry.paths.get(i));
+						out.writeLong(entry.lengths.get(i));
+						out.writeLong(entry.lastModified.get(i));
+					}
+					out.writeInt(entry.lines.size());
+					for (CsvFile.Line line: entry.lines) {
+						writeString(out, line.location);
+						int n = 0;
+						for (int i = 0; i < line.cells.size(); ++i) {
+							if (line.cells.get(i).length() > 0) {
+								n = i + 1;
+							}
+						}
+						out.writeInt(line.cells.size());
+						out.writeInt(n);
+						for (int i = 0; i < n; ++i) {
+							writeString(out, line.cells.get(i));
+						}
+					}
+				}
+			} finally {
+				out.close();
+			}
+			if (!tmp.renameTo(file) && !(file.delete() && tmp.renameTo(file))) {
+				throw new IOException("can't rename '" + tmp + "' to '" + file + "'");
+			}
+			tmp = null;
+		} catch (Exception e) {
+			_log.debug("can't write data model snapshot '" + file + "': " + e.getMessage());
+		} finally {
+			if (tmp != null) {
+				tmp.delete();
+			}
+		}
+	}
+
+	/**
+	 * Reads the snapshot file.
+	 */
+	private void read() throws IOException {
+		byte[] content = new byte[(int) file.length()];
+		InputStream fileIn = new FileInputStream(file);
+		try {
+			int length = 0;
+			while (length < content.length) {
+				int n = fileIn.read(content, length, content.length - length);
+				if (n < 0) {
+					throw new IOException("unexpected end of file");
+				}
+				length += n;
+			}
+		} finally {
+			fileIn.close();
+		}
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(content));
+		if (!FORMAT.equals(readString(in))) {
+			return;
+		}
+		for (int numEntries = in.readInt(); numEntries > 0; --numEntries) {
+			Entry entry = new Entry();
+			String path = readString(in);
+			for (int numFiles = in.readInt(); numFiles > 0; --numFiles) {
+				entry.paths.add(readString(in));
+				entry.lengths.add(in.readLong());
+				entry.lastModified.add(in.readLong());
+			}
+			int numLines = in.readInt();
+			entry.lines = new ArrayList<CsvFile.Line>(numLines);
+			for (; numLines > 0; --numLines) {
+				String location = readString(in);
+				int size = in.readInt();
+				int n = in.readInt();
+				List<String> cells = new ArrayList<String>(size);
+				for (int i = 0; i < n; ++i) {
+					cells.add(readString(in));
+				}
+				while (cells.size() < size) {
+					cells.add("");
+				}
+				entry.lines.add(new CsvFile.Line(location, cells));
+			}
+			snapshot.put(path, entry);
+		}
+	}
+
+	private static void writeString(DataOutputStream out, String s) throws IOException {
+		byte[] bytes = s.getBytes("UTF-8");
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length == 0) {
+			return "";
+		}
+		if (length < 0 || length > in.available()) {
+			throw new IOException("corrupt file");
+		}
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, "UTF-8");
+	}
+
+}
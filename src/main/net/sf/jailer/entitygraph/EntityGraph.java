@@ -158,6 +158,110 @@ public abstract class EntityGraph {
      */
     public abstract long resolveAssociation(Table table, Association association, int today) throws SQLException;
 
+    /**
+     * Collects all entities born on a given day into the frontier, replacing the previous frontier.
+     * {@link #resolveAssociation(Table, Association, int)} then joins the frontier instead of
+     * the whole graph if it resolves the associations of these entities.
+     * 
+     * @param birthday birthday of the entities in the frontier
+     */
+    public void swapFrontier(int birthday) throws SQLException {
+    }
+
+    /**
+     * Removes the frontier.
+     */
+    public void removeFrontier() throws SQLException {
+    }
+
+    /**
+     * Removes all entities born after a given day, for instance the entities collected
+     * on an interrupted day of the collection.
+     * 
+     * @param birthday the day
+     * @return number of removed entities
+     */
+    public abstract long removeEntitiesBornAfter(int birthday) throws SQLException;
+
+    /**
+     * Removes all sets of entities of this graph (the frontier and the sets of entities being added),
+     * for instance the ones left over by an interrupted collection.
+     */
+    public abstract void removeSets() throws SQLException;
+
+    /**
+     * Creates a unique id of a set of entities in the working table {@link #ENTITY_SET_ELEMENT}.
+     * The sets are removed by {@link #removeSets()}.
+     * 
+     * @return a unique set id
+     */
+    protected abstract int getNextSetId();
+
+    /**
+     * Sorts the entities topologically in memory (see {@link TopologicalEntitySorter}),
+     * s.t. they can be written level by level using {@link #markLevel(int)}.
+     * 
+     * @return number of levels, <code>-1</code> if the graph doesn't support sorting in memory
+     */
+    public abstract int sortTopologically() throws SQLException;
+
+    /**
+     * Marks all entities of a level (see {@link #sortTopologically()}), s.t. they can be read.
+     * 
+     * @param level the level
+     */
+    public abstract void markLevel(int level) throws SQLException;
+
+    /**
+     * Deletes all marked entities, but not their dependencies.
+     */
+    public abstract void deleteMarkedEntities() throws SQLException;
+
+    /**
+     * Whether associations with the same destination may be resolved concurrently.
+     */
+    private boolean concurrentResolution = false;
+
+    /**
+     * Allows or disallows concurrent resolution of associations with the same destination.
+     * 
+     * @param concurrentResolution <code>true</code> if {@link #resolveAssociation(Table, Association, int)} may be
+     *        called concurrently for associations with the same destination
+     */
+    public void setConcurrentResolution(boolean concurrentResolution) {
+    	this.concurrentResolution = concurrentResolution;
+    }
+
+    /**
+     * Whether associations with the same destination may be resolved concurrently.
+     * 
+     * @return <code>true</code> if concurrent resolution is allowed and supported by this graph
+     */
+    public boolean isConcurrentResolution() {
+    	return concurrentResolution;
+    }
+
+    /**
+     * Locks used to serialize the insertion of entities into the graph per destination table.
+     */
+    private final Map<Table, Object> destinationLocks = new HashMap<Table, Object>();
+
+    /**
+     * Gets the lock used to serialize the insertion of entities of a table.
+     * 
+     * @param table the table
+     */
+    protected Object getDestinationLock(Table table) {
+    	synchronized (destinationLocks) {
+    		Object lock = destinationLocks.get(table);
+    		if (lock == null) {
+    			lock = new Object();
+    			destinationLocks.put(table, lock);
+    		}
+    		return lock;
+    	}
+    }
+
     /**
      * Adds dependencies.
      * 
@@ -278,6 +382,74 @@ public abstract class EntityGraph {
      */
     public abstract void markDependentEntitiesAsTraversed(Association association, ResultSet resultSet, ResultSetMetaData resultSetMetaData, Map<String, Integer> typeCache) throws SQLException;
     
+    /**
+     * Name of the column containing the number of the given entity
+     * in the queries for reading the dependent entities of several entities.
+     */
+    protected static final String PARENT_NUMBER = "JAILER_PARENT";
+    
+    /**
+     * Maximum number of given entities whose dependent entities are read (or marked) with one statement.
+     */
+    protected static final int MAX_ENTITIES_PER_STATEMENT = 100;
+    
+    /**
+     * Reads all entities which depends on some given entities.
+     * This implementation reads the dependent entities of each entity separately,
+     * subclasses read them with one query.
+     * 
+     * @param table the table from which to read entities
+     * @param association the dependency
+     * @param resultSets the given entities (one row each)
+     * @param resultSetMetaData meta data of the given rows
+     * @param readers reads the entities, one for each given entity
+     * @param typeCache type cache for the given rows
+     * @param selectionSchema the selection schema
+     */
+    public void readDependentEntities(Table table, Association association, List<ResultSet> resultSets, ResultSetMetaData resultSetMetaData, List<ResultSetReader> readers, Map<String, Integer> typeCache, String selectionSchema, String originalPKAliasPrefix) throws SQLException {
+    	for (int i = 0; i < resultSets.size(); ++i) {
+    		readDependentEntities(table, association, resultSets.get(i), resultSetMetaData, readers.get(i), typeCache, selectionSchema, originalPKAliasPrefix);
+    	}
+    }
+    
+    /**
+     * Marks all entities which depends on some given entities as traversed.
+     * This implementation marks the dependent entities of each entity separately.
+     * 
+     * @param association the dependency
+     * @param resultSets the given entities (one row each)
+     * @param resultSetMetaData meta data of the given rows
+     * @param typeCache type cache for the given rows
+     */
+    public void markDependentEntitiesAsTraversed(Association association, List<ResultSet> resultSets, ResultSetMetaData resultSetMetaData, Map<String, Integer> typeCache) throws SQLException {
+    	for (ResultSet resultSet: resultSets) {
+    		markDependentEntitiesAsTraversed(association, resultSet, resultSetMetaData, typeCache);
+    	}
+    }
+    
+    /**
+     * Dispatches the rows of a query for the dependent entities of several entities
+     * to the readers of the given entities according to the column {@link #PARENT_NUMBER}.
+     */
+    protected static class DependentEntitiesDispatcher implements ResultSetReader {
+    	private final List<ResultSetReader> readers;
+    	private int parentNumberColumn = 0;
+    	
+    	public DependentEntitiesDispatcher(List<ResultSetReader> readers) {
+    		this.readers = readers;
+    	}
+    	
+		public void readCurrentRow(ResultSet resultSet) throws SQLException {
+			if (parentNumberColumn == 0) {
+				parentNumberColumn = resultSet.findColumn(PARENT_NUMBER);
+			}
+			readers.get(resultSet.getInt(parentNumberColumn)).readCurrentRow(resultSet);
+		}
+		
+		public void close() {
+		}
+    }
+    
     /**
      * Reads all non-traversed dependencies. 
      * 
@@ -336,10 +508,21 @@ public abstract class EntityGraph {
      * 
      * @return a unique ID
      */
-    public static int createUniqueGraphID() {
-        return Math.abs((int) System.currentTimeMillis());
+    public static synchronized int createUniqueGraphID() {
+        int id = Math.abs((int) System.currentTimeMillis());
+        if (id <= lastGraphID && lastGraphID - id < 60000) {
+        	// graphs created in the same millisecond
+        	id = lastGraphID + 1;
+        }
+        lastGraphID = id;
+        return id;
     }
     
+    /**
+     * The ID created last.
+     */
+    private static int lastGraphID = 0;
+    
     private int lobCount = 0;
     
     /**
@@ -0,0 +1,602 @@
+/*
+ * Copyright 2007 - 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.jailer.entitygraph;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.sf.jailer.database.SQLDialect;
+import net.sf.jailer.database.Session;
+import net.sf.jailer.datamodel.Column;
+import net.sf.jailer.datamodel.PrimaryKey;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Sorts the entities of an entity-graph which is stored in working tables topologically in memory.
+ *
+ * The entities and the dependencies are read once into arrays. The level of an entity is the length
+ * of the longest path of dependencies starting at it (Kahn's algorithm), so that all entities of a level
+ * can be written after the entities of the lower levels. The level is stored as negative birthday
+ * (-2 for level 0, -3 for level 1, ...). Entities on cyclic dependencies keep their birthday.
+ *
+ * @author Ralf Wisser
+ */
+public class TopologicalEntitySorter {
+
+	/**
+	 * The logger.
+	 */
+	private static final Logger _log = Logger.getLogger(TopologicalEntitySorter.class);
+
+	/**
+	 * Number of entities inserted into the working table {@link EntityGraph#ENTITY_SET_ELEMENT} by one JDBC batch.
+	 */
+	private static final int UPDATE_BATCH_SIZE = 1000;
+
+	private final EntityGraph graph;
+	private final Session session;
+	private final PrimaryKey universalPrimaryKey;
+
+	/**
+	 * The types of the entities and their numbers.
+	 */
+	private final List<String> types = new ArrayList<String>();
+	private final Map<String, Integer> typeIds = new HashMap<String, Integer>();
+
+	/**
+	 * Type (number) and primary key of the entities. The key is stored column by column.
+	 */
+	private int[] entityType = new int[1024];
+	private final KeyColumn[] entityKey;
+	private int entityCount = 0;
+
+	/**
+	 * Numbers of the non-null columns of the primary keys per type (number), determined by the first entity of a type.
+	 */
+	private final Map<Integer, int[]> keyColumnsPerType = new HashMap<Integer, int[]>();
+
+	/**
+	 * Maps type and primary key to the entity. Open addressing hash table containing the
+	 * entity numbers + 1, <code>0</code> for free slots.
+	 */
+	private int[] entityIndex = new int[2048];
+
+	/**
+	 * The dependencies. Entity dependencyFrom[i] must be written after entity dependencyTo[i].
+	 */
+	private int[] dependencyFrom = new int[1024];
+	private int[] dependencyTo = new int[1024];
+	private int dependencyCount = 0;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param graph the entity-graph
+	 * @param session session of the working tables
+	 * @param universalPrimaryKey the universal primary key
+	 */
+	public TopologicalEntitySorter(EntityGraph graph, Session session, PrimaryKey universalPrimaryKey) {
+		this.graph = graph;
+		this.session = session;
+		this.universalPrimaryKey = universalPrimaryKey;
+		this.entityKey = new KeyColumn[universalPrimaryKey.getColumns().size()];
+		for (int i = 0; i < entityKey.length; ++i) {
+			entityKey[i] = new KeyColumn();
+		}
+	}
+
+	/**
+	 * Sorts the entities which are not yet written.
+	 *
+	 * @return number of levels
+	 */
+	public int sort() throws SQLException {
+		readEntities();
+		readDependencies();
+		int n = entityCount;
+		_log.info("sorting " + n + " entities with " + dependencyCount + " dependencies");
+		entityIndex = null;
+
+		int[] level = levels(n, dependencyFrom, dependencyTo, dependencyCount);
+		dependencyFrom = null;
+		dependencyTo = null;
+		int levels = 0;
+		int cyclic = 0;
+		for (int e = 0; e < n; ++e) {
+			if (level[e] < 0) {
+				++cyclic;
+			} else {
+				levels = Math.max(levels, level[e] + 1);
+			}
+		}
+		if (cyclic > 0) {
+			_log.info(cyclic + " entities on cyclic dependencies");
+		}
+		writeLevels(level, levels);
+		_log.info(levels + " levels");
+		return levels;
+	}
+
+	/**
+	 * Computes the levels of entities (Kahn's algorithm).
+	 *
+	 * @param n number of entities
+	 * @param dependencyFrom sources of the dependencies, entity dependencyFrom[i] must be written after entity dependencyTo[i]
+	 * @param dependencyTo targets of the dependencies
+	 * @param dependencyCount number of dependencies
+	 * @return the level of each entity, <code>-1</code> for entities on cyclic dependencies
+	 */
+	public static int[] levels(int n, int[] dependencyFrom, int[] dependencyTo, int dependencyCount) {
+		// outgoing dependencies per entity, incoming ones as adjacency arrays
+		int[] outDegree = new int[n];
+		int[] offset = new int[n + 1];
+		for (int i = 0; i < dependencyCount; ++i) {
+			++outDegree[dependencyFrom[i]];
+			++offset[dependencyTo[i] + 1];
+		}
+		for (int e = 0; e < n; ++e) {
+			offset[e + 1] += offset[e];
+		}
+		int[] dependent = new int[dependencyCount];
+		int[] fill = Arrays.copyOf(offset, n);
+		for (int i = 0; i < dependencyCount; ++i) {
+			dependent[fill[dependencyTo[i]]++] = dependencyFrom[i];
+		}
+		fill = null;
+
+		// Kahn's algorithm, level by level
+		int[] level = new int[n];
+		Arrays.fill(level, -1);
+		int[] queue = new int[n];
+		int head = 0;
+		int tail = 0;
+		for (int e = 0; e < n; ++e) {
+			if (outDegree[e] == 0) {
+				level[e] = 0;
+				queue[tail++] = e;
+			}
+		}
+		while (head < tail) {
+			int e = queue[head++];
+			for (int i = offset[e]; i < offset[e + 1]; ++i) {
+				int d = dependent[i];
+				if (--outDegree[d] == 0) {
+					level[d] = level[e] + 1;
+					queue[tail++] = d;
+				}
+			}
+		}
+		return level;
+	}
+
+	/**
+	 * Reads the entities which are not yet written.
+	 */
+	private void readEntities() throws SQLException {
+		session.executeQuery(
+				"Select type, " + universalPrimaryKey.columnList(null) + " From " + SQLDialect.dmlTableReference(EntityGraph.ENTITY, session) +
+				" Where r_entitygraph=" + graph.graphID + " and birthday>0",
+				new Session.ResultSetReader() {
+					public void readCurrentRow(ResultSet resultSet) throws SQLException {
+						String type = resultSet.getString(1);
+						Integer typeId = typeIds.get(type);
+						if (typeId == null) {
+							typeId = types.size();
+							types.add(type);
+							typeIds.put(type, typeId);
+						}
+						int e = entityCount;
+						if (e == entityType.length) {
+							entityType = Arrays.copyOf(entityType, 2 * e);
+						}
+						entityType[e] = typeId;
+						for (int i = 0; i < entityKey.length; ++i) {
+							entityKey[i].set(e, resultSet.getObject(i + 2));
+						}
+						++entityCount;
+						addToIndex(e);
+					}
+					public void close() {
+					}
+				});
+	}
+
+	/**
+	 * Reads the dependencies between the entities which are not yet written.
+	 */
+	private void readDependencies() throws SQLException {
+		final int columnCount = universalPrimaryKey.getColumns().size();
+		session.executeQuery(
+				"Select from_type, " + universalPrimaryKey.columnList("FROM_") + ", to_type, " + universalPrimaryKey.columnList("TO_") +
+				" From " + SQLDialect.dmlTableReference(EntityGraph.DEPENDENCY, session) +
+				" Where r_entitygraph=" + graph.graphID + " and assoc=0",
+				new Session.ResultSetReader() {
+					public void readCurrentRow(ResultSet resultSet) throws SQLException {
+						Object[] key = new Object[columnCount];
+						for (int i = 0; i < columnCount; ++i) {
+							key[i] = KeyColumn.normalize(resultSet.getObject(i + 2));
+						}
+						int from = find(resultSet.getString(1), key);
+						for (int i = 0; i < columnCount; ++i) {
+							key[i] = KeyColumn.normalize(resultSet.getObject(i + 3 + columnCount));
+						}
+						int to = find(resultSet.getString(2 + columnCount), key);
+						if (from >= 0 && to >= 0) {
+							if (dependencyCount == dependencyFrom.length) {
+								dependencyFrom = Arrays.copyOf(dependencyFrom, 2 * dependencyCount);
+								dependencyTo = Arrays.copyOf(dependencyTo, 2 * dependencyCount);
+							}
+							dependencyFrom[dependencyCount] = from;
+							dependencyTo[dependencyCount] = to;
+							++dependencyCount;
+						}
+					}
+					public void close() {
+					}
+				});
+	}
+
+	/**
+	 * Stores the levels as birthdays. The keys of the entities of a level are inserted into
+	 * the working table {@link EntityGraph#ENTITY_SET_ELEMENT}, the birthdays are updated with one statement per type.
+	 */
+	private void writeLevels(int[] level, int levels) throws SQLException {
+		// entities ordered by level
+		int[] start = new int[levels + 1];
+		for (int e = 0; e < level.length; ++e) {
+			if (level[e] >= 0) {
+				++start[level[e] + 1];
+			}
+		}
+		for (int l = 0; l < levels; ++l) {
+			start[l + 1] += start[l];
+		}
+		int[] ordered = new int[start[levels]];
+		int[] fill = Arrays.copyOf(start, levels);
+		for (int e = 0; e < level.length; ++e) {
+			if (level[e] >= 0) {
+				ordered[fill[level[e]]++] = e;
+			}
+		}
+		fill = null;
+		for (int l = 0; l < levels; ++l) {
+			writeLevel(l, ordered, start[l], start[l + 1]);
+		}
+	}
+
+	/**
+	 * Stores a level as birthday.
+	 *
+	 * @param l the level
+	 * @param ordered the entities ordered by level
+	 * @param from index of the first entity of the level
+	 * @param to index after the last entity of the level
+	 */
+	private void writeLevel(int l, int[] ordered, int from, int to) throws SQLException {
+		int setId = graph.getNextSetId();
+		Map<Integer, List<Object[]>> rowsPerType = new HashMap<Integer, List<Object[]>>();
+		for (int i = from; i < to; ++i) {
+			int e = ordered[i];
+			int[] columns = keyColumns(e);
+			Object[] row = new Object[columns.length + 2];
+			row[0] = setId;
+			row[1] = types.get(entityType[e]);
+			for (int c = 0; c < columns.length; ++c) {
+				row[c + 2] = entityKey[columns[c]].get(e);
+			}
+			List<Object[]> rows = rowsPerType.get(entityType[e]);
+			if (rows == null) {
+				rows = new ArrayList<Object[]>();
+				rowsPerType.put(entityType[e], rows);
+			}
+			rows.add(row);
+			if (rows.size() >= UPDATE_BATCH_SIZE) {
+				insertIntoSet(columns, rows);
+				rows.clear();
+			}
+		}
+		for (Map.Entry<Integer, List<Object[]>> e: rowsPerType.entrySet()) {
+			if (!e.getValue().isEmpty()) {
+				insertIntoSet(keyColumnsPerType.get(e.getKey()), e.getValue());
+			}
+		}
+		for (Integer typeId: rowsPerType.keySet()) {
+			updateBirthdays(types.get(typeId), keyColumnsPerType.get(typeId), setId, -(l + 2));
+		}
+		session.executeUpdate("Delete from " + SQLDialect.dmlTableReference(EntityGraph.ENTITY_SET_ELEMENT, session) + " Where set_id=" + setId);
+	}
+
+	/**
+	 * Gets the numbers of the non-null columns of the primary key of the type of an entity.
+	 */
+	private int[] keyColumns(int e) {
+		int[] columns = keyColumnsPerType.get(entityType[e]);
+		if (columns == null) {
+			int count = 0;
+			for (KeyColumn column: entityKey) {
+				if (!column.isNull(e)) {
+					++count;
+				}
+			}
+			columns = new int[count];
+			count = 0;
+			for (int i = 0; i < entityKey.length; ++i) {
+				if (!entityKey[i].isNull(e)) {
+					columns[count++] = i;
+				}
+			}
+			keyColumnsPerType.put(entityType[e], columns);
+		}
+		return columns;
+	}
+
+	private void insertIntoSet(int[] columns, List<Object[]> rows) throws SQLException {
+		List<Column> upk = universalPrimaryKey.getColumns();
+		StringBuilder columnList = new StringBuilder("set_id, type");
+		StringBuilder values = new StringBuilder("?, ?");
+		for (int c: columns) {
+			columnList.append(", " + upk.get(c).name);
+			values.append(", ?");
+		}
+		int[] types = new int[columns.length + 2];
+		Arrays.fill(types, Types.OTHER);
+		types[0] = Types.INTEGER;
+		types[1] = Types.VARCHAR;
+		session.executeBatch("Insert into " + SQLDialect.dmlTableReference(EntityGraph.ENTITY_SET_ELEMENT, session) + "(" + columnList + ") values (" + values + ")", rows, types);
+	}
+
+	private void updateBirthdays(String type, int[] columns, int setId, int birthday) throws SQLException {
+		String entity = SQLDialect.dmlTableReference(EntityGraph.ENTITY, session);
+		StringBuilder sEqualsE = new StringBuilder();
+		StringBuilder sEqualsEWoAlias = new StringBuilder();
+		List<Column> upk = universalPrimaryKey.getColumns();
+		for (int i = 0; i < upk.size(); ++i) {
+			String name = upk.get(i).name;
+			if (Arrays.binarySearch(columns, i) >= 0) {
+				sEqualsE.append(" and S." + name + "=E." + name);
+				sEqualsEWoAlias.append(" and S." + name + "=" + entity + "." + name);
+			} else {
+				sEqualsE.append(" and E." + name + " is null");
+				sEqualsEWoAlias.append(" and " + entity + "." + name + " is null");
+			}
+		}
+		String set = SQLDialect.dmlTableReference(EntityGraph.ENTITY_SET_ELEMENT, session);
+		String update = "Update " + entity + " E set E.birthday=" + birthday + " Where E.r_entitygraph=" + graph.graphID + " and E.type='" + type + "' " +
+				"and exists (Select * from " + set + " S where S.set_id=" + setId + " and S.type=E.type" + sEqualsE + ")";
+		boolean silent = session.getSilent();
+		try {
+			session.setSilent(true);
+			session.executeUpdate(update);
+		} catch (SQLException e) {
+			// postgreSQL
+			Session._log.debug("failed, retry without alias (" + e.getMessage() + ")");
+			session.setSilent(silent);
+			update = "Update " + entity + " set birthday=" + birthday + " Where " + entity + ".r_entitygraph=" + graph.graphID + " and " + entity + ".type='" + type + "' " +
+					"and exists (Select * from " + set + " S where S.set_id=" + setId + " and S.type=" + entity + ".type" + sEqualsEWoAlias + ")";
+			session.executeUpdate(update);
+		} finally {
+			session.setSilent(silent);
+		}
+	}
+
+	/**
+	 * Puts an entity into the index.
+	 */
+	private void addToIndex(int e) {
+		if (2 * (e + 1) > entityIndex.length) {
+			int[] oldIndex = entityIndex;
+			entityIndex = new int[2 * oldIndex.length];
+			for (int slot: oldIndex) {
+				if (slot != 0) {
+					entityIndex[freeSlot(hash(slot - 1))] = slot;
+				}
+			}
+		}
+		entityIndex[freeSlot(hash(e))] = e + 1;
+	}
+
+	private int freeSlot(int hash) {
+		int mask = entityIndex.length - 1;
+		int i = hash & mask;
+		while (entityIndex[i] != 0) {
+			i = (i + 1) & mask;
+		}
+		return i;
+	}
+
+	/**
+	 * Finds an entity.
+	 *
+	 * @return the number of the entity, <code>-1</code> if there is no such entity
+	 */
+	private int find(String type, Object[] primaryKey) {
+		Integer typeId = typeIds.get(type);
+		if (typeId == null) {
+			return -1;
+		}
+		int h = typeId;
+		for (int c = 0; c < primaryKey.length; ++c) {
+			h = 31 * h + KeyColumn.hash(primaryKey[c]);
+		}
+		int mask = entityIndex.length - 1;
+		for (int i = spread(h) & mask; entityIndex[i] != 0; i = (i + 1) & mask) {
+			int e = entityIndex[i] - 1;
+			if (entityType[e] == typeId && keyEquals(e, primaryKey)) {
+				return e;
+			}
+		}
+		return -1;
+	}
+
+	private boolean keyEquals(int e, Object[] primaryKey) {
+		for (int c = 0; c < primaryKey.length; ++c) {
+			if (!entityKey[c].matches(e, primaryKey[c])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Hash code of type and primary key of an entity, same as the one computed in {@link #find(String, Object[])}.
+	 */
+	private int hash(int e) {
+		int h = entityType[e];
+		for (KeyColumn column: entityKey) {
+			h = 31 * h + column.hash(e);
+		}
+		return spread(h);
+	}
+
+	private static int spread(int h) {
+		// spreads the bits, the table size is a power of two
+		h ^= (h >>> 20) ^ (h >>> 12);
+		return h ^ (h >>> 7) ^ (h >>> 4);
+	}
+
+	/**
+	 * A column of the primary keys of the entities. Integral values are packed into an array of <code>long</code>,
+	 * the column switches to an array of objects on the first value of another type.
+	 */
+	private static class KeyColumn {
+		private long[] longs = new long[1024];
+		private Object[] objects = null;
+		private final BitSet nulls = new BitSet();
+
+		/**
+		 * Converts integral numbers into {@link Long}, so that values read from columns of the same type
+		 * are comparable regardless of the column the value has been read from.
+		 */
+		static Object normalize(Object value) {
+			if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+				return ((Number) value).longValue();
+			}
+			if (value instanceof BigDecimal && ((BigDecimal) value).scale() == 0 && ((BigDecimal) value).unscaledValue().bitLength() < 64) {
+				return ((BigDecimal) value).longValue();
+			}
+			if (value instanceof BigInteger && ((BigInteger) value).bitLength() < 64) {
+				return ((BigInteger) value).longValue();
+			}
+			return value;
+		}
+
+		void set(int e, Object value) {
+			value = normalize(value);
+			if (objects == null && e == longs.length) {
+				longs = Arrays.copyOf(longs, 2 * e);
+			}
+			if (objects != null && e == objects.length) {
+				objects = Arrays.copyOf(objects, 2 * e);
+			}
+			if (value == null) {
+				nulls.set(e);
+			} else if (objects == null && value instanceof Long) {
+				longs[e] = (Long) value;
+			} else {
+				if (objects == null) {
+					objects = new Object[longs.length];
+					for (int i = 0; i < e; ++i) {
+						if (!nulls.get(i)) {
+							objects[i] = longs[i];
+						}
+					}
+					longs = null;
+				}
+				objects[e] = value;
+			}
+		}
+
+		Object get(int e) {
+			if (nulls.get(e)) {
+				return null;
+			}
+			if (objects == null) {
+				return longs[e];
+			}
+			return objects[e];
+		}
+
+		boolean isNull(int e) {
+			return nulls.get(e);
+		}
+
+		/**
+		 * Compares the value of an entity with a normalized value.
+		 */
+		boolean matches(int e, Object value) {
+			if (nulls.get(e) || value == null) {
+				return nulls.get(e) && value == null;
+			}
+			if (objects == null) {
+				return value instanceof Long && longs[e] == (Long) value;
+			}
+			return Arrays.deepEquals(new Object[] { objects[e] }, new Object[] { value });
+		}
+
+		int hash(int e) {
+			if (nulls.get(e)) {
+				return 0;
+			}
+			if (objects == null) {
+				return (int) (longs[e] ^ (longs[e] >>> 32));
+			}
+			return hash(objects[e]);
+		}
+
+		/**
+		 * Hash code of a normalized value, the hash code of a {@link Long} equals the one of the packed value.
+		 */
+		static int hash(Object value) {
+			return Arrays.deepHashCode(new Object[] { value }) - 31;
+		}
+	}
+
+	/**
+	 * Marks the entities of a level (sets the birthday to 0).
+	 *
+	 * @param graph the entity-graph
+	 * @param session session of the working tables
+	 * @param level the level
+	 */
+	public static void markLevel(EntityGraph graph, Session session, int level) throws SQLException {
+		session.executeUpdate(
+				"Update " + SQLDialect.dmlTableReference(EntityGraph.ENTITY, session) + " set birthday=0 " +
+				"Where r_entitygraph=" + graph.graphID + " and birthday=" + (-(level + 2)));
+	}
+
+	/**
+	 * Deletes the marked entities, but not their dependencies.
+	 *
+	 * @param graph the entity-graph
+	 * @param session session of the working tables
+	 */
+	public static void deleteMarkedEntities(EntityGraph graph, Session session) throws SQLException {
+		session.executeUpdate(
+				"Delete From " + SQLDialect.dmlTableReference(EntityGraph.ENTITY, session) + " " +
+				"Where r_entitygraph=" + graph.graphID + " and birthday=0");
+	}
+
+}
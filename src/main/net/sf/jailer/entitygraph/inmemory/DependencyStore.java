@@ -0,0 +1,238 @@
+/*
+ * Copyright 2007 - 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.jailer.entitygraph.inmemory;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The dependencies between entities of an {@link InMemoryEntityGraph}.
+ * Edges are kept in parallel arrays, outgoing and incoming edges
+ * of each entity are chained.
+ *
+ * @author Ralf Wisser
+ */
+class DependencyStore {
+
+	private static final byte DELETED = 1;
+	private static final byte TRAVERSED = 2;
+
+	private int size = 0;
+	private int[] fromStore = new int[16];
+	private int[] fromEntity = new int[16];
+	private int[] toStore = new int[16];
+	private int[] toEntity = new int[16];
+	private int[] assoc = new int[16];
+	private int[] dependId = new int[16];
+	private int[] nextOut = new int[16];
+	private int[] nextIn = new int[16];
+	private byte[] flags = new byte[16];
+
+	/**
+	 * First outgoing/incoming edge + 1 of each entity, indexed by store-id and entity number.
+	 */
+	private int[][] outHead = new int[0][];
+	private int[][] inHead = new int[0][];
+
+	/**
+	 * Adds a dependency.
+	 */
+	synchronized void add(EntityStore from, int fromE, EntityStore to, int toE, int aggregationId, int dependencyId) {
+		if (size == flags.length) {
+			int capacity = size * 2;
+			fromStore = Arrays.copyOf(fromStore, capacity);
+			fromEntity = Arrays.copyOf(fromEntity, capacity);
+			toStore = Arrays.copyOf(toStore, capacity);
+			toEntity = Arrays.copyOf(toEntity, capacity);
+			assoc = Arrays.copyOf(assoc, capacity);
+			dependId = Arrays.copyOf(dependId, capacity);
+			nextOut = Arrays.copyOf(nextOut, capacity);
+			nextIn = Arrays.copyOf(nextIn, capacity);
+			flags = Arrays.copyOf(flags, capacity);
+		}
+		int d = size++;
+		fromStore[d] = from.id;
+		fromEntity[d] = fromE;
+		toStore[d] = to.id;
+		toEntity[d] = toE;
+		assoc[d] = aggregationId;
+		dependId[d] = dependencyId;
+		flags[d] = 0;
+		outHead = ensureHead(outHead, from.id, fromE);
+		nextOut[d] = outHead[from.id][fromE];
+		outHead[from.id][fromE] = d + 1;
+		inHead = ensureHead(inHead, to.id, toE);
+		nextIn[d] = inHead[to.id][toE];
+		inHead[to.id][toE] = d + 1;
+	}
+
+	private static int[][] ensureHead(int[][] head, int store, int e) {
+		if (head.length <= store) {
+			head = Arrays.copyOf(head, store + 1);
+		}
+		if (head[store] == null) {
+			head[store] = new int[Math.max(16, e + 1)];
+		} else if (head[store].length <= e) {
+			head[store] = Arrays.copyOf(head[store], Math.max(head[store].length * 2, e + 1));
+		}
+		return head;
+	}
+
+	private int firstOut(int store, int e) {
+		if (outHead.length <= store || outHead[store] == null || outHead[store].length <= e) {
+			return 0;
+		}
+		return outHead[store][e];
+	}
+
+	private int firstIn(int store, int e) {
+		if (inHead.length <= store || inHead[store] == null || inHead[store].length <= e) {
+			return 0;
+		}
+		return inHead[store][e];
+	}
+
+	/**
+	 * Checks whether an entity is source of a (non-aggregation) dependency.
+	 */
+	synchronized boolean hasDependency(EntityStore store, int e) {
+		for (int d = firstOut(store.id, e); d != 0; d = nextOut[d - 1]) {
+			if ((flags[d - 1] & DELETED) == 0 && assoc[d - 1] == 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Checks whether an entity is target of a dependency.
+	 */
+	synchronized boolean isTarget(EntityStore store, int e) {
+		for (int d = firstIn(store.id, e); d != 0; d = nextIn[d - 1]) {
+			if ((flags[d - 1] & DELETED) == 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Removes all (non-aggregation) dependencies from or to an entity.
+	 */
+	synchronized void removeDependencies(EntityStore store, int e) {
+		for (int d = firstOut(store.id, e); d != 0; d = nextOut[d - 1]) {
+			if (assoc[d - 1] == 0) {
+				flags[d - 1] |= DELETED;
+			}
+		}
+		for (int d = firstIn(store.id, e); d != 0; d = nextIn[d - 1]) {
+			if (assoc[d - 1] == 0) {
+				flags[d - 1] |= DELETED;
+			}
+		}
+	}
+
+	/**
+	 * Gets the targets of all dependencies from an entity having a given aggregation-id.
+	 *
+	 * @param markAsTraversed if <code>true</code>, mark the dependencies as traversed
+	 * @return numbers of the target entities
+	 */
+	synchronized int[] getTargets(EntityStore from, int e, EntityStore to, int aggregationId, boolean markAsTraversed) {
+		int[] result = new int[4];
+		int n = 0;
+		for (int d = firstOut(from.id, e); d != 0; d = nextOut[d - 1]) {
+			int i = d - 1;
+			if ((flags[i] & DELETED) == 0 && assoc[i] == aggregationId && (to == null || toStore[i] == to.id)) {
+				if (markAsTraversed) {
+					flags[i] |= TRAVERSED;
+				}
+				if (n == result.length) {
+					result = Arrays.copyOf(result, n * 2);
+				}
+				result[n++] = toEntity[i];
+			}
+		}
+		return Arrays.copyOf(result, n);
+	}
+
+	/**
+	 * Gets the targets of all (non-aggregation) dependencies from an entity.
+	 *
+	 * @return store-id and number of each target entity, one after the other
+	 */
+	synchronized int[] getDependencyTargets(EntityStore from, int e) {
+		int[] result = new int[4];
+		int n = 0;
+		for (int d = firstOut(from.id, e); d != 0; d = nextOut[d - 1]) {
+			int i = d - 1;
+			if ((flags[i] & DELETED) == 0 && assoc[i] == 0) {
+				if (n == result.length) {
+					result = Arrays.copyOf(result, n * 2);
+				}
+				result[n++] = toStore[i];
+				result[n++] = toEntity[i];
+			}
+		}
+		return Arrays.copyOf(result, n);
+	}
+
+	/**
+	 * Gets the ids of the target-stores of all non-traversed dependencies from a store.
+	 */
+	synchronized Set<Integer> getNonTraversedTargetStores(EntityStore from) {
+		Set<Integer> result = new HashSet<Integer>();
+		for (int i = 0; i < size; ++i) {
+			if (fromStore[i] == from.id && (flags[i] & (DELETED | TRAVERSED)) == 0) {
+				result.add(toStore[i]);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Removes all dependencies of entities of a store to themselves.
+	 */
+	synchronized void removeReflexiveDependencies(EntityStore store) {
+		for (int i = 0; i < size; ++i) {
+			if (fromStore[i] == store.id && toStore[i] == store.id && fromEntity[i] == toEntity[i]) {
+				flags[i] |= DELETED;
+			}
+		}
+	}
+
+	/**
+	 * Gets distinct dependency-ids of all edges.
+	 */
+	synchronized Set<Integer> getDistinctDependencyIDs() {
+		Set<Integer> ids = new HashSet<Integer>();
+		for (int i = 0; i < size; ++i) {
+			if ((flags[i] & DELETED) == 0) {
+				ids.add(dependId[i]);
+			}
+		}
+		return ids;
+	}
+
+	/**
+	 * Gets number of dependencies.
+	 */
+	synchronized int size() {
+		return size;
+	}
+
+}
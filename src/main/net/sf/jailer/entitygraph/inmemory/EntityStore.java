@@ -0,0 +1,492 @@
+/*
+ * Copyright 2007 - 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.jailer.entitygraph.inmemory;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+import net.sf.jailer.datamodel.Table;
+
+/**
+ * The entities of one table. Primary keys are kept in a compact open-addressing hash table.
+ * Keys consisting of a single integral value are stored as <code>long</code>s,
+ * all other keys as (encoded) SQL-literals.
+ *
+ * Entities are never physically removed, a removed entity gets the birthday {@link #REMOVED}
+ * and can be revived later. The entities which are not removed are indexed by birthday.
+ *
+ * @author Ralf Wisser
+ */
+class EntityStore {
+
+	/**
+	 * Birthday of removed entities.
+	 */
+	static final int REMOVED = Integer.MIN_VALUE;
+
+	/**
+	 * The table.
+	 */
+	final Table table;
+
+	/**
+	 * Unique number of this store inside the graph.
+	 */
+	final int id;
+
+	/**
+	 * Keys of the entities, if all keys are integral numbers, else <code>null</code>.
+	 */
+	private long[] longKeys;
+
+	/**
+	 * Encoded keys of the entities, if some key is not an integral number.
+	 */
+	private String[] stringKeys;
+
+	/**
+	 * Birthdays of the entities.
+	 */
+	private int[] birthdays;
+
+	/**
+	 * Number of entities (including removed ones).
+	 */
+	private int size = 0;
+
+	/**
+	 * Number of entities having a non-negative birthday.
+	 */
+	private int liveSize = 0;
+
+	/**
+	 * Hash table, entity number + 1 (0 for empty slots).
+	 */
+	private int[] slots;
+
+	/**
+	 * Entities per birthday (removed entities excluded).
+	 */
+	private final TreeMap<Integer, Bucket> buckets = new TreeMap<Integer, Bucket>();
+
+	/**
+	 * Position of each entity inside the bucket of its birthday.
+	 */
+	private int[] bucketPositions;
+
+	/**
+	 * Entities having the same birthday, in no particular order.
+	 */
+	private static class Bucket {
+		int[] entities = new int[16];
+		int size = 0;
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param table the table
+	 * @param id unique number of this store inside the graph
+	 */
+	EntityStore(Table table, int id) {
+		this.table = table;
+		this.id = id;
+		this.longKeys = table.primaryKey.getColumns().size() == 1? new long[16] : null;
+		this.stringKeys = longKeys == null? new String[16] : null;
+		this.birthdays = new int[16];
+		this.bucketPositions = new int[16];
+		this.slots = new int[32];
+	}
+
+	/**
+	 * Gets number of entities (including removed ones).
+	 * Entities are numbered from 0 to size - 1.
+	 */
+	synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * Gets number of entities having a non-negative birthday.
+	 */
+	synchronized int liveSize() {
+		return liveSize;
+	}
+
+	/**
+	 * Finds an entity.
+	 *
+	 * @param key SQL-literals of the primary key
+	 * @return number of the entity or <code>-1</code>, if the graph doesn't contain the entity
+	 */
+	synchronized int find(String[] key) {
+		int e;
+		if (longKeys != null) {
+			if (!isLong(key[0])) {
+				return -1;
+			}
+			e = find(Long.parseLong(key[0]));
+		} else {
+			e = find(encode(key));
+		}
+		if (e >= 0 && birthdays[e] == REMOVED) {
+			return -1;
+		}
+		return e;
+	}
+
+	/**
+	 * Adds an entity if the graph doesn't contain it.
+	 *
+	 * @param key SQL-literals of the primary key
+	 * @param birthday birthday of the entity
+	 * @return <code>true</code> if the entity has been added
+	 */
+	synchronized boolean add(String[] key, int birthday) {
+		if (longKeys != null && !isLong(key[0])) {
+			convertToStringKeys();
+		}
+		int e;
+		if (longKeys != null) {
+			long k = Long.parseLong(key[0]);
+			e = find(k);
+			if (e < 0) {
+				e = newEntity();
+				longKeys[e] = k;
+				insertIntoSlots(e, hash(k));
+			}
+		} else {
+			String k = encode(key);
+			e = find(k);
+			if (e < 0) {
+				e = newEntity();
+				stringKeys[e] = k;
+				insertIntoSlots(e, hash(k));
+			}
+		}
+		if (birthdays[e] != REMOVED) {
+			return false;
+		}
+		setBirthday(e, birthday);
+		return true;
+	}
+
+	/**
+	 * Gets the SQL-literals of the primary key of an entity.
+	 *
+	 * @param e number of the entity
+	 */
+	synchronized String[] getKey(int e) {
+		if (longKeys != null) {
+			return new String[] { Long.toString(longKeys[e]) };
+		}
+		return decode(stringKeys[e], table.primaryKey.getColumns().size());
+	}
+
+	/**
+	 * Gets the birthday of an entity.
+	 *
+	 * @param e number of the entity
+	 */
+	synchronized int getBirthday(int e) {
+		return birthdays[e];
+	}
+
+	/**
+	 * Sets the birthday of an entity.
+	 *
+	 * @param e number of the entity
+	 * @param birthday the new birthday
+	 */
+	synchronized void setBirthday(int e, int birthday) {
+		if (birthdays[e] == birthday) {
+			return;
+		}
+		if (birthdays[e] >= 0) {
+			--liveSize;
+		}
+		if (birthdays[e] != REMOVED) {
+			removeFromBucket(e);
+		}
+		birthdays[e] = birthday;
+		if (birthday >= 0) {
+			++liveSize;
+		}
+		if (birthday != REMOVED) {
+			addToBucket(e);
+		}
+	}
+
+	private void addToBucket(int e) {
+		Bucket bucket = buckets.get(birthdays[e]);
+		if (bucket == null) {
+			bucket = new Bucket();
+			buckets.put(birthdays[e], bucket);
+		}
+		if (bucket.size == bucket.entities.length) {
+			bucket.entities = Arrays.copyOf(bucket.entities, bucket.size * 2);
+		}
+		bucketPositions[e] = bucket.size;
+		bucket.entities[bucket.size++] = e;
+	}
+
+	private void removeFromBucket(int e) {
+		Bucket bucket = buckets.get(birthdays[e]);
+		int last = bucket.entities[--bucket.size];
+		bucket.entities[bucketPositions[e]] = last;
+		bucketPositions[last] = bucketPositions[e];
+		if (bucket.size == 0) {
+			buckets.remove(birthdays[e]);
+		}
+	}
+
+	/**
+	 * Gets all entities having a birthday inside a given range.
+	 *
+	 * @param minBirthday minimum birthday
+	 * @param maxBirthday maximum birthday
+	 * @return numbers of the entities
+	 */
+	synchronized int[] select(int minBirthday, int maxBirthday) {
+		if (minBirthday > maxBirthday) {
+			return new int[0];
+		}
+		Map<Integer, Bucket> selected = buckets.subMap(minBirthday, true, maxBirthday, true);
+		int n = 0;
+		for (Bucket bucket: selected.values()) {
+			n += bucket.size;
+		}
+		int[] result = new int[n];
+		n = 0;
+		for (Bucket bucket: selected.values()) {
+			System.arraycopy(bucket.entities, 0, result, n, bucket.size);
+			n += bucket.size;
+		}
+		// in order of insertion
+		Arrays.sort(result);
+		return result;
+	}
+
+	/**
+	 * Sorts numbers of entities according to the primary keys.
+	 *
+	 * @param entities numbers of entities
+	 */
+	synchronized void sort(int[] entities) {
+		if (longKeys != null) {
+			long[] keys = new long[entities.length];
+			for (int i = 0; i < entities.length; ++i) {
+				keys[i] = longKeys[entities[i]];
+			}
+			Arrays.sort(keys);
+			for (int i = 0; i < entities.length; ++i) {
+				entities[i] = find(keys[i]);
+			}
+		} else {
+			final int numberOfColumns = table.primaryKey.getColumns().size();
+			final Map<Integer, String[]> keys = new HashMap<Integer, String[]>();
+			Integer[] sorted = new Integer[entities.length];
+			for (int i = 0; i < entities.length; ++i) {
+				sorted[i] = entities[i];
+				keys.put(entities[i], decode(stringKeys[entities[i]], numberOfColumns));
+			}
+			Arrays.sort(sorted, new Comparator<Integer>() {
+				public int compare(Integer a, Integer b) {
+					String[] keyA = keys.get(a);
+					String[] keyB = keys.get(b);
+					for (int i = 0; i < numberOfColumns; ++i) {
+						int c = compareLiterals(keyA[i], keyB[i]);
+						if (c != 0) {
+							return c;
+						}
+					}
+					return 0;
+				}
+			});
+			for (int i = 0; i < entities.length; ++i) {
+				entities[i] = sorted[i];
+			}
+		}
+	}
+
+	/**
+	 * Pattern for numerical SQL-literals.
+	 */
+	private static final Pattern NUMBER = Pattern.compile("-?(\\d+\\.?\\d*|\\.\\d+)([eE][-+]?\\d+)?");
+
+	/**
+	 * Compares two SQL-literals of a primary key column.
+	 * Numbers are compared by value, null is smaller than all other values,
+	 * string- and date-literals are compared lexicographically.
+	 */
+	private static int compareLiterals(String a, String b) {
+		boolean aIsNull = "null".equalsIgnoreCase(a);
+		boolean bIsNull = "null".equalsIgnoreCase(b);
+		if (aIsNull || bIsNull) {
+			return aIsNull? (bIsNull? 0 : -1) : 1;
+		}
+		if (NUMBER.matcher(a).matches() && NUMBER.matcher(b).matches()) {
+			return new BigDecimal(a).compareTo(new BigDecimal(b));
+		}
+		return a.compareTo(b);
+	}
+
+	private int newEntity() {
+		if (size == birthdays.length) {
+			int capacity = size * 2;
+			birthdays = Arrays.copyOf(birthdays, capacity);
+			bucketPositions = Arrays.copyOf(bucketPositions, capacity);
+			if (longKeys != null) {
+				longKeys = Arrays.copyOf(longKeys, capacity);
+			} else {
+				stringKeys = Arrays.copyOf(stringKeys, capacity);
+			}
+		}
+		if ((size + 1) * 2 > slots.length) {
+			rehash(slots.length * 2);
+		}
+		birthdays[size] = REMOVED;
+		return size++;
+	}
+
+	private int find(long key) {
+		int mask = slots.length - 1;
+		for (int i = hash(key) & mask; slots[i] != 0; i = (i + 1) & mask) {
+			if (longKeys[slots[i] - 1] == key) {
+				return slots[i] - 1;
+			}
+		}
+		return -1;
+	}
+
+	private int find(String key) {
+		int mask = slots.length - 1;
+		for (int i = hash(key) & mask; slots[i] != 0; i = (i + 1) & mask) {
+			if (stringKeys[slots[i] - 1].equals(key)) {
+				return slots[i] - 1;
+			}
+		}
+		return -1;
+	}
+
+	private void insertIntoSlots(int e, int hash) {
+		int mask = slots.length - 1;
+		int i = hash & mask;
+		while (slots[i] != 0) {
+			i = (i + 1) & mask;
+		}
+		slots[i] = e + 1;
+	}
+
+	private void rehash(int capacity) {
+		slots = new int[capacity];
+		for (int e = 0; e < size; ++e) {
+			insertIntoSlots(e, longKeys != null? hash(longKeys[e]) : hash(stringKeys[e]));
+		}
+	}
+
+	/**
+	 * Switches from <code>long</code> keys to encoded SQL-literals.
+	 */
+	private void convertToStringKeys() {
+		stringKeys = new String[birthdays.length];
+		for (int e = 0; e < size; ++e) {
+			stringKeys[e] = Long.toString(longKeys[e]);
+		}
+		longKeys = null;
+		rehash(slots.length);
+	}
+
+	private static int hash(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+
+	private static int hash(String key) {
+		int h = key.hashCode();
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * Checks whether a SQL-literal is an integral number which can be stored as <code>long</code>
+	 * without loss of information.
+	 */
+	private static boolean isLong(String literal) {
+		int length = literal.length();
+		if (length == 0 || length > 18) {
+			return false;
+		}
+		int i = 0;
+		if (literal.charAt(0) == '-') {
+			if (length == 1) {
+				return false;
+			}
+			i = 1;
+		}
+		if (literal.charAt(i) == '0' && (length > i + 1 || i > 0)) {
+			// leading zero or "-0"
+			return false;
+		}
+		for (; i < length; ++i) {
+			char c = literal.charAt(i);
+			if (c < '0' || c > '9') {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Encodes SQL-literals into one string. Each literal is prefixed by its length.
+	 */
+	private static String encode(String[] key) {
+		if (key.length == 1) {
+			return key[0];
+		}
+		StringBuilder sb = new StringBuilder();
+		for (String literal: key) {
+			int length = literal.length();
+			sb.append((char) (length >>> 16));
+			sb.append((char) (length & 0xffff));
+			sb.append(literal);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Decodes SQL-literals encoded with {@link #encode(String[])}.
+	 */
+	private static String[] decode(String encoded, int numberOfColumns) {
+		if (numberOfColumns == 1) {
+			return new String[] { encoded };
+		}
+		String[] key = new String[numberOfColumns];
+		int pos = 0;
+		for (int i = 0; i < numberOfColumns; ++i) {
+			int length = (encoded.charAt(pos) << 16) | encoded.charAt(pos + 1);
+			pos += 2;
+			key[i] = encoded.substring(pos, pos + length);
+			pos += length;
+		}
+		return key;
+	}
+
+}
@@ -0,0 +1,1219 @@
+/*
+ * Copyright 2007 - 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.jailer.entitygraph.inmemory;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import net.sf.jailer.Configuration;
+import net.sf.jailer.database.Session;
+import net.sf.jailer.database.Session.ResultSetReader;
+import net.sf.jailer.datamodel.Association;
+import net.sf.jailer.datamodel.Column;
+import net.sf.jailer.datamodel.DataModel;
+import net.sf.jailer.datamodel.PrimaryKey;
+import net.sf.jailer.datamodel.Table;
+import net.sf.jailer.entitygraph.EntityGraph;
+import net.sf.jailer.entitygraph.TopologicalEntitySorter;
+import net.sf.jailer.entitygraph.local.InlineViewBuilder;
+import net.sf.jailer.entitygraph.local.InlineViewStyle;
+import net.sf.jailer.progress.ProgressListenerRegistry;
+import net.sf.jailer.util.SqlUtil;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Graph of entities.
+ * Keeps the graph in memory. Rows are read from the source database using
+ * inline-views containing the primary keys of the entities.
+ *
+ * @author Ralf Wisser
+ */
+public class InMemoryEntityGraph extends EntityGraph {
+
+	/**
+	 * The logger.
+	 */
+	private static final Logger _log = Logger.getLogger(InMemoryEntityGraph.class);
+
+	/**
+	 * For access to the source database.
+	 */
+	private final Session session;
+
+	/**
+	 * Style of inline-views for the source database.
+	 */
+	private final InlineViewStyle inlineViewStyle;
+
+	/**
+	 * The universal primary key.
+	 */
+	private final PrimaryKey universalPrimaryKey;
+
+	/**
+	 * Entities per table name.
+	 */
+	private final Map<String, EntityStore> storePerTableName = new HashMap<String, EntityStore>();
+
+	/**
+	 * Entities per store-id.
+	 */
+	private final List<EntityStore> stores = new ArrayList<EntityStore>();
+
+	/**
+	 * The dependencies.
+	 */
+	private DependencyStore dependencies = new DependencyStore();
+
+	/**
+	 * The age of the graph.
+	 */
+	private int age = 1;
+
+	/**
+	 * Birthday of subject rows.
+	 */
+	private int birthdayOfSubject = 0;
+
+	/**
+	 * All graphs which are not yet deleted, for {@link #find(int, Session, PrimaryKey)}.
+	 */
+	private static final Map<Integer, InMemoryEntityGraph> graphs = new HashMap<Integer, InMemoryEntityGraph>();
+
+	/**
+	 * Constructor.
+	 */
+	private InMemoryEntityGraph(DataModel dataModel, int graphID, Session session, InlineViewStyle inlineViewStyle, PrimaryKey universalPrimaryKey) {
+		super(graphID, dataModel);
+		this.session = session;
+		this.inlineViewStyle = inlineViewStyle;
+		this.universalPrimaryKey = universalPrimaryKey;
+		synchronized (graphs) {
+			graphs.put(graphID, this);
+		}
+	}
+
+	/**
+	 * Creates a new entity-graph.
+	 *
+	 * @param graphID the unique ID of the graph
+	 * @param session for executing SQL-Statements
+	 * @param universalPrimaryKey the universal primary key
+	 * @return the newly created entity-graph
+	 */
+	public static InMemoryEntityGraph create(DataModel dataModel, int graphID, Session session, PrimaryKey universalPrimaryKey) {
+		return new InMemoryEntityGraph(dataModel, graphID, session, InlineViewStyle.forSession(session), universalPrimaryKey);
+	}
+
+	/**
+	 * Sets birthday of subject rows.
+	 *
+	 * @param birthdayOfSubject birthday of subject rows
+	 */
+	public void setBirthdayOfSubject(int birthdayOfSubject) {
+		this.birthdayOfSubject = birthdayOfSubject;
+	}
+
+	/**
+	 * Gets the entities of a table.
+	 *
+	 * @param table the table
+	 * @return the entities
+	 */
+	private synchronized EntityStore getStore(Table table) {
+		EntityStore store = storePerTableName.get(table.getName());
+		if (store == null) {
+			store = new EntityStore(table, stores.size());
+			stores.add(store);
+			storePerTableName.put(table.getName(), store);
+		}
+		return store;
+	}
+
+	/**
+	 * Gets all stores.
+	 */
+	private synchronized List<EntityStore> getStores() {
+		return new ArrayList<EntityStore>(stores);
+	}
+
+	/**
+	 * Copies an entity-graph.
+	 *
+	 * @param newGraphID the unique ID of the new graph
+	 * @param session for executing SQL-Statements
+	 * @return the newly created entity-graph
+	 */
+	public EntityGraph copy(int newGraphID, Session session) throws SQLException {
+		InMemoryEntityGraph entityGraph = new InMemoryEntityGraph(dataModel, newGraphID, this.session, inlineViewStyle, universalPrimaryKey);
+		entityGraph.setBirthdayOfSubject(birthdayOfSubject);
+		entityGraph.age = age;
+		for (EntityStore store: getStores()) {
+			EntityStore copy = entityGraph.getStore(store.table);
+			for (int e: store.select(Integer.MIN_VALUE + 1, Integer.MAX_VALUE)) {
+				copy.add(store.getKey(e), store.getBirthday(e));
+			}
+		}
+		return entityGraph;
+	}
+
+	/**
+	 * Finds an entity-graph.
+	 *
+	 * @param graphID the unique ID of the graph
+	 * @param universalPrimaryKey the universal primary key
+	 * @param session for executing SQL-Statements
+	 * @return the entity-graph
+	 */
+	public EntityGraph find(int graphID, Session session, PrimaryKey universalPrimaryKey) {
+		synchronized (graphs) {
+			InMemoryEntityGraph entityGraph = graphs.get(graphID);
+			if (entityGraph == null) {
+				throw new RuntimeException("entity-graph " + graphID + " not found");
+			}
+			return entityGraph;
+		}
+	}
+
+	/**
+	 * Gets the age of the graph.
+	 *
+	 * @return the age of the graph
+	 */
+	public synchronized int getAge() {
+		return age;
+	}
+
+	/**
+	 * Sets the age of the graph.
+	 *
+	 * @param age the age of the graph
+	 */
+	public synchronized void setAge(int age) {
+		this.age = age;
+	}
+
+	/**
+	 * Gets the number of entities in the graph.
+	 *
+	 * @return the number of entities in the graph
+	 */
+	public long getSize() {
+		long size = 0;
+		for (EntityStore store: getStores()) {
+			size += store.liveSize();
+		}
+		return size;
+	}
+
+	/**
+	 * Deletes the graph.
+	 */
+	public void delete() {
+		synchronized (this) {
+			removeFrontier();
+			stores.clear();
+			storePerTableName.clear();
+			dependencies = new DependencyStore();
+		}
+		synchronized (graphs) {
+			graphs.remove(graphID);
+		}
+	}
+
+	/**
+	 * Adds entities to the graph.
+	 *
+	 * @param table the table
+	 * @param condition the condition in SQL that the entities must fulfill
+	 * @param today the birthday of the new entities
+	 * @param limit a limit of the number of rows to be exported or <code>0</code>
+	 *
+	 * @return row-count
+	 */
+	public long addEntities(Table table, String condition, final int today, long limit) throws SQLException {
+		checkPseudoColumns(table, condition);
+		final boolean isTotalLimit = maxTotalRowcount > 0 && limit == 0;
+		if (isTotalLimit) {
+			limit = Math.max(maxTotalRowcount - getTotalRowcount(), 0);
+		}
+		final long theLimit = limit;
+		final EntityStore store = getStore(table);
+		final long[] rc = new long[1];
+		final boolean[] limitExceeded = new boolean[1];
+		session.executeQuery(
+				"Select " + pkList(table, "T", "PK") + " From " + table.getName() + " T Where (" + condition + ")",
+				new KeyReader(table) {
+					@Override
+					protected void process(String[][] keys) {
+						if ((theLimit > 0 || isTotalLimit) && rc[0] >= theLimit) {
+							if (store.find(keys[0]) < 0) {
+								limitExceeded[0] = true;
+							}
+							return;
+						}
+						if (store.add(keys[0], today)) {
+							++rc[0];
+						}
+					}
+				});
+		addToTotalRowcount(rc[0]);
+		if (limitExceeded[0]) {
+			if (isTotalLimit) {
+				throw new RuntimeException("found more than " + maxTotalRowcount + " entities.");
+			}
+			_log.warn("row limit reached, only " + theLimit + " rows of table " + table.getName() + " are collected");
+		}
+		return rc[0];
+	}
+
+	/**
+	 * The pseudo-columns $DISTANCE and $IS_SUBJECT are currently not supported
+	 * if the "working table scope" "in memory" is used.
+	 */
+	private void checkPseudoColumns(Table table, String condition) {
+		if (condition != null) {
+			if (!condition.equals(SqlUtil.resolvePseudoColumns(condition, "A", "B", 0, 0))) {
+				throw new IllegalArgumentException(
+						"Unsupported use of pseudo-columns in condition:\n\"" + condition + "\"\n(Table " + table.getName() + ")\n\n" +
+						"the pseudo-columns $DISTANCE and $IS_SUBJECT are currently not supported " +
+						"if the \"working table scope\" \"in memory\" is used. It works with " +
+						"\"global tables\" or \"temporary tables\".");
+			}
+		}
+	}
+
+	/**
+	 * Resolves an association. Retrieves and adds all entities
+	 * associated with an entity born yesterday in the graph
+	 * and adds the dependencies.
+	 *
+	 * @param table the table
+	 * @param association the association to resolve
+	 * @param today the birthday of the new entities
+	 *
+	 * @return row-count or -1, if association is ignored
+	 */
+	public long resolveAssociation(Table table, Association association, final int today) throws SQLException {
+		final String jc = association.getJoinCondition();
+		checkPseudoColumns(table, jc);
+		if (jc == null) {
+			return -1;
+		}
+		final String destAlias;
+		final String sourceAlias;
+		if (association.reversed) {
+			destAlias = "A";
+			sourceAlias = "B";
+		} else {
+			destAlias = "B";
+			sourceAlias = "A";
+		}
+		final Table source = association.source;
+		final Table destination = association.destination;
+		final EntityStore sourceStore = getStore(source);
+		final EntityStore destinationStore = getStore(destination);
+		final long[] rc = new long[1];
+
+		appendKeys(sourceStore, getFrontier(sourceStore, today - 1), new KeyInlineViewBuilder("E", source) {
+			@Override
+			protected void process(String inlineView) throws SQLException {
+				String select =
+						"Select distinct " + pkList(destination, destAlias, "PK") +
+						" From " + inlineView + " join " + source.getName() + " " + sourceAlias + " on " + pkEqualsEntityID(source, sourceAlias, "E", "PK") +
+						" join " + destination.getName() + " " + destAlias + " on (" + jc + ")";
+				session.executeQuery(select, new KeyReader(destination) {
+					@Override
+					protected void process(String[][] keys) {
+						if (destinationStore.add(keys[0], today)) {
+							++rc[0];
+						}
+					}
+				});
+			}
+		});
+		addToTotalRowcount(rc[0]);
+		return rc[0];
+	}
+
+	/**
+	 * Entities in the frontier per store-id, <code>null</code> if there is no frontier.
+	 */
+	private Map<Integer, int[]> frontier = null;
+
+	/**
+	 * Birthday of the entities in the frontier.
+	 */
+	private int frontierBirthday = -1;
+
+	/**
+	 * Collects all entities born on a given day into the frontier, replacing the previous frontier.
+	 *
+	 * @param birthday birthday of the entities in the frontier
+	 */
+	public synchronized void swapFrontier(int birthday) {
+		frontier = new HashMap<Integer, int[]>();
+		for (EntityStore store: stores) {
+			// only reads the entities of the day (see EntityStore#select(int, int))
+			int[] entities = store.select(birthday, birthday);
+			if (entities.length > 0) {
+				frontier.put(store.id, entities);
+			}
+		}
+		frontierBirthday = birthday;
+	}
+
+	/**
+	 * Removes the frontier.
+	 */
+	public synchronized void removeFrontier() {
+		frontier = null;
+		frontierBirthday = -1;
+	}
+
+	/**
+	 * Removes all entities born after a given day.
+	 *
+	 * @param birthday the day
+	 * @return number of removed entities
+	 */
+	public long removeEntitiesBornAfter(int birthday) {
+		DependencyStore dependencies = dependencies();
+		long rc = 0;
+		for (EntityStore store: getStores()) {
+			for (int e: store.select(birthday + 1, Integer.MAX_VALUE)) {
+				dependencies.removeDependencies(store, e);
+				store.setBirthday(e, EntityStore.REMOVED);
+				++rc;
+			}
+		}
+		return rc;
+	}
+
+	/**
+	 * Removes all sets of entities of this graph. The only set of an in-memory graph is the frontier.
+	 */
+	public void removeSets() {
+		removeFrontier();
+	}
+
+	/**
+	 * Not supported, an in-memory graph has no working tables.
+	 */
+	protected int getNextSetId() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Sorts the entities which are not yet written topologically
+	 * (see {@link TopologicalEntitySorter#levels(int, int[], int[], int)}).
+	 * The level is stored as negative birthday (-2 for level 0, -3 for level 1, ...).
+	 *
+	 * @return number of levels
+	 */
+	public int sortTopologically() {
+		List<EntityStore> theStores = getStores();
+		DependencyStore dependencies = dependencies();
+
+		// numbers the entities consecutively
+		int[][] entities = new int[theStores.size()][];
+		int[][] node = new int[theStores.size()][];
+		int n = 0;
+		for (EntityStore store: theStores) {
+			int[] storeEntities = store.select(1, Integer.MAX_VALUE);
+			int max = -1;
+			for (int e: storeEntities) {
+				max = Math.max(max, e);
+			}
+			int[] storeNode = new int[max + 1];
+			Arrays.fill(storeNode, -1);
+			for (int e: storeEntities) {
+				storeNode[e] = n++;
+			}
+			entities[store.id] = storeEntities;
+			node[store.id] = storeNode;
+		}
+
+		int[] dependencyFrom = new int[1024];
+		int[] dependencyTo = new int[1024];
+		int dependencyCount = 0;
+		for (EntityStore store: theStores) {
+			for (int e: entities[store.id]) {
+				int[] targets = dependencies.getDependencyTargets(store, e);
+				for (int i = 0; i < targets.length; i += 2) {
+					int[] targetNode = node[targets[i]];
+					if (targets[i + 1] < targetNode.length && targetNode[targets[i + 1]] >= 0) {
+						if (dependencyCount == dependencyFrom.length) {
+							dependencyFrom = Arrays.copyOf(dependencyFrom, 2 * dependencyCount);
+							dependencyTo = Arrays.copyOf(dependencyTo, 2 * dependencyCount);
+						}
+						dependencyFrom[dependencyCount] = node[store.id][e];
+						dependencyTo[dependencyCount] = targetNode[targets[i + 1]];
+						++dependencyCount;
+					}
+				}
+			}
+		}
+		_log.info("sorting " + n + " entities with " + dependencyCount + " dependencies");
+
+		int[] level = TopologicalEntitySorter.levels(n, dependencyFrom, dependencyTo, dependencyCount);
+		int levels = 0;
+		for (EntityStore store: theStores) {
+			for (int e: entities[store.id]) {
+				int l = level[node[store.id][e]];
+				if (l >= 0) {
+					store.setBirthday(e, -(l + 2));
+					levels = Math.max(levels, l + 1);
+				}
+			}
+		}
+		_log.info(levels + " levels");
+		return levels;
+	}
+
+	/**
+	 * Marks all entities of a level (see {@link #sortTopologically()}), s.t. they can be read.
+	 *
+	 * @param level the level
+	 */
+	public void markLevel(int level) {
+		for (EntityStore store: getStores()) {
+			for (int e: store.select(-(level + 2), -(level + 2))) {
+				store.setBirthday(e, 0);
+			}
+		}
+	}
+
+	/**
+	 * Deletes all marked entities, but not their dependencies.
+	 */
+	public void deleteMarkedEntities() {
+		for (EntityStore store: getStores()) {
+			for (int e: store.select(0, 0)) {
+				store.setBirthday(e, EntityStore.REMOVED);
+			}
+		}
+	}
+
+	/**
+	 * Gets all entities of a store born on a given day.
+	 */
+	private int[] getFrontier(EntityStore store, int birthday) {
+		synchronized (this) {
+			if (frontier != null && frontierBirthday == birthday) {
+				int[] entities = frontier.get(store.id);
+				return entities == null? new int[0] : entities;
+			}
+		}
+		return store.select(birthday, birthday);
+	}
+
+	/**
+	 * Adds dependencies.
+	 *
+	 * @param from source of dependency
+	 * @param fromAlias alias for from-table
+	 * @param to destination of dependency
+	 * @param toAlias alias for to-table
+	 * @param condition condition of dependency
+	 * @param aggregationId id of aggregation association (for XML export), 0 if not applicable
+	 * @param dependencyId id of dependency
+	 */
+	public void addDependencies(final Table from, final String fromAlias, final Table to, final String toAlias, final String condition, final int aggregationId, final int dependencyId, boolean isAssociationReversed) throws SQLException {
+		checkPseudoColumns(from, condition);
+		final EntityStore fromStore = getStore(from);
+		final EntityStore toStore = getStore(to);
+		final long[] rc = new long[1];
+
+		appendKeys(fromStore, fromStore.select(Integer.MIN_VALUE + 1, Integer.MAX_VALUE), new KeyInlineViewBuilder("E1", from) {
+			@Override
+			protected void process(String inlineView) throws SQLException {
+				String select =
+						"Select " + ivColumnList(from, "E1", "PK") + ", " + pkList(to, toAlias, "TPK") +
+						" From " + inlineView + ", " +
+						from.getName() + " " + fromAlias + ", " + to.getName() + " " + toAlias +
+						" Where (" + condition + ")" +
+						" and " + pkEqualsEntityID(from, fromAlias, "E1", "PK");
+				session.executeQuery(select, new KeyReader(from, to) {
+					@Override
+					protected void process(String[][] keys) {
+						int fromE = fromStore.find(keys[0]);
+						int toE = toStore.find(keys[1]);
+						if (fromE >= 0 && toE >= 0) {
+							dependencies().add(fromStore, fromE, toStore, toE, aggregationId, dependencyId);
+							++rc[0];
+						}
+					}
+				});
+			}
+		});
+		addToTotalRowcount(rc[0]);
+	}
+
+	/**
+	 * Gets distinct association-ids of all edged.
+	 */
+	public Set<Integer> getDistinctDependencyIDs() {
+		return dependencies().getDistinctDependencyIDs();
+	}
+
+	/**
+	 * Marks all entities of a given table which don't dependent on other entities,
+	 * s.t. they can be read and deleted.
+	 */
+	public void markIndependentEntities(Table table) {
+		List<EntityStore> theStores;
+		if (table != null) {
+			theStores = Collections.singletonList(getStore(table));
+		} else {
+			theStores = getStores();
+		}
+		DependencyStore dependencies = dependencies();
+		for (EntityStore store: theStores) {
+			for (int e: store.select(1, Integer.MAX_VALUE)) {
+				if (!dependencies.hasDependency(store, e)) {
+					store.setBirthday(e, 0);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Marks all rows which are not target of a dependency.
+	 */
+	public void markRoots(Table table) {
+		EntityStore store = getStore(table);
+		DependencyStore dependencies = dependencies();
+		for (int e: store.select(1, Integer.MAX_VALUE)) {
+			if (!dependencies.isTarget(store, e)) {
+				store.setBirthday(e, 0);
+			}
+		}
+	}
+
+	/**
+	 * Reads all entities of a given table which are marked as independent or as roots.
+	 *
+	 * @param reader for reading the result-set
+	 * @param table the table
+	 * @param orderByPK if <code>true</code>, result will be ordered by primary keys
+	 */
+	public void readMarkedEntities(Table table, Session.ResultSetReader reader, boolean orderByPK) throws SQLException {
+		readMarkedEntities(table, reader, filteredSelectionClause(table), orderByPK);
+	}
+
+	/**
+	 * Reads all entities of a given table which are marked as independent or as roots.
+	 *
+	 * @param reader for reading the result-set
+	 * @param table the table
+	 * @param orderByPK if <code>true</code>, result will be ordered by primary keys
+	 */
+	public void readMarkedEntities(Table table, Session.ResultSetReader reader, String selectionSchema, boolean orderByPK) throws SQLException {
+		readMarkedEntities(table, reader, selectionSchema, null, orderByPK);
+	}
+
+	/**
+	 * Reads all entities of a given table which are marked as independent or as roots.
+	 *
+	 * @param reader for reading the result-set
+	 * @param table the table
+	 * @param orderByPK if <code>true</code>, result will be ordered by primary keys
+	 */
+	public void readMarkedEntities(Table table, Session.ResultSetReader reader, String selectionSchema, String originalPKAliasPrefix, boolean orderByPK) throws SQLException {
+		readEntities(table, 0, 0, reader, selectionSchema, originalPKAliasPrefix, orderByPK);
+	}
+
+	/**
+	 * Reads all entities of a given table which are marked as independent or as roots.
+	 */
+	private void readEntities(final Table table, int minBirthday, int maxBirthday, final Session.ResultSetReader reader, final String selectionSchema, final String originalPKAliasPrefix, final boolean orderByPK) throws SQLException {
+		EntityStore store = getStore(table);
+		int[] entities = store.select(minBirthday, maxBirthday);
+		if (orderByPK) {
+			store.sort(entities);
+		}
+		appendKeys(store, entities, new KeyInlineViewBuilder("E", table) {
+			@Override
+			protected void process(String inlineView) throws SQLException {
+				String orderBy = "";
+				if (orderByPK) {
+					orderBy = " order by " + table.primaryKey.columnList("T.");
+				}
+				String sqlQuery;
+				if (originalPKAliasPrefix != null) {
+					sqlQuery = "Select " + selectionSchema + " From (" +
+							"Select " + originalPKList(table, originalPKAliasPrefix) + ", " + filteredSelectionClause(table) + " From " + inlineView + " join " + table.getName() + " T on " +
+							pkEqualsEntityID(table, "T", "E", "PK") +
+							") T ";
+				} else {
+					sqlQuery = "Select " + selectionSchema + " From " + inlineView + " join " + table.getName() + " T on " +
+							pkEqualsEntityID(table, "T", "E", "PK");
+				}
+				long rc;
+				if (orderByPK) {
+					rc = session.executeQuery(sqlQuery + orderBy, reader, sqlQuery, null, 0);
+				} else {
+					rc = session.executeQuery(sqlQuery, reader);
+				}
+				ProgressListenerRegistry.getProgressListener().exported(table, rc);
+			}
+		});
+	}
+
+	/**
+	 * Unites the graph with another one and deletes the other graph.
+	 *
+	 * @param graph the graph to be united with this graph
+	 */
+	public void uniteWith(EntityGraph graph) throws SQLException {
+		InMemoryEntityGraph other = (InMemoryEntityGraph) graph;
+		for (EntityStore otherStore: other.getStores()) {
+			EntityStore store = getStore(otherStore.table);
+			for (int e: otherStore.select(Integer.MIN_VALUE + 1, Integer.MAX_VALUE)) {
+				store.add(otherStore.getKey(e), otherStore.getBirthday(e));
+			}
+		}
+		graph.delete();
+	}
+
+	/**
+	 * Reads all entities of a given table.
+	 *
+	 * @param reader for reading the result-set
+	 * @param table the table
+	 * @param orderByPK if <code>true</code>, result will be ordered by primary keys
+	 */
+	public void readEntities(Table table, Session.ResultSetReader reader, boolean orderByPK) throws SQLException {
+		readEntities(table, 0, Integer.MAX_VALUE, reader, filteredSelectionClause(table), null, orderByPK);
+	}
+
+	/**
+	 * Gets select clause for reading rows of given type
+	 * with respect of the column filters.
+	 *
+	 * @param table the table to read rows from
+	 * @return select clause
+	 */
+	private String filteredSelectionClause(Table table) {
+		StringBuilder sb = new StringBuilder();
+		boolean first = true;
+
+		for (Column c: table.getColumns()) {
+			if (Configuration.forDbms(session).exportBlocks.contains(c.type)) {
+				continue;
+			}
+			if (!first) {
+				sb.append(", ");
+			}
+			String filterExpression = c.getFilterExpression();
+			if (filterExpression != null) {
+				if (filterExpression.trim().toLowerCase().startsWith("select")) {
+					sb.append("(" + filterExpression + ")");
+				} else {
+					sb.append(filterExpression);
+				}
+			} else {
+				sb.append("T." + c.name);
+			}
+			sb.append(" as " + c.name);
+			first = false;
+		}
+
+		return sb.toString();
+	}
+
+	/**
+	 * Deletes all entities which are marked as independent.
+	 */
+	public void deleteIndependentEntities(Table table) {
+		EntityStore store = getStore(table);
+		DependencyStore dependencies = dependencies();
+		for (int e: store.select(0, 0)) {
+			dependencies.removeDependencies(store, e);
+			store.setBirthday(e, EntityStore.REMOVED);
+		}
+	}
+
+	/**
+	 * Deletes all entities from a given table.
+	 */
+	public long deleteEntities(Table table) {
+		EntityStore store = getStore(table);
+		int[] entities = store.select(Integer.MIN_VALUE + 1, Integer.MAX_VALUE);
+		for (int e: entities) {
+			store.setBirthday(e, EntityStore.REMOVED);
+		}
+		return entities.length;
+	}
+
+	/**
+	 * Counts the entities of a given table in this graph.
+	 *
+	 * @param table the table
+	 * @return the number of entities from table in this graph
+	 */
+	public long countEntities(Table table) {
+		return getStore(table).liveSize();
+	}
+
+	/**
+	 * Removes all entities from this graph which are associated with an entity
+	 * outside the graph.
+	 *
+	 * @param deletedEntitiesAreMarked if true, consider entity as deleted if its birthday is negative
+	 * @param association the association
+	 * @return number of removed entities
+	 */
+	public long removeAssociatedDestinations(Association association, final boolean deletedEntitiesAreMarked) throws SQLException {
+		final String jc = association.getJoinCondition();
+		if (jc == null) {
+			return 0;
+		}
+		final String destAlias;
+		final String sourceAlias;
+		if (association.reversed) {
+			destAlias = "A";
+			sourceAlias = "B";
+		} else {
+			destAlias = "B";
+			sourceAlias = "A";
+		}
+		final Table source = association.source;
+		final Table destination = association.destination;
+		final EntityStore sourceStore = getStore(source);
+		final EntityStore destinationStore = getStore(destination);
+		final long[] rc = new long[1];
+
+		int[] entities = destinationStore.select(deletedEntitiesAreMarked? 0 : Integer.MIN_VALUE + 1, Integer.MAX_VALUE);
+		appendKeys(destinationStore, entities, new KeyInlineViewBuilder("EB", destination) {
+			@Override
+			protected void process(String inlineView) throws SQLException {
+				String select =
+						"Select distinct " + ivColumnList(destination, "EB", "PK") + ", " + pkList(source, sourceAlias, "SPK") + " From " + inlineView + " " +
+						"join " + destination.getName() + " " + destAlias + " on " + pkEqualsEntityID(destination, destAlias, "EB", "PK") + " " +
+						"join " + source.getName() + " " + sourceAlias + " on " + jc;
+				session.executeQuery(select, new KeyReader(destination, source) {
+					@Override
+					protected void process(String[][] keys) {
+						int a = sourceStore.find(keys[1]);
+						boolean remove;
+						if (deletedEntitiesAreMarked) {
+							remove = a >= 0 && sourceStore.getBirthday(a) == -1;
+						} else {
+							remove = a < 0;
+						}
+						if (remove) {
+							int b = destinationStore.find(keys[0]);
+							if (b >= 0 && destinationStore.getBirthday(b) != -1) {
+								destinationStore.setBirthday(b, -1);
+								++rc[0];
+							}
+						}
+					}
+				});
+			}
+		});
+		addToTotalRowcount(rc[0]);
+		return rc[0];
+	}
+
+	/**
+	 * Reads all entities which depends on given entity.
+	 *
+	 * @param table the table from which to read entities
+	 * @param association the dependency
+	 * @param resultSet current row is given entity
+	 * @param reader reads the entities
+	 * @param selectionSchema the selection schema
+	 */
+	public void readDependentEntities(final Table table, Association association, ResultSet resultSet, ResultSetMetaData resultSetMetaData, final ResultSetReader reader, Map<String, Integer> typeCache, final String selectionSchema, final String originalPKAliasPrefix) throws SQLException {
+		EntityStore sourceStore = getStore(association.source);
+		int e = sourceStore.find(getKey(association.source, resultSet, resultSetMetaData, typeCache));
+		if (e < 0) {
+			return;
+		}
+		EntityStore store = getStore(table);
+		int[] entities = dependencies().getTargets(sourceStore, e, store, association.getId(), false);
+		appendKeys(store, entities, new KeyInlineViewBuilder("D", table) {
+			@Override
+			protected void process(String inlineView) throws SQLException {
+				String select;
+				if (originalPKAliasPrefix != null) {
+					select =
+						"Select " + selectionSchema + " from (" +
+						"Select " + originalPKList(table, originalPKAliasPrefix) + ", " + filteredSelectionClause(table) + " from " + table.getName() + " T join " + inlineView + " on " +
+						pkEqualsEntityID(table, "T", "D", "PK") + ") T";
+				} else {
+					select = "Select " + selectionSchema + " from " + table.getName() + " T join " + inlineView + " on " +
+						pkEqualsEntityID(table, "T", "D", "PK");
+				}
+				long rc = session.executeQuery(select, reader);
+				ProgressListenerRegistry.getProgressListener().exported(table, rc);
+			}
+		});
+	}
+
+	/**
+	 * Reads all entities which depends on some given entities with one query.
+	 *
+	 * @param table the table from which to read entities
+	 * @param association the dependency
+	 * @param resultSets the given entities (one row each)
+	 * @param readers reads the entities, one for each given entity
+	 * @param selectionSchema the selection schema
+	 */
+	public void readDependentEntities(final Table table, Association association, List<ResultSet> resultSets, ResultSetMetaData resultSetMetaData, List<ResultSetReader> readers, Map<String, Integer> typeCache, final String selectionSchema, final String originalPKAliasPrefix) throws SQLException {
+		EntityStore sourceStore = getStore(association.source);
+		final EntityStore store = getStore(table);
+		final ResultSetReader reader = new DependentEntitiesDispatcher(readers);
+		List<String> columnNames = new ArrayList<String>(Arrays.asList(ivColumnList(table, null, "PK").split(", ")));
+		columnNames.add(PARENT_NUMBER);
+		InlineViewBuilder inlineViewBuilder = new InlineViewBuilder(inlineViewStyle, "D", session, columnNames.toArray(new String[columnNames.size()])) {
+			@Override
+			protected void process(String inlineView) throws SQLException {
+				String select;
+				if (originalPKAliasPrefix != null) {
+					select =
+						"Select " + selectionSchema + ", T." + PARENT_NUMBER + " from (" +
+						"Select " + originalPKList(table, originalPKAliasPrefix) + ", " + filteredSelectionClause(table) + ", D." + PARENT_NUMBER + " from " + table.getName() + " T join " + inlineView + " on " +
+						pkEqualsEntityID(table, "T", "D", "PK") + ") T";
+				} else {
+					select = "Select " + selectionSchema + ", D." + PARENT_NUMBER + " from " + table.getName() + " T join " + inlineView + " on " +
+						pkEqualsEntityID(table, "T", "D", "PK");
+				}
+				long rc = session.executeQuery(select, reader);
+				ProgressListenerRegistry.getProgressListener().exported(table, rc);
+			}
+		};
+		for (int i = 0; i < resultSets.size(); ++i) {
+			int e = sourceStore.find(getKey(association.source, resultSets.get(i), resultSetMetaData, typeCache));
+			if (e >= 0) {
+				for (int entity: dependencies().getTargets(sourceStore, e, store, association.getId(), false)) {
+					String[] key = store.getKey(entity);
+					String[] values = Arrays.copyOf(key, key.length + 1);
+					values[key.length] = String.valueOf(i);
+					inlineViewBuilder.appendRow(values);
+				}
+			}
+		}
+		inlineViewBuilder.close();
+	}
+
+	/**
+	 * Marks all entities which depends on given entity as traversed.
+	 *
+	 * @param association the dependency
+	 * @param resultSet current row is given entity
+	 */
+	public void markDependentEntitiesAsTraversed(Association association, ResultSet resultSet, ResultSetMetaData resultSetMetaData, Map<String, Integer> typeCache) throws SQLException {
+		EntityStore sourceStore = getStore(association.source);
+		int e = sourceStore.find(getKey(association.source, resultSet, resultSetMetaData, typeCache));
+		if (e >= 0) {
+			dependencies().getTargets(sourceStore, e, null, association.getId(), true);
+		}
+	}
+
+	/**
+	 * Reads all non-traversed dependencies.
+	 *
+	 * @param table the source of dependencies to look for
+	 * @param reader reads the entities
+	 */
+	public void readNonTraversedDependencies(Table table, final ResultSetReader reader) throws SQLException {
+		Set<Integer> targets = dependencies().getNonTraversedTargetStores(getStore(table));
+		if (targets.isEmpty()) {
+			return;
+		}
+		InlineViewBuilder inlineViewBuilder = new InlineViewBuilder(inlineViewStyle, "D", session, new String[] { "FROM_TYPE", "TO_TYPE" }) {
+			@Override
+			protected void process(String inlineView) throws SQLException {
+				session.executeQuery("Select * from " + inlineView, reader);
+			}
+		};
+		List<EntityStore> theStores = getStores();
+		for (Integer target: targets) {
+			inlineViewBuilder.appendRow(new String[] { SqlUtil.toSql(table.getName(), session), SqlUtil.toSql(theStores.get(target).table.getName(), session) });
+		}
+		inlineViewBuilder.close();
+	}
+
+	/**
+	 * Removes all reflexive dependencies of given table.
+	 *
+	 * @param table the table
+	 */
+	public void removeReflexiveDependencies(Table table) {
+		dependencies().removeReflexiveDependencies(getStore(table));
+	}
+
+	/**
+	 * Gets some statistical information.
+	 */
+	public List<String> getStatistics(DataModel dataModel, Set<Table> tables) {
+		List<String> statistic = new ArrayList<String>();
+		long total = 0;
+		Set<Table> remaining = new HashSet<Table>(tables);
+		for (EntityStore store: getStores()) {
+			long count = store.liveSize();
+			if (count > 0) {
+				Table table = dataModel.getTable(store.table.getName());
+				String type = store.table.getName();
+				if (table != null) {
+					type = dataModel.getDisplayName(table);
+					remaining.remove(table);
+				}
+				total += count;
+				statistic.add(pad(type) + " " + count);
+			}
+		}
+		for (Table table: remaining) {
+			statistic.add(pad(dataModel.getDisplayName(table)) + " 0");
+		}
+		Collections.sort(statistic);
+		statistic.add(0, "" + total);
+		return statistic;
+	}
+
+	private String pad(String type) {
+		while (type.length() < 30) {
+			type = type + " ";
+		}
+		return type;
+	}
+
+	/**
+	 * Total row-count.
+	 */
+	private long totalRowcount = 0;
+
+	private synchronized void addToTotalRowcount(long rc) {
+		totalRowcount += rc;
+	}
+
+	/**
+	 * Gets total row-count.
+	 *
+	 * @return total row-count
+	 */
+	public synchronized long getTotalRowcount() {
+		return totalRowcount;
+	}
+
+	/**
+	 * Whether or not to store additional information in order to create a 'explain.log'.
+	 *
+	 * @param explain <code>true</code> iff predecessors of each entity must be stored
+	 */
+	public void setExplain(boolean explain) {
+		// explain feature is not implemented for in-memory entity graph
+	}
+
+	/**
+	 * Gets the universal primary key.
+	 *
+	 * @return the universal primary key
+	 */
+	public PrimaryKey getUniversalPrimaryKey() {
+		return universalPrimaryKey;
+	}
+
+	/**
+	 * Shuts down statement-executor.
+	 */
+	public void shutDown() {
+		// nothing to do
+	}
+
+	@Override
+	public Session getSession() {
+		return session;
+	}
+
+	@Override
+	public DataModel getDatamodel() {
+		return dataModel;
+	}
+
+	@Override
+	public void close() {
+		delete();
+	}
+
+	@Override
+	public Session getTargetSession() {
+		return session;
+	}
+
+	private synchronized DependencyStore dependencies() {
+		return dependencies;
+	}
+
+	/**
+	 * Builds inline-views containing the primary keys of entities of a table.
+	 */
+	private abstract class KeyInlineViewBuilder extends InlineViewBuilder {
+		public KeyInlineViewBuilder(String name, Table table) {
+			super(InMemoryEntityGraph.this.inlineViewStyle, name, InMemoryEntityGraph.this.session, InMemoryEntityGraph.this.ivColumnList(table, null, "PK").split(", "));
+		}
+	}
+
+	/**
+	 * Appends the primary keys of some entities to an inline-view builder and closes it.
+	 *
+	 * @param store the entities
+	 * @param entities numbers of the entities
+	 * @param inlineViewBuilder the builder
+	 */
+	private void appendKeys(EntityStore store, int[] entities, InlineViewBuilder inlineViewBuilder) throws SQLException {
+		for (int e: entities) {
+			inlineViewBuilder.appendRow(store.getKey(e));
+		}
+		inlineViewBuilder.close();
+	}
+
+	/**
+	 * Reads the primary keys of one or more tables from a result-set.
+	 */
+	private abstract class KeyReader extends Session.AbstractResultSetReader {
+		private final Table[] tables;
+		private final Map<Integer, Integer> typeCache = new HashMap<Integer, Integer>();
+
+		public KeyReader(Table... tables) {
+			this.tables = tables;
+		}
+
+		public void readCurrentRow(ResultSet resultSet) throws SQLException {
+			ResultSetMetaData resultSetMetaData = getMetaData(resultSet);
+			String[][] keys = new String[tables.length][];
+			int i = 1;
+			for (int t = 0; t < tables.length; ++t) {
+				String[] key = new String[tables[t].primaryKey.getColumns().size()];
+				for (int k = 0; k < key.length; ++k) {
+					key[k] = SqlUtil.toSql(SqlUtil.getObject(resultSet, resultSetMetaData, i++, typeCache), session);
+				}
+				keys[t] = key;
+			}
+			process(keys);
+		}
+
+		/**
+		 * Processes the primary keys of the current row.
+		 *
+		 * @param keys SQL-literals of the primary keys, one array per table
+		 */
+		protected abstract void process(String[][] keys);
+	}
+
+	/**
+	 * Gets the primary key of an entity from a result-set containing
+	 * the columns "PK0", "PK1", ...
+	 */
+	private String[] getKey(Table table, ResultSet resultSet, ResultSetMetaData resultSetMetaData, Map<String, Integer> typeCache) throws SQLException {
+		String[] key = new String[table.primaryKey.getColumns().size()];
+		for (int i = 0; i < key.length; ++i) {
+			key[i] = SqlUtil.toSql(SqlUtil.getObject(resultSet, resultSetMetaData, "PK" + i, typeCache), session);
+		}
+		return key;
+	}
+
+	/**
+	 * Gets a SQL comparison expression for comparing rows with the entities of an inline-view.
+	 *
+	 * @param table the table
+	 * @param tableAlias alias of the table
+	 * @param ivAlias alias of the inline-view
+	 * @param columnPrefix prefix of the columns of the inline-view
+	 */
+	private String pkEqualsEntityID(Table table, String tableAlias, String ivAlias, String columnPrefix) {
+		StringBuilder sb = new StringBuilder();
+		int i = 0;
+		for (Column column: table.primaryKey.getColumns()) {
+			if (i > 0) {
+				sb.append(" and ");
+			}
+			sb.append(ivAlias + "." + columnPrefix + i + "=" + tableAlias + "." + column.name);
+			++i;
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Gets PK-column list for a table. (for Select clause)
+	 *
+	 * @param table the table
+	 * @param tableAlias the alias for table
+	 * @param columnAliasPrefix prefix for column aliases
+	 */
+	private String pkList(Table table, String tableAlias, String columnAliasPrefix) {
+		StringBuilder sb = new StringBuilder();
+		int i = 0;
+		for (Column column: table.primaryKey.getColumns()) {
+			if (i > 0) {
+				sb.append(", ");
+			}
+			sb.append(tableAlias + "." + column.name + " AS " + columnAliasPrefix + i);
+			++i;
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Gets the list of the primary key columns of an inline-view.
+	 *
+	 * @param table the table
+	 * @param ivAlias alias of the inline-view, may be <code>null</code>
+	 * @param columnPrefix prefix of the columns of the inline-view
+	 */
+	private String ivColumnList(Table table, String ivAlias, String columnPrefix) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < table.primaryKey.getColumns().size(); ++i) {
+			if (i > 0) {
+				sb.append(", ");
+			}
+			if (ivAlias != null) {
+				sb.append(ivAlias + ".");
+			}
+			sb.append(columnPrefix + i);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Gets the list of the original primary key columns (for XML export).
+	 */
+	private String originalPKList(Table table, String originalPKAliasPrefix) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < table.primaryKey.getColumns().size(); ++i) {
+			if (i > 0) {
+				sb.append(", ");
+			}
+			sb.append("T." + table.primaryKey.getColumns().get(i).name + " AS " + originalPKAliasPrefix + i);
+		}
+		return sb.toString();
+	}
+
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2007 - 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.jailer.entitygraph.local;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import net.sf.jailer.database.Session;
+
+/**
+ * Number of rows per inline-view, adapted to the measured execution time of the statements
+ * containing the inline-views (without the time for processing the results).
+ * Grows while full blocks are processed faster than {@link #MIN_MILLIS},
+ * shrinks if a block needs more than {@link #MAX_MILLIS}.
+ *
+ * @author Ralf Wisser
+ */
+class AdaptiveBlockSize {
+
+	/**
+	 * Initial number of rows per inline-view.
+	 */
+	private static final int INITIAL_SIZE = 35;
+
+	/**
+	 * Minimum number of rows per inline-view.
+	 */
+	private static final int MIN_SIZE = 8;
+
+	/**
+	 * Blocks processed faster than this (in ms) are considered dominated by the round-trip latency.
+	 */
+	private static final long MIN_MILLIS = 100;
+
+	/**
+	 * Blocks processed slower than this (in ms) are too large.
+	 */
+	private static final long MAX_MILLIS = 2000;
+
+	/**
+	 * Block sizes per session (where the inline-views are executed).
+	 */
+	private static final Map<Session, AdaptiveBlockSize> blockSizes = new WeakHashMap<Session, AdaptiveBlockSize>();
+
+	/**
+	 * Gets the block size for inline-views executed by a session.
+	 *
+	 * @param session the session
+	 * @param style the inline-view style of the session
+	 */
+	static AdaptiveBlockSize forSession(Session session, InlineViewStyle style) {
+		synchronized (blockSizes) {
+			AdaptiveBlockSize blockSize = blockSizes.get(session);
+			if (blockSize == null) {
+				blockSize = new AdaptiveBlockSize(style);
+				blockSizes.put(session, blockSize);
+			}
+			return blockSize;
+		}
+	}
+
+	private final InlineViewStyle style;
+	private int size = INITIAL_SIZE;
+
+	/**
+	 * Average length of a row (exponential moving average).
+	 */
+	private double rowLength = 0;
+
+	private AdaptiveBlockSize(InlineViewStyle style) {
+		this.style = style;
+	}
+
+	/**
+	 * Gets the current number of rows per inline-view.
+	 */
+	synchronized int getSize() {
+		return size;
+	}
+
+	/**
+	 * Adapts the size after an inline-view has been processed.
+	 *
+	 * @param rows number of rows in the inline-view
+	 * @param length length of the inline-view
+	 * @param millis execution time of the statements
+	 */
+	synchronized void processed(int rows, int length, long millis) {
+		if (rows == 0) {
+			return;
+		}
+		double l = length / (double) rows;
+		rowLength = rowLength == 0? l : 0.8 * rowLength + 0.2 * l;
+		if (millis > MAX_MILLIS) {
+			size = Math.max(MIN_SIZE, size / 2);
+		} else if (millis < MIN_MILLIS && rows >= size) {
+			size = size * 2;
+		}
+		size = Math.max(MIN_SIZE, Math.min(size, Math.min(style.maxRows, (int) (style.maxLength / Math.max(rowLength, 1) / 2))));
+	}
+
+}
@@ -21,8 +21,10 @@ import java.sql.SQLException;
 import java.util.HashMap;
 import java.util.Map;
 
+import net.sf.jailer.database.QueryTimer;
 import net.sf.jailer.database.Session;
 import net.sf.jailer.database.StatementBuilder;
+import net.sf.jailer.util.LiteralFormatter;
 import net.sf.jailer.util.SqlUtil;
 
 /**
@@ -39,7 +41,10 @@ public abstract class InlineViewBuilder implements Session.ResultSetReader {
 
 	public static final String DEFAULT_NAME = "JAILER_IV";
 
-	private static final int MAX_SIZE = 35;
+	/**
+	 * Number of rows per inline-view.
+	 */
+	private final AdaptiveBlockSize blockSize;
 
 	/**
 	 * The name of the Inline-View.
@@ -54,6 +59,11 @@ public abstract class InlineViewBuilder implements Session.ResultSetReader {
 
 	protected final Session session;
 
+	/**
+	 * Converts cell-contents to SQL-literals.
+	 */
+	protected final LiteralFormatter literalFormatter;
+
 	protected final String[] columnNames;
 	
 	/**
@@ -69,8 +79,10 @@ public abstract class InlineViewBuilder implements Session.ResultSetReader {
 		this.name = name;
 		this.style = style;
 		this.session = session;
+		this.literalFormatter = LiteralFormatter.forSession(session);
 		this.columnNames = columnNames;
-		statementBuilder = new StatementBuilder(MAX_SIZE);
+		this.blockSize = AdaptiveBlockSize.forSession(session, style);
+		statementBuilder = new StatementBuilder(blockSize.getSize());
 	}
 
 	/**
@@ -85,6 +97,16 @@ public abstract class InlineViewBuilder implements Session.ResultSetReader {
 
 	@Override
 	public void readCurrentRow(ResultSet resultSet) throws SQLException {
+		appendRow(resultSet, readValues(resultSet));
+	}
+
+	/**
+	 * Reads the SQL-literals of the current row.
+	 * 
+	 * @param resultSet the result set
+	 * @return the SQL-literals, one for each column
+	 */
+	public String[] readValues(ResultSet resultSet) throws SQLException {
 		if (resultSetMetaData == null) {
 			resultSetMetaData = resultSet.getMetaData();
 		}
@@ -93,14 +115,40 @@ public abstract class InlineViewBuilder implements Session.ResultSetReader {
 		for (int i = 1; i <= resultSetMetaData.getColumnCount(); ++i) {
 			values[i - 1] = sqlValue(resultSet, i);
 		}
-		
+		return values;
+	}
+
+	/**
+	 * Appends a row of SQL-literals to the inline-view.
+	 * 
+	 * @param values the SQL-literals, one for each column
+	 */
+	public void appendRow(String[] values) throws SQLException {
+		appendRow(null, values);
+	}
+
+	/**
+	 * Appends a row of SQL-literals read from a result set to the inline-view.
+	 * 
+	 * @param resultSet the result set
+	 * @param values the SQL-literals, one for each column
+	 */
+	public void appendRow(ResultSet resultSet, String[] values) throws SQLException {
+		if (resultSetMetaData == null && resultSet != null) {
+			resultSetMetaData = resultSet.getMetaData();
+		}
 		String head = style.head(resultSet, resultSetMetaData, values, columnNames);
 		
 		if (!statementBuilder.isAppendable(head)) {
-			process(statementBuilder.build());
+			processBlock();
 		}
 
 		String item = style.item(resultSet, resultSetMetaData, values, columnNames, statementBuilder.size());
+		if (!statementBuilder.isEmpty() && statementBuilder.length() + item.length() > style.maxLength / 2) {
+			// statement would become too long (leaving room for the enclosing statement)
+			processBlock();
+			item = style.item(resultSet, resultSetMetaData, values, columnNames, statementBuilder.size());
+		}
 		statementBuilder.append(
 				head,
 				item,
@@ -109,14 +157,39 @@ public abstract class InlineViewBuilder implements Session.ResultSetReader {
 	}
 
 	protected String sqlValue(ResultSet resultSet, int i) throws SQLException {
-		return SqlUtil.toSql(SqlUtil.getObject(resultSet, resultSetMetaData, i, typeCache), session);
+		return literalFormatter.toSql(SqlUtil.getObject(resultSet, resultSetMetaData, i, typeCache));
 	}
 
 	@Override
 	public void close() throws SQLException {
+		flush();
+	}
+
+	/**
+	 * Processes the rows appended so far.
+	 */
+	public void flush() throws SQLException {
 		if (!statementBuilder.isEmpty()) {
+			processBlock();
+		}
+	}
+
+	/**
+	 * Processes the current inline-view and adapts the block size
+	 * to the time needed for the statements (not for processing the results).
+	 */
+	private void processBlock() throws SQLException {
+		int rows = statementBuilder.size();
+		int length = statementBuilder.length();
+		QueryTimer queryTimer = QueryTimer.start();
+		long millis;
+		try {
 			process(statementBuilder.build());
+		} finally {
+			millis = queryTimer.stop();
 		}
+		blockSize.processed(rows, length, millis);
+		statementBuilder.setMaxBodySize(blockSize.getSize());
 	}
 
 	/**
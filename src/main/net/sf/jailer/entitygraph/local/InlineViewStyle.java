@@ -24,9 +24,9 @@ import net.sf.jailer.database.Session;
 /**
  * Styles of inline-views for different DBMS'es.
  */
-enum InlineViewStyle {
+public enum InlineViewStyle {
 
-	 DB2("(values (1, '2', 3), (4, '5', 6)) %s(A, B, C)") {
+	 DB2("(values (1, '2', 3), (4, '5', 6)) %s(A, B, C)", 1000, 2000000) {
 			@Override
 			String head(ResultSet resultSet, ResultSetMetaData resultSetMetaData, String[] values, String[] columnNames) throws SQLException {
 				return "(values ";
@@ -67,7 +67,7 @@ enum InlineViewStyle {
 		},
 	
 	 MySQL("(Select 1 A, '2' B, 3 C Union all " +
-	        "Select 4, '5', 6) %s") {
+	        "Select 4, '5', 6) %s", 1000, 1000000) {
 			@Override
 			String head(ResultSet resultSet, ResultSetMetaData resultSetMetaData, String[] values, String[] columnNames) throws SQLException {
 				return "(Select ";
@@ -102,7 +102,7 @@ enum InlineViewStyle {
 		},
 	
 	Oracle("(Select 1 A, '2' B, 3 C from dual Union all "
-		  + "Select 4, '5', 6 from dual) %s") {
+		  + "Select 4, '5', 6 from dual) %s", 500, 1000000) {
 		@Override
 		String head(ResultSet resultSet, ResultSetMetaData resultSetMetaData, String[] values, String[] columnNames) throws SQLException {
 			return "(Select ";
@@ -139,8 +139,21 @@ enum InlineViewStyle {
 
 	public final String example;
 
-	private InlineViewStyle(String example) {
+	/**
+	 * Maximum number of rows per inline-view.
+	 */
+	public final int maxRows;
+
+	/**
+	 * Maximum length of a statement containing an inline-view.
+	 * Inline-views are limited to the half of it.
+	 */
+	public final int maxLength;
+
+	private InlineViewStyle(String example, int maxRows, int maxLength) {
 		this.example = example;
+		this.maxRows = maxRows;
+		this.maxLength = maxLength;
 	}
 
 	/**
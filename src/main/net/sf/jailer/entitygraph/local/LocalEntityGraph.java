@@ -42,7 +42,9 @@ import net.sf.jailer.datamodel.PrimaryKey;
 import net.sf.jailer.datamodel.PrimaryKeyFactory;
 import net.sf.jailer.datamodel.Table;
 import net.sf.jailer.entitygraph.EntityGraph;
+import net.sf.jailer.entitygraph.TopologicalEntitySorter;
 import net.sf.jailer.progress.ProgressListenerRegistry;
+import net.sf.jailer.util.BloomFilter;
 import net.sf.jailer.util.ClasspathUtil;
 import net.sf.jailer.util.CsvFile;
 import net.sf.jailer.util.SqlUtil;
@@ -90,7 +92,7 @@ public class LocalEntityGraph extends EntityGraph {
 		protected String sqlValue(ResultSet resultSet, int i) throws SQLException {
 			Object value = SqlUtil.getObject(resultSet, resultSetMetaData, i, typeCache);
 			if (!allUPK && !isUPKColumn(columnNames[i - 1])) {
-				value = SqlUtil.toSql(value, session);
+				value = literalFormatter.toSql(value);
 			} else if (value instanceof String && isNUPKColumn(columnNames[i - 1])) {
 				String prefix = Configuration.forDbms(remoteSession).getNcharPrefix();
 				if (prefix != null) {
@@ -115,14 +117,57 @@ public class LocalEntityGraph extends EntityGraph {
 		private final boolean allUPK;
 		
 		protected String sqlValue(ResultSet resultSet, int i) throws SQLException {
-			String value = SqlUtil.toSql(SqlUtil.getObject(resultSet, resultSetMetaData, i, typeCache), session);
+			String value = literalFormatter.toSql(SqlUtil.getObject(resultSet, resultSetMetaData, i, typeCache));
 			if (allUPK || isUPKColumn(columnNames[i - 1])) {
-				value = SqlUtil.toSql(value, session);
+				value = literalFormatter.toSql(value);
 			}
 			return value;
 		}
 	}
 
+	/**
+	 * Bloom filters (per type) for the primary keys of the entities in the graph.
+	 * <code>null</code> if not used.
+	 */
+	private Map<String, BloomFilter> keyFilters = null;
+
+	/**
+	 * Reads primary keys of new entities. Entities which are definitely
+	 * not yet in the graph (according to the key filter) are inserted without duplicate check.
+	 */
+	private static class KeyFilteringReader implements ResultSetReader {
+		private final BloomFilter keyFilter;
+		private final InlineViewBuilder checked;
+		private final InlineViewBuilder unchecked;
+		private final StringBuilder key = new StringBuilder();
+		
+		public KeyFilteringReader(BloomFilter keyFilter, InlineViewBuilder checked, InlineViewBuilder unchecked) {
+			this.keyFilter = keyFilter;
+			this.checked = checked;
+			this.unchecked = unchecked;
+		}
+
+		@Override
+		public void readCurrentRow(ResultSet resultSet) throws SQLException {
+			String[] values = checked.readValues(resultSet);
+			key.setLength(0);
+			for (String value: values) {
+				key.append(value).append('\u0000');
+			}
+			if (keyFilter.add(key.toString())) {
+				unchecked.appendRow(resultSet, values);
+			} else {
+				checked.appendRow(resultSet, values);
+			}
+		}
+
+		@Override
+		public void close() throws SQLException {
+			unchecked.close();
+			checked.close();
+		}
+	}
+
 	private Set<String> upkColumnNames = null;
 	private Set<String> nupkColumnNames = null;
 	
@@ -292,6 +337,9 @@ public class LocalEntityGraph extends EntityGraph {
                     "Run 'bin/jailer.sh create-ddl' " +
                     "and execute the DDL-script first!", e);
         }
+        if (CommandLineParser.getInstance().bloomFilter) {
+        	entityGraph.keyFilters = new HashMap<String, BloomFilter>();
+        }
         return entityGraph;
     }
 
@@ -396,11 +444,104 @@ public class LocalEntityGraph extends EntityGraph {
      * Deletes the graph.
      */
     public void delete() throws SQLException {
+    	removeFrontier();
         localSession.executeUpdate("Delete from " + SQLDialect.dmlTableReference(DEPENDENCY, localSession) + " Where r_entitygraph=" + graphID + "");
         localSession.executeUpdate("Delete from " + SQLDialect.dmlTableReference(ENTITY, localSession) + " Where r_entitygraph=" + graphID + "");
         localSession.executeUpdate("Delete from " + SQLDialect.dmlTableReference(ENTITY_GRAPH, localSession) + " Where id=" + graphID + "");
     }
 
+    /**
+     * Removes all entities born after a given day and the dependencies from or to them.
+     * 
+     * @param birthday the day
+     * @return number of removed entities
+     */
+    public long removeEntitiesBornAfter(int birthday) throws SQLException {
+    	String dependency = SQLDialect.dmlTableReference(DEPENDENCY, localSession);
+    	for (String prefix: new String[] { "FROM_", "TO_" }) {
+    		StringBuffer equalsPK = new StringBuffer();
+    		for (Column column: universalPrimaryKey.getColumns()) {
+    			if (equalsPK.length() > 0) {
+    				equalsPK.append(" and ");
+    			}
+    			equalsPK.append("(" + dependency + "." + prefix + column.name + "=E." + column.name +
+    					" or " + dependency + "." + prefix + column.name + " is null and E." + column.name + " is null)");
+    		}
+    		localSession.executeUpdate(
+    				"Delete From " + dependency + " " +
+    				"Where " + dependency + ".r_entitygraph=? and " +
+    					"exists (Select * from " + SQLDialect.dmlTableReference(ENTITY, localSession) + " E Where " +
+    						"E.r_entitygraph=? and E.birthday>? and " +
+    						"E.type=" + dependency + "." + prefix.toLowerCase() + "type and " + equalsPK + ")", new Object[] { graphID, graphID, birthday });
+    	}
+        return localSession.executeUpdate("Delete from " + SQLDialect.dmlTableReference(ENTITY, localSession) + " Where r_entitygraph=" + graphID + " and birthday>" + birthday);
+    }
+
+    /**
+     * Removes all sets of entities of this graph.
+     */
+    public void removeSets() throws SQLException {
+    	removeFrontier();
+    	// the set-ids of this graph lie between its ID and the ID of the next graph (see #getNextSetId())
+    	final long[] nextGraphID = new long[] { Integer.MAX_VALUE + 1L };
+    	localSession.executeQuery("Select min(id) From " + SQLDialect.dmlTableReference(ENTITY_GRAPH, localSession) + " Where id>" + graphID, new Session.AbstractResultSetReader() {
+    		public void readCurrentRow(ResultSet resultSet) throws SQLException {
+    			int id = resultSet.getInt(1);
+    			if (!resultSet.wasNull()) {
+    				nextGraphID[0] = id;
+    			}
+    		}
+    	});
+    	localSession.executeUpdate("Delete from " + SQLDialect.dmlTableReference(ENTITY_SET_ELEMENT, localSession) + " Where set_id>" + graphID + " and set_id<" + nextGraphID[0]);
+    }
+
+    /**
+     * Set-id of the frontier, <code>0</code> if there is no frontier.
+     */
+    private int frontierSetId = 0;
+
+    /**
+     * Birthday of the entities in the frontier.
+     */
+    private int frontierBirthday = -1;
+
+    /**
+     * Collects all entities born on a given day into the frontier, replacing the previous frontier.
+     * 
+     * @param birthday birthday of the entities in the frontier
+     */
+    public synchronized void swapFrontier(int birthday) throws SQLException {
+    	removeFrontier();
+    	int setId = getNextSetId();
+    	localSession.executeUpdate(
+    			"Insert into " + SQLDialect.dmlTableReference(ENTITY_SET_ELEMENT, localSession) + "(set_id, type, " + universalPrimaryKey.columnList(null) + ") " +
+    			"Select " + setId + ", type, " + universalPrimaryKey.columnList(null) + " From " + SQLDialect.dmlTableReference(ENTITY, localSession) +
+    			" Where r_entitygraph=" + graphID + " and birthday=" + birthday);
+    	frontierSetId = setId;
+    	frontierBirthday = birthday;
+    }
+
+    /**
+     * Removes the frontier.
+     */
+    public synchronized void removeFrontier() throws SQLException {
+    	if (frontierSetId != 0) {
+    		localSession.executeUpdate("Delete from " + SQLDialect.dmlTableReference(ENTITY_SET_ELEMENT, localSession) + " Where set_id=" + frontierSetId);
+    		frontierSetId = 0;
+    		frontierBirthday = -1;
+    	}
+    }
+
+    /**
+     * Gets set-id of the frontier.
+     * 
+     * @param birthday birthday of the entities
+     * @return set-id of the frontier if it contains the entities born on the given day, else <code>0</code>
+     */
+    private synchronized int getFrontierSetId(int birthday) {
+    	return frontierBirthday == birthday? frontierSetId : 0;
+    }
+
     /**
      * Adds entities to the graph.
      * 
@@ -472,7 +613,16 @@ public class LocalEntityGraph extends EntityGraph {
 			// ----
 			
             final Table destination = association.destination;
-            final String condition = "E.r_entitygraph=" + graphID + " and E.birthday = " + (today - 1) + " and E.type='" + table.getName() + "'";
+            final String condition;
+            final String entityTable;
+            int frontierSetId = getFrontierSetId(today - 1);
+            if (frontierSetId != 0) {
+            	condition = "E.set_id=" + frontierSetId + " and E.type='" + table.getName() + "'";
+            	entityTable = SQLDialect.dmlTableReference(ENTITY_SET_ELEMENT, localSession);
+            } else {
+            	condition = "E.r_entitygraph=" + graphID + " and E.birthday = " + (today - 1) + " and E.type='" + table.getName() + "'";
+            	entityTable = SQLDialect.dmlTableReference(ENTITY, localSession);
+            }
             // + "' and " + pkEqualsEntityID(table, sourceAlias, "E");
             final Table source = association.source;
 			
@@ -480,7 +630,7 @@ public class LocalEntityGraph extends EntityGraph {
 			
 			select =
 		      "Select " + upkColumnList(source, "E", null) +
-		      " From " + SQLDialect.dmlTableReference(ENTITY, localSession) + " E" +
+		      " From " + entityTable + " E" +
 		      " Where " + condition;
 			
 			final long[] rc = new long[1];
@@ -493,37 +643,7 @@ public class LocalEntityGraph extends EntityGraph {
 						    " From " + inlineView + " join " + source.getName() + " " + sourceAlias + " on " + pkEqualsEntityID(source, sourceAlias, "E", "", false) +
 						    " join " + destination.getName() + " " + destAlias + " on (" + jc + ")";
 					
-					remoteSession.executeQuery(select, new LocalInlineViewBuilder(destAlias, upkColumnList(destination, null)) {
-						@Override
-						protected void process(String inlineView) throws SQLException {
-							Map<Column, Column> match = upkMatch(destination);
-							StringBuffer sb = new StringBuffer();
-							for (Column column: universalPrimaryKey.getColumns()) {
-							    if (sb.length() > 0) {
-							        sb.append(" and ");
-							    }
-							    Column tableColumn = match.get(column);
-							    sb.append("Duplicate." + column.name);
-							    if (tableColumn != null) {
-							    	sb.append("=" + destAlias + "." + column.name);
-							    } else {
-							        sb.append(" is null");
-							    }
-							}
-							
-							String entityJoinCondition = sb.toString();
-							String select = "Select " + graphID + " as GRAPH_ID, " + upkColumnList(destination, destAlias, null) + ", " + today + " AS BIRTHDAY, '" + destination.getName() + "' AS TYPE" +
-					        (source == null || !explain? "" : ", " + associationExplanationID + " AS ASSOCIATION, '" + source.getName() + "' AS SOURCE_TYPE, " + upkColumnList(source, "PRE_")) +
-					        " From " + inlineView + 
-					        " left join " + SQLDialect.dmlTableReference(ENTITY, localSession) + " Duplicate on Duplicate.r_entitygraph=" + graphID + " and Duplicate.type='" + destination.getName() + "' and " +
-					        entityJoinCondition + 
-					        " Where Duplicate.type is null";
-							
-					        String insert = "Insert into " + SQLDialect.dmlTableReference(ENTITY, localSession) + " (r_entitygraph, " + upkColumnList(destination, null) + ", birthday, type" + (source == null || !explain? "" : ", association, PRE_TYPE, " + upkColumnList(source, "PRE_"))  + ") " + select;
-					        rc[0] += localSession.executeUpdate(insert);
-					        totalRowcount += rc[0];
-						}
-					});
+					remoteSession.executeQuery(select, createEntityInserter(destination, destAlias, source, today, associationExplanationID, rc));
 					
 				}
 			});
@@ -553,38 +673,105 @@ public class LocalEntityGraph extends EntityGraph {
         
         final long[] rc = new long[1];
         
-    	remoteSession.executeQuery(select, new LocalInlineViewBuilder(alias, upkColumnList(table, null)) {
+    	remoteSession.executeQuery(select, createEntityInserter(table, alias, null, today, 0, rc));
+    	
+    	return rc[0];
+    }
+
+    /**
+     * Creates a reader for primary keys of new entities which inserts the entities into the graph.
+     * 
+     * @param table the table 
+     * @param alias alias of the inline-view
+     * @param source the source-table (for explanation), or <code>null</code>
+     * @param today the birthday of the new entities
+     * @param associationExplanationID ID of the association (for explanation)
+     * @param rc row-count, to be incremented
+     * 
+     * @return the reader
+     */
+    private ResultSetReader createEntityInserter(final Table table, final String alias, final Table source, final int today, final Integer associationExplanationID, final long[] rc) {
+    	String columnList = upkColumnList(table, null);
+    	BloomFilter keyFilter = null;
+    	synchronized (this) {
+    		// classifying and inserting the entities is not atomic if destinations are resolved concurrently
+    		if (keyFilters != null && !isConcurrentResolution()) {
+    			keyFilter = keyFilters.get(table.getName());
+    			if (keyFilter == null) {
+    				keyFilter = new BloomFilter(10000, 0.01);
+    				keyFilters.put(table.getName(), keyFilter);
+    			}
+    		}
+    	}
+    	final InlineViewBuilder unchecked = keyFilter == null? null : new LocalInlineViewBuilder(alias, columnList) {
 			@Override
 			protected void process(String inlineView) throws SQLException {
-				Map<Column, Column> match = upkMatch(table);
-				StringBuffer sb = new StringBuffer();
-				for (Column column: universalPrimaryKey.getColumns()) {
-				    if (sb.length() > 0) {
-				        sb.append(" and ");
-				    }
-				    Column tableColumn = match.get(column);
-				    sb.append("Duplicate." + column.name);
-				    if (tableColumn != null) {
-				    	sb.append("=" + alias + "." + column.name);
-				    } else {
-				        sb.append(" is null");
-				    }
+				insertEntities(inlineView, table, alias, source, today, associationExplanationID, false, rc);
+			}
+    	};
+    	InlineViewBuilder checked = new LocalInlineViewBuilder(alias, columnList) {
+			@Override
+			protected void process(String inlineView) throws SQLException {
+				if (unchecked != null) {
+					// the duplicate check must see the pending new entities
+					unchecked.flush();
 				}
-				
-				String entityJoinCondition = sb.toString();
-				String select = "Select " + graphID + " as GRAPH_ID, " + upkColumnList(table, alias, null) + ", " + today + " AS BIRTHDAY, '" + table.getName() + "' AS TYPE" +
-	            " From " + inlineView + 
-	            " left join " + SQLDialect.dmlTableReference(ENTITY, localSession) + " Duplicate on Duplicate.r_entitygraph=" + graphID + " and Duplicate.type='" + table.getName() + "' and " +
-                entityJoinCondition + 
-                " Where Duplicate.type is null";
-				
-		        String insert = "Insert into " + SQLDialect.dmlTableReference(ENTITY, localSession) + " (r_entitygraph, " + upkColumnList(table, null) + ", birthday, type) " + select;
-		        rc[0] += localSession.executeUpdate(insert);
-		        totalRowcount += rc[0];
+				insertEntities(inlineView, table, alias, source, today, associationExplanationID, true, rc);
 			}
-    	});
-    	
-    	return rc[0];
+    	};
+    	if (keyFilter == null) {
+    		return checked;
+    	}
+    	return new KeyFilteringReader(keyFilter, checked, unchecked);
+    }
+
+    /**
+     * Inserts entities into the graph.
+     * 
+     * @param inlineView inline-view containing the primary keys of the entities
+     * @param table the table 
+     * @param alias alias of the inline-view
+     * @param source the source-table (for explanation), or <code>null</code>
+     * @param today the birthday of the new entities
+     * @param associationExplanationID ID of the association (for explanation)
+     * @param checkDuplicates whether the inline-view may contain entities which are already in the graph
+     * @param rc row-count, to be incremented
+     */
+    private void insertEntities(String inlineView, Table table, String alias, Table source, int today, Integer associationExplanationID, boolean checkDuplicates, long[] rc) throws SQLException {
+		String select = "Select " + graphID + " as GRAPH_ID, " + upkColumnList(table, alias, null) + ", " + today + " AS BIRTHDAY, '" + table.getName() + "' AS TYPE" +
+        (source == null || !explain? "" : ", " + associationExplanationID + " AS ASSOCIATION, '" + source.getName() + "' AS SOURCE_TYPE, " + upkColumnList(source, "PRE_")) +
+        " From " + inlineView;
+		if (checkDuplicates) {
+			Map<Column, Column> match = upkMatch(table);
+			StringBuffer sb = new StringBuffer();
+			for (Column column: universalPrimaryKey.getColumns()) {
+			    if (sb.length() > 0) {
+			        sb.append(" and ");
+			    }
+			    Column tableColumn = match.get(column);
+			    sb.append("Duplicate." + column.name);
+			    if (tableColumn != null) {
+			    	sb.append("=" + alias + "." + column.name);
+			    } else {
+			        sb.append(" is null");
+			    }
+			}
+			
+			String entityJoinCondition = sb.toString();
+			select +=
+		        " left join " + SQLDialect.dmlTableReference(ENTITY, localSession) + " Duplicate on Duplicate.r_entitygraph=" + graphID + " and Duplicate.type='" + table.getName() + "' and " +
+		        entityJoinCondition + 
+		        " Where Duplicate.type is null";
+		}
+		
+        String insert = "Insert into " + SQLDialect.dmlTableReference(ENTITY, localSession) + " (r_entitygraph, " + upkColumnList(table, null) + ", birthday, type" + (source == null || !explain? "" : ", association, PRE_TYPE, " + upkColumnList(source, "PRE_"))  + ") " + select;
+        // the duplicate check is not atomic, so insertion is serialized per destination
+        long inserted;
+        synchronized (getDestinationLock(table)) {
+        	inserted = localSession.executeUpdate(insert);
+        }
+        rc[0] += inserted;
+        totalRowcount += inserted;
     }
 
     /**
@@ -664,6 +851,31 @@ public class LocalEntityGraph extends EntityGraph {
         return ids;
     }
 
+    /**
+     * Sorts the entities topologically in memory.
+     * 
+     * @return number of levels
+     */
+    public int sortTopologically() throws SQLException {
+    	return new TopologicalEntitySorter(this, localSession, universalPrimaryKey).sort();
+    }
+
+    /**
+     * Marks all entities of a level.
+     * 
+     * @param level the level
+     */
+    public void markLevel(int level) throws SQLException {
+    	TopologicalEntitySorter.markLevel(this, localSession, level);
+    }
+
+    /**
+     * Deletes all marked entities, but not their dependencies.
+     */
+    public void deleteMarkedEntities() throws SQLException {
+    	TopologicalEntitySorter.deleteMarkedEntities(this, localSession);
+    }
+
     /**
      * Marks all entities of a given table which don't dependent on other entities,
      * s.t. they can be read and deleted.
@@ -844,6 +1056,10 @@ public class LocalEntityGraph extends EntityGraph {
                 "E2.r_entitygraph=" + graphID + " and " +
                 e1EqualsE2 +
                 ")");
+        synchronized (this) {
+        	// the key filters don't know the entities of the other graph
+        	keyFilters = null;
+        }
         graph.delete();
     }
     
@@ -1174,6 +1390,115 @@ public class LocalEntityGraph extends EntityGraph {
     	localSession.executeUpdate(update);
     }
     
+    /**
+     * Reads all entities which depends on some given entities with one query. 
+     * 
+     * @param table the table from which to read entities
+     * @param association the dependency
+     * @param resultSets the given entities (one row each)
+     * @param readers reads the entities, one for each given entity
+     * @param selectionSchema the selection schema
+     */
+    public void readDependentEntities(final Table table, final Association association, List<ResultSet> resultSets, ResultSetMetaData resultSetMetaData, List<ResultSetReader> readers, final Map<String, Integer> theTypeCache, final String selectionSchema, final String originalPKAliasPrefix) throws SQLException {
+    	if (resultSets.size() > MAX_ENTITIES_PER_STATEMENT) {
+    		for (int i = 0; i < resultSets.size(); i += MAX_ENTITIES_PER_STATEMENT) {
+    			int end = Math.min(resultSets.size(), i + MAX_ENTITIES_PER_STATEMENT);
+    			readDependentEntities(table, association, resultSets.subList(i, end), resultSetMetaData, readers.subList(i, end), theTypeCache, selectionSchema, originalPKAliasPrefix);
+    		}
+    		return;
+    	}
+    	List<Object> parameters = new ArrayList<Object>();
+    	String[] condition = pkEqualsEntityIDs(association.source, resultSets, resultSetMetaData, "D", theTypeCache, parameters);
+    	String select = "Select " + condition[1] + " AS " + PARENT_NUMBER + ", " + upkColumnList(table, "TO_") + " from " + SQLDialect.dmlTableReference(DEPENDENCY, localSession) + " D" +
+	    		 " Where (" + condition[0] + ")" +
+	    		 " and D.to_type='" + table.getName() + "'" +
+	    	     " and D.from_type='" + association.source.getName() + "' and assoc=" + association.getId() +
+	    	     " and D.r_entitygraph=" + graphID;
+
+    	final ResultSetReader reader = new DependentEntitiesDispatcher(readers);
+    	// parameters of the number expression, then of the condition
+    	parameters.addAll(parameters);
+    	localSession.executeQuery(select, parameters.toArray(), new RemoteInlineViewBuilder("D", PARENT_NUMBER + ", " + upkColumnList(table, "TO_"), true) {
+			@Override
+			protected void process(String inlineView) throws SQLException {
+		    	String select;
+		    	if (originalPKAliasPrefix != null) {
+		        	StringBuffer selectOPK = new StringBuffer();
+		        	for (int i = 0; i < table.primaryKey.getColumns().size(); ++i) {
+		        		if (i > 0) {
+		        			selectOPK.append(", ");
+		        		}
+		        		selectOPK.append("T." + table.primaryKey.getColumns().get(i).name + " AS " + originalPKAliasPrefix + i);
+		        	}
+		    		select = 
+		    			"Select " + selectionSchema + ", T." + PARENT_NUMBER + " from (" +  
+		    			"Select " + selectOPK + ", " + filteredSelectionClause(table) + ", D." + PARENT_NUMBER + " from " + table.getName() + " T join " + inlineView + " on " +
+			    		 pkEqualsEntityID(table, "T", "D", "TO_", false) + ") T";
+		    	} else {
+			    	select = "Select " + selectionSchema + ", D." + PARENT_NUMBER + " from " + table.getName() + " T join " + inlineView + " on " +
+			    		 pkEqualsEntityID(table, "T", "D", "TO_", false) + "";
+		    	}
+		    	long rc = remoteSession.executeQuery(select, reader);
+		    	ProgressListenerRegistry.getProgressListener().exported(table, rc);
+			}
+		});
+    }
+    
+    /**
+     * Marks all entities which depends on some given entities as traversed with one statement. 
+     * 
+     * @param association the dependency
+     * @param resultSets the given entities (one row each)
+     */
+    public void markDependentEntitiesAsTraversed(Association association, List<ResultSet> resultSets, ResultSetMetaData resultSetMetaData, Map<String, Integer> typeCache) throws SQLException {
+    	if (resultSets.size() > MAX_ENTITIES_PER_STATEMENT) {
+    		for (int i = 0; i < resultSets.size(); i += MAX_ENTITIES_PER_STATEMENT) {
+    			markDependentEntitiesAsTraversed(association, resultSets.subList(i, Math.min(resultSets.size(), i + MAX_ENTITIES_PER_STATEMENT)), resultSetMetaData, typeCache);
+    		}
+    		return;
+    	}
+    	List<Object> parameters = new ArrayList<Object>();
+    	String update;
+    	if (localSession.dbms == DBMS.SYBASE) {
+    		update = "Update " + SQLDialect.dmlTableReference(DEPENDENCY, localSession) + " set traversed=1" +
+    		 " Where (" + pkEqualsEntityIDs(association.source, resultSets, resultSetMetaData, SQLDialect.dmlTableReference(DEPENDENCY, localSession), typeCache, parameters)[0] + ")" +
+    		 " and " + SQLDialect.dmlTableReference(DEPENDENCY, localSession) + ".from_type='" + association.source.getName() + "' and assoc=" + association.getId() +
+    		 " and " + SQLDialect.dmlTableReference(DEPENDENCY, localSession) + ".r_entitygraph=" + graphID;
+    	} else {
+    		update = "Update " + SQLDialect.dmlTableReference(DEPENDENCY, localSession) + " D set traversed=1" +
+    		 " Where (" + pkEqualsEntityIDs(association.source, resultSets, resultSetMetaData, "D", typeCache, parameters)[0] + ")" +
+    	     " and D.from_type='" + association.source.getName() + "' and assoc=" + association.getId() +
+    	     " and D.r_entitygraph=" + graphID;
+    	}
+    	localSession.executeUpdate(update, parameters.toArray());
+    }
+    
+    /**
+     * Gets a SQL condition for selecting the dependencies of some given entities
+     * and an expression for the number of the given entity a dependency belongs to.
+     * The number is a literal (like the UPK columns of the local database).
+     * 
+     * @param table the table of the given entities
+     * @param resultSets the given entities (one row each)
+     * @param alias alias of the dependency-table
+     * @param parameters to put the values of the keys into, the expression has the same parameters as the condition
+     * @return the condition and the expression
+     */
+    private String[] pkEqualsEntityIDs(Table table, List<ResultSet> resultSets, ResultSetMetaData resultSetMetaData, String alias, Map<String, Integer> typeCache, List<Object> parameters) throws SQLException {
+    	StringBuilder condition = new StringBuilder();
+    	StringBuilder number = new StringBuilder("case");
+    	for (int i = 0; i < resultSets.size(); ++i) {
+    		String pkEqualsEntityID = pkEqualsEntityID(table, resultSets.get(i), resultSetMetaData, alias, "FROM_", typeCache, parameters);
+    		if (i > 0) {
+    			condition.append(" or ");
+    		}
+    		condition.append("(" + pkEqualsEntityID + ")");
+    		number.append(" when " + pkEqualsEntityID + " then '" + i + "'");
+    	}
+    	number.append(" end");
+    	return new String[] { condition.toString(), number.toString() };
+    }
+    
     /**
      * Reads all non-traversed dependencies. 
      * 
@@ -1245,6 +1570,40 @@ public class LocalEntityGraph extends EntityGraph {
         return sb.toString();
     }
 
+    /**
+     * Gets a SQL comparison expression with parameters for comparing rows with given entity.
+     * The parameters are the literals of the key (like the UPK columns of the local database).
+     * 
+     * @param table the table
+     * @param parameters to put the values of the key into
+     * @return a SQL comparison expression for comparing rows of <code>table</code> with current row of resultSet
+     */
+    private String pkEqualsEntityID(Table table, ResultSet resultSet, ResultSetMetaData resultSetMetaData, String alias, String columnPrefix, Map<String, Integer> typeCache, List<Object> parameters) throws SQLException {
+    	Map<Column, Column> match = upkMatch(table);
+        StringBuffer sb = new StringBuffer();
+        for (Column column: universalPrimaryKey.getColumns()) {
+            if (sb.length() > 0) {
+                sb.append(" and ");
+            }
+            sb.append(alias + "." + columnPrefix + column.name);
+            Column tableColumn = match.get(column);
+            if (tableColumn != null) {
+            	int i = 0;
+            	for (Column c: table.primaryKey.getColumns()) {
+            		if (c.name.equals(tableColumn.name)) {
+            			break;
+            		}
+            		++i;
+            	}
+                sb.append("=?");
+                parameters.add(SqlUtil.toSql(SqlUtil.getObject(resultSet, resultSetMetaData, "PK" + i /* tableColumn.name*/, typeCache), localSession));
+            } else {
+                sb.append(" is null");
+            }
+        }
+        return sb.toString();
+    }
+
     private final Set<String> fieldProcTables = new HashSet<String>();
     
     /**
@@ -1421,7 +1780,7 @@ public class LocalEntityGraph extends EntityGraph {
      * 
      * @return a unique set id
      */
-    private synchronized int getNextSetId() {
+    protected synchronized int getNextSetId() {
         return graphID + (nextSetId++);
     }
 
@@ -19,6 +19,8 @@ import java.io.File;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -36,6 +38,7 @@ import net.sf.jailer.datamodel.DataModel;
 import net.sf.jailer.datamodel.PrimaryKey;
 import net.sf.jailer.datamodel.Table;
 import net.sf.jailer.entitygraph.EntityGraph;
+import net.sf.jailer.entitygraph.TopologicalEntitySorter;
 import net.sf.jailer.progress.ProgressListenerRegistry;
 import net.sf.jailer.util.CsvFile;
 import net.sf.jailer.util.SqlUtil;
@@ -144,7 +147,7 @@ public class RemoteEntityGraph extends EntityGraph {
         RemoteEntityGraph entityGraph = new RemoteEntityGraph(dataModel, graphID, session, universalPrimaryKey);
         final boolean[] found = new boolean[1];
         found[0] = false;
-        session.executeQuery("Select * From " + SQLDialect.dmlTableReference(ENTITY_GRAPH, session) + "Where id=" + graphID + "", new Session.ResultSetReader() {
+        session.executeQuery("Select * From " + SQLDialect.dmlTableReference(ENTITY_GRAPH, session) + " Where id=" + graphID + "", new Session.ResultSetReader() {
             public void readCurrentRow(ResultSet resultSet) throws SQLException {
                 found[0] = true;
             }
@@ -215,11 +218,104 @@ public class RemoteEntityGraph extends EntityGraph {
      * Deletes the graph.
      */
     public void delete() throws SQLException {
+    	removeFrontier();
         session.executeUpdate("Delete from " + SQLDialect.dmlTableReference(DEPENDENCY, session) + " Where r_entitygraph=" + graphID + "");
         session.executeUpdate("Delete from " + SQLDialect.dmlTableReference(ENTITY, session) + " Where r_entitygraph=" + graphID + "");
         session.executeUpdate("Delete from " + SQLDialect.dmlTableReference(ENTITY_GRAPH, session) + " Where id=" + graphID + "");
     }
 
+    /**
+     * Removes all entities born after a given day and the dependencies from or to them.
+     * 
+     * @param birthday the day
+     * @return number of removed entities
+     */
+    public long removeEntitiesBornAfter(int birthday) throws SQLException {
+    	String dependency = SQLDialect.dmlTableReference(DEPENDENCY, session);
+    	for (String prefix: new String[] { "FROM_", "TO_" }) {
+    		StringBuffer equalsPK = new StringBuffer();
+    		for (Column column: universalPrimaryKey.getColumns()) {
+    			if (equalsPK.length() > 0) {
+    				equalsPK.append(" and ");
+    			}
+    			equalsPK.append("(" + dependency + "." + prefix + column.name + "=E." + column.name +
+    					" or " + dependency + "." + prefix + column.name + " is null and E." + column.name + " is null)");
+    		}
+    		session.executeUpdate(
+    				"Delete From " + dependency + " " +
+    				"Where " + dependency + ".r_entitygraph=? and " +
+    					"exists (Select * from " + SQLDialect.dmlTableReference(ENTITY, session) + " E Where " +
+    						"E.r_entitygraph=? and E.birthday>? and " +
+    						"E.type=" + dependency + "." + prefix.toLowerCase() + "type and " + equalsPK + ")", new Object[] { graphID, graphID, birthday });
+    	}
+        return session.executeUpdate("Delete from " + SQLDialect.dmlTableReference(ENTITY, session) + " Where r_entitygraph=" + graphID + " and birthday>" + birthday);
+    }
+
+    /**
+     * Removes all sets of entities of this graph.
+     */
+    public void removeSets() throws SQLException {
+    	removeFrontier();
+    	// the set-ids of this graph lie between its ID and the ID of the next graph (see #getNextSetId())
+    	final long[] nextGraphID = new long[] { Integer.MAX_VALUE + 1L };
+    	session.executeQuery("Select min(id) From " + SQLDialect.dmlTableReference(ENTITY_GRAPH, session) + " Where id>" + graphID, new Session.AbstractResultSetReader() {
+    		public void readCurrentRow(ResultSet resultSet) throws SQLException {
+    			int id = resultSet.getInt(1);
+    			if (!resultSet.wasNull()) {
+    				nextGraphID[0] = id;
+    			}
+    		}
+    	});
+    	session.executeUpdate("Delete from " + SQLDialect.dmlTableReference(ENTITY_SET_ELEMENT, session) + " Where set_id>" + graphID + " and set_id<" + nextGraphID[0]);
+    }
+
+    /**
+     * Set-id of the frontier, <code>0</code> if there is no frontier.
+     */
+    private int frontierSetId = 0;
+
+    /**
+     * Birthday of the entities in the frontier.
+     */
+    private int frontierBirthday = -1;
+
+    /**
+     * Collects all entities born on a given day into the frontier, replacing the previous frontier.
+     * 
+     * @param birthday birthday of the entities in the frontier
+     */
+    public synchronized void swapFrontier(int birthday) throws SQLException {
+    	removeFrontier();
+    	int setId = getNextSetId();
+    	session.executeUpdate(
+    			"Insert into " + SQLDialect.dmlTableReference(ENTITY_SET_ELEMENT, session) + "(set_id, type, " + universalPrimaryKey.columnList(null) + ") " +
+    			"Select " + integerParameter() + ", type, " + universalPrimaryKey.columnList(null) + " From " + SQLDialect.dmlTableReference(ENTITY, session) +
+    			" Where r_entitygraph=? and birthday=?", new Object[] { setId, graphID, birthday });
+    	frontierSetId = setId;
+    	frontierBirthday = birthday;
+    }
+
+    /**
+     * Removes the frontier.
+     */
+    public synchronized void removeFrontier() throws SQLException {
+    	if (frontierSetId != 0) {
+    		session.executeUpdate("Delete from " + SQLDialect.dmlTableReference(ENTITY_SET_ELEMENT, session) + " Where set_id=?", new Object[] { frontierSetId });
+    		frontierSetId = 0;
+    		frontierBirthday = -1;
+    	}
+    }
+
+    /**
+     * Gets set-id of the frontier.
+     * 
+     * @param birthday birthday of the entities
+     * @return set-id of the frontier if it contains the entities born on the given day, else <code>0</code>
+     */
+    private synchronized int getFrontierSetId(int birthday) {
+    	return frontierBirthday == birthday? frontierSetId : 0;
+    }
+
     /**
      * Adds entities to the graph.
      * 
@@ -231,7 +327,7 @@ public class RemoteEntityGraph extends EntityGraph {
      * @return row-count
      */
     public long addEntities(Table table, String condition, int today, long limit) throws SQLException {
-        return addEntities(table, "T", condition, null, null, null, null, false, today, limit, 0, true);
+        return addEntities(table, "T", condition, canBind(condition)? new Object[0] : null, null, null, null, null, null, today, limit, 0, true, 0);
     }
     
     /**
@@ -266,7 +362,25 @@ public class RemoteEntityGraph extends EntityGraph {
                     }
                 }
             }
-            return addEntities(association.destination, destAlias, "E.r_entitygraph=" + graphID + " and E.birthday = " + (today - 1) + " and E.type='" + table.getName() + "' and " + pkEqualsEntityID(table, sourceAlias, "E"), table, sourceAlias, association.source, jc, true, today, 0, associationExplanationID, association.reversed);
+            String condition;
+            Object[] conditionParameter;
+            String entityTable;
+            boolean bind = canBind(jc);
+            int frontierSetId = getFrontierSetId(today - 1);
+            if (frontierSetId != 0 && jc.equals(SqlUtil.resolvePseudoColumns(jc, "A", "B", 0, 0))) {
+            	condition = "E.set_id=" + (bind? "?" : frontierSetId) + " and E.type='" + table.getName() + "' and " + pkEqualsEntityID(table, sourceAlias, "E");
+            	conditionParameter = bind? new Object[] { frontierSetId } : null;
+            	entityTable = SQLDialect.dmlTableReference(ENTITY_SET_ELEMENT, session);
+            } else {
+            	// no frontier, or pseudo-columns, which need the birthdays (not part of the frontier)
+            	condition = "E.r_entitygraph=" + (bind? "?" : graphID) + " and E.birthday = " + (bind? "?" : today - 1) + " and E.type='" + table.getName() + "' and " + pkEqualsEntityID(table, sourceAlias, "E");
+            	conditionParameter = bind? new Object[] { graphID, today - 1 } : null;
+            	entityTable = SQLDialect.dmlTableReference(ENTITY, session);
+            }
+            if (isConcurrentResolution()) {
+            	return stageAndMergeEntities(association.destination, destAlias, condition, conditionParameter, table, sourceAlias, association.source, jc, entityTable, today, association.reversed);
+            }
+            return addEntities(association.destination, destAlias, condition, conditionParameter, table, sourceAlias, association.source, jc, entityTable, today, 0, associationExplanationID, association.reversed, 0);
         }
         return -1;
     }
@@ -276,56 +390,72 @@ public class RemoteEntityGraph extends EntityGraph {
      * 
      * @param table the table 
      * @param condition the condition in SQL that the entities must fulfill with 'E' as alias for the entity-table
+     * @param conditionParameter values of the parameters in condition, or <code>null</code> if the statement must not use
+     *  bind variables (see {@link #canBind(String...)}), the condition then contains no parameter markers
      * @param joinedTable optional table to join with
      * @param source optional, the source-table
      * @param joinCondition optional condition to join with <code>joinedTable</code>
-     * @param joinWithEntity whether to join with entity-table too
+     * @param joinedEntityTable entity-table (or frontier) to join with too, <code>null</code> if no join is needed
      * @param today the birthday of the new entities
      * @param limit a limit of the number of rows to be exported or <code>0</code>
+     * @param stagingSetId if not <code>0</code>, the entities are not added to the graph but to the entity-set with this id
      * 
      * @return row-count
      */
-    private long addEntities(Table table, String alias, String condition, Table joinedTable, String joinedTableAlias, Table source, String joinCondition, boolean joinWithEntity, int today, long limit, int associationExplanationID, boolean isInverseAssociation) throws SQLException {
-        if (maxTotalRowcount > 0 && limit == 0) {
+    private long addEntities(Table table, String alias, String condition, Object[] conditionParameter, Table joinedTable, String joinedTableAlias, Table source, String joinCondition, String joinedEntityTable, int today, long limit, int associationExplanationID, boolean isInverseAssociation, int stagingSetId) throws SQLException {
+        if (maxTotalRowcount > 0 && limit == 0 && stagingSetId == 0) {
             limit = Math.max(maxTotalRowcount - totalRowcount + 1, 1);
         }
         if (joinCondition != null) {
         	joinCondition = SqlUtil.resolvePseudoColumns(joinCondition, isInverseAssociation? null : "E", isInverseAssociation? "E" : null, today, birthdayOfSubject);
         }
+        boolean bind = conditionParameter != null;
+        List<Object> parameter = new ArrayList<Object>();
         String select;
         if (Configuration.forDbms(session).isAvoidLeftJoin()) {
         	// bug fix for [ jailer-Bugs-3294893 ] Outer Join for selecting dependant entries and Oracle 10
         	// mixing left joins and theta-style joins causes problems on oracle DBMS
         	select =
-                "Select " + (joinedTable != null? "distinct " : "") + "" + graphID + " as GRAPH_ID, " + pkList(table, alias) + ", " + today + " AS BIRTHDAY, '" + table.getName() + "' AS TYPE" +
+                "Select " + (joinedTable != null? "distinct " : "") + "" + integerParameter(bind, graphID) + " as GRAPH_ID, " + pkList(table, alias) + ", " + integerParameter(bind, today) + " AS BIRTHDAY, '" + table.getName() + "' AS TYPE" +
                 (source == null || !explain? "" : ", " + associationExplanationID + " AS ASSOCIATION, '" + source.getName() + "' AS SOURCE_TYPE, " + pkList(source, joinedTableAlias, "PRE_")) +
                 " From " + table.getName() + " " + alias
     				+
                 (joinedTable != null? ", " + joinedTable.getName() + " " + joinedTableAlias + " ": "") +
-                (joinWithEntity? ", " + SQLDialect.dmlTableReference(ENTITY, session) + " E" : "") +
+                (joinedEntityTable != null? ", " + joinedEntityTable + " E" : "") +
                 " Where (" + condition + ") " +
                 	// CW	"and Duplicate.type is null" +
                 (joinedTable != null? " and (" + joinCondition + ")" : "") +
 
     				" AND NOT EXISTS (select * from " + SQLDialect.dmlTableReference(ENTITY, session)
-    				+ " DuplicateExists where r_entitygraph=" + graphID + " " + "AND DuplicateExists.type='"
+    				+ " DuplicateExists where r_entitygraph=" + (bind? "?" : graphID) + " " + "AND DuplicateExists.type='"
     				+ table.getName()
     				+ "' and " + pkEqualsEntityID(table, alias, "DuplicateExists") + ")"
     				+
                 (limit > 0? " fetch first " + limit + " rows only" : "");
-
+        	if (bind) {
+	        	parameter.add(graphID);
+	        	parameter.add(today);
+	        	parameter.addAll(Arrays.asList(conditionParameter));
+	        	parameter.add(graphID);
+        	}
         } else {
         	select =
-	            "Select " + (joinedTable != null? "distinct " : "") + "" + graphID + " as GRAPH_ID, " + pkList(table, alias) + ", " + today + " AS BIRTHDAY, '" + table.getName() + "' AS TYPE" +
+	            "Select " + (joinedTable != null? "distinct " : "") + "" + integerParameter(bind, graphID) + " as GRAPH_ID, " + pkList(table, alias) + ", " + integerParameter(bind, today) + " AS BIRTHDAY, '" + table.getName() + "' AS TYPE" +
 	            (source == null || !explain? "" : ", " + associationExplanationID + " AS ASSOCIATION, '" + source.getName() + "' AS SOURCE_TYPE, " + pkList(source, joinedTableAlias, "PRE_")) +
 	            " From " + table.getName() + " " + alias +
-	            " left join " + SQLDialect.dmlTableReference(ENTITY, session) + " Duplicate on Duplicate.r_entitygraph=" + graphID + " and Duplicate.type='" + table.getName() + "' and " +
+	            " left join " + SQLDialect.dmlTableReference(ENTITY, session) + " Duplicate on Duplicate.r_entitygraph=" + (bind? "?" : graphID) + " and Duplicate.type='" + table.getName() + "' and " +
 	            pkEqualsEntityID(table, alias, "Duplicate") + 
 	            (joinedTable != null? ", " + joinedTable.getName() + " " + joinedTableAlias + " ": "") +
-	            (joinWithEntity? ", " + SQLDialect.dmlTableReference(ENTITY, session) + " E" : "") +
+	            (joinedEntityTable != null? ", " + joinedEntityTable + " E" : "") +
 	            " Where (" + condition + ") and Duplicate.type is null" +
 	            (joinedTable != null? " and (" + joinCondition + ")" : "") +
 	            (limit > 0? " fetch first " + limit + " rows only" : "");
+        	if (bind) {
+	        	parameter.add(graphID);
+	        	parameter.add(today);
+	        	parameter.add(graphID);
+	        	parameter.addAll(Arrays.asList(conditionParameter));
+        	}
         }
         
         if (source != null && explain) {
@@ -343,14 +473,68 @@ public class RemoteEntityGraph extends EntityGraph {
                      "Group by GRAPH_ID, " + upkColumnList(table, null) + ", BIRTHDAY, TYPE, ASSOCIATION";
         }
         
-        String insert = "Insert into " + SQLDialect.dmlTableReference(ENTITY, session) + " (r_entitygraph, " + upkColumnList(table, null) + ", birthday, type" + (source == null || !explain? "" : ", association, PRE_TYPE, " + upkColumnList(source, "PRE_"))  + ") " + select;
+        String insert;
+        if (stagingSetId != 0) {
+        	insert = "Insert into " + SQLDialect.dmlTableReference(ENTITY_SET_ELEMENT, session) + " (set_id, type, " + upkColumnList(table, null) + ") " +
+        			 "Select " + integerParameter(bind, stagingSetId) + ", TYPE, " + upkColumnList(table, null) + " From (" + select + ") Q";
+        	if (bind) {
+        		parameter.add(0, stagingSetId);
+        	}
+        } else {
+        	insert = "Insert into " + SQLDialect.dmlTableReference(ENTITY, session) + " (r_entitygraph, " + upkColumnList(table, null) + ", birthday, type" + (source == null || !explain? "" : ", association, PRE_TYPE, " + upkColumnList(source, "PRE_"))  + ") " + select;
+        }
         if (SqlUtil.dbms == DBMS.SYBASE) session.execute("set forceplan on ");
-        long rc = session.executeUpdate(insert);
-        totalRowcount += rc;
+        long rc = bind? session.executeUpdate(insert, parameter.toArray()) : session.executeUpdate(insert);
+        if (stagingSetId == 0) {
+        	totalRowcount += rc;
+        }
         if (SqlUtil.dbms == DBMS.SYBASE) session.execute("set forceplan off ");
         return rc;
     }
 
+    /**
+     * Adds entities to the graph concurrently with other associations having the same destination.
+     * The entities are staged in a fresh entity-set first. Only merging the set into the graph
+     * is serialized per destination table, so the (expensive) joins run in parallel.
+     * 
+     * @see #addEntities(Table, String, String, Object[], Table, String, Table, String, String, int, long, int, boolean, int)
+     * 
+     * @return row-count
+     */
+    private long stageAndMergeEntities(Table table, String alias, String condition, Object[] conditionParameter, Table joinedTable, String joinedTableAlias, Table source, String joinCondition, String joinedEntityTable, int today, boolean isInverseAssociation) throws SQLException {
+    	int setId = getNextSetId();
+    	boolean isStagingSetEmpty = false;
+    	try {
+	    	long rc = addEntities(table, alias, condition, conditionParameter, joinedTable, joinedTableAlias, source, joinCondition, joinedEntityTable, today, 0, 0, isInverseAssociation, setId);
+	    	isStagingSetEmpty = rc == 0;
+	    	if (rc > 0) {
+	        	StringBuffer sEqualsD = new StringBuffer();
+	        	for (String column: upkColumnList(table, null).split(", ")) {
+	        		sEqualsD.append(" and D." + column + "=S." + column);
+	        	}
+	    		synchronized (getDestinationLock(table)) {
+	    			long limit = 0;
+	    			if (maxTotalRowcount > 0) {
+	    				limit = Math.max(maxTotalRowcount - totalRowcount + 1, 1);
+	    			}
+	    			String insert = "Insert into " + SQLDialect.dmlTableReference(ENTITY, session) + " (r_entitygraph, " + upkColumnList(table, null) + ", birthday, type) " +
+	    				"Select " + integerParameter() + ", " + upkColumnList(table, "S.") + ", " + integerParameter() + ", S.type From " + SQLDialect.dmlTableReference(ENTITY_SET_ELEMENT, session) + " S " +
+	    				"Where S.set_id=? and S.type='" + table.getName() + "' " +
+	    				"and NOT EXISTS (Select * from " + SQLDialect.dmlTableReference(ENTITY, session) + " D Where D.r_entitygraph=? and D.type=S.type" + sEqualsD + ")" +
+	    				(limit > 0? " fetch first " + limit + " rows only" : "");
+	    			rc = session.executeUpdate(insert, new Object[] { graphID, today, setId, graphID });
+	    			totalRowcount += rc;
+	    		}
+	    	}
+	    	return rc;
+    	} finally {
+    		// also after a failure, set-ids of left-over rows might be reused by later graphs
+    		if (!isStagingSetEmpty) {
+    			session.executeUpdate("Delete from " + SQLDialect.dmlTableReference(ENTITY_SET_ELEMENT, session) + " Where set_id=?", new Object[] { setId });
+    		}
+    	}
+    }
+
     /**
      * Adds dependencies.
      * 
@@ -391,6 +575,31 @@ public class RemoteEntityGraph extends EntityGraph {
         return ids;
     }
 
+    /**
+     * Sorts the entities topologically in memory.
+     * 
+     * @return number of levels
+     */
+    public int sortTopologically() throws SQLException {
+    	return new TopologicalEntitySorter(this, session, universalPrimaryKey).sort();
+    }
+
+    /**
+     * Marks all entities of a level.
+     * 
+     * @param level the level
+     */
+    public void markLevel(int level) throws SQLException {
+    	TopologicalEntitySorter.markLevel(this, session, level);
+    }
+
+    /**
+     * Deletes all marked entities, but not their dependencies.
+     */
+    public void deleteMarkedEntities() throws SQLException {
+    	TopologicalEntitySorter.deleteMarkedEntities(this, session);
+    }
+
     /**
      * Marks all entities of a given table which don't dependent on other entities,
      * s.t. they can be read and deleted.
@@ -410,11 +619,11 @@ public class RemoteEntityGraph extends EntityGraph {
         }
         session.executeUpdate(
                 "Update " + SQLDialect.dmlTableReference(ENTITY, session) + " set birthday=0 " +
-                "Where r_entitygraph=" + graphID + " and birthday>0 and " +
+                "Where r_entitygraph=? and birthday>0 and " +
                 	   (table != null? "type='" + table.getName() + "' and " : "") +
                        "not exists (Select * from " + SQLDialect.dmlTableReference(DEPENDENCY, session) + " D " +
-                           "Where D.r_entitygraph=" + graphID + " and D.assoc=0 and D.from_type=" + SQLDialect.dmlTableReference(ENTITY, session) + ".type and " +
-                                 fromEqualsPK + ")");
+                           "Where D.r_entitygraph=? and D.assoc=0 and D.from_type=" + SQLDialect.dmlTableReference(ENTITY, session) + ".type and " +
+                                 fromEqualsPK + ")", new Object[] { graphID, graphID });
     }
 
     /**
@@ -435,10 +644,10 @@ public class RemoteEntityGraph extends EntityGraph {
         }
         session.executeUpdate(
                 "Update " + SQLDialect.dmlTableReference(ENTITY, session) + " set birthday=0 " +
-                "Where r_entitygraph=" + graphID + " and birthday>0 and type='" + table.getName() + "' and " +
+                "Where r_entitygraph=? and birthday>0 and type='" + table.getName() + "' and " +
                        "not exists (Select * from " + SQLDialect.dmlTableReference(DEPENDENCY, session) + " D " +
-                           "Where D.r_entitygraph=" +graphID + " and D.to_type=" + SQLDialect.dmlTableReference(ENTITY, session) + ".type and " +
-                                 toEqualsPK + ")");
+                           "Where D.r_entitygraph=? and D.to_type=" + SQLDialect.dmlTableReference(ENTITY, session) + ".type and " +
+                                 toEqualsPK + ")", new Object[] { graphID, graphID });
     }
 
     /**
@@ -464,12 +673,24 @@ public class RemoteEntityGraph extends EntityGraph {
         if (orderByPK) {
         	orderBy = " order by " + table.primaryKey.columnList("T.");
         }
-    	long rc = session.executeQuery(
-                "Select " + selectionSchema + " From " + SQLDialect.dmlTableReference(ENTITY, session) + " E join " + table.getName() + " T on " +
-                pkEqualsEntityID(table, "T", "E") +
-                " Where E.birthday=0 and E.r_entitygraph=" + graphID + " and E.type='" + table.getName() + "'" +
-                orderBy,
-                reader);
+        long rc;
+        if (canBind(selectionSchema)) {
+	    	rc = session.executeQuery(
+	                "Select " + selectionSchema + " From " + SQLDialect.dmlTableReference(ENTITY, session) + " E join " + table.getName() + " T on " +
+	                pkEqualsEntityID(table, "T", "E") +
+	                " Where E.birthday=0 and E.r_entitygraph=? and E.type='" + table.getName() + "'" +
+	                orderBy,
+	                new Object[] { graphID },
+	                reader);
+        } else {
+        	// the filters contain a '?'
+	    	rc = session.executeQuery(
+	                "Select " + selectionSchema + " From " + SQLDialect.dmlTableReference(ENTITY, session) + " E join " + table.getName() + " T on " +
+	                pkEqualsEntityID(table, "T", "E") +
+	                " Where E.birthday=0 and E.r_entitygraph=" + graphID + " and E.type='" + table.getName() + "'" +
+	                orderBy,
+	                reader);
+        }
     	ProgressListenerRegistry.getProgressListener().exported(table, rc);
     }
     
@@ -616,22 +837,22 @@ public class RemoteEntityGraph extends EntityGraph {
         }
         session.executeUpdate(
                 "Delete From " + SQLDialect.dmlTableReference(DEPENDENCY, session) + " " +
-                "Where " + SQLDialect.dmlTableReference(DEPENDENCY, session) + ".r_entitygraph=" + graphID + " and assoc=0 and from_type='" + table.getName() + "' and " + 
+                "Where " + SQLDialect.dmlTableReference(DEPENDENCY, session) + ".r_entitygraph=? and assoc=0 and from_type='" + table.getName() + "' and " + 
                       "exists (Select * from " + SQLDialect.dmlTableReference(ENTITY, session) + " E Where " + 
-                          "E.r_entitygraph=" + graphID + " and " +
+                          "E.r_entitygraph=? and " +
                           fromEqualsPK + " and " + SQLDialect.dmlTableReference(DEPENDENCY, session) + ".from_type=E.type and " +
-                          "E.birthday=0)");
+                          "E.birthday=0)", new Object[] { graphID, graphID });
         session.executeUpdate(
                 "Delete From " + SQLDialect.dmlTableReference(DEPENDENCY, session) + " " +
-                "Where " + SQLDialect.dmlTableReference(DEPENDENCY, session) + ".r_entitygraph=" + graphID + " and assoc=0 and to_type='" + table.getName() + "' and " +
+                "Where " + SQLDialect.dmlTableReference(DEPENDENCY, session) + ".r_entitygraph=? and assoc=0 and to_type='" + table.getName() + "' and " +
                       "exists (Select * from " + SQLDialect.dmlTableReference(ENTITY, session) + " E Where " + 
-                          "E.r_entitygraph=" + graphID + " and " +
+                          "E.r_entitygraph=? and " +
                           toEqualsPK + " and " + SQLDialect.dmlTableReference(DEPENDENCY, session) + ".to_type=E.type and " +
-                          "E.birthday=0)");
+                          "E.birthday=0)", new Object[] { graphID, graphID });
         session.executeUpdate(
                 "Delete From " + SQLDialect.dmlTableReference(ENTITY, session) + " " +
-                "Where r_entitygraph=" + graphID + " and type='" + table.getName() + "' and " +
-                       "birthday=0");
+                "Where r_entitygraph=? and type='" + table.getName() + "' and " +
+                       "birthday=0", new Object[] { graphID });
     }
     
     /**
@@ -654,7 +875,8 @@ public class RemoteEntityGraph extends EntityGraph {
         final long[] count = new long[1];
         session.executeQuery(
                 "Select count(*) from " + SQLDialect.dmlTableReference(ENTITY, session) + " E " +
-                "Where E.birthday>=0 and E.r_entitygraph=" + graphID + " and E.type='" + table.getName() + "'",
+                "Where E.birthday>=0 and E.r_entitygraph=? and E.type='" + table.getName() + "'",
+                new Object[] { graphID },
                 new Session.AbstractResultSetReader() {
                     public void readCurrentRow(ResultSet resultSet) throws SQLException {
                         count[0] = resultSet.getLong(1);
@@ -798,6 +1020,108 @@ public class RemoteEntityGraph extends EntityGraph {
     	session.executeUpdate(update);
     }
     
+    /**
+     * Reads all entities which depends on some given entities with one query. 
+     * 
+     * @param table the table from which to read entities
+     * @param association the dependency
+     * @param resultSets the given entities (one row each)
+     * @param readers reads the entities, one for each given entity
+     * @param selectionSchema the selection schema
+     */
+    public void readDependentEntities(Table table, Association association, List<ResultSet> resultSets, ResultSetMetaData resultSetMetaData, List<ResultSetReader> readers, Map<String, Integer> typeCache, String selectionSchema, String originalPKAliasPrefix) throws SQLException {
+    	if (resultSets.size() > MAX_ENTITIES_PER_STATEMENT) {
+    		for (int i = 0; i < resultSets.size(); i += MAX_ENTITIES_PER_STATEMENT) {
+    			int end = Math.min(resultSets.size(), i + MAX_ENTITIES_PER_STATEMENT);
+    			readDependentEntities(table, association, resultSets.subList(i, end), resultSetMetaData, readers.subList(i, end), typeCache, selectionSchema, originalPKAliasPrefix);
+    		}
+    		return;
+    	}
+    	List<Object> parameters = new ArrayList<Object>();
+    	String[] condition = pkEqualsEntityIDs(association.source, resultSets, resultSetMetaData, "D", typeCache, parameters);
+    	String select;
+    	if (originalPKAliasPrefix != null) {
+        	StringBuffer selectOPK = new StringBuffer();
+        	for (int i = 0; i < table.primaryKey.getColumns().size(); ++i) {
+        		if (i > 0) {
+        			selectOPK.append(", ");
+        		}
+        		selectOPK.append("T." + table.primaryKey.getColumns().get(i).name + " AS " + originalPKAliasPrefix + i);
+        	}
+    		select = 
+    			"Select " + selectionSchema + ", T." + PARENT_NUMBER + " from (" +  
+    			"Select " + selectOPK + ", " + filteredSelectionClause(table) + ", " + condition[1] + " AS " + PARENT_NUMBER + " from " + table.getName() + " T join " + SQLDialect.dmlTableReference(DEPENDENCY, session) + " D on " +
+	    		 pkEqualsEntityID(table, "T", "D", "TO_") + " and D.to_type='" + table.getName() + "'" +
+	    		 " Where (" + condition[0] + ")" +
+	    	     " and D.from_type='" + association.source.getName() + "' and assoc=" + association.getId() +
+	    	     " and D.r_entitygraph=" + graphID + ") T";
+    	} else {
+	    	select = "Select " + selectionSchema + ", " + condition[1] + " AS " + PARENT_NUMBER + " from " + table.getName() + " T join " + SQLDialect.dmlTableReference(DEPENDENCY, session) + " D on " +
+	    		 pkEqualsEntityID(table, "T", "D", "TO_") + " and D.to_type='" + table.getName() + "'" +
+	    		 " Where (" + condition[0] + ")" +
+	    	     " and D.from_type='" + association.source.getName() + "' and assoc=" + association.getId() +
+	    	     " and D.r_entitygraph=" + graphID;
+    	}
+    	// parameters of the number expression, then of the condition
+    	parameters.addAll(parameters);
+    	long rc = session.executeQuery(select, parameters.toArray(), new DependentEntitiesDispatcher(readers));
+    	ProgressListenerRegistry.getProgressListener().exported(table, rc);
+    }
+    
+    /**
+     * Marks all entities which depends on some given entities as traversed with one statement. 
+     * 
+     * @param association the dependency
+     * @param resultSets the given entities (one row each)
+     */
+    public void markDependentEntitiesAsTraversed(Association association, List<ResultSet> resultSets, ResultSetMetaData resultSetMetaData, Map<String, Integer> typeCache) throws SQLException {
+    	if (resultSets.size() > MAX_ENTITIES_PER_STATEMENT) {
+    		for (int i = 0; i < resultSets.size(); i += MAX_ENTITIES_PER_STATEMENT) {
+    			markDependentEntitiesAsTraversed(association, resultSets.subList(i, Math.min(resultSets.size(), i + MAX_ENTITIES_PER_STATEMENT)), resultSetMetaData, typeCache);
+    		}
+    		return;
+    	}
+    	List<Object> parameters = new ArrayList<Object>();
+    	String update;
+    	if (session.dbms == DBMS.SYBASE) {
+    		update = "Update " + SQLDialect.dmlTableReference(DEPENDENCY, session) + " set traversed=1" +
+    		 " Where (" + pkEqualsEntityIDs(association.source, resultSets, resultSetMetaData, SQLDialect.dmlTableReference(DEPENDENCY, session), typeCache, parameters)[0] + ")" +
+    		 " and " + SQLDialect.dmlTableReference(DEPENDENCY, session) + ".from_type='" + association.source.getName() + "' and assoc=" + association.getId() +
+    		 " and " + SQLDialect.dmlTableReference(DEPENDENCY, session) + ".r_entitygraph=" + graphID;
+    	} else {
+    		update = "Update " + SQLDialect.dmlTableReference(DEPENDENCY, session) + " D set traversed=1" +
+    		 " Where (" + pkEqualsEntityIDs(association.source, resultSets, resultSetMetaData, "D", typeCache, parameters)[0] + ")" +
+    	     " and D.from_type='" + association.source.getName() + "' and assoc=" + association.getId() +
+    	     " and D.r_entitygraph=" + graphID;
+    	}
+    	session.executeUpdate(update, parameters.toArray());
+    }
+    
+    /**
+     * Gets a SQL condition for selecting the dependencies of some given entities
+     * and an expression for the number of the given entity a dependency belongs to.
+     * 
+     * @param table the table of the given entities
+     * @param resultSets the given entities (one row each)
+     * @param alias alias of the dependency-table
+     * @param parameters to put the values of the keys into, the expression has the same parameters as the condition
+     * @return the condition and the expression
+     */
+    private String[] pkEqualsEntityIDs(Table table, List<ResultSet> resultSets, ResultSetMetaData resultSetMetaData, String alias, Map<String, Integer> typeCache, List<Object> parameters) throws SQLException {
+    	StringBuilder condition = new StringBuilder();
+    	StringBuilder number = new StringBuilder("case");
+    	for (int i = 0; i < resultSets.size(); ++i) {
+    		String pkEqualsEntityID = pkEqualsEntityID(table, resultSets.get(i), resultSetMetaData, alias, "FROM_", typeCache, parameters);
+    		if (i > 0) {
+    			condition.append(" or ");
+    		}
+    		condition.append("(" + pkEqualsEntityID + ")");
+    		number.append(" when " + pkEqualsEntityID + " then " + i);
+    	}
+    	number.append(" end");
+    	return new String[] { condition.toString(), number.toString() };
+    }
+    
     /**
      * Reads all non-traversed dependencies. 
      * 
@@ -869,6 +1193,46 @@ public class RemoteEntityGraph extends EntityGraph {
         return sb.toString();
     }
 
+	/**
+     * Gets a SQL comparison expression with parameters for comparing rows with given entity.
+     * Values which can't be bound (wrapped values of DBMS specific types) are compared with literals.
+     * 
+     * @param table the table
+     * @param resultSet
+     * @param parameters to put the values of the key into
+     * @return a SQL comparison expression for comparing rows of <code>table</code> with current row of resultSet
+     */
+    private String pkEqualsEntityID(Table table, ResultSet resultSet, ResultSetMetaData resultSetMetaData, String alias, String columnPrefix, Map<String, Integer> typeCache, List<Object> parameters) throws SQLException {
+    	Map<Column, Column> match = universalPrimaryKey.match(table.primaryKey);
+        StringBuffer sb = new StringBuffer();
+        for (Column column: universalPrimaryKey.getColumns()) {
+            if (sb.length() > 0) {
+                sb.append(" and ");
+            }
+            sb.append(alias + "." + columnPrefix + column.name);
+            Column tableColumn = match.get(column);
+            if (tableColumn != null) {
+            	int i = 0;
+            	for (Column c: table.primaryKey.getColumns()) {
+            		if (c.name.equals(tableColumn.name)) {
+            			break;
+            		}
+            		++i;
+            	}
+            	Object value = SqlUtil.getObject(resultSet, resultSetMetaData, "PK" + i /* tableColumn.name*/, typeCache);
+            	if (value instanceof String || value instanceof Number || value instanceof java.util.Date || value instanceof Boolean) {
+            		sb.append("=?");
+            		parameters.add(value);
+            	} else {
+            		sb.append("=" + SqlUtil.toSql(value, session));
+            	}
+            } else {
+                sb.append(" is null");
+            }
+        }
+        return sb.toString();
+    }
+
     /**
      * Gets a SQL comparition expression for comparing rows with entities.
      * 
@@ -1018,6 +1382,15 @@ public class RemoteEntityGraph extends EntityGraph {
         this.explain = explain;
     }
 
+    /**
+     * Whether associations with the same destination may be resolved concurrently.
+     * Not supported in explain-mode, the entity-sets have no room for the predecessors.
+     */
+    @Override
+    public boolean isConcurrentResolution() {
+    	return super.isConcurrentResolution() && !explain;
+    }
+
     /**
      * Gets the universal primary key.
      * 
@@ -1037,10 +1410,43 @@ public class RemoteEntityGraph extends EntityGraph {
      * 
      * @return a unique set id
      */
-    private synchronized int getNextSetId() {
+    protected synchronized int getNextSetId() {
         return graphID + (nextSetId++);
     }
 
+    /**
+     * Gets a parameter marker for an integer value in a select-clause.
+     * Most DBMS need to know the type of such a parameter.
+     */
+    private String integerParameter() {
+    	return session.dbms == DBMS.MySQL? "?" : "cast(? as integer)";
+    }
+
+    /**
+     * Gets a parameter marker for an integer value in a select-clause,
+     * or the value itself if no bind variables are used.
+     */
+    private String integerParameter(boolean bind, int value) {
+    	return bind? integerParameter() : String.valueOf(value);
+    }
+
+    /**
+     * Checks whether a statement containing user-defined SQL (conditions, filters) can use bind variables.
+     * User-defined SQL is inserted verbatim, so each '?' in it (in a string literal, for instance)
+     * would be taken as a parameter marker. Only generated parts of a statement are parameterized.
+     * 
+     * @param userSql the user-defined SQL fragments, <code>null</code> stands for none
+     * @return <code>false</code> if any fragment contains a '?'
+     */
+    private static boolean canBind(String... userSql) {
+    	for (String sql: userSql) {
+    		if (sql != null && sql.indexOf('?') >= 0) {
+    			return false;
+    		}
+    	}
+    	return true;
+    }
+
     /**
      * Shuts down statement-executor.
      */
@@ -15,6 +15,8 @@
  */
 package net.sf.jailer.modelbuilder;
 
+import java.math.BigInteger;
+import java.security.MessageDigest;
 import java.sql.DatabaseMetaData;
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -42,6 +44,7 @@ import net.sf.jailer.datamodel.PrimaryKey;
 import net.sf.jailer.datamodel.PrimaryKeyFactory;
 import net.sf.jailer.datamodel.Table;
 import net.sf.jailer.util.CancellationHandler;
+import net.sf.jailer.util.JobManager;
 import net.sf.jailer.util.Quoting;
 import net.sf.jailer.util.SqlUtil;
 
@@ -70,6 +73,55 @@ public class JDBCMetaDataBasedModelElementFinder implements ModelElementFinder {
     	typesWithLength.add("RAW");
     }
     
+    /**
+     * Column as described by {@link DatabaseMetaData#getColumns(String, String, String, String)}.
+     */
+    private static class ColumnInfo {
+    	final String name;
+    	final int type;
+    	final String typeName;
+    	final int size;
+    	final int decimalDigits;
+    	final boolean decimalDigitsIsNull;
+    	final int nullable;
+    	
+    	ColumnInfo(ResultSet resultSet) throws SQLException {
+    		name = resultSet.getString(4);
+    		type = resultSet.getInt(5);
+    		typeName = resultSet.getString(6);
+    		size = resultSet.getInt(7);
+    		decimalDigits = resultSet.getInt(9);
+    		decimalDigitsIsNull = resultSet.wasNull();
+    		nullable = resultSet.getInt(11);
+    	}
+    }
+    
+    /**
+     * Columns of all tables of a schema, per schema and table name.
+     * <code>null</code> for a schema if the columns must be read per table.
+     */
+    private final Map<String, Map<String, List<ColumnInfo>>> columnsPerSchema = new HashMap<String, Map<String, List<ColumnInfo>>>();
+    private Session forColumnsPerSchema = null;
+    
+    /**
+     * Executes the jobs reading meta data, reused for all jobs of a session.
+     */
+    private JobManager jobManager = null;
+    private Session forJobManager = null;
+    
+    /**
+     * Time-stamps of the last change of the tables of a schema, per schema and table name.
+     * <code>null</code> for a schema if they are unknown.
+     */
+    private final Map<String, Map<String, String>> changeTimestampsPerSchema = new HashMap<String, Map<String, String>>();
+    private Session forChangeTimestampsPerSchema = null;
+    
+    /**
+     * Fingerprints of the tables for incremental analysis, <code>null</code> if all tables are analysed.
+     */
+    private TableFingerprints fingerprints = null;
+    private Session forFingerprints = null;
+    
     /**
      * Finds associations by reading the databases meta-data.
      * 
@@ -78,28 +130,91 @@ public class JDBCMetaDataBasedModelElementFinder implements ModelElementFinder {
      * @param namingSuggestion to put naming suggestions for associations into
      * @return found associations
      */
-    public Collection<Association> findAssociations(DataModel dataModel, Map<Association, String[]> namingSuggestion, Session session) throws Exception {
+    public Collection<Association> findAssociations(final DataModel dataModel, final Map<Association, String[]> namingSuggestion, final Session session) throws Exception {
+    	final Quoting quoting = session.readMetaData(new Session.MetaDataReader<Quoting>() {
+			public Quoting read(DatabaseMetaData metaData) throws Exception {
+				return new Quoting(metaData);
+			}
+		});
+        final String defaultSchema = getDefaultSchema(session, session.dbUser);
+        final TableFingerprints fingerprints = getFingerprints(session);
+        
+        // read the imported keys of the tables in parallel, the keys are processed in order of the tables
+        List<Table> tables = new ArrayList<Table>(dataModel.getTables());
+        final List<List<String[]>> importedKeys = new ArrayList<List<String[]>>(Collections.<List<String[]>>nCopies(tables.size(), null));
+        List<JobManager.Job> jobs = new ArrayList<JobManager.Job>();
+        for (int i = 0; i < tables.size(); ++i) {
+        	final int tableIndex = i;
+        	final Table table = tables.get(i);
+        	jobs.add(new JobManager.Job() {
+				public void run() throws Exception {
+		        	List<String[]> keys = fingerprints == null? null : fingerprints.getImportedKeys(table.getName());
+		        	if (keys == null) {
+			            _log.info("find associations with " + table.getName());
+			            keys = session.readMetaData(new Session.MetaDataReader<List<String[]>>() {
+							public List<String[]> read(DatabaseMetaData metaData) throws Exception {
+					            ResultSet resultSet;
+					        	try {
+					        		resultSet = metaData.getImportedKeys(null, quoting.unquote(table.getOriginalSchema(quoting.quote(defaultSchema))), quoting.unquote(table.getUnqualifiedName()));
+					        	} catch (Exception e) {
+					        		_log.info("failed. " + e.getMessage());
+					            	return null;
+					        	}
+					        	List<String[]> keys = new ArrayList<String[]>();
+					            while (resultSet.next()) {
+					            	// PK schema, PK table, PK column, FK schema, FK table, FK column, FK name
+					            	keys.add(new String[] {
+					            			resultSet.getString(2), resultSet.getString(3), resultSet.getString(4),
+					            			resultSet.getString(6), resultSet.getString(7), resultSet.getString(8),
+					            			resultSet.getString(12) });
+					            }
+					            resultSet.close();
+					            return keys;
+							}
+						});
+			            if (keys == null) {
+			            	return;
+			            }
+			            if (fingerprints != null) {
+			            	fingerprints.setImportedKeys(table.getName(), keys);
+			            }
+		        	}
+		            synchronized (importedKeys) {
+		            	importedKeys.set(tableIndex, keys);
+		            }
+		            CancellationHandler.checkForCancellation(null);
+				}
+			});
+        }
+        executeJobs(session, jobs);
+        
+        return session.readMetaData(new Session.MetaDataReader<Collection<Association>>() {
+			public Collection<Association> read(DatabaseMetaData metaData) throws Exception {
+				return createAssociations(dataModel, namingSuggestion, session, metaData, quoting, importedKeys);
+			}
+		});
+    }
+    
+    /**
+     * Creates the associations from the imported keys of the tables.
+     * 
+     * @param importedKeys the imported keys per table, in order of the tables
+     */
+    private Collection<Association> createAssociations(DataModel dataModel, Map<Association, String[]> namingSuggestion, Session session, DatabaseMetaData metaData, Quoting quoting, List<List<String[]>> importedKeys) throws Exception {
         Collection<Association> associations = new ArrayList<Association>();
-        DatabaseMetaData metaData = session.getMetaData();
-    	Quoting quoting = new Quoting(metaData);
-    	ResultSet resultSet;
         String defaultSchema = getDefaultSchema(session, session.dbUser);
-         
-        for (Table table: dataModel.getTables()) {
-            _log.info("find associations with " + table.getName());
-        	try {
-        		resultSet = metaData.getImportedKeys(null, quoting.unquote(table.getOriginalSchema(quoting.quote(defaultSchema))), quoting.unquote(table.getUnqualifiedName()));
-        	} catch (Exception e) {
-        		_log.info("failed. " + e.getMessage());
-            	continue;
+        TableFingerprints fingerprints = getFingerprints(session);
+        for (List<String[]> keys: importedKeys) {
+        	if (keys == null) {
+        		continue;
         	}
             Map<String, Association> fkMap = new HashMap<String, Association>();
-            while (resultSet.next()) {
-                Table pkTable = dataModel.getTable(toQualifiedTableName(quoting.quote(defaultSchema), quoting.quote(resultSet.getString(2)), quoting.quote(resultSet.getString(3))));
-                String pkColumn = quoting.quote(resultSet.getString(4));
-                Table fkTable = dataModel.getTable(toQualifiedTableName(quoting.quote(defaultSchema), quoting.quote(resultSet.getString(6)), quoting.quote(resultSet.getString(7))));
-                String fkColumn = quoting.quote(resultSet.getString(8));
-                String foreignKey = resultSet.getString(12);
+            for (String[] key: keys) {
+                Table pkTable = dataModel.getTable(toQualifiedTableName(quoting.quote(defaultSchema), quoting.quote(key[0]), quoting.quote(key[1])));
+                String pkColumn = quoting.quote(key[2]);
+                Table fkTable = dataModel.getTable(toQualifiedTableName(quoting.quote(defaultSchema), quoting.quote(key[3]), quoting.quote(key[4])));
+                String fkColumn = quoting.quote(key[5]);
+                String foreignKey = key[6];
                 String fkName = fkTable + "." + foreignKey;
                 if (foreignKey != null && fkMap.containsKey(fkName)) {
                 	fkMap.get(fkName).appendCondition("A." + fkColumn + "=B." + pkColumn);
@@ -115,8 +230,9 @@ public class JDBCMetaDataBasedModelElementFinder implements ModelElementFinder {
 	                }
                 }
             }
-            resultSet.close();
-            CancellationHandler.checkForCancellation(null);
+        }
+        if (fingerprints != null) {
+        	fingerprints.write();
         }
         return associations;
     }
@@ -141,15 +257,85 @@ public class JDBCMetaDataBasedModelElementFinder implements ModelElementFinder {
      * 
      * @param session the statement executor for executing SQL-statements 
      */
-    public Set<Table> findTables(Session session) throws Exception {
-        PrimaryKeyFactory primaryKeyFactory = new PrimaryKeyFactory();
+    public Set<Table> findTables(final Session session) throws Exception {
+    	final List<String> tableNames = new ArrayList<String>();
+    	// the connection is released before the jobs are executed, they use connections of their own
+    	final Quoting quoting = session.readMetaData(new Session.MetaDataReader<Quoting>() {
+			public Quoting read(DatabaseMetaData metaData) throws Exception {
+				return findTableNames(session, metaData, tableNames);
+			}
+		});
+        final Map<String, Map<Integer, Column>> pkColumns = new HashMap<String, Map<Integer, Column>>();
+        List<JobManager.Job> jobs = new ArrayList<JobManager.Job>();
+        for (final String tableName: tableNames) {
+            final Map<Integer, Column> pk = new HashMap<Integer, Column>();
+            pkColumns.put(tableName, pk);
+            jobs.add(new JobManager.Job() {
+				public void run() throws Exception {
+		        	final Table tmp = new Table(tableName, null, false);
+		        	session.readMetaData(new Session.MetaDataReader<Object>() {
+						public Object read(DatabaseMetaData metaData) throws Exception {
+				        	if (fingerprints != null) {
+				        		fingerprints.setFingerprint(tableName, fingerprint(session, metaData, quoting.unquote(tmp.getOriginalSchema(quoting.quote(session.getIntrospectionSchema()))), quoting.unquote(tmp.getUnqualifiedName())));
+				        		List<Column> primaryKey = fingerprints.getPrimaryKey(tableName);
+				        		if (primaryKey != null) {
+				        			// unchanged, column types are set below
+				        			for (int i = 0; i < primaryKey.size(); ++i) {
+				        				pk.put(i + 1, primaryKey.get(i));
+				        			}
+				        			_log.info("table " + tableName + " unchanged");
+				        			return null;
+				        		}
+				        	}
+				            ResultSet resultSet = metaData.getPrimaryKeys(null, quoting.unquote(tmp.getOriginalSchema(quoting.quote(session.getIntrospectionSchema()))), quoting.unquote(tmp.getUnqualifiedName()));
+				            boolean hasPK = false;
+				            int nextKeySeq = 0;
+				            while (resultSet.next()) {
+				            	hasPK = true;
+				            	int keySeq = resultSet.getInt(5);
+				            	if (session.dbms == DBMS.SQLITE) {
+				            		// SQlite driver doesn't return the keySeq
+				            		keySeq = nextKeySeq++;
+				            	}
+				                pk.put(keySeq, new Column(quoting.quote(resultSet.getString(4)), "", 0, -1));
+				            }
+				            resultSet.close();
+				            if (!hasPK) {
+				            	_log.info("find unique index of table " + tableName);
+				                hasPK = findUniqueIndexBasedKey(metaData, quoting, session, tmp, pk);
+				            }
+				            _log.info((hasPK? "" : "no ") + "primary key found for table " + tableName);
+				            CancellationHandler.checkForCancellation(null);
+				            return null;
+						}
+					});
+				}
+			});
+        }
+        executeJobs(session, jobs);
         
-        Set<Table> tables = new HashSet<Table>();
-        DatabaseMetaData metaData = session.getMetaData();
+        return session.readMetaData(new Session.MetaDataReader<Set<Table>>() {
+			public Set<Table> read(DatabaseMetaData metaData) throws Exception {
+				return createTables(session, metaData, quoting, tableNames, pkColumns);
+			}
+		});
+    }
+    
+    /**
+     * Finds the names of all tables in DB schema.
+     * 
+     * @param tableNames to put the names into
+     * @return quoting of the DBMS
+     */
+    private Quoting findTableNames(Session session, DatabaseMetaData metaData, List<String> tableNames) throws Exception {
         Quoting quoting = new Quoting(metaData);
+        fingerprints = CommandLineParser.getInstance().incremental? new TableFingerprints(session.dbUrl, session.getIntrospectionSchema()) : null;
+        if (fingerprints != null && Configuration.forDbms(session).getTableChangeTimestampQuery() == null) {
+        	_log.warn("no time-stamps of table changes known for this DBMS, keys of all tables are read to detect changes");
+        }
+        forFingerprints = session;
         ResultSet resultSet;
         resultSet = metaData.getTables(null, session.getIntrospectionSchema(), "%", new String[] { "TABLE" });
-        List<String> tableNames = new ArrayList<String>();
         while (resultSet.next()) {
             String tableName = resultSet.getString(3);
             if ("TABLE".equalsIgnoreCase(resultSet.getString(4))) {
@@ -173,65 +359,44 @@ public class JDBCMetaDataBasedModelElementFinder implements ModelElementFinder {
             CancellationHandler.checkForCancellation(null);
         }
         resultSet.close();
-        Map<String, Map<Integer, Column>> pkColumns = new HashMap<String, Map<Integer, Column>>();
-        for (String tableName: tableNames) {
-        	Table tmp = new Table(tableName, null, false);
-            resultSet = metaData.getPrimaryKeys(null, quoting.unquote(tmp.getOriginalSchema(quoting.quote(session.getIntrospectionSchema()))), quoting.unquote(tmp.getUnqualifiedName()));
-            Map<Integer, Column> pk = pkColumns.get(tableName);
-            if (pk == null) {
-                pk = new HashMap<Integer, Column>();
-                pkColumns.put(tableName, pk);
-            }
-            boolean hasPK = false;
-            int nextKeySeq = 0;
-            while (resultSet.next()) {
-            	hasPK = true;
-            	int keySeq = resultSet.getInt(5);
-            	if (session.dbms == DBMS.SQLITE) {
-            		// SQlite driver doesn't return the keySeq
-            		keySeq = nextKeySeq++;
-            	}
-                pk.put(keySeq, new Column(quoting.quote(resultSet.getString(4)), "", 0, -1));
-            }
-            if (!hasPK) {
-            	_log.info("find unique index of table " + tableName);
-                hasPK = findUniqueIndexBasedKey(metaData, quoting, session, tmp, pk);
-            }
-            if (!hasPK) {
-            	_log.info("find unique index of table " + tableName);
-                hasPK = findUniqueIndexBasedKey(metaData, quoting, session, tmp, pk);
-            }
-            _log.info((hasPK? "" : "no ") + "primary key found for table " + tableName);
-            resultSet.close();
-            CancellationHandler.checkForCancellation(null);
-        }
+        return quoting;
+    }
+    
+    /**
+     * Creates the tables and reads the types of the primary key columns.
+     * 
+     * @param pkColumns the primary key columns per table name
+     */
+    private Set<Table> createTables(Session session, DatabaseMetaData metaData, Quoting quoting, List<String> tableNames, Map<String, Map<Integer, Column>> pkColumns) throws Exception {
+        PrimaryKeyFactory primaryKeyFactory = new PrimaryKeyFactory();
+        Set<Table> tables = new HashSet<Table>();
         for (String tableName: tableNames) {
         	Table tmp = new Table(tableName, null, false);
         	_log.info("getting columns for " + quoting.unquote(tmp.getOriginalSchema(quoting.quote(session.getIntrospectionSchema()))) + "." + quoting.unquote(tmp.getUnqualifiedName()));
-        	resultSet = metaData.getColumns(null, quoting.unquote(tmp.getOriginalSchema(quoting.quote(session.getIntrospectionSchema()))), quoting.unquote(tmp.getUnqualifiedName()), "%");
+        	List<ColumnInfo> columnInfos = getColumns(session, metaData, quoting.unquote(tmp.getOriginalSchema(quoting.quote(session.getIntrospectionSchema()))), quoting.unquote(tmp.getUnqualifiedName()));
         	_log.info("done");
         	Map<Integer, Column> pk = pkColumns.get(tableName);
-            while (resultSet.next()) {
-                String colName = quoting.quote(resultSet.getString(4));
-                int type = resultSet.getInt(5);
+            for (ColumnInfo columnInfo: columnInfos) {
+                String colName = quoting.quote(columnInfo.name);
+                int type = columnInfo.type;
                 int length = 0;
                 int precision = -1;
-                String sqlType = toSqlType(resultSet.getString(6), session.dbms);
-                if (sqlType == null || sqlType.trim().length() == 0 || resultSet.wasNull()) {
+                String sqlType = toSqlType(columnInfo.typeName, session.dbms);
+                if (sqlType == null || sqlType.trim().length() == 0) {
                 	sqlType = SqlUtil.SQL_TYPE.get(type);
                     if (sqlType == null) {
                     	throw new RuntimeException("unknown SQL type: " + type);
                     }
                 }
                 if (typesWithLength.contains(sqlType.toUpperCase()) || type == Types.NUMERIC || type == Types.DECIMAL || type == Types.VARCHAR || type == Types.CHAR || type == Types.BINARY || type == Types.VARBINARY) {
-                    length = resultSet.getInt(7);
+                    length = columnInfo.size;
                 }
                 if (sqlType != null && sqlType.equalsIgnoreCase("uniqueidentifier")) {
                 	length = 0;
                 }
                 if (type == Types.NUMERIC || type == Types.DECIMAL || type == Types.VARCHAR || type == Types.CHAR) {
-                    precision = resultSet.getInt(9);
-                    if (resultSet.wasNull() || precision == 0) {
+                    precision = columnInfo.decimalDigits;
+                    if (columnInfo.decimalDigitsIsNull || precision == 0) {
                     	precision = -1;
                     }
                 }
@@ -239,14 +404,13 @@ public class JDBCMetaDataBasedModelElementFinder implements ModelElementFinder {
                 	length = 0;
                 	precision = -1;
                 }
-                Column column = new Column(colName, sqlType, filterLength(length, resultSet.getString(6), type, session.dbms, resultSet.getInt(7)), precision);
+                Column column = new Column(colName, sqlType, filterLength(length, columnInfo.typeName, type, session.dbms, columnInfo.size), precision);
                 for (int i: pk.keySet()) {
                     if (pk.get(i).name.equals(column.name)) {
                         pk.put(i, column);
                     }
                 }
             }
-            resultSet.close();
             _log.info("read primary key type for table " + tableName);
             
             List<Integer> keySeqs = new ArrayList<Integer>(pk.keySet());
@@ -258,6 +422,9 @@ public class JDBCMetaDataBasedModelElementFinder implements ModelElementFinder {
 					columns.add(column);
 				}
             }
+            if (fingerprints != null) {
+            	fingerprints.setPrimaryKey(tableName, columns);
+            }
             PrimaryKey primaryKey = primaryKeyFactory.createPrimaryKey(columns);
             Table table = new Table(tableName, primaryKey, false);
             table.setAuthor(metaData.getDriverName());
@@ -273,14 +440,14 @@ public class JDBCMetaDataBasedModelElementFinder implements ModelElementFinder {
      */
     private boolean findUniqueIndexBasedKey(DatabaseMetaData metaData, Quoting quoting, Session session, Table tmp, Map<Integer, Column> pk) {
     	try {
-    		ResultSet resultSet = metaData.getColumns(null, quoting.unquote(tmp.getOriginalSchema(quoting.quote(session.getIntrospectionSchema()))), quoting.unquote(tmp.getUnqualifiedName()), "%");
+    		List<ColumnInfo> columnInfos = getColumns(session, metaData, quoting.unquote(tmp.getOriginalSchema(quoting.quote(session.getIntrospectionSchema()))), quoting.unquote(tmp.getUnqualifiedName()));
         	
     		List<String> nonNullColumns = new ArrayList<String>();
     		boolean hasNullable = false;
-    		while (resultSet.next()) {
-    			int type = resultSet.getInt(5);
-    			if (resultSet.getInt(11) == DatabaseMetaData.columnNoNulls) {
-    				nonNullColumns.add(resultSet.getString(4));
+    		for (ColumnInfo columnInfo: columnInfos) {
+    			int type = columnInfo.type;
+    			if (columnInfo.nullable == DatabaseMetaData.columnNoNulls) {
+    				nonNullColumns.add(columnInfo.name);
     				if (!(
     						type == Types.BIGINT ||
     						type == Types.BOOLEAN ||
@@ -305,13 +472,12 @@ public class JDBCMetaDataBasedModelElementFinder implements ModelElementFinder {
     				hasNullable = true;
     			}
     		}
-    		resultSet.close();
     		
     		if (nonNullColumns.isEmpty()) {
     			return false;
     		}
     		
-    		resultSet = metaData.getIndexInfo(null, quoting.unquote(tmp.getOriginalSchema(quoting.quote(session.getIntrospectionSchema()))), quoting.unquote(tmp.getUnqualifiedName()), true, true);
+    		ResultSet resultSet = metaData.getIndexInfo(null, quoting.unquote(tmp.getOriginalSchema(quoting.quote(session.getIntrospectionSchema()))), quoting.unquote(tmp.getUnqualifiedName()), true, true);
 	        Map<String, List<String>> indexes = new TreeMap<String, List<String>>();
 	        while (resultSet.next()) {
 	        	String indexName = resultSet.getString(6);
@@ -361,6 +527,213 @@ public class JDBCMetaDataBasedModelElementFinder implements ModelElementFinder {
     	}
 	}
     
+    /**
+     * Gets the columns of a table. The columns of all tables of the schema are read
+     * with one wildcard call of {@link DatabaseMetaData#getColumns(String, String, String, String)}
+     * on first access. Falls back to one call per table if that fails or if there is no schema.
+     * 
+     * @param session the session
+     * @param metaData meta data of the current thread's connection
+     * @param schema the schema, may be <code>null</code>
+     * @param table the table
+     * @return the columns of the table
+     */
+    private List<ColumnInfo> getColumns(Session session, DatabaseMetaData metaData, String schema, String table) throws SQLException {
+    	Map<String, List<ColumnInfo>> columnsOfSchema = null;
+    	if (schema != null) {
+	    	synchronized (columnsPerSchema) {
+	    		if (forColumnsPerSchema != session) {
+	    			forColumnsPerSchema = session;
+	    			columnsPerSchema.clear();
+	    		}
+	    		if (!columnsPerSchema.containsKey(schema)) {
+	    			columnsPerSchema.put(schema, readColumnsOfSchema(metaData, schema));
+	    		}
+	    		columnsOfSchema = columnsPerSchema.get(schema);
+	    	}
+    	}
+    	if (columnsOfSchema != null) {
+    		List<ColumnInfo> columns = columnsOfSchema.get(table);
+    		if (columns == null) {
+    			return Collections.emptyList();
+    		}
+    		return columns;
+    	}
+    	List<ColumnInfo> columns = new ArrayList<ColumnInfo>();
+    	ResultSet resultSet = metaData.getColumns(null, schema, table, "%");
+    	while (resultSet.next()) {
+    		columns.add(new ColumnInfo(resultSet));
+    	}
+    	resultSet.close();
+    	return columns;
+    }
+    
+    /**
+     * Reads the columns of all tables of a schema.
+     * 
+     * @return the columns per table name, or <code>null</code> if the columns can't be read
+     */
+    private Map<String, List<ColumnInfo>> readColumnsOfSchema(DatabaseMetaData metaData, String schema) {
+    	_log.info("getting columns of all tables of schema " + schema);
+    	try {
+    		Map<String, List<ColumnInfo>> columnsOfSchema = new HashMap<String, List<ColumnInfo>>();
+    		int numColumns = 0;
+    		ResultSet resultSet = metaData.getColumns(null, schema, "%", "%");
+    		while (resultSet.next()) {
+    			String tableSchema = resultSet.getString(2);
+    			if (tableSchema != null && !tableSchema.trim().equals(schema)) {
+    				// the schema is a pattern, "_" matches any character
+    				continue;
+    			}
+    			String table = resultSet.getString(3);
+    			List<ColumnInfo> columns = columnsOfSchema.get(table);
+    			if (columns == null) {
+    				columns = new ArrayList<ColumnInfo>();
+    				columnsOfSchema.put(table, columns);
+    			}
+    			columns.add(new ColumnInfo(resultSet));
+    			++numColumns;
+    		}
+    		resultSet.close();
+    		_log.info("found " + numColumns + " columns of " + columnsOfSchema.size() + " tables");
+    		return columnsOfSchema;
+    	} catch (SQLException e) {
+    		_log.info("failed, reading columns per table. " + e.getMessage());
+    		return null;
+    	}
+    }
+    
+    /**
+     * Gets the fingerprints of the tables for incremental analysis.
+     * 
+     * @return the fingerprints, <code>null</code> if all tables are analysed
+     */
+    private TableFingerprints getFingerprints(Session session) {
+    	if (forFingerprints != session) {
+    		return null;
+    	}
+    	return fingerprints;
+    }
+    
+    /**
+     * Computes the fingerprint of a table from its columns and, if the DBMS exposes it,
+     * the time of the last change of its definition. Otherwise the primary key, the unique indexes
+     * and the imported keys of the table are part of the fingerprint.
+     * 
+     * @param session the session
+     * @param metaData meta data of the current thread's connection
+     * @param schema the schema, may be <code>null</code>
+     * @param table the table
+     * @return the fingerprint, <code>null</code> if it can't be computed (the table is analysed then)
+     */
+    private String fingerprint(Session session, DatabaseMetaData metaData, String schema, String table) throws Exception {
+    	StringBuilder columns = new StringBuilder();
+    	for (ColumnInfo columnInfo: getColumns(session, metaData, schema, table)) {
+    		columns.append(columnInfo.name + " " + columnInfo.type + " " + columnInfo.typeName + " " + columnInfo.size + " "
+    				+ (columnInfo.decimalDigitsIsNull? "-" : String.valueOf(columnInfo.decimalDigits)) + " " + columnInfo.nullable + "\n");
+    	}
+    	String changeTimestamp = getChangeTimestamp(session, schema, table);
+    	if (changeTimestamp != null) {
+    		columns.append(changeTimestamp);
+    	} else {
+    		try {
+    			boolean hasPK = appendRows(columns, metaData.getPrimaryKeys(null, schema, table), 4, 5, 6);
+    			if (!hasPK) {
+    				appendRows(columns, metaData.getIndexInfo(null, schema, table, true, true), 6, 9);
+    			}
+    			appendRows(columns, metaData.getImportedKeys(null, schema, table), 2, 3, 4, 6, 7, 8, 12);
+    		} catch (SQLException e) {
+    			_log.warn("can't read keys of table " + table + ", table is analysed: " + e.getMessage());
+    			return null;
+    		}
+    	}
+    	byte[] digest = MessageDigest.getInstance("MD5").digest(columns.toString().getBytes("UTF-8"));
+    	return new BigInteger(1, digest).toString(16);
+    }
+    
+    /**
+     * Appends some columns of the rows of a meta data result set and closes it.
+     * 
+     * @return <code>true</code> if the result set isn't empty
+     */
+    private boolean appendRows(StringBuilder sb, ResultSet resultSet, int... columns) throws SQLException {
+    	boolean found = false;
+    	while (resultSet.next()) {
+    		found = true;
+    		for (int column: columns) {
+    			sb.append(resultSet.getString(column)).append(" ");
+    		}
+    		sb.append("\n");
+    	}
+    	resultSet.close();
+    	return found;
+    }
+
+    /**
+     * Gets the time-stamp of the last change of the definition of a table.
+     * The time-stamps of all tables of the schema are read on first access with the query
+     * {@link Configuration#getTableChangeTimestampQuery()}.
+     * 
+     * @return the time-stamp, or <code>null</code> if unknown
+     */
+    private String getChangeTimestamp(Session session, String schema, String table) {
+    	final String query = Configuration.forDbms(session).getTableChangeTimestampQuery();
+    	if (query == null || schema == null) {
+    		return null;
+    	}
+    	Map<String, String> changeTimestamps;
+    	synchronized (changeTimestampsPerSchema) {
+    		if (forChangeTimestampsPerSchema != session) {
+    			forChangeTimestampsPerSchema = session;
+    			changeTimestampsPerSchema.clear();
+    		}
+    		if (!changeTimestampsPerSchema.containsKey(schema)) {
+    			changeTimestamps = new HashMap<String, String>();
+    			final Map<String, String> finalChangeTimestamps = changeTimestamps;
+    			try {
+    				session.executeQuery(String.format(query, schema), new Session.ResultSetReader() {
+    					public void readCurrentRow(ResultSet resultSet) throws SQLException {
+    						finalChangeTimestamps.put(resultSet.getString(1), resultSet.getString(2));
+    					}
+    					public void close() {
+    					}
+    				});
+    			} catch (SQLException e) {
+    				_log.warn("can't read change time-stamps of the tables, keys of all tables are read to detect changes: " + e.getMessage());
+    				changeTimestamps = null;
+    			}
+    			changeTimestampsPerSchema.put(schema, changeTimestamps);
+    		}
+    		changeTimestamps = changeTimestampsPerSchema.get(schema);
+    	}
+    	if (changeTimestamps == null) {
+    		return null;
+    	}
+    	return changeTimestamps.get(table);
+    }
+    
+    /**
+     * Executes jobs reading meta data, with {@link CommandLineParser#numberOfThreads} threads.
+     * Each thread uses a connection of its own, so the caller must not hold a connection meanwhile.
+     * 
+     * @param session the session
+     * @param jobs the jobs
+     */
+    private void executeJobs(Session session, List<JobManager.Job> jobs) throws Exception {
+    	JobManager jobManager;
+    	synchronized (this) {
+    		if (forJobManager != session) {
+    			if (this.jobManager != null) {
+    				this.jobManager.shutdown();
+    			}
+    			forJobManager = session;
+    			this.jobManager = new JobManager(Math.max(1, CommandLineParser.getInstance().numberOfThreads));
+    		}
+    		jobManager = this.jobManager;
+    	}
+    	jobManager.executeJobs(jobs);
+    }
+    
 	/**
      * Checks syntactical correctness of names.
      * 
@@ -456,9 +829,27 @@ public class JDBCMetaDataBasedModelElementFinder implements ModelElementFinder {
      * 
      * @throws Exception on each error
      */
-    public List<Column> findColumns(Table table, Session session) throws Exception {
+    public List<Column> findColumns(final Table table, final Session session) throws Exception {
+    	TableFingerprints fingerprints = getFingerprints(session);
+    	if (fingerprints != null) {
+    		List<Column> columns = fingerprints.getColumns(table.getName());
+    		if (columns != null) {
+    			return new ArrayList<Column>(columns);
+    		}
+    	}
+    	return session.readMetaData(new Session.MetaDataReader<List<Column>>() {
+			public List<Column> read(DatabaseMetaData metaData) throws Exception {
+				return findColumns(table, session, metaData);
+			}
+		});
+    }
+
+    /**
+     * Finds the {@link Column}s of a given {@link Table}.
+     */
+    private List<Column> findColumns(Table table, Session session, DatabaseMetaData metaData) throws Exception {
+    	TableFingerprints fingerprints = getFingerprints(session);
     	List<Column> columns = new ArrayList<Column>();
-    	DatabaseMetaData metaData = session.getMetaData();
     	Quoting quoting = new Quoting(metaData);
     	if (forDefaultSchema != session) {
     		forDefaultSchema = session;
@@ -467,24 +858,24 @@ public class JDBCMetaDataBasedModelElementFinder implements ModelElementFinder {
     		_log.info("default schema is '" + defaultSchema + "'");
     	}
     	_log.info("getting columns for " + table.getOriginalSchema(defaultSchema) + "." + quoting.unquote(table.getUnqualifiedName()));
-    	ResultSet resultSet = metaData.getColumns(null, quoting.unquote(table.getOriginalSchema(defaultSchema)), quoting.unquote(table.getUnqualifiedName()), "%");
+    	List<ColumnInfo> columnInfos = getColumns(session, metaData, quoting.unquote(table.getOriginalSchema(defaultSchema)), quoting.unquote(table.getUnqualifiedName()));
     	_log.info("done");
-    	while (resultSet.next()) {
-            String colName = quoting.quote(resultSet.getString(4));
-            int type = resultSet.getInt(5);
+    	for (ColumnInfo columnInfo: columnInfos) {
+            String colName = quoting.quote(columnInfo.name);
+            int type = columnInfo.type;
             int length = 0;
             int precision = -1;
             if (type == Types.NUMERIC || type == Types.DECIMAL || type == Types.VARCHAR || type == Types.CHAR) {
-                length = resultSet.getInt(7);
+                length = columnInfo.size;
             }
             if (type == Types.NUMERIC || type == Types.DECIMAL || type == Types.VARCHAR || type == Types.CHAR) {
-                precision = resultSet.getInt(9);
-                if (resultSet.wasNull() || precision == 0) {
+                precision = columnInfo.decimalDigits;
+                if (columnInfo.decimalDigitsIsNull || precision == 0) {
                 	precision = -1;
                 }
             }
-            String sqlType = toSqlType(resultSet.getString(6), session.dbms);
-            if (sqlType == null || sqlType.trim().length() == 0 || resultSet.wasNull()) {
+            String sqlType = toSqlType(columnInfo.typeName, session.dbms);
+            if (sqlType == null || sqlType.trim().length() == 0 || columnInfo.typeName == null) {
             	sqlType = SqlUtil.SQL_TYPE.get(type);
                 if (sqlType == null) {
                 	continue;
@@ -492,7 +883,7 @@ public class JDBCMetaDataBasedModelElementFinder implements ModelElementFinder {
                 }
             }
             if (typesWithLength.contains(sqlType.toUpperCase()) || type == Types.NUMERIC || type == Types.DECIMAL || type == Types.VARCHAR || type == Types.CHAR || type == Types.BINARY || type == Types.VARBINARY) {
-                length = resultSet.getInt(7);
+                length = columnInfo.size;
                 if (type == Types.VARCHAR) {
                 	if (Configuration.forDbms(session).getVarcharLengthLimit() != null) {
                 		length = Math.min(length, Configuration.forDbms(session).getVarcharLengthLimit());
@@ -503,8 +894,8 @@ public class JDBCMetaDataBasedModelElementFinder implements ModelElementFinder {
             	length = 0;
             }
             if (type == Types.NUMERIC || type == Types.DECIMAL || type == Types.VARCHAR || type == Types.CHAR) {
-                precision = resultSet.getInt(9);
-                if (resultSet.wasNull() || precision == 0) {
+                precision = columnInfo.decimalDigits;
+                if (columnInfo.decimalDigitsIsNull || precision == 0) {
                 	precision = -1;
                 }
             }
@@ -512,11 +903,13 @@ public class JDBCMetaDataBasedModelElementFinder implements ModelElementFinder {
             	length = 0;
             	precision = -1;
             }
-            _log.debug("column info: '" + colName + "' '" + sqlType + "' " + type + " '" + resultSet.getString(6) + "'");
-            columns.add(new Column(colName, sqlType, filterLength(length, resultSet.getString(6), type, session.dbms, resultSet.getInt(7)), precision));
+            _log.debug("column info: '" + colName + "' '" + sqlType + "' " + type + " '" + columnInfo.typeName + "'");
+            columns.add(new Column(colName, sqlType, filterLength(length, columnInfo.typeName, type, session.dbms, columnInfo.size), precision));
         }
-        resultSet.close();
         _log.info("found columns for table " + table.getName());
+        if (fingerprints != null) {
+        	fingerprints.setColumns(table.getName(), columns);
+        }
         return columns;
     }
 
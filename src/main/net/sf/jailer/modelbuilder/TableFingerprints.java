@@ -0,0 +1,284 @@
+/*
+ * Copyright 2007 - 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.jailer.modelbuilder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import net.sf.jailer.CommandLineParser;
+import net.sf.jailer.datamodel.Column;
+import net.sf.jailer.datamodel.DataModel;
+import net.sf.jailer.util.CsvFile;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Fingerprints of the tables and the results of their analysis, for incremental analysis.
+ *
+ * Stored in the file model-builder-fingerprint.csv. The results of the previous analysis
+ * of a table (primary key, columns and imported keys) are reused if the fingerprint
+ * of the table hasn't changed since then. The file is discarded if it has been written
+ * for another database URL or introspection schema.
+ *
+ * @author Ralf Wisser
+ */
+class TableFingerprints {
+
+    /**
+     * The logger.
+     */
+    private static final Logger _log = Logger.getLogger(TableFingerprints.class);
+
+    /**
+     * Fingerprint and results of the analysis of a table, <code>null</code> if not known.
+     */
+    private static class Entry {
+    	String fingerprint;
+    	List<Column> primaryKey;
+    	List<Column> columns;
+    	List<String[]> importedKeys;
+    }
+
+    /**
+     * Entries of the previous analysis, per table.
+     */
+    private final Map<String, Entry> previous = new HashMap<String, Entry>();
+
+    /**
+     * Entries of the current analysis, per table.
+     */
+    private final Map<String, Entry> current = new TreeMap<String, Entry>();
+
+    /**
+     * URL and introspection schema of the database.
+     */
+    private final String url;
+    private final String schema;
+
+    /**
+     * Name of the file.
+     */
+    static String getFingerprintFilename() {
+    	return DataModel.getDatamodelFolder() + File.separator + "model-builder-fingerprint.csv";
+    }
+
+    /**
+     * Constructor. Reads the fingerprints of the previous analysis.
+     *
+     * @param url the database URL
+     * @param schema the introspection schema, may be <code>null</code>
+     */
+    TableFingerprints(String url, String schema) throws Exception {
+    	this.url = url;
+    	this.schema = schema == null? "" : schema;
+    	File file = CommandLineParser.getInstance().newFile(getFingerprintFilename());
+    	if (!file.exists()) {
+    		_log.info("no fingerprints found, analysing all tables");
+    		return;
+    	}
+    	List<CsvFile.Line> lines = new CsvFile(file).getLines();
+    	if (lines.isEmpty() || !"D".equals(lines.get(0).cells.get(0))
+    			|| !this.url.equals(lines.get(0).cells.get(1)) || !this.schema.equals(lines.get(0).cells.get(2))) {
+    		_log.info("fingerprints are of another database or schema, analysing all tables");
+    		return;
+    	}
+    	for (CsvFile.Line line: lines) {
+    		String kind = line.cells.get(0);
+    		String table = line.cells.get(1);
+    		Entry entry = previous.get(table);
+    		if (entry == null) {
+    			entry = new Entry();
+    			previous.put(table, entry);
+    		}
+    		if ("T".equals(kind)) {
+    			entry.fingerprint = line.cells.get(2);
+    		} else if ("P".equals(kind)) {
+    			entry.primaryKey = parseColumns(line);
+    		} else if ("C".equals(kind)) {
+    			entry.columns = parseColumns(line);
+    		} else if ("K".equals(kind)) {
+    			entry.importedKeys = new ArrayList<String[]>();
+    		} else if ("F".equals(kind)) {
+    			String[] key = new String[7];
+    			for (int i = 0; i < key.length; ++i) {
+    				String cell = line.cells.get(i + 2);
+    				key[i] = cell.length() == 0? null : cell;
+    			}
+    			if (entry.importedKeys != null) {
+    				entry.importedKeys.add(key);
+    			}
+    		}
+    	}
+    	_log.info("read fingerprints of " + previous.size() + " tables");
+    }
+
+    private static List<Column> parseColumns(CsvFile.Line line) {
+    	List<Column> columns = new ArrayList<Column>();
+    	for (int i = 2; i < line.cells.size() && line.cells.get(i).length() > 0; ++i) {
+    		columns.add(Column.parse(line.cells.get(i)));
+    	}
+    	return columns;
+    }
+
+    /**
+     * Sets the current fingerprint of a table.
+     *
+     * @param table the table
+     * @param fingerprint the fingerprint
+     */
+    synchronized void setFingerprint(String table, String fingerprint) {
+    	getEntry(table).fingerprint = fingerprint;
+    }
+
+    /**
+     * Whether the fingerprint of a table is the same as in the previous analysis.
+     */
+    private boolean isUnchanged(String table) {
+    	Entry entry = current.get(table);
+    	Entry previousEntry = previous.get(table);
+    	return entry != null && previousEntry != null && entry.fingerprint != null && entry.fingerprint.equals(previousEntry.fingerprint);
+    }
+
+    /**
+     * Gets the primary key of an unchanged table.
+     *
+     * @param table the table
+     * @return the primary key of the previous analysis, or <code>null</code> if the table must be analysed
+     */
+    synchronized List<Column> getPrimaryKey(String table) {
+    	if (!isUnchanged(table) || previous.get(table).primaryKey == null) {
+    		return null;
+    	}
+    	return getEntry(table).primaryKey = previous.get(table).primaryKey;
+    }
+
+    /**
+     * Sets the primary key of a table.
+     */
+    synchronized void setPrimaryKey(String table, List<Column> primaryKey) {
+    	getEntry(table).primaryKey = primaryKey;
+    }
+
+    /**
+     * Gets the columns of an unchanged table.
+     *
+     * @param table the table
+     * @return the columns of the previous analysis, or <code>null</code> if the table must be analysed
+     */
+    synchronized List<Column> getColumns(String table) {
+    	if (!isUnchanged(table) || previous.get(table).columns == null) {
+    		return null;
+    	}
+    	return getEntry(table).columns = previous.get(table).columns;
+    }
+
+    /**
+     * Sets the columns of a table.
+     */
+    synchronized void setColumns(String table, List<Column> columns) {
+    	getEntry(table).columns = columns;
+    }
+
+    /**
+     * Gets the imported keys of an unchanged table.
+     *
+     * @param table the table
+     * @return the imported keys of the previous analysis, or <code>null</code> if the table must be analysed
+     */
+    synchronized List<String[]> getImportedKeys(String table) {
+    	if (!isUnchanged(table) || previous.get(table).importedKeys == null) {
+    		return null;
+    	}
+    	return getEntry(table).importedKeys = previous.get(table).importedKeys;
+    }
+
+    /**
+     * Sets the imported keys of a table.
+     *
+     * @param table the table
+     * @param importedKeys PK schema, PK table, PK column, FK schema, FK table, FK column and FK name of each key column
+     */
+    synchronized void setImportedKeys(String table, List<String[]> importedKeys) {
+    	getEntry(table).importedKeys = importedKeys;
+    }
+
+    private Entry getEntry(String table) {
+    	Entry entry = current.get(table);
+    	if (entry == null) {
+    		entry = new Entry();
+    		current.put(table, entry);
+    	}
+    	return entry;
+    }
+
+    /**
+     * Writes the fingerprints and results of the current analysis.
+     */
+    synchronized void write() throws IOException {
+    	int reused = 0;
+    	for (String table: current.keySet()) {
+    		if (isUnchanged(table)) {
+    			++reused;
+    		}
+    	}
+    	_log.info(reused + " of " + current.size() + " tables unchanged since previous analysis");
+    	StringBuilder content = new StringBuilder("# generated by Jailer\n\n# D; database URL; introspection schema\n# T; table; fingerprint\n# P|C; table; primary key|columns\n# K; table (imported keys known)\n# F; table; PK schema; PK table; PK column; FK schema; FK table; FK column; FK name\n");
+    	content.append("D; " + CsvFile.encodeCell(url) + "; " + CsvFile.encodeCell(schema) + ";\n");
+    	for (Map.Entry<String, Entry> e: current.entrySet()) {
+    		Entry entry = e.getValue();
+    		String table = CsvFile.encodeCell(e.getKey());
+    		if (entry.fingerprint == null) {
+    			continue;
+    		}
+    		content.append("T; " + table + "; " + entry.fingerprint + ";\n");
+    		appendColumns(content, "P", table, entry.primaryKey);
+    		appendColumns(content, "C", table, entry.columns);
+    		if (entry.importedKeys != null) {
+    			content.append("K; " + table + ";\n");
+    			for (String[] key: entry.importedKeys) {
+    				content.append("F; " + table + "; ");
+    				for (String cell: key) {
+    					content.append(cell == null? "" : CsvFile.encodeCell(cell)).append("; ");
+    				}
+    				content.append("\n");
+    			}
+    		}
+    	}
+    	String fileName = getFingerprintFilename();
+    	PrintWriter out = new PrintWriter(new FileOutputStream(CommandLineParser.getInstance().newFile(fileName)));
+    	out.print(content);
+    	out.close();
+    	_log.info("file '" + fileName + "' written");
+    }
+
+    private static void appendColumns(StringBuilder content, String kind, String table, List<Column> columns) {
+    	if (columns != null) {
+    		content.append(kind + "; " + table + "; ");
+    		for (Column column: columns) {
+    			content.append(CsvFile.encodeCell(column.toSQL(null) + (column.isIdentityColumn? " identity" : ""))).append("; ");
+    		}
+    		content.append("\n");
+    	}
+    }
+
+}
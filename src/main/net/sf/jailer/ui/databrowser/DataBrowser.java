@@ -489,6 +489,8 @@ public class DataBrowser extends javax.swing.JFrame {
 	private void createSession(DbConnectionDialog dbConnectionDialog) throws Exception {
 		ConnectionInfo connection = dbConnectionDialog.currentConnection;
 		session = new Session(connection.driverClass, connection.url, connection.user, connection.password);
+		// the reload workers and the event dispatch thread
+		session.setMaxConnections(Desktop.MAX_CONCURRENT_CONNECTIONS + 1);
 		List<String> args = new ArrayList<String>();
 		dbConnectionDialog.addDbArgs(args);
 		session.setCliArguments(args);
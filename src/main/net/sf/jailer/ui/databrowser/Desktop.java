@@ -2792,7 +2792,7 @@ public abstract class Desktop extends JDesktopPane {
 	/**
 	 * Maximum number of concurrent DB connections.
 	 */
-	private static final int MAX_CONCURRENT_CONNECTIONS = 6;
+	static final int MAX_CONCURRENT_CONNECTIONS = 6;
 	{
 		// initialize listeners for #runnableQueue
 		for (int i = 0; i < MAX_CONCURRENT_CONNECTIONS; ++i) {
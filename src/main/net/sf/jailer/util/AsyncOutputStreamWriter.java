@@ -0,0 +1,285 @@
+/*
+ * Copyright 2007 - 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.jailer.util;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Writer which encodes and writes the data on a dedicated thread.
+ *
+ * The written characters are collected into buffers which are passed to the writer thread
+ * via a bounded queue. If the queue is full (the file I/O can't keep up), the writing thread waits.
+ * Errors of the writer thread are reported by the next call of a write-, flush- or close-method.
+ * The writer thread stops when the writer is closed, so callers must close it (or call {@link #stop()})
+ * in a finally block.
+ *
+ * @author Ralf Wisser
+ */
+public class AsyncOutputStreamWriter extends Writer {
+
+	/**
+	 * Size (in chars) of the buffers.
+	 */
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * Maximum number of buffers waiting for the writer thread.
+	 */
+	private static final int QUEUE_CAPACITY = 16;
+
+	/**
+	 * Tells the writer thread to close the stream and to stop.
+	 */
+	private static final Object CLOSE = new Object();
+
+	/**
+	 * Buffers (or {@link CountDownLatch}s for flushing) to be processed by the writer thread.
+	 */
+	private final BlockingQueue<Object> queue = new ArrayBlockingQueue<Object>(QUEUE_CAPACITY);
+
+	/**
+	 * The writer used by the writer thread.
+	 */
+	private final OutputStreamWriter target;
+
+	private final Thread writerThread;
+	private StringBuilder buffer = new StringBuilder(BUFFER_SIZE);
+	private boolean closed = false;
+	private volatile Throwable failure = null;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param out the underlying output stream
+	 * @param charset the charset
+	 */
+	public AsyncOutputStreamWriter(OutputStream out, Charset charset) {
+		target = new OutputStreamWriter(out, charset);
+		writerThread = new Thread(new Runnable() {
+			public void run() {
+				writeQueuedBuffers();
+			}
+		}, "script-writer");
+		writerThread.setDaemon(true);
+		writerThread.start();
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param out the underlying output stream
+	 */
+	public AsyncOutputStreamWriter(OutputStream out) {
+		this(out, Charset.defaultCharset());
+	}
+
+	/**
+	 * Processes the queue until the stream is closed.
+	 */
+	private void writeQueuedBuffers() {
+		for (;;) {
+			Object item;
+			try {
+				item = queue.take();
+			} catch (InterruptedException e) {
+				// producers might wait for the queue, keep on draining it
+				continue;
+			}
+			try {
+				if (item == CLOSE) {
+					target.close();
+					return;
+				}
+				if (failure == null) {
+					if (item instanceof CountDownLatch) {
+						target.flush();
+					} else {
+						target.write((String) item);
+					}
+				}
+			} catch (Throwable t) {
+				if (failure == null) {
+					failure = t;
+				}
+			} finally {
+				if (item instanceof CountDownLatch) {
+					((CountDownLatch) item).countDown();
+				}
+			}
+		}
+	}
+
+	@Override
+	public synchronized void write(int c) throws IOException {
+		ensureOpen();
+		buffer.append((char) c);
+		if (buffer.length() >= BUFFER_SIZE) {
+			submitBuffer();
+		}
+	}
+
+	@Override
+	public synchronized void write(char[] cbuf, int off, int len) throws IOException {
+		ensureOpen();
+		buffer.append(cbuf, off, len);
+		if (buffer.length() >= BUFFER_SIZE) {
+			submitBuffer();
+		}
+	}
+
+	@Override
+	public synchronized void write(String str, int off, int len) throws IOException {
+		ensureOpen();
+		if (len >= BUFFER_SIZE) {
+			// pass large chunks without copying them
+			submitBuffer();
+			enqueue(off == 0 && len == str.length()? str : str.substring(off, off + len));
+			return;
+		}
+		buffer.append(str, off, off + len);
+		if (buffer.length() >= BUFFER_SIZE) {
+			submitBuffer();
+		}
+	}
+
+	@Override
+	public Writer append(CharSequence csq) throws IOException {
+		String str = String.valueOf(csq);
+		write(str, 0, str.length());
+		return this;
+	}
+
+	@Override
+	public Writer append(CharSequence csq, int start, int end) throws IOException {
+		return append(String.valueOf(csq).subSequence(start, end));
+	}
+
+	@Override
+	public Writer append(char c) throws IOException {
+		write(c);
+		return this;
+	}
+
+	/**
+	 * Passes the buffered data to the writer thread and waits until it's written.
+	 */
+	@Override
+	public synchronized void flush() throws IOException {
+		ensureOpen();
+		submitBuffer();
+		CountDownLatch flushed = new CountDownLatch(1);
+		enqueue(flushed);
+		try {
+			flushed.await();
+		} catch (InterruptedException e) {
+			throw new InterruptedIOException();
+		}
+		checkFailure();
+	}
+
+	/**
+	 * Writes the remaining data, closes the underlying stream and stops the writer thread.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		try {
+			try {
+				submitBuffer();
+			} finally {
+				queue.put(CLOSE);
+				writerThread.join();
+			}
+		} catch (InterruptedException e) {
+			throw new InterruptedIOException();
+		} finally {
+			closed = true;
+		}
+		checkFailure();
+	}
+
+	/**
+	 * Closes the writer after a failure. Errors are not reported (the failure
+	 * which led to this call is more significant). Does nothing if the writer is already closed.
+	 */
+	public void stop() {
+		try {
+			close();
+		} catch (IOException e) {
+			// ignore
+		}
+	}
+
+	/**
+	 * Gets the name of the character encoding being used by this writer.
+	 *
+	 * @see OutputStreamWriter#getEncoding()
+	 */
+	public String getEncoding() {
+		return target.getEncoding();
+	}
+
+	/**
+	 * Passes the buffered data to the writer thread.
+	 */
+	private void submitBuffer() throws IOException {
+		if (buffer.length() > 0) {
+			String data = buffer.toString();
+			buffer = new StringBuilder(BUFFER_SIZE);
+			enqueue(data);
+		}
+	}
+
+	/**
+	 * Puts an item into the queue, waits if the queue is full.
+	 */
+	private void enqueue(Object item) throws IOException {
+		checkFailure();
+		try {
+			queue.put(item);
+		} catch (InterruptedException e) {
+			throw new InterruptedIOException();
+		}
+	}
+
+	private void ensureOpen() throws IOException {
+		if (closed) {
+			throw new IOException("stream closed");
+		}
+		checkFailure();
+	}
+
+	private void checkFailure() throws IOException {
+		Throwable t = failure;
+		if (t != null) {
+			if (t instanceof IOException) {
+				throw (IOException) t;
+			}
+			throw new IOException(t);
+		}
+	}
+
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2007 - 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.jailer.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Scalable Bloom filter for strings. Tells whether a string is definitely not
+ * an element of a set or whether it may be an element.
+ *
+ * The filter grows with the number of elements. When the current filter is full,
+ * a four times larger one with a lower false positive probability is added.
+ *
+ * @author Ralf Wisser
+ */
+public class BloomFilter {
+
+	/**
+	 * One fixed-size filter.
+	 */
+	private static class Filter {
+		final long[] bits;
+		final int numBits;
+		final int numHashes;
+		final int capacity;
+		int size = 0;
+
+		Filter(int capacity, double falsePositiveProbability) {
+			this.capacity = capacity;
+			long m = (long) Math.ceil(-capacity * Math.log(falsePositiveProbability) / (Math.log(2) * Math.log(2)));
+			numBits = (int) Math.max(64, Math.min(m, Integer.MAX_VALUE - 64));
+			numHashes = Math.max(1, (int) Math.round((double) numBits / capacity * Math.log(2)));
+			bits = new long[(numBits + 63) / 64];
+		}
+
+		boolean mightContain(long hash) {
+			int h1 = (int) hash;
+			int h2 = (int) (hash >>> 32);
+			for (int i = 0; i < numHashes; ++i) {
+				int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % numBits;
+				if ((bits[bit >>> 6] & (1L << bit)) == 0) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		void add(long hash) {
+			int h1 = (int) hash;
+			int h2 = (int) (hash >>> 32);
+			for (int i = 0; i < numHashes; ++i) {
+				int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % numBits;
+				bits[bit >>> 6] |= 1L << bit;
+			}
+			++size;
+		}
+	}
+
+	/**
+	 * The filters, the last one is the one to add elements to.
+	 */
+	private final List<Filter> filters = new ArrayList<Filter>();
+
+	/**
+	 * False positive probability of the next filter to be added.
+	 */
+	private double falsePositiveProbability;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param initialCapacity number of elements the filter is initially designed for
+	 * @param falsePositiveProbability the overall false positive probability
+	 */
+	public BloomFilter(int initialCapacity, double falsePositiveProbability) {
+		// the probabilities of the filters sum up to the overall probability
+		this.falsePositiveProbability = falsePositiveProbability / 2;
+		filters.add(new Filter(initialCapacity, this.falsePositiveProbability));
+	}
+
+	/**
+	 * Checks whether the set may contain a string.
+	 *
+	 * @param element the string
+	 * @return <code>false</code> if the set definitely doesn't contain the string
+	 */
+	public synchronized boolean mightContain(String element) {
+		return mightContain(hash(element));
+	}
+
+	/**
+	 * Adds a string to the set.
+	 *
+	 * @param element the string
+	 * @return <code>true</code> if the set definitely didn't contain the string before
+	 */
+	public synchronized boolean add(String element) {
+		long hash = hash(element);
+		if (mightContain(hash)) {
+			return false;
+		}
+		Filter filter = filters.get(filters.size() - 1);
+		if (filter.size >= filter.capacity) {
+			falsePositiveProbability /= 2;
+			filter = new Filter((int) Math.min(Integer.MAX_VALUE / 4, 4L * filter.capacity), falsePositiveProbability);
+			filters.add(filter);
+		}
+		filter.add(hash);
+		return true;
+	}
+
+	private boolean mightContain(long hash) {
+		for (Filter filter: filters) {
+			if (filter.mightContain(hash)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * 64-bit FNV-1a hash with a final avalanche.
+	 */
+	private static long hash(String element) {
+		long h = 0xcbf29ce484222325L;
+		for (int i = 0; i < element.length(); ++i) {
+			h ^= element.charAt(i);
+			h *= 0x100000001b3L;
+		}
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+}
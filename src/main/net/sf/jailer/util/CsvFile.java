@@ -100,6 +100,11 @@ public class CsvFile {
      */
     private List<Line> rows = new ArrayList<Line>();
     
+    /**
+     * The files read (the csv file and the included ones).
+     */
+    private List<File> files = new ArrayList<File>();
+    
     /**
      * Indicates start of block inside a CSV file.
      */
@@ -140,6 +145,7 @@ public class CsvFile {
      * @param block the block to read, <code>null</code> to read default block
      */
     public CsvFile(File csvFile, String block, LineFilter filter) throws Exception {
+        files.add(csvFile);
         BufferedReader reader = new BufferedReader(new FileReader(csvFile));
         String line = null;
         int lineNr = 0;
@@ -159,7 +165,9 @@ public class CsvFile {
             }
             if (line.trim().startsWith("#include ")) {
                 String includeFile = line.trim().substring(9).trim();
-                rows.addAll(new CsvFile(new File(csvFile.getParent() + File.separator + includeFile)).rows);
+                CsvFile included = new CsvFile(new File(csvFile.getParent() + File.separator + includeFile));
+                rows.addAll(included.rows);
+                files.addAll(included.files);
                 continue;
             }
             if (line.trim().startsWith("#")) {
@@ -256,6 +264,15 @@ public class CsvFile {
         return rows;
     }
 
+    /**
+     * Gets the files read, the csv file and the included ones.
+     * 
+     * @return the files read
+     */
+    public List<File> getFiles() {
+        return files;
+    }
+
     /**
      * Checks if a certain line can be found in this file.
      * 
@@ -0,0 +1,192 @@
+/*
+ * Copyright 2007 - 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.jailer.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Progress of the import of a SQL-script, persisted in a side file
+ * (script name + ".checkpoint") so that an interrupted import can be resumed.
+ *
+ * Positions are line numbers of the script. All statements ending at or before
+ * the committed line are committed. Statements executed concurrently may have
+ * been committed out of order, those are recorded as additional line ranges.
+ *
+ * @author Ralf Wisser
+ */
+public class ImportCheckpoint {
+
+	/**
+	 * The logger.
+	 */
+	private static final Logger _log = Logger.getLogger(ImportCheckpoint.class);
+
+	/**
+	 * The script.
+	 */
+	private final File script;
+
+	/**
+	 * The checkpoint file.
+	 */
+	private final File file;
+
+	/**
+	 * All statements ending at or before this line are committed.
+	 */
+	private long committedLine = 0;
+
+	/**
+	 * Ranges (first line, last line) of statements committed after the committed line.
+	 */
+	private List<long[]> committedRanges = new ArrayList<long[]>();
+
+	/**
+	 * Constructor.
+	 *
+	 * @param script the script
+	 */
+	public ImportCheckpoint(File script) {
+		this.script = script;
+		this.file = new File(script.getPath() + ".checkpoint");
+	}
+
+	/**
+	 * Reads the checkpoint of an interrupted import.
+	 *
+	 * @return <code>false</code> if there is no checkpoint
+	 */
+	public boolean read() throws IOException {
+		if (!file.exists()) {
+			return false;
+		}
+		Properties properties = new Properties();
+		InputStream in = new FileInputStream(file);
+		try {
+			properties.load(in);
+		} finally {
+			in.close();
+		}
+		if (!String.valueOf(script.length()).equals(properties.getProperty("size"))
+		 || !String.valueOf(script.lastModified()).equals(properties.getProperty("modified"))) {
+			throw new RuntimeException("script '" + script + "' has been modified since checkpoint '" + file + "' was written");
+		}
+		committedLine = Long.parseLong(properties.getProperty("line", "0"));
+		committedRanges.clear();
+		String ranges = properties.getProperty("ranges", "").trim();
+		if (ranges.length() > 0) {
+			for (String range: ranges.split(",")) {
+				int i = range.indexOf('-');
+				committedRanges.add(new long[] { Long.parseLong(range.substring(0, i).trim()), Long.parseLong(range.substring(i + 1).trim()) });
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Checks whether a statement is committed.
+	 *
+	 * @param firstLine first line of the statement
+	 * @param lastLine last line of the statement
+	 */
+	public boolean isCommitted(long firstLine, long lastLine) {
+		if (lastLine <= committedLine) {
+			return true;
+		}
+		for (long[] range: committedRanges) {
+			if (range[0] <= firstLine && lastLine <= range[1]) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Gets the line up to which all statements are committed.
+	 */
+	public long getCommittedLine() {
+		return committedLine;
+	}
+
+	/**
+	 * Writes the checkpoint. Failures are logged, the import goes on.
+	 *
+	 * @param line all statements ending at or before this line are committed
+	 * @param ranges ranges (first line, last line) of statements committed after line
+	 */
+	public void write(long line, List<long[]> ranges) {
+		List<long[]> newRanges = new ArrayList<long[]>();
+		// statements skipped on resume are not executed again, keep their ranges
+		for (long[] range: committedRanges) {
+			if (range[1] > line) {
+				newRanges.add(range);
+			}
+		}
+		for (long[] range: ranges) {
+			if (range[1] > line) {
+				newRanges.add(range);
+			}
+		}
+		committedLine = Math.max(committedLine, line);
+		committedRanges = newRanges;
+
+		StringBuilder rangesProperty = new StringBuilder();
+		for (long[] range: committedRanges) {
+			if (rangesProperty.length() > 0) {
+				rangesProperty.append(",");
+			}
+			rangesProperty.append(range[0] + "-" + range[1]);
+		}
+		Properties properties = new Properties();
+		properties.setProperty("script", script.getPath());
+		properties.setProperty("size", String.valueOf(script.length()));
+		properties.setProperty("modified", String.valueOf(script.lastModified()));
+		properties.setProperty("line", String.valueOf(committedLine));
+		properties.setProperty("ranges", rangesProperty.toString());
+		try {
+			File tmp = new File(file.getPath() + ".tmp");
+			OutputStream out = new FileOutputStream(tmp);
+			try {
+				properties.store(out, "Jailer import checkpoint, use -resume to continue the import");
+			} finally {
+				out.close();
+			}
+			if (!tmp.renameTo(file) && !(file.delete() && tmp.renameTo(file))) {
+				throw new IOException("can't rename '" + tmp + "' to '" + file + "'");
+			}
+		} catch (IOException e) {
+			_log.warn("can't write checkpoint: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Deletes the checkpoint after the import is completed.
+	 */
+	public void delete() {
+		file.delete();
+	}
+
+}
@@ -17,14 +17,24 @@ package net.sf.jailer.util;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.log4j.Logger;
 
 /**
  * Executes a job-list in a concurrent way.
- *  
+ *
  * @author wisser
  */
 public class JobManager {
@@ -33,7 +43,7 @@ public class JobManager {
      * A job to be managed by a {@link JobManager}.
      */
     public interface Job {
-        
+
         /**
          * Runs the job.
          */
@@ -46,213 +56,324 @@ public class JobManager {
     private static final Logger _log = Logger.getLogger(JobManager.class);
 
     /**
-     * The runners list.
+     * Number of threads.
      */
-    private final List<JobRunner> runnersList;
-    
+    private final int threads;
+
     /**
-     * Thread for executing jobs.
+     * Executes the jobs, <code>null</code> if there is only one thread.
      */
-    private class JobRunner implements Runnable {
+    private final ExecutorService executor;
 
-        /**
-         * For shutting down the runner.
-         */
-        private boolean isRunning = true;
-        
-        /**
-         * Shuts the runner down.
-         */
-        public synchronized void shutdown() {
-            isRunning = false;
-        }
+    /**
+     * Execution times (in ms) of the jobs of the last job-list, <code>null</code> for jobs not executed.
+     */
+    private List<Long> jobTimes = new ArrayList<Long>();
 
-        /**
-         * Still running?
-         */
-        public synchronized boolean isRunning() {
-            return isRunning;
-        }
-        
-        /**
-         * Executes jobs.
-         */
-        public void run() {
-            _log.debug("start up");
-            while (isRunning()) {
-                Job job = nextJob();
-                if (job == null) {
-                    try {
-                        Thread.sleep(200);
-                    } catch (InterruptedException e) {
-                    }
-                } else {
-                    try {
-                        incrementJobsInExecutionCounter();
-                        job.run();
-                        incrementJobsDoneCounter();
-                    } catch (Exception e) {
-                        setException(e);
-                    } finally {
-                        decrementJobsInExecutionCounter();
-                    }
-                }
-            }
-            _log.debug("shutting down");
-        }
-    }
-    
     /**
      * Constructor.
-     * 
+     *
      * @param threads number of threads
      */
     public JobManager(int threads) {
-        runnersList = new ArrayList<JobRunner>(threads);
-        for (int i = 0; i < threads; ++i) {
-            JobRunner jobRunner = new JobRunner();
-            runnersList.add(jobRunner);
-            String threadName = "job-runner " + (i + 1);
-            _log.debug("starting " + threadName);
-            Thread thread = new Thread(jobRunner, threadName);
-            thread.setDaemon(true);
-            thread.start();
-        }
+    	this(threads, false);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param threads number of threads
+     * @param virtualThreads use virtual threads if the JVM supports them
+     */
+    public JobManager(int threads, boolean virtualThreads) {
+    	this.threads = threads;
+    	if (threads > 1) {
+    		ThreadFactory threadFactory = null;
+    		if (virtualThreads) {
+    			threadFactory = createVirtualThreadFactory();
+    		}
+    		if (threadFactory == null) {
+    			threadFactory = new ThreadFactory() {
+    				private final AtomicInteger number = new AtomicInteger(0);
+    				public Thread newThread(Runnable runnable) {
+    					String threadName = "job-runner " + number.incrementAndGet();
+    					_log.debug("starting " + threadName);
+    					Thread thread = new Thread(runnable, threadName);
+    					thread.setDaemon(true);
+    					return thread;
+    				}
+    			};
+    		}
+    		executor = Executors.newFixedThreadPool(threads, threadFactory);
+    	} else {
+    		executor = null;
+    	}
+    }
+
+    /**
+     * Creates a factory for virtual threads (Java 21+).
+     *
+     * @return the factory or <code>null</code> if the JVM doesn't support virtual threads
+     */
+    private static ThreadFactory createVirtualThreadFactory() {
+    	try {
+    		Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+    		builder = Class.forName("java.lang.Thread$Builder").getMethod("name", String.class, long.class).invoke(builder, "job-runner ", 1L);
+    		return (ThreadFactory) Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(builder);
+    	} catch (Exception e) {
+    		_log.info("virtual threads not supported, using platform threads");
+    		return null;
+    	}
     }
 
     /**
      * Executes a list of jobs.
-     * 
+     *
      * @param jobs the job-list
      * @throws Exception exception thrown during job-execution
      */
     public void executeJobs(Collection<Job> jobs) throws Exception {
-        int jobCount = jobs.size();
-        _log.info("starting " + jobCount + " jobs");
-        if (runnersList.size() == 1) {
-        	for (Job job: jobs) {
-        		job.run();
-        	}
-        } else {
-	        setJobs(new LinkedList<Job>(jobs));
-	        while (getJobsDoneCounter() < jobCount || getJobsInExecutionCounter() > 0) {
-	            Thread.sleep(100);
-	            Exception e = getException();
-	            if (e != null) {
-	            	if (!(e instanceof CancellationException)) {
-	            		_log.error("Job-error", e);
-	            	}
-	                // wait for other jobs
-	                while (getJobsInExecutionCounter() > 0) {
-	                    Thread.sleep(50);
-	                }
-	                throw e;
-	            }
-	        }
-        }
-        _log.info("executed " + jobCount + " jobs");
+    	execute(jobs, false);
     }
-    
+
     /**
-     * Shuts the manager down.
+     * Executes a list of jobs. The jobs may add follow-up jobs using {@link #addFollowUpJob(Job)}.
+     * Returns after all jobs, including the follow-up jobs, are done.
+     *
+     * @param jobs the job-list
+     * @throws Exception exception thrown during job-execution
      */
-    public void shutdown() {
-        for (int i = 0; i < runnersList.size(); ++i) {
-            String threadName = "job-runner " + (i + 1);
-            _log.debug("shutting down " + threadName);
-            runnersList.get(i).shutdown();
-        }
+    public void executeJobsAndFollowUps(Collection<Job> jobs) throws Exception {
+    	execute(jobs, true);
     }
-    
+
     /**
-     * Number of executed jobs.
+     * Adds a follow-up job. Must only be called by jobs executed by {@link #executeJobsAndFollowUps(Collection)}.
+     *
+     * @param job the job
      */
-    private int jobsDoneCounter;
-    
+    public synchronized void addFollowUpJob(Job job) {
+    	if (!acceptsFollowUpJobs) {
+    		throw new IllegalStateException("no follow-up jobs accepted");
+    	}
+    	if (failed) {
+    		return;
+    	}
+    	if (executor == null) {
+    		queue.add(job);
+    	} else {
+    		submit(job);
+    	}
+    }
+
     /**
-     * Number of jobs currently executed.
+     * Whether the current job-list accepts follow-up jobs.
      */
-    private int jobsInExecutionCounter;
-    
+    private boolean acceptsFollowUpJobs;
+
     /**
-     * The job-list.
+     * Whether a job of the current job-list has failed.
      */
-    private List<Job> jobs;
+    private boolean failed;
 
     /**
-     * Exception during job-execution.
+     * Jobs not yet executed (if there is only one thread).
      */
-    private Exception exception;
+    private LinkedList<Job> queue;
 
     /**
-     * Sets the job-list.
-     * Resets the job-counter to 0.
+     * Executes the submitted jobs (if there is more than one thread).
      */
-    private synchronized void setJobs(List<Job> jobs) {
-        jobsDoneCounter = 0;
-        jobsInExecutionCounter = 0;
-        this.jobs = jobs;
-        exception = null;
-    }
+    private CompletionService<Void> completionService;
 
     /**
-     * Gets the Number of executed jobs.
+     * Futures of all submitted jobs.
      */
-    private synchronized int getJobsDoneCounter() {
-        return jobsDoneCounter;
-    }
+    private List<Future<Void>> futures;
 
     /**
-     * Increments the Number of executed jobs.
+     * Number of submitted jobs which are not completed yet.
      */
-    private synchronized void incrementJobsDoneCounter() {
-        ++jobsDoneCounter;
-    }
+    private int pending;
 
     /**
-     * Gets the Number of jobs currently executed.
+     * Executes a list of jobs.
+     *
+     * @param jobs the job-list
+     * @param acceptFollowUpJobs whether the jobs may add follow-up jobs
      */
-    private synchronized int getJobsInExecutionCounter() {
-        return jobsInExecutionCounter;
+    private void execute(Collection<Job> jobs, boolean acceptFollowUpJobs) throws Exception {
+        _log.info("starting " + jobs.size() + " jobs");
+        long startTime = System.currentTimeMillis();
+        synchronized (this) {
+        	this.acceptsFollowUpJobs = acceptFollowUpJobs;
+        	this.failed = false;
+        	this.jobTimes = new ArrayList<Long>();
+        }
+        try {
+	        if (executor == null) {
+	        	synchronized (this) {
+	        		queue = new LinkedList<Job>(jobs);
+	        	}
+	        	while (true) {
+	        		Job job;
+	        		int jobNumber;
+	        		synchronized (this) {
+	        			if (queue.isEmpty()) {
+	        				break;
+	        			}
+	        			job = queue.removeFirst();
+	        			jobNumber = jobTimes.size();
+	        			jobTimes.add(null);
+	        		}
+	        		long jobStartTime = System.currentTimeMillis();
+	        		job.run();
+	        		setJobTime(jobNumber, System.currentTimeMillis() - jobStartTime);
+	        	}
+	        } else {
+	        	synchronized (this) {
+	        		completionService = new ExecutorCompletionService<Void>(executor);
+	        		futures = new ArrayList<Future<Void>>();
+	        		pending = 0;
+		        	for (Job job: jobs) {
+		        		submit(job);
+		        	}
+	        	}
+	        	waitForCompletion();
+	        }
+        } finally {
+        	synchronized (this) {
+        		acceptsFollowUpJobs = false;
+        		queue = null;
+        		completionService = null;
+        		futures = null;
+        	}
+        }
+        long jobTime = 0;
+        int jobCount;
+        synchronized (this) {
+        	for (Long time: jobTimes) {
+        		if (time != null) {
+        			jobTime += time;
+        		}
+        	}
+        	jobCount = jobTimes.size();
+        }
+        _log.info("executed " + jobCount + " jobs in " + (System.currentTimeMillis() - startTime) + " ms (" + jobTime + " ms job-time on " + threads + " threads)");
     }
 
     /**
-     * Increments the Number of jobs currently executed.
+     * Submits a job to the executor.
+     *
+     * @param job the job
      */
-    private synchronized void incrementJobsInExecutionCounter() {
-        ++jobsInExecutionCounter;
+    private synchronized void submit(final Job job) {
+    	final int jobNumber = jobTimes.size();
+    	jobTimes.add(null);
+    	++pending;
+    	futures.add(completionService.submit(new Callable<Void>() {
+			public Void call() throws Exception {
+				long jobStartTime = System.currentTimeMillis();
+				try {
+					job.run();
+				} catch (CancellationException e) {
+					throw e;
+				} catch (Exception e) {
+					throw new RuntimeException(Thread.currentThread().getName() + " failed", e);
+				}
+				setJobTime(jobNumber, System.currentTimeMillis() - jobStartTime);
+				return null;
+			}
+		}));
     }
 
     /**
-     * Decrements the Number of jobs currently executed.
+     * Waits until all submitted jobs are completed or one of them has failed.
      */
-    private synchronized void decrementJobsInExecutionCounter() {
-        --jobsInExecutionCounter;
+    private void waitForCompletion() throws Exception {
+    	CompletionService<Void> completionService;
+    	synchronized (this) {
+    		completionService = this.completionService;
+    	}
+    	try {
+    		while (true) {
+    			synchronized (this) {
+    				if (pending == 0) {
+    					break;
+    				}
+    			}
+    			Future<Void> future = completionService.take();
+    			synchronized (this) {
+    				--pending;
+    			}
+    			try {
+    				future.get();
+    			} catch (ExecutionException e) {
+    				Throwable cause = e.getCause();
+    				if (!(cause instanceof CancellationException)) {
+    					_log.error("Job-error", cause);
+    				}
+    				// don't start pending jobs, wait for running ones
+    				List<Future<Void>> submitted;
+    				synchronized (this) {
+    					failed = true;
+    					submitted = new ArrayList<Future<Void>>(futures);
+    				}
+    				for (Future<Void> f: submitted) {
+    					f.cancel(false);
+    				}
+    				for (Future<Void> f: submitted) {
+    					if (!f.isCancelled()) {
+    						try {
+    							f.get();
+    						} catch (ExecutionException e2) {
+    							// first exception wins
+    						}
+    					}
+    				}
+    				if (cause instanceof Exception) {
+    					throw (Exception) cause;
+    				}
+    				throw new RuntimeException(cause);
+    			}
+    		}
+    	} catch (InterruptedException e) {
+    		List<Future<Void>> submitted;
+    		synchronized (this) {
+    			failed = true;
+    			submitted = new ArrayList<Future<Void>>(futures);
+    		}
+    		for (Future<Void> f: submitted) {
+    			f.cancel(true);
+    		}
+    		throw e;
+    	}
     }
 
     /**
-     * Gets the exception.
+     * Sets the execution time of a job.
      */
-    private synchronized Exception getException() {
-        return exception;
+    private synchronized void setJobTime(int jobNumber, long time) {
+    	jobTimes.set(jobNumber, time);
     }
-    
+
     /**
-     * Gets next job.
+     * Gets the execution times of the jobs of the last job-list.
+     *
+     * @return execution time (in ms) of each job, in order of the job-list
      */
-    private synchronized Job nextJob() {
-        if (jobs != null && !jobs.isEmpty()) {
-            return jobs.remove(0);
-        }
-        return null;
+    public synchronized List<Long> getJobTimes() {
+    	return Collections.unmodifiableList(new ArrayList<Long>(jobTimes));
     }
-    
+
     /**
-     * Sets an exception.
+     * Shuts the manager down.
      */
-    private synchronized void setException(Exception e) {
-        exception = e == null? null : e instanceof CancellationException? e : new RuntimeException(Thread.currentThread().getName() + " failed", e);
-        jobs = null;
+    public void shutdown() {
+    	if (executor != null) {
+    		_log.debug("shutting down job-runners");
+    		executor.shutdown();
+    	}
     }
-    
+
 }
@@ -0,0 +1,255 @@
+/*
+ * Copyright 2007 - 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.jailer.util;
+
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.text.DateFormat;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.UUID;
+
+import net.sf.jailer.Configuration;
+import net.sf.jailer.database.DBMS;
+import net.sf.jailer.database.Session;
+
+/**
+ * Converts cell-contents to SQL-literals according to the {@link Configuration} of a DBMS.
+ *
+ * Immutable and thread-safe without locking, the configured date formats are cloned per thread.
+ *
+ * @author Ralf Wisser
+ */
+public final class LiteralFormatter {
+
+	/**
+	 * Formatter for sessions without DBMS specific configuration.
+	 */
+	private static final LiteralFormatter defaultFormatter = new LiteralFormatter(Configuration.forDbms(null));
+
+	/**
+	 * Calendar for rendering the default date and time stamp formats.
+	 */
+	private static final ThreadLocal<Calendar> calendar = new ThreadLocal<Calendar>() {
+		@Override
+		protected Calendar initialValue() {
+			return Calendar.getInstance();
+		}
+	};
+
+	/**
+	 * All hex digits.
+	 */
+	private static final char[] hexChar = new char[] { '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f' };
+
+	private final Configuration c;
+	private final String ncharPrefix;
+	private final boolean identityInserts;
+	private final ThreadLocal<DateFormat> dateFormat;
+	private final ThreadLocal<DateFormat> timestampFormat;
+
+	/**
+	 * Gets the formatter for a session.
+	 *
+	 * @param session the session, may be <code>null</code>
+	 * @return the formatter
+	 */
+	public static LiteralFormatter forSession(Session session) {
+		if (session == null) {
+			return defaultFormatter;
+		}
+		return session.getLiteralFormatter();
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param configuration the DBMS specific configuration
+	 */
+	public LiteralFormatter(Configuration configuration) {
+		this.c = configuration;
+		this.ncharPrefix = configuration.getNcharPrefix() == null? "" : configuration.getNcharPrefix();
+		this.identityInserts = configuration.isIdentityInserts();
+		this.dateFormat = perThread(configuration.dateFormat);
+		this.timestampFormat = perThread(configuration.timestampFormat);
+	}
+
+	private static ThreadLocal<DateFormat> perThread(final DateFormat format) {
+		if (format == null) {
+			return null;
+		}
+		return new ThreadLocal<DateFormat>() {
+			@Override
+			protected DateFormat initialValue() {
+				synchronized (format) {
+					return (DateFormat) format.clone();
+				}
+			}
+		};
+	}
+
+	/**
+	 * Converts a cell-content to valid SQL-literal.
+	 *
+	 * @param content the content
+	 * @return the SQL-literal
+	 */
+	public String toSql(Object content) {
+		if (content == null) {
+			return "null";
+		}
+
+		if (content instanceof java.sql.Date) {
+			if (c.useToTimestampFunction) {
+				StringBuilder sb = new StringBuilder(40);
+				sb.append("to_date('");
+				appendDate(sb, (Date) content, false);
+				return sb.append("', 'YYYY-MM-DD')").toString();
+			}
+			if (dateFormat != null) {
+				return "'" + dateFormat.get().format((Date) content) + "'";
+			}
+			return "'" + content + "'";
+		}
+		if (content instanceof Timestamp) {
+			if (c.useToTimestampFunction) {
+				StringBuilder sb = new StringBuilder(80);
+				sb.append("to_timestamp('");
+				appendDate(sb, (Date) content, true);
+				String nanoString = getNanoString((Timestamp) content, c.appendNanosToTimestamp, c.nanoSep);
+				sb.append(nanoString);
+				return sb.append("', 'YYYY-MM-DD HH24.MI.SS.FF").append(nanoString.length() - 1).append("')").toString();
+			} else if (timestampFormat != null) {
+				String format = timestampFormat.get().format((Date) content);
+				if (c.appendMillisToTimestamp) {
+					format += getNanoString((Timestamp) content, c.appendNanosToTimestamp, c.nanoSep);
+				}
+				content = format;
+			}
+			if (c.timestampPattern != null) {
+				return c.timestampPattern.replace("%s", "'" + content + "'");
+			}
+			return "'" + content + "'";
+		}
+		if (content instanceof SqlUtil.NCharWrapper) {
+			return ncharPrefix + "'" + c.convertToStringLiteral(content.toString()) + "'";
+		}
+		if (content instanceof String) {
+			return "'" + c.convertToStringLiteral((String) content) + "'";
+		}
+		if (content instanceof SqlUtil.HStoreWrapper) {
+			return "'" + c.convertToStringLiteral(content.toString()) + "'::hstore";
+		}
+		if (content instanceof byte[]) {
+			byte[] data = (byte[]) content;
+			StringBuilder hex = new StringBuilder((data.length + 1) * 2);
+			for (byte b: data) {
+				hex.append(hexChar[(b >> 4) & 15]);
+				hex.append(hexChar[b & 15]);
+			}
+			return c.binaryPattern.replace("%s", hex);
+		}
+		if (content instanceof Time) {
+			return "'" + content + "'";
+		}
+		DBMS dbms = SqlUtil.dbms;
+		if (dbms == DBMS.POSTGRESQL) {
+			if (content.getClass().getName().endsWith(".PGobject")) {
+				// PostgreSQL bit values
+				return "B'" + content + "'";
+			}
+		}
+		if (content instanceof UUID) {
+			if (dbms == DBMS.POSTGRESQL) {
+				return "'" + content + "'::uuid";
+			}
+			return "'" + content + "'";
+		}
+		if (identityInserts) {
+			// Boolean mapping for MSSQL/Sybase
+			if (content instanceof Boolean) {
+				content = Boolean.TRUE.equals(content)? "1" : "0";
+			}
+		}
+		return content.toString();
+	}
+
+	/**
+	 * Appends a date in format "yyyy-MM-dd" or "yyyy-MM-dd HH.mm.ss".
+	 */
+	private static void appendDate(StringBuilder sb, Date date, boolean withTime) {
+		Calendar cal = calendar.get();
+		cal.setTime(date);
+		int year = cal.get(Calendar.YEAR);
+		if (year < 1000) {
+			appendDigits(sb, year, 4);
+		} else {
+			sb.append(year);
+		}
+		sb.append('-');
+		appendDigits(sb, cal.get(Calendar.MONTH) + 1, 2);
+		sb.append('-');
+		appendDigits(sb, cal.get(Calendar.DAY_OF_MONTH), 2);
+		if (withTime) {
+			sb.append(' ');
+			appendDigits(sb, cal.get(Calendar.HOUR_OF_DAY), 2);
+			sb.append('.');
+			appendDigits(sb, cal.get(Calendar.MINUTE), 2);
+			sb.append('.');
+			appendDigits(sb, cal.get(Calendar.SECOND), 2);
+		}
+	}
+
+	private static void appendDigits(StringBuilder sb, int value, int digits) {
+		for (int d = digits - 1, m = 1; d > 0; --d) {
+			m *= 10;
+			if (value < m) {
+				for (int i = 0; i < d; ++i) {
+					sb.append('0');
+				}
+				break;
+			}
+		}
+		sb.append(value);
+	}
+
+	/**
+	 * Gets nano string suffix of a timestamp.
+	 *
+	 * @param timestamp the timestamp
+	 * @param full <code>false</code> for milliseconds only
+	 * @param nanoSep separator
+	 */
+	private static String getNanoString(Timestamp timestamp, boolean full, char nanoSep) {
+		int nanos = timestamp.getNanos();
+		char[] chars = new char[10];
+		chars[0] = nanoSep;
+		for (int i = 9; i > 0; --i) {
+			chars[i] = (char) ('0' + nanos % 10);
+			nanos /= 10;
+		}
+		// Truncate trailing zeros
+		int length = 9;
+		while (length > 1 && chars[length] == '0') {
+			--length;
+		}
+		if (!full && length > 3) {
+			length = 3;
+		}
+		return new String(chars, 0, length + 1);
+	}
+
+}
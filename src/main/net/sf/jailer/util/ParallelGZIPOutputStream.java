@@ -0,0 +1,255 @@
+/*
+ * Copyright 2007 - 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.jailer.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes data in GZIP format, compressing blocks of data concurrently.
+ *
+ * The blocks are deflated independently (using the tail of the preceding block as
+ * dictionary) and are concatenated to a single GZIP member, which
+ * can be read with {@link java.util.zip.GZIPInputStream}.
+ *
+ * @author Ralf Wisser
+ */
+public class ParallelGZIPOutputStream extends FilterOutputStream {
+
+	/**
+	 * Default size of the blocks.
+	 */
+	public static final int DEFAULT_BLOCK_SIZE = 128 * 1024;
+
+	/**
+	 * Size of the deflate window.
+	 */
+	private static final int DICTIONARY_SIZE = 32 * 1024;
+
+	private final ExecutorService executor;
+	private final int threads;
+	private final int blockSize;
+
+	/**
+	 * Compressed blocks (in order), not yet written.
+	 */
+	private final LinkedList<Future<byte[]>> pending = new LinkedList<Future<byte[]>>();
+
+	private final CRC32 crc = new CRC32();
+	private byte[] block;
+	private int blockLength = 0;
+	private byte[] dictionary = null;
+	private long size = 0;
+	private boolean closed = false;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param out the underlying output stream
+	 * @param threads number of compressing threads
+	 * @param blockSize size of the blocks which are compressed independently
+	 */
+	public ParallelGZIPOutputStream(OutputStream out, int threads, int blockSize) throws IOException {
+		super(out);
+		this.threads = Math.max(1, threads);
+		this.blockSize = Math.max(DICTIONARY_SIZE, blockSize);
+		this.block = new byte[this.blockSize];
+		executor = Executors.newFixedThreadPool(this.threads, new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "gzip");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		writeHeader();
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param out the underlying output stream
+	 */
+	public ParallelGZIPOutputStream(OutputStream out) throws IOException {
+		this(out, Runtime.getRuntime().availableProcessors(), DEFAULT_BLOCK_SIZE);
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		write(new byte[] { (byte) b }, 0, 1);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		if (closed) {
+			throw new IOException("stream closed");
+		}
+		crc.update(b, off, len);
+		size += len;
+		while (len > 0) {
+			int n = Math.min(len, blockSize - blockLength);
+			System.arraycopy(b, off, block, blockLength, n);
+			blockLength += n;
+			off += n;
+			len -= n;
+			if (blockLength == blockSize) {
+				submitBlock(false);
+			}
+		}
+	}
+
+	/**
+	 * Submits the current block for compression.
+	 *
+	 * @param last <code>true</code> if it's the last block
+	 */
+	private void submitBlock(final boolean last) throws IOException {
+		final byte[] data = block;
+		final int length = blockLength;
+		final byte[] dict = dictionary;
+		if (length >= DICTIONARY_SIZE) {
+			dictionary = new byte[DICTIONARY_SIZE];
+			System.arraycopy(data, length - DICTIONARY_SIZE, dictionary, 0, DICTIONARY_SIZE);
+		} else {
+			dictionary = null;
+		}
+		pending.add(executor.submit(new Callable<byte[]>() {
+			public byte[] call() {
+				return deflate(data, length, dict, last);
+			}
+		}));
+		block = new byte[blockSize];
+		blockLength = 0;
+		while (pending.size() > 2 * threads) {
+			writeCompressedBlock();
+		}
+	}
+
+	/**
+	 * Deflates a block.
+	 */
+	private static byte[] deflate(byte[] data, int length, byte[] dictionary, boolean last) {
+		Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+		try {
+			if (dictionary != null) {
+				deflater.setDictionary(dictionary);
+			}
+			deflater.setInput(data, 0, length);
+			ByteArrayOutputStream result = new ByteArrayOutputStream(length / 2 + 64);
+			byte[] buffer = new byte[64 * 1024];
+			if (last) {
+				deflater.finish();
+				while (!deflater.finished()) {
+					int n = deflater.deflate(buffer);
+					result.write(buffer, 0, n);
+				}
+			} else {
+				// ends with an empty stored block on a byte boundary, so the next block can be appended
+				int n;
+				do {
+					n = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+					result.write(buffer, 0, n);
+				} while (n == buffer.length);
+			}
+			return result.toByteArray();
+		} finally {
+			deflater.end();
+		}
+	}
+
+	/**
+	 * Writes the first pending block.
+	 */
+	private void writeCompressedBlock() throws IOException {
+		try {
+			out.write(pending.removeFirst().get());
+		} catch (InterruptedException e) {
+			throw new InterruptedIOException();
+		} catch (ExecutionException e) {
+			throw new IOException(e.getCause());
+		}
+	}
+
+	/**
+	 * Writes the GZIP header.
+	 */
+	private void writeHeader() throws IOException {
+		out.write(new byte[] {
+				(byte) 0x1f, (byte) 0x8b, // magic number
+				Deflater.DEFLATED,        // compression method
+				0,                        // flags
+				0, 0, 0, 0,               // modification time
+				0,                        // extra flags
+				(byte) 0xff               // operating system (unknown)
+		});
+	}
+
+	/**
+	 * Writes the GZIP trailer.
+	 */
+	private void writeTrailer() throws IOException {
+		long checksum = crc.getValue();
+		out.write(new byte[] {
+				(byte) checksum, (byte) (checksum >> 8), (byte) (checksum >> 16), (byte) (checksum >> 24),
+				(byte) size, (byte) (size >> 8), (byte) (size >> 16), (byte) (size >> 24)
+		});
+	}
+
+	/**
+	 * Writes all blocks submitted so far. The current block is not complete and therefore not flushed.
+	 */
+	@Override
+	public void flush() throws IOException {
+		while (!pending.isEmpty()) {
+			writeCompressedBlock();
+		}
+		out.flush();
+	}
+
+	/**
+	 * Compresses the remaining data, writes the trailer and closes the underlying stream.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		try {
+			submitBlock(true);
+			while (!pending.isEmpty()) {
+				writeCompressedBlock();
+			}
+			writeTrailer();
+			out.flush();
+		} finally {
+			executor.shutdownNow();
+			out.close();
+		}
+	}
+
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2007 - 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.jailer.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.log4j.Logger;
+
+/**
+ * A file written in segments. Each segment is a temporary file which can
+ * be written independently of the other segments. At the end, the segments are
+ * joined in the order of their creation.
+ *
+ * Compressed segments are joined to a multi-member GZIP file.
+ *
+ * @author Ralf Wisser
+ */
+public class ScriptSegments {
+
+	/**
+	 * The logger.
+	 */
+	private static final Logger _log = Logger.getLogger(ScriptSegments.class);
+
+	private final File file;
+	private final boolean compress;
+	private final Charset charset;
+
+	/**
+	 * The segments in order of creation.
+	 */
+	private final List<Segment> segments = new ArrayList<Segment>();
+	private final List<OutputStreamWriter> segmentWriters = new ArrayList<OutputStreamWriter>();
+
+	/**
+	 * A segment. The file is created when the first byte is written,
+	 * so that segments of tables without rows cost nothing.
+	 */
+	private class Segment extends OutputStream {
+		private File segmentFile;
+		private OutputStream out;
+		private boolean closed = false;
+
+		private OutputStream out() throws IOException {
+			if (out == null) {
+				if (closed) {
+					throw new IOException("segment closed");
+				}
+				File dir = file.getAbsoluteFile().getParentFile();
+				segmentFile = File.createTempFile(file.getName() + ".", ".segment", dir);
+				segmentFile.deleteOnExit();
+				out = new FileOutputStream(segmentFile);
+				if (compress) {
+					out = new GZIPOutputStream(out);
+				}
+			}
+			return out;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			out().write(b);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			if (len > 0) {
+				out().write(b, off, len);
+			}
+		}
+
+		@Override
+		public void flush() throws IOException {
+			if (out != null) {
+				out.flush();
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			closed = true;
+			if (out != null) {
+				out.close();
+			}
+		}
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param file the file to write
+	 * @param compress whether to compress the file (GZIP)
+	 * @param charset the charset
+	 */
+	public ScriptSegments(File file, boolean compress, Charset charset) {
+		this.file = file;
+		this.compress = compress;
+		this.charset = charset;
+	}
+
+	/**
+	 * Creates a new segment which follows all segments created so far.
+	 * The segment file is created on the first write.
+	 *
+	 * @return writer for the segment, must be closed after writing
+	 */
+	public synchronized OutputStreamWriter newSegment() throws IOException {
+		Segment segment = new Segment();
+		OutputStreamWriter writer = new OutputStreamWriter(segment, charset);
+		segments.add(segment);
+		segmentWriters.add(writer);
+		return writer;
+	}
+
+	/**
+	 * Joins the segments into the file and deletes them.
+	 */
+	public synchronized void join() throws IOException {
+		for (OutputStreamWriter writer: segmentWriters) {
+			writer.close();
+		}
+		long startTime = System.currentTimeMillis();
+		int count = 0;
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			FileChannel target = out.getChannel();
+			for (Segment segment: segments) {
+				if (segment.segmentFile == null) {
+					// empty
+					continue;
+				}
+				++count;
+				FileInputStream in = new FileInputStream(segment.segmentFile);
+				try {
+					FileChannel source = in.getChannel();
+					long size = source.size();
+					long position = 0;
+					while (position < size) {
+						position += source.transferTo(position, size - position, target);
+					}
+				} finally {
+					in.close();
+				}
+			}
+		} finally {
+			out.close();
+		}
+		_log.info("joined " + count + " segments in " + (System.currentTimeMillis() - startTime) + " ms");
+		delete();
+	}
+
+	/**
+	 * Deletes the segments.
+	 */
+	public synchronized void delete() {
+		for (OutputStreamWriter writer: segmentWriters) {
+			try {
+				writer.close();
+			} catch (IOException e) {
+				// ignore
+			}
+		}
+		for (Segment segment: segments) {
+			if (segment.segmentFile != null) {
+				segment.segmentFile.delete();
+			}
+		}
+		segmentWriters.clear();
+		segments.clear();
+	}
+
+}
@@ -27,9 +27,20 @@ import java.io.OutputStream;
 import java.io.Writer;
 import java.nio.charset.Charset;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.zip.GZIPInputStream;
 
 import net.sf.jailer.CommandLineParser;
+import net.sf.jailer.binary.BinaryLoader;
 import net.sf.jailer.database.Session;
 
 import org.apache.derby.impl.tools.ij.util;
@@ -52,6 +63,17 @@ public class SqlScriptExecutor {
 	 */
 	public static final String FINISHED_MULTILINE_COMMENT = "--.";
 	
+	/**
+	 * Marks the end of a level of the script. The statements of a level
+	 * don't depend on each other and can be executed concurrently.
+	 */
+	public static final String LEVEL_BARRIER = "--#level";
+
+	/**
+	 * Marks a script (in its header) whose statements are grouped into levels by {@link #LEVEL_BARRIER} marks.
+	 */
+	public static final String LEVELS_MARKED = "--#grouped into levels";
+	
 	/**
      * The logger.
      */
@@ -66,12 +88,54 @@ public class SqlScriptExecutor {
      * @return Pair(statementCount, rowCount)
      */
     public static Pair<Integer, Long> executeScript(String scriptFileName, Session session, boolean transactional) throws IOException, SQLException {
+    	return executeScript(scriptFileName, session, transactional, 1, 1, false);
+    }
+    
+    /**
+     * Reads in and executes a SQL-script.
+     * 
+     * @param scriptFileName the name of the script-file
+     * @param session for execution of statements
+     * @param threads number of threads executing the statements of a level concurrently
+     * @param batchSize number of consecutive DML statements executed as one JDBC batch
+     * @param resume if <code>true</code>, continue an interrupted (non-transactional) import at its checkpoint
+     * 
+     * @return Pair(statementCount, rowCount)
+     */
+    public static Pair<Integer, Long> executeScript(String scriptFileName, Session session, boolean transactional, int threads, int batchSize, boolean resume) throws IOException, SQLException {
+    	if (BinaryLoader.isBinaryFile(CommandLineParser.getInstance().newFile(scriptFileName))) {
+    		// the rows of a block are inserted with one batch, blocks are inserted sequentially
+    		if (threads > 1) {
+    			_log.warn("binary file, option -threads is ignored");
+    			threads = 1;
+    		}
+    		if (batchSize > 1) {
+    			_log.warn("binary file, option -batch-size is ignored");
+    			batchSize = 1;
+    		}
+    		if (resume) {
+    			_log.warn("binary file, option -resume is ignored, importing the whole file");
+    			resume = false;
+    		}
+    	}
     	if (!transactional) {
-    		executeScript(scriptFileName, session);
+    		ImportCheckpoint checkpoint = new ImportCheckpoint(CommandLineParser.getInstance().newFile(scriptFileName));
+    		if (resume && !checkpoint.read()) {
+    			_log.warn("no checkpoint found, importing the whole script");
+    		}
+    		executeScript(scriptFileName, session, threads, batchSize, checkpoint);
     		return new Pair<Integer, Long>(0, 0L);
     	}
+    	if (resume) {
+    		// nothing has been committed by the interrupted import
+    		_log.warn("transactional import, importing the whole script");
+    	}
+    	if (threads > 1) {
+    		// rows inserted by one connection are not visible to the others before commit
+    		_log.warn("transactional import, executing statements sequentially");
+    	}
     	try {
-    		Pair<Integer, Long> r = executeScript(scriptFileName, session);
+    		Pair<Integer, Long> r = executeScript(scriptFileName, session, 1, batchSize, null);
     		session.commitAll();
     		return r;
     	} catch (IOException e) {
@@ -92,10 +156,33 @@ public class SqlScriptExecutor {
      * @return Pair(statementCount, rowCount)
      */
     public static Pair<Integer, Long> executeScript(String scriptFileName, Session session) throws IOException, SQLException {
+    	return executeScript(scriptFileName, session, 1, 1, null);
+    }
+    
+    /**
+     * Reads in and executes a SQL-script.
+     * 
+     * @param scriptFileName the name of the script-file
+     * @param session for execution of statements
+     * @param threads number of threads executing the statements of a level concurrently
+     * @param batchSize number of consecutive DML statements executed as one JDBC batch
+     * @param checkpoint progress of the import, statements committed according to it are skipped.
+     *  <code>null</code> if the progress is not tracked.
+     * 
+     * @return Pair(statementCount, rowCount)
+     */
+    private static Pair<Integer, Long> executeScript(String scriptFileName, Session session, int threads, int batchSize, ImportCheckpoint checkpoint) throws IOException, SQLException {
         _log.info("reading file '" + scriptFileName + "'");
     	BufferedReader bufferedReader;
     	long fileSize = 0;
     	File file = CommandLineParser.getInstance().newFile(scriptFileName);
+    	if (BinaryLoader.isBinaryFile(file)) {
+    		Pair<Integer, Long> r = BinaryLoader.load(file, session);
+    		synchronized (SqlScriptExecutor.class) {
+    	    	lastRowCount = r;
+    		}
+    		return r;
+    	}
 		FileInputStream inputStream = new FileInputStream(file);
 		
 		Charset encoding = Charset.defaultCharset();
@@ -137,63 +224,168 @@ public class SqlScriptExecutor {
         long t = System.currentTimeMillis();
         int count = 0;
         LineReader lineReader = new LineReader(bufferedReader);
-        while ((line = lineReader.readLine()) != null) {
-        	bytesRead += line.length() + 1;
-            line = line.trim();
-            if (line.length() == 0 || line.startsWith("--")) {
-            	if (line.startsWith(UNFINISHED_MULTILINE_COMMENT)) {
-            		String cmd = line.substring(UNFINISHED_MULTILINE_COMMENT.length());
-            		if (cmd.startsWith("XML")) {
-            			importSQLXML(cmd.substring(3).trim(), lineReader, session);
-            		}
-            		if (cmd.startsWith("CLOB")) {
-            			importCLob(cmd.substring(4).trim(), lineReader, session);
-            		}
-            		if (cmd.startsWith("BLOB")) {
-            			importBLob(cmd.substring(4).trim(), lineReader, session);
-            		}
-            	}
-                continue;
-            }
-            if (line.endsWith(";")) {
-            	currentStatement.append(line.substring(0, line.length() - 1));
-            	String stmt = currentStatement.toString();
-            	boolean silent = session.getSilent();
-            	session.setSilent(silent || stmt.trim().toLowerCase().startsWith("drop"));
-            	try {
-                	if (stmt.trim().length() > 0) {
-                		totalRowCount += session.execute(stmt);
-                		++linesRead;
-                    	++count;
-                	}
-                } catch (SQLException e) {
-                	// drops may fail
-                	if (!stmt.trim().toLowerCase().startsWith("drop")) {
-                    	// fix for bug [2946477]
-                		if (!stmt.trim().toUpperCase().contains("DROP TABLE JAILER_DUAL")) {
-                    		throw e;
-                    	}
-                	}
-                }
-                session.setSilent(silent);
-                currentStatement.setLength(0);
-                if (System.currentTimeMillis() > t + 1000) {
-                	t = System.currentTimeMillis();
-                	long p = 0;
-                	if (fileSize > 0) {
-                		p = (100 * bytesRead) / fileSize;
-                		if (p > 100) {
-                			p = 100;
-                		}
-                	}
-                	_log.info(linesRead + " statements" + (p > 0? " (" + p + "%)" : ""));
-                }
-            } else {
-                currentStatement.append(line + " ");
-            }
-            CancellationHandler.checkForCancellation(null);
+        // statements are executed concurrently only if the script is grouped into levels of independent statements
+        boolean concurrent = false;
+        StatementExecutor executor = batchSize > 1? new StatementExecutor(session, 1, batchSize) : null;
+        List<String> sessionStateStatements = new ArrayList<String>();
+        
+        // progress: all statements ending at or before committedLine are committed
+        long committedLine = 0;
+        long lastStatementLine = 0;
+        long firstStatementLine = 0;
+        long skipped = 0;
+        if (checkpoint != null && checkpoint.getCommittedLine() > 0) {
+        	_log.info("resuming import after line " + checkpoint.getCommittedLine());
+        }
+        boolean completed = false;
+        try {
+	        while ((line = lineReader.readLine()) != null) {
+	        	bytesRead += line.length() + 1;
+	            line = line.trim();
+	            if (line.length() == 0 || line.startsWith("--")) {
+	            	if (executor != null && line.startsWith(LEVEL_BARRIER)) {
+	            		totalRowCount += executor.barrier();
+	            		committedLine = lastStatementLine;
+	            	}
+	            	if (threads > 1 && !concurrent && (line.startsWith(LEVEL_BARRIER) || line.startsWith(LEVELS_MARKED))) {
+	            		// the header of scripts exported by older versions doesn't contain the LEVELS_MARKED mark
+	            		concurrent = true;
+	            		if (executor != null) {
+	            			executor.shutdown();
+	            		}
+	            		executor = new StatementExecutor(session, threads, batchSize);
+	            		for (String stmt: sessionStateStatements) {
+	            			executor.executeInEachThread(stmt);
+	            		}
+	            	}
+	            	if (line.startsWith(UNFINISHED_MULTILINE_COMMENT)) {
+	            		if (executor != null) {
+	            			// LOBs are updated after the rows are inserted
+	            			totalRowCount += executor.barrier();
+	            			committedLine = lastStatementLine;
+	            		}
+	            		if (checkpoint != null && checkpoint.isCommitted(lineReader.lineNumber, lineReader.lineNumber)) {
+	            			skipLob(lineReader);
+	            			lastStatementLine = committedLine = lineReader.lineNumber;
+	            			continue;
+	            		}
+	            		String cmd = line.substring(UNFINISHED_MULTILINE_COMMENT.length());
+	            		if (cmd.startsWith("XML")) {
+	            			importSQLXML(cmd.substring(3).trim(), lineReader, session);
+	            		}
+	            		if (cmd.startsWith("CLOB")) {
+	            			importCLob(cmd.substring(4).trim(), lineReader, session);
+	            		}
+	            		if (cmd.startsWith("BLOB")) {
+	            			importBLob(cmd.substring(4).trim(), lineReader, session);
+	            		}
+	            		lastStatementLine = committedLine = lineReader.lineNumber;
+	            	}
+	                continue;
+	            }
+	            if (currentStatement.length() == 0) {
+	            	firstStatementLine = lineReader.lineNumber;
+	            }
+	            if (line.endsWith(";")) {
+	            	currentStatement.append(line.substring(0, line.length() - 1));
+	            	String stmt = currentStatement.toString();
+	            	boolean setsSessionState = Session.changesSessionState(stmt);
+	            	if (checkpoint != null && !setsSessionState && checkpoint.isCommitted(firstStatementLine, lineReader.lineNumber)) {
+	            		// executed by the interrupted import
+	            		if (stmt.trim().length() > 0) {
+	            			++skipped;
+	            		}
+	            		lastStatementLine = lineReader.lineNumber;
+	            		if (executor == null) {
+	            			committedLine = lastStatementLine;
+	            		}
+	            	} else if (executor != null && isDML(stmt)) {
+	            		executor.add(stmt, firstStatementLine, lineReader.lineNumber);
+	            		lastStatementLine = lineReader.lineNumber;
+	            		++linesRead;
+	            		++count;
+	            	} else {
+	            		if (executor != null) {
+	            			// other statements are executed sequentially
+	            			totalRowCount += executor.barrier();
+	            			committedLine = lastStatementLine;
+	            		}
+		            	boolean silent = session.getSilent();
+		            	session.setSilent(silent || stmt.trim().toLowerCase().startsWith("drop"));
+		            	try {
+		                	if (stmt.trim().length() > 0) {
+		                		totalRowCount += session.execute(stmt);
+		                		++linesRead;
+		                    	++count;
+		                		if (setsSessionState) {
+		                			// the connections of the import threads must have the same state (SET IDENTITY_INSERT ...)
+		                			if (executor != null) {
+		                				executor.executeInEachThread(stmt);
+		                			}
+		                			if (threads > 1 && !concurrent) {
+		                				sessionStateStatements.add(stmt);
+		                			}
+		                		}
+		                	}
+		                	lastStatementLine = committedLine = lineReader.lineNumber;
+		                } catch (SQLException e) {
+		                	// drops may fail
+		                	if (!stmt.trim().toLowerCase().startsWith("drop")) {
+		                    	// fix for bug [2946477]
+		                		if (!stmt.trim().toUpperCase().contains("DROP TABLE JAILER_DUAL")) {
+		                    		throw e;
+		                    	}
+		                	}
+		                }
+		                session.setSilent(silent);
+	            	}
+	                currentStatement.setLength(0);
+	                if (System.currentTimeMillis() > t + 1000) {
+	                	t = System.currentTimeMillis();
+	                	long p = 0;
+	                	if (fileSize > 0) {
+	                		p = (100 * bytesRead) / fileSize;
+	                		if (p > 100) {
+	                			p = 100;
+	                		}
+	                	}
+	                	_log.info(linesRead + " statements" + (p > 0? " (" + p + "%)" : ""));
+	                	if (checkpoint != null) {
+	                		writeCheckpoint(checkpoint, committedLine, executor);
+	                	}
+	                }
+	            } else {
+	                currentStatement.append(line + " ");
+	            }
+	            CancellationHandler.checkForCancellation(null);
+	        }
+	        if (executor != null) {
+	        	totalRowCount += executor.barrier();
+	        }
+	        completed = true;
+        } finally {
+        	if (checkpoint != null) {
+        		if (completed) {
+        			checkpoint.delete();
+        		} else {
+        			if (executor != null) {
+        				executor.awaitRunningBatches();
+        			}
+        			writeCheckpoint(checkpoint, committedLine, executor);
+        			_log.info("checkpoint written, use -resume to continue the import");
+        		}
+        	}
+        	if (executor != null) {
+        		executor.shutdown();
+        	}
         }
         bufferedReader.close();
+        if (threads > 1 && !concurrent) {
+        	_log.info("script has no level marks, statements have been executed sequentially");
+        }
+        if (skipped > 0) {
+        	_log.info(skipped + " statements skipped (executed by the interrupted import)");
+        }
         _log.info(linesRead + " statements (100%)");
     	_log.info("successfully read file '" + scriptFileName + "'");
     	Pair<Integer, Long> r = new Pair<Integer, Long>(count, totalRowCount);
@@ -203,17 +395,289 @@ public class SqlScriptExecutor {
     	return r;
     }
 
+    /**
+     * Writes the progress of an import.
+     * 
+     * @param checkpoint the checkpoint
+     * @param committedLine all statements executed sequentially and ending at or before this line are committed
+     * @param executor executes the DML statements, may be <code>null</code>
+     */
+    private static void writeCheckpoint(ImportCheckpoint checkpoint, long committedLine, StatementExecutor executor) {
+    	List<long[]> ranges = new ArrayList<long[]>();
+    	if (executor != null) {
+    		committedLine = executor.getCommittedLine(committedLine, ranges);
+    	}
+    	checkpoint.write(committedLine, ranges);
+    }
+
+    /**
+     * Checks whether a statement only manipulates rows.
+     */
+    private static boolean isDML(String stmt) {
+    	String s = stmt.trim().toLowerCase();
+    	return s.startsWith("insert") || s.startsWith("delete") || s.startsWith("update") || s.startsWith("merge");
+    }
+
+    /**
+     * Executes DML statements in batches and the statements of a level concurrently.
+     */
+    private static class StatementExecutor {
+
+    	private final Session session;
+    	private final int threads;
+    	private final int batchSize;
+
+    	/**
+    	 * Executes the batches, <code>null</code> if the batches are executed by the calling thread.
+    	 */
+    	private final ExecutorService executorService;
+
+    	/**
+    	 * The current batch.
+    	 */
+    	private Batch batch = new Batch();
+
+    	/**
+    	 * Submitted batches, in order of submission.
+    	 */
+    	private final LinkedList<Batch> pending = new LinkedList<Batch>();
+
+    	/**
+    	 * Last line of the last batch executed, all batches submitted before are also executed.
+    	 */
+    	private long executedLine = 0;
+
+    	/**
+    	 * Row count of executed statements not yet returned by {@link #barrier()}.
+    	 */
+    	private long rowCount = 0;
+
+    	StatementExecutor(Session session, int threads, int batchSize) {
+    		this.session = session;
+    		this.threads = threads;
+    		this.batchSize = Math.max(1, batchSize);
+    		if (threads > 1) {
+	    		executorService = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+	    			public Thread newThread(Runnable runnable) {
+	    				Thread thread = new Thread(runnable, "import");
+	    				thread.setDaemon(true);
+	    				return thread;
+	    			}
+	    		});
+    		} else {
+    			executorService = null;
+    		}
+    	}
+
+    	/**
+    	 * Statements executed together.
+    	 */
+    	private class Batch {
+    		final List<String> statements = new ArrayList<String>();
+    		long firstLine;
+    		long lastLine;
+    		Future<Long> future;
+    	}
+
+    	/**
+    	 * Adds a statement to the current batch. Executes the batch if it's complete.
+    	 * 
+    	 * @param firstLine first line of the statement in the script
+    	 * @param lastLine last line of the statement in the script
+    	 */
+    	void add(String stmt, long firstLine, long lastLine) throws SQLException {
+    		if (batch.statements.isEmpty()) {
+    			batch.firstLine = firstLine;
+    		}
+    		batch.statements.add(stmt);
+    		batch.lastLine = lastLine;
+    		if (batch.statements.size() >= batchSize) {
+    			flush();
+    		}
+    	}
+
+    	/**
+    	 * Executes the current batch or submits it for execution. Waits if too many batches are pending.
+    	 */
+    	private void flush() throws SQLException {
+    		if (batch.statements.isEmpty()) {
+    			return;
+    		}
+    		final Batch current = batch;
+    		batch = new Batch();
+    		if (executorService == null) {
+    			rowCount += execute(current.statements);
+    			executedLine = current.lastLine;
+    			return;
+    		}
+    		current.future = executorService.submit(new Callable<Long>() {
+    			public Long call() throws Exception {
+    				return execute(current.statements);
+    			}
+    		});
+    		pending.add(current);
+    		while (pending.size() > 4 * threads) {
+    			waitForFirst();
+    		}
+    	}
+
+    	/**
+    	 * Executes a statement which changes the state of the session once in each thread.
+    	 * Must be called after a {@link #barrier()}.
+    	 */
+    	void executeInEachThread(final String stmt) throws SQLException {
+    		if (executorService == null) {
+    			return;
+    		}
+    		final CountDownLatch started = new CountDownLatch(threads);
+    		List<Future<Long>> futures = new ArrayList<Future<Long>>();
+    		for (int i = 0; i < threads; ++i) {
+    			futures.add(executorService.submit(new Callable<Long>() {
+    				public Long call() throws Exception {
+    					// no thread can take a second task before all tasks are started
+    					started.countDown();
+    					started.await();
+    					return session.execute(stmt);
+    				}
+    			}));
+    		}
+    		for (Future<Long> future: futures) {
+    			waitFor(future);
+    		}
+    	}
+
+    	private long execute(List<String> statements) throws SQLException {
+    		if (statements.size() == 1) {
+    			return session.execute(statements.get(0));
+    		}
+    		return session.executeBatch(statements);
+    	}
+
+    	/**
+    	 * Executes the current batch and waits until all submitted batches are executed.
+    	 * 
+    	 * @return row count of the statements executed since the last barrier
+    	 */
+    	long barrier() throws SQLException {
+    		flush();
+    		while (!pending.isEmpty()) {
+    			waitForFirst();
+    		}
+    		long result = rowCount;
+    		rowCount = 0;
+    		return result;
+    	}
+
+    	/**
+    	 * Gets the progress of the execution.
+    	 * 
+    	 * @param committedLine all statements ending at or before this line are committed
+    	 * @param ranges to put in the line ranges of batches committed out of order
+    	 * @return line up to which all statements are committed
+    	 */
+    	long getCommittedLine(long committedLine, List<long[]> ranges) {
+    		committedLine = Math.max(committedLine, executedLine);
+    		boolean inOrder = true;
+    		for (Batch b: pending) {
+    			if (succeeded(b.future)) {
+    				if (inOrder) {
+    					committedLine = b.lastLine;
+    				} else {
+    					ranges.add(new long[] { b.firstLine, b.lastLine });
+    				}
+    			} else {
+    				inOrder = false;
+    			}
+    		}
+    		return committedLine;
+    	}
+
+    	private boolean succeeded(Future<Long> future) {
+    		if (!future.isDone() || future.isCancelled()) {
+    			return false;
+    		}
+    		try {
+    			future.get();
+    			return true;
+    		} catch (Exception e) {
+    			return false;
+    		}
+    	}
+
+    	/**
+    	 * Waits until the batches which are currently executed are finished
+    	 * (after an error has cancelled the pending ones).
+    	 */
+    	void awaitRunningBatches() {
+    		for (Batch b: pending) {
+    			try {
+    				b.future.get();
+    			} catch (Exception e) {
+    				// cancelled or failed
+    			}
+    		}
+    	}
+
+    	private void waitForFirst() throws SQLException {
+    		Batch first = pending.getFirst();
+    		rowCount += waitFor(first.future);
+    		pending.removeFirst();
+    		executedLine = first.lastLine;
+    	}
+
+    	private long waitFor(Future<Long> future) throws SQLException {
+    		try {
+    			return future.get();
+    		} catch (InterruptedException e) {
+    			cancelPending();
+    			throw new SQLException("interrupted");
+    		} catch (ExecutionException e) {
+    			cancelPending();
+    			Throwable cause = e.getCause();
+    			if (cause instanceof SQLException) {
+    				throw (SQLException) cause;
+    			}
+    			if (cause instanceof RuntimeException) {
+    				throw (RuntimeException) cause;
+    			}
+    			throw new RuntimeException(cause);
+    		}
+    	}
+
+    	private void cancelPending() {
+    		for (Batch b: pending) {
+    			b.future.cancel(false);
+    		}
+    	}
+
+    	void shutdown() {
+    		cancelPending();
+    		pending.clear();
+    		if (executorService != null) {
+    			executorService.shutdown();
+    		}
+    	}
+    }
+
     private static class LineReader {
 
     	private final BufferedReader reader;
     	private boolean eofRead = false;
     	
+    	/**
+    	 * Number of the line read last.
+    	 */
+    	long lineNumber = 0;
+    	
 		public LineReader(BufferedReader reader) {
 			this.reader = reader;
 		}
 
 		public String readLine() throws IOException {
 			String line = reader.readLine();
+			if (line != null) {
+				++lineNumber;
+			}
 			if (line == null && !eofRead) {
 				eofRead = true;
 				return ";";
@@ -222,6 +686,20 @@ public class SqlScriptExecutor {
 		}
     }
     
+    /**
+     * Skips the content of a LOB.
+     * 
+     * @param lineReader for reading content
+     */
+    private static void skipLob(LineReader lineReader) throws IOException {
+		String line;
+		while ((line = lineReader.readLine()) != null) {
+			if (!line.startsWith(UNFINISHED_MULTILINE_COMMENT)) {
+				break;
+			}
+		}
+    }
+    
     /**
      * Imports clob from sql-script.
      * 
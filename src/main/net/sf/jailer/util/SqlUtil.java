@@ -18,11 +18,7 @@ package net.sf.jailer.util;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
-import java.sql.Time;
-import java.sql.Timestamp;
 import java.sql.Types;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
@@ -30,9 +26,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.UUID;
 
-import net.sf.jailer.Configuration;
 import net.sf.jailer.database.DBMS;
 import net.sf.jailer.database.SQLDialect;
 import net.sf.jailer.database.Session;
@@ -228,27 +222,12 @@ public class SqlUtil {
      */
 //    public static DateFormat timestampFormat = null;
 
-    /**
-     * Default time stamp format (for 'to_timestamp' function).
-     */
-    public static DateFormat defaultTimestampFormat = new SimpleDateFormat("yyyy-MM-dd HH.mm.ss");
-
-    /**
-     * Default time stamp format (for 'to_date' function).
-     */
-    public static DateFormat defaultDateFormat = new SimpleDateFormat("yyyy-MM-dd");
-
     /**
      * <code>true</code> if 'to_timestamp' function is used for writing out timestamps instead of formatting them.
      */
 
 	public static DBMS dbms;
     
-	/**
-	 * All hex digits.
-	 */
-	private static final char[] hexChar = new char[] { '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f' };
-	
     /**
      * Converts a cell-content to valid SQL-literal.
      * 
@@ -256,129 +235,7 @@ public class SqlUtil {
      * @return the SQL-literal
      */
     public static String toSql(Object content, Session session) {
-        if (content == null) {
-            return "null";
-        }
-
-        Configuration c = Configuration.forDbms(session);
-		
-        if (content instanceof java.sql.Date) {
-        	if (c.useToTimestampFunction) {
-        		String format;
-        		synchronized(defaultDateFormat) {
-	        		format = defaultDateFormat.format((Date) content);
-	       		}
-				return "to_date('" + format + "', 'YYYY-MM-DD')";
-        	}
-        	if (c.dateFormat != null) {
-        		synchronized(c.dateFormat) {
-        			return "'" + c.dateFormat.format((Date) content) + "'";
-        		}
-        	}
-            return "'" + content + "'";
-        }
-        if (content instanceof java.sql.Timestamp) {
-        	if (c.useToTimestampFunction) {
-        		String format;
-        		String nanoFormat;
-        		synchronized(defaultTimestampFormat) {
-	        		format = defaultTimestampFormat.format((Date) content);
-	        		String nanoString = getNanoString((Timestamp) content, c.appendNanosToTimestamp, c.nanoSep);
-	        		nanoFormat = "FF" + (nanoString.length() - 1);
-	    			format += nanoString;
-        		}
-				return "to_timestamp('" + format + "', 'YYYY-MM-DD HH24.MI.SS." + nanoFormat + "')";
-        	} else if (c.timestampFormat != null) {
-        		String format;
-        		synchronized(c.timestampFormat) {
-	        		format = c.timestampFormat.format((Date) content);
-	        		if (c.appendMillisToTimestamp) {
-	        			format += getNanoString((Timestamp) content, c.appendNanosToTimestamp, c.nanoSep);
-	        		}
-        		}
-				content = format;
-        	}
-        	if (c.timestampPattern != null) {
-        		return c.timestampPattern.replace("%s", "'" + content + "'");
-        	}
-            return "'" + content + "'";
-        }
-        if (content instanceof NCharWrapper) {
-        	String prefix = Configuration.forDbms(session).getNcharPrefix();
-        	if (prefix == null) {
-        		prefix = "";
-        	}
-			return prefix + "'" + Configuration.forDbms(session).convertToStringLiteral(content.toString()) + "'";
-        }
-        if (content instanceof String) {
-            return "'" + Configuration.forDbms(session).convertToStringLiteral((String) content) + "'";
-        }
-        if (content instanceof HStoreWrapper) {
-            return "'" + Configuration.forDbms(session).convertToStringLiteral(content.toString()) + "'::hstore";
-        }
-        if (content instanceof byte[]) {
-        	byte[] data = (byte[]) content;
-        	StringBuilder hex = new StringBuilder((data.length + 1) * 2);
-        	for (byte b: data) {
-        		hex.append(hexChar[(b >> 4) & 15]);
-        		hex.append(hexChar[b & 15]);
-        	}
-        	return c.binaryPattern.replace("%s", hex);
-        }
-        if (content instanceof Time) {
-        	return "'" + content + "'";
-        }
-        if (dbms == DBMS.POSTGRESQL) {
-        	if (content.getClass().getName().endsWith(".PGobject")) {
-        		// PostgreSQL bit values
-        		return "B'" + content + "'";
-        	}
-        }
-        if (content instanceof UUID) {
-        	if (dbms == DBMS.POSTGRESQL) {
-        		return "'" + content + "'::uuid";
-        	}
-        	return "'" + content + "'";
-        }
-        if (Configuration.forDbms(session).isIdentityInserts()) {
-        	// Boolean mapping for MSSQL/Sybase
-        	if (content instanceof Boolean) {
-        		content = Boolean.TRUE.equals(content)? "1" : "0";
-        	}
-        }
-        return content.toString();
-    }
-    
-    /**
-     * Gets nano string suffix of a timestamp.
-     * 
-     * @param timestamp the timestamp
-     * @param nanoSep 
-     */
-    private static String getNanoString(Timestamp timestamp, boolean full, char nanoSep) {
-    	String zeros = "000000000";
-    	int nanos = timestamp.getNanos();
-    	String nanosString = Integer.toString(nanos);
-    	
-    	// Add leading zeros
-    	nanosString = zeros.substring(0, (9-nanosString.length())) + nanosString;
-    	
-    	// Truncate trailing zeros
-    	char[] nanosChar = new char[nanosString.length()];
-    	nanosString.getChars(0, nanosString.length(), nanosChar, 0);
-    	int truncIndex = 8;
-    	while (truncIndex > 0 && nanosChar[truncIndex] == '0') {
-    		truncIndex--;
-    	}
-    
-    	nanosString = nanoSep + new String(nanosChar, 0, truncIndex + 1);
-    	
-    	if (!full) {
-    		if (nanosString.length() > 4) {
-    			return nanosString.substring(0, 4);
-    		}
-    	}
-    	return nanosString;
+    	return LiteralFormatter.forSession(session).toSql(content);
     }
     
     private static final int TYPE_HSTORE = 10500;
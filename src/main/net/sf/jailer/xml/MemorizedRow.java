@@ -0,0 +1,250 @@
+/*
+ * Copyright 2007 - 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.jailer.xml;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLXML;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Copy of the current row of a {@link ResultSet} which remains readable
+ * after the result set has been moved or closed.
+ * LOBs are read into strings and byte arrays.
+ *
+ * Only the getters needed for writing rows as XML are supported.
+ *
+ * @author Ralf Wisser
+ */
+class MemorizedRow implements InvocationHandler {
+
+	/**
+	 * Copy of the meta data of a result set.
+	 */
+	private static class MetaData implements InvocationHandler {
+		private final String[] names;
+		private final String[] labels;
+		private final int[] types;
+		private final String[] typeNames;
+		private final Map<String, Integer> index = new HashMap<String, Integer>();
+
+		MetaData(ResultSetMetaData metaData) throws SQLException {
+			int columnCount = metaData.getColumnCount();
+			names = new String[columnCount];
+			labels = new String[columnCount];
+			types = new int[columnCount];
+			typeNames = new String[columnCount];
+			for (int i = columnCount - 1; i >= 0; --i) {
+				names[i] = metaData.getColumnName(i + 1);
+				labels[i] = metaData.getColumnLabel(i + 1);
+				types[i] = metaData.getColumnType(i + 1);
+				typeNames[i] = metaData.getColumnTypeName(i + 1);
+				index.put(names[i].toUpperCase(), i);
+				index.put(labels[i].toUpperCase(), i);
+			}
+		}
+
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+			if (name.equals("getColumnCount")) {
+				return names.length;
+			}
+			if (name.equals("getColumnName")) {
+				return names[(Integer) args[0] - 1];
+			}
+			if (name.equals("getColumnLabel")) {
+				return labels[(Integer) args[0] - 1];
+			}
+			if (name.equals("getColumnType")) {
+				return types[(Integer) args[0] - 1];
+			}
+			if (name.equals("getColumnTypeName")) {
+				return typeNames[(Integer) args[0] - 1];
+			}
+			return unsupported(proxy, method, args);
+		}
+
+		int getIndex(Object column) throws SQLException {
+			if (column instanceof Integer) {
+				return (Integer) column - 1;
+			}
+			Integer i = index.get(((String) column).toUpperCase());
+			if (i == null) {
+				throw new SQLException("unknown column " + column);
+			}
+			return i;
+		}
+	}
+
+	/**
+	 * Creates a copy of the meta data of a result set.
+	 *
+	 * @param metaData the meta data
+	 * @return the copy
+	 */
+	static ResultSetMetaData memorize(ResultSetMetaData metaData) throws SQLException {
+		return (ResultSetMetaData) Proxy.newProxyInstance(MemorizedRow.class.getClassLoader(), new Class<?>[] { ResultSetMetaData.class }, new MetaData(metaData));
+	}
+
+	/**
+	 * Creates a copy of the current row of a result set.
+	 *
+	 * @param resultSet the result set
+	 * @param memorizedMetaData copy of the result set's meta data (see {@link #memorize(ResultSetMetaData)})
+	 * @return result set containing only the current row
+	 */
+	static ResultSet memorize(ResultSet resultSet, ResultSetMetaData memorizedMetaData) throws SQLException {
+		return (ResultSet) Proxy.newProxyInstance(MemorizedRow.class.getClassLoader(), new Class<?>[] { ResultSet.class }, new MemorizedRow(resultSet, memorizedMetaData));
+	}
+
+	private final ResultSetMetaData metaData;
+	private final MetaData columns;
+	private final Object[] values;
+	private boolean wasNull = false;
+
+	private MemorizedRow(ResultSet resultSet, ResultSetMetaData memorizedMetaData) throws SQLException {
+		this.metaData = memorizedMetaData;
+		this.columns = (MetaData) Proxy.getInvocationHandler(memorizedMetaData);
+		this.values = new Object[columns.types.length];
+		for (int i = 0; i < values.length; ++i) {
+			Object value;
+			if (columns.types[i] == Types.TIMESTAMP) {
+				value = resultSet.getTimestamp(i + 1);
+			} else if (columns.types[i] == Types.DATE) {
+				value = resultSet.getDate(i + 1);
+			} else {
+				value = resultSet.getObject(i + 1);
+			}
+			if (resultSet.wasNull()) {
+				value = null;
+			} else if (value instanceof Clob) {
+				Clob clob = (Clob) value;
+				value = clob.getSubString(1, (int) clob.length());
+			} else if (value instanceof Blob) {
+				Blob blob = (Blob) value;
+				value = blob.getBytes(1, (int) blob.length());
+			} else if (value instanceof SQLXML) {
+				value = ((SQLXML) value).getString();
+			}
+			values[i] = value;
+		}
+	}
+
+	public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+		String name = method.getName();
+		if (name.equals("getMetaData")) {
+			return metaData;
+		}
+		if (name.equals("wasNull")) {
+			return wasNull;
+		}
+		if (name.equals("findColumn")) {
+			return columns.getIndex(args[0]) + 1;
+		}
+		if (name.equals("close")) {
+			return null;
+		}
+		if (name.startsWith("get") && args != null && args.length == 1) {
+			Object value = values[columns.getIndex(args[0])];
+			wasNull = value == null;
+			Class<?> type = method.getReturnType();
+			if (value == null) {
+				if (type == Boolean.TYPE) {
+					return false;
+				}
+				return type.isPrimitive()? toPrimitive(0, type) : null;
+			}
+			if (name.equals("getObject")) {
+				return value;
+			}
+			if (name.equals("getString")) {
+				return value.toString();
+			}
+			if (name.equals("getTimestamp") && value instanceof java.util.Date) {
+				return value instanceof Timestamp? value : new Timestamp(((java.util.Date) value).getTime());
+			}
+			if (name.equals("getDate") && value instanceof java.util.Date) {
+				return value instanceof Date? value : new Date(((java.util.Date) value).getTime());
+			}
+			if (name.equals("getBigDecimal")) {
+				return value instanceof BigDecimal? value : new BigDecimal(value.toString());
+			}
+			if (value instanceof Number && type.isPrimitive()) {
+				Object number = toPrimitive((Number) value, type);
+				if (number != null) {
+					return number;
+				}
+			}
+			if (type.isInstance(value)) {
+				return value;
+			}
+		}
+		return unsupported(proxy, method, args);
+	}
+
+	/**
+	 * Converts a number into the wrapper of a primitive type.
+	 *
+	 * @return the converted number, <code>null</code> if the type is not numeric
+	 */
+	private static Object toPrimitive(Number number, Class<?> type) {
+		if (type == Integer.TYPE) {
+			return number.intValue();
+		}
+		if (type == Long.TYPE) {
+			return number.longValue();
+		}
+		if (type == Short.TYPE) {
+			return number.shortValue();
+		}
+		if (type == Byte.TYPE) {
+			return number.byteValue();
+		}
+		if (type == Double.TYPE) {
+			return number.doubleValue();
+		}
+		if (type == Float.TYPE) {
+			return number.floatValue();
+		}
+		return null;
+	}
+
+	private static Object unsupported(Object proxy, Method method, Object[] args) throws SQLException {
+		if (method.getName().equals("toString") && args == null) {
+			return MemorizedRow.class.getSimpleName();
+		}
+		if (method.getName().equals("hashCode") && args == null) {
+			return System.identityHashCode(proxy);
+		}
+		if (method.getName().equals("equals") && args != null && args.length == 1) {
+			return proxy == args[0];
+		}
+		throw new SQLFeatureNotSupportedException(method.getName());
+	}
+
+}
@@ -0,0 +1,503 @@
+/*
+ * Copyright 2007 - 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.jailer.xml;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+
+import javax.xml.transform.Result;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.sax.TransformerHandler;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+
+/**
+ * A {@link TransformerHandler} which writes the document directly into an output stream,
+ * without JAXP transformer. Characters are escaped and encoded while writing them into a buffer.
+ *
+ * Elements are optionally indented (like the JAXP identity transformer does with the
+ * output property "indent"). Whitespace-only text between elements is ignored then.
+ *
+ * Characters which are not allowed in XML 1.0 (control characters other than
+ * tab, newline and carriage return, unpaired surrogates, U+FFFE and U+FFFF) are dropped.
+ * "--" inside comments is written as "- -".
+ *
+ * @author Ralf Wisser
+ */
+public class StreamingXmlHandler implements TransformerHandler {
+
+	/**
+	 * Size of the buffer.
+	 */
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * Maximum depth of the document.
+	 */
+	private static final int MAX_DEPTH = 1024;
+
+	/**
+	 * The stream to write into.
+	 */
+	private final OutputStream out;
+
+	/**
+	 * The charset.
+	 */
+	private final Charset charset;
+
+	/**
+	 * Encoder for charsets other than UTF-8, <code>null</code> for UTF-8.
+	 */
+	private final CharsetEncoder encoder;
+
+	/**
+	 * Whether to indent elements.
+	 */
+	private final boolean indent;
+
+	private final byte[] buffer = new byte[BUFFER_SIZE];
+	private int length = 0;
+
+	/**
+	 * Current depth.
+	 */
+	private int depth = 0;
+
+	/**
+	 * Per depth: whether the element has child elements (or comments) and whether it has text.
+	 */
+	private final boolean[] hasChildren = new boolean[MAX_DEPTH];
+	private final boolean[] hasText = new boolean[MAX_DEPTH];
+
+	/**
+	 * Per depth: the default namespace.
+	 */
+	private final String[] defaultNamespace = new String[MAX_DEPTH];
+
+	/**
+	 * Whether the last start tag is not yet closed (with "&gt;" or "/&gt;").
+	 */
+	private boolean startTagOpen = false;
+
+	/**
+	 * Whether to write an empty line before the next indented element.
+	 */
+	private boolean emptyLine = false;
+
+	/**
+	 * Whether a CDATA section is open.
+	 */
+	private boolean inCDATA = false;
+
+	/**
+	 * Number of consecutive ']' at the end of the current CDATA section.
+	 */
+	private int cdataBrackets = 0;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param out the stream to write into
+	 * @param charset the charset
+	 * @param indent whether to indent elements
+	 */
+	public StreamingXmlHandler(OutputStream out, Charset charset, boolean indent) {
+		this.out = out;
+		this.charset = charset;
+		this.indent = indent;
+		this.encoder = "UTF-8".equals(charset.name())? null : charset.newEncoder();
+		defaultNamespace[0] = "";
+	}
+
+	public void startDocument() throws SAXException {
+		write("<?xml version=\"1.0\" encoding=\"" + charset.name() + "\"?>");
+	}
+
+	public void endDocument() throws SAXException {
+		write("\n");
+		try {
+			flushBuffer();
+			out.flush();
+		} catch (IOException e) {
+			throw new SAXException(e);
+		}
+	}
+
+	public void startElement(String uri, String localName, String qName, Attributes atts) throws SAXException {
+		if (depth + 1 >= MAX_DEPTH) {
+			throw new SAXException("document too deep");
+		}
+		closeStartTag();
+		indent();
+		hasChildren[depth] = true;
+		++depth;
+		hasChildren[depth] = false;
+		hasText[depth] = false;
+		defaultNamespace[depth] = defaultNamespace[depth - 1];
+		write('<');
+		write(qName);
+		if (uri != null && uri.length() > 0 && qName.indexOf(':') < 0 && !uri.equals(defaultNamespace[depth])) {
+			write(" xmlns=\"");
+			writeEscaped(uri, true);
+			write('"');
+			defaultNamespace[depth] = uri;
+		}
+		if (atts != null) {
+			for (int i = 0; i < atts.getLength(); ++i) {
+				write(' ');
+				write(atts.getQName(i));
+				write("=\"");
+				writeEscaped(atts.getValue(i), true);
+				write('"');
+			}
+		}
+		startTagOpen = true;
+	}
+
+	public void endElement(String uri, String localName, String qName) throws SAXException {
+		if (startTagOpen) {
+			write("/>");
+			startTagOpen = false;
+		} else {
+			if (hasChildren[depth] && !hasText[depth]) {
+				--depth;
+				indent();
+				++depth;
+			}
+			write("</");
+			write(qName);
+			write('>');
+		}
+		--depth;
+	}
+
+	public void characters(char[] ch, int start, int length) throws SAXException {
+		if (length == 0) {
+			return;
+		}
+		if (inCDATA) {
+			writeCDATA(ch, start, length);
+			return;
+		}
+		if (indent && (depth == 0 || (hasChildren[depth] && !hasText[depth])) && isWhitespace(ch, start, length)) {
+			// whitespace between elements
+			int newlines = 0;
+			for (int i = start; i < start + length; ++i) {
+				if (ch[i] == '\n') {
+					++newlines;
+				}
+			}
+			if (newlines > 1 && depth > 0) {
+				emptyLine = true;
+			}
+			return;
+		}
+		closeStartTag();
+		hasText[depth] = true;
+		writeEscaped(ch, start, length, false, depth > 0);
+	}
+
+	public void comment(char[] ch, int start, int length) throws SAXException {
+		closeStartTag();
+		indent();
+		hasChildren[depth] = true;
+		write("<!--");
+		boolean hyphen = false;
+		for (int i = start; i < start + length; ++i) {
+			int codePoint = legalCodePointAt(ch, i, start + length);
+			if (codePoint < 0) {
+				continue;
+			}
+			i += Character.charCount(codePoint) - 1;
+			if (codePoint == '-' && hyphen) {
+				write(' ');
+			}
+			hyphen = codePoint == '-';
+			writeCodePoint(codePoint);
+		}
+		if (hyphen) {
+			write(' ');
+		}
+		write("-->");
+	}
+
+	public void ignorableWhitespace(char[] ch, int start, int length) throws SAXException {
+		characters(ch, start, length);
+	}
+
+	public void processingInstruction(String target, String data) throws SAXException {
+		closeStartTag();
+		indent();
+		write("<?" + target + (data != null && data.length() > 0? " " + data : "") + "?>");
+	}
+
+	/**
+	 * Writes "&gt;" if the last start tag isn't closed yet.
+	 */
+	private void closeStartTag() throws SAXException {
+		if (startTagOpen) {
+			write('>');
+			startTagOpen = false;
+		}
+	}
+
+	/**
+	 * Starts a new indented line, unless the current element has text.
+	 */
+	private void indent() throws SAXException {
+		if (indent && !hasText[depth]) {
+			if (emptyLine) {
+				write('\n');
+				emptyLine = false;
+			}
+			write('\n');
+			for (int i = 0; i < depth; ++i) {
+				write("  ");
+			}
+		}
+	}
+
+	private static boolean isWhitespace(char[] ch, int start, int length) {
+		for (int i = start; i < start + length; ++i) {
+			if (!Character.isWhitespace(ch[i])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void writeEscaped(String s, boolean isAttribute) throws SAXException {
+		writeEscaped(s.toCharArray(), 0, s.length(), isAttribute, true);
+	}
+
+	/**
+	 * Writes text, escapes markup characters.
+	 *
+	 * @param isAttribute whether the text is an attribute value
+	 * @param escape <code>false</code> for writing text of comments or outside the root element
+	 */
+	private void writeEscaped(char[] ch, int start, int length, boolean isAttribute, boolean escape) throws SAXException {
+		for (int i = start; i < start + length; ++i) {
+			char c = ch[i];
+			if (c >= ' ' && c < 0x80) {
+				if (escape) {
+					if (c == '&') {
+						write("&amp;");
+						continue;
+					}
+					if (c == '<') {
+						write("&lt;");
+						continue;
+					}
+					if (c == '>') {
+						write("&gt;");
+						continue;
+					}
+					if (c == '"' && isAttribute) {
+						write("&quot;");
+						continue;
+					}
+				}
+				write(c);
+			} else {
+				int codePoint = legalCodePointAt(ch, i, start + length);
+				if (codePoint < 0) {
+					continue;
+				}
+				i += Character.charCount(codePoint) - 1;
+				if (codePoint < ' ' && escape && (isAttribute || codePoint == '\r')) {
+					write("&#" + codePoint + ";");
+				} else {
+					writeCodePoint(codePoint);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Writes text of a CDATA section, splits the section at "]]&gt;".
+	 */
+	private void writeCDATA(char[] ch, int start, int length) throws SAXException {
+		for (int i = start; i < start + length; ++i) {
+			int codePoint = legalCodePointAt(ch, i, start + length);
+			if (codePoint < 0) {
+				continue;
+			}
+			i += Character.charCount(codePoint) - 1;
+			if (codePoint == '>' && cdataBrackets >= 2) {
+				write("]]><![CDATA[");
+			}
+			cdataBrackets = codePoint == ']'? cdataBrackets + 1 : 0;
+			writeCodePoint(codePoint);
+		}
+	}
+
+	/**
+	 * Gets the character at a given position.
+	 *
+	 * @return the code point, or <code>-1</code> if the character is not allowed in XML 1.0
+	 */
+	private static int legalCodePointAt(char[] ch, int i, int end) {
+		char c = ch[i];
+		if (c < ' ') {
+			return c == '\t' || c == '\n' || c == '\r'? c : -1;
+		}
+		if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(ch[i + 1])) {
+			return Character.toCodePoint(c, ch[i + 1]);
+		}
+		if ((c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE) || c == 0xFFFE || c == 0xFFFF) {
+			return -1;
+		}
+		return c;
+	}
+
+	/**
+	 * Writes a character.
+	 */
+	private void writeCodePoint(int codePoint) throws SAXException {
+		if (codePoint < 0x80) {
+			write((char) codePoint);
+		} else if (encoder == null) {
+			if (length + 4 > buffer.length) {
+				flush();
+			}
+			if (codePoint < 0x800) {
+				buffer[length++] = (byte) (0xC0 | (codePoint >> 6));
+				buffer[length++] = (byte) (0x80 | (codePoint & 0x3F));
+			} else if (codePoint < 0x10000) {
+				buffer[length++] = (byte) (0xE0 | (codePoint >> 12));
+				buffer[length++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+				buffer[length++] = (byte) (0x80 | (codePoint & 0x3F));
+			} else {
+				buffer[length++] = (byte) (0xF0 | (codePoint >> 18));
+				buffer[length++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+				buffer[length++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+				buffer[length++] = (byte) (0x80 | (codePoint & 0x3F));
+			}
+		} else {
+			String s = new String(Character.toChars(codePoint));
+			if (encoder.canEncode(s)) {
+				for (byte b: s.getBytes(charset)) {
+					write(b);
+				}
+			} else if (inCDATA) {
+				write("]]>&#" + codePoint + ";<![CDATA[");
+			} else {
+				write("&#" + codePoint + ";");
+			}
+		}
+	}
+
+	/**
+	 * Writes ASCII text.
+	 */
+	private void write(String s) throws SAXException {
+		for (int i = 0; i < s.length(); ++i) {
+			write(s.charAt(i));
+		}
+	}
+
+	/**
+	 * Writes an ASCII character.
+	 */
+	private void write(char c) throws SAXException {
+		write((byte) c);
+	}
+
+	private void write(byte b) throws SAXException {
+		if (length == buffer.length) {
+			flush();
+		}
+		buffer[length++] = b;
+	}
+
+	private void flush() throws SAXException {
+		try {
+			flushBuffer();
+		} catch (IOException e) {
+			throw new SAXException(e);
+		}
+	}
+
+	private void flushBuffer() throws IOException {
+		out.write(buffer, 0, length);
+		length = 0;
+	}
+
+	public void setDocumentLocator(Locator locator) {
+	}
+
+	public void startPrefixMapping(String prefix, String uri) throws SAXException {
+	}
+
+	public void endPrefixMapping(String prefix) throws SAXException {
+	}
+
+	public void skippedEntity(String name) throws SAXException {
+	}
+
+	public void startDTD(String name, String publicId, String systemId) throws SAXException {
+	}
+
+	public void endDTD() throws SAXException {
+	}
+
+	public void startEntity(String name) throws SAXException {
+	}
+
+	public void endEntity(String name) throws SAXException {
+	}
+
+	public void startCDATA() throws SAXException {
+		closeStartTag();
+		hasText[depth] = true;
+		write("<![CDATA[");
+		inCDATA = true;
+		cdataBrackets = 0;
+	}
+
+	public void endCDATA() throws SAXException {
+		write("]]>");
+		inCDATA = false;
+	}
+
+	public void notationDecl(String name, String publicId, String systemId) throws SAXException {
+	}
+
+	public void unparsedEntityDecl(String name, String publicId, String systemId, String notationName) throws SAXException {
+	}
+
+	public void setResult(Result result) {
+		throw new UnsupportedOperationException();
+	}
+
+	public void setSystemId(String systemID) {
+	}
+
+	public String getSystemId() {
+		return null;
+	}
+
+	public Transformer getTransformer() {
+		throw new UnsupportedOperationException();
+	}
+
+}
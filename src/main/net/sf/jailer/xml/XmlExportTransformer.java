@@ -19,9 +19,12 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.charset.Charset;
 import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -106,6 +109,32 @@ public class XmlExportTransformer extends AbstractResultSetReader {
 	 */
 	private Map<Table, Map<String, Association>> associationCache = new HashMap<Table, Map<String,Association>>();
 
+	/**
+	 * Number of rows whose aggregated rows are read with one query.
+	 * If it's 1, the aggregated rows of each row are read separately while writing it.
+	 */
+	private final int batchSize;
+
+	/**
+	 * Rows read but not yet written (if batchSize &gt; 1).
+	 */
+	private final List<Node> block = new ArrayList<Node>();
+
+	/**
+	 * A memorized row and its aggregated rows.
+	 */
+	private static class Node {
+		final ResultSet row;
+		final Node parent;
+		String primaryKey;
+		final Map<Association, List<Node>> children = new HashMap<Association, List<Node>>();
+
+		Node(ResultSet row, Node parent) {
+			this.row = row;
+			this.parent = parent;
+		}
+	}
+
 	/**
 	 * Constructor.
 	 * 
@@ -116,15 +145,17 @@ public class XmlExportTransformer extends AbstractResultSetReader {
 	 * @param rootTag root tag name
 	 * @param datePattern pattern for dates
 	 * @param timestampPattern pattern for time-stamps
+	 * @param batchSize number of rows whose aggregated rows are read with one query
 	 */
 	public XmlExportTransformer(OutputStream out, String commentHeader,
 			EntityGraph entityGraph, Set<Table> totalProgress, Set<Table> cyclicAggregatedTables,
-			String rootTag, String datePattern, String timestampPattern, Session session, Charset charset) throws TransformerConfigurationException, SAXException {
+			String rootTag, String datePattern, String timestampPattern, Session session, Charset charset, int batchSize) throws TransformerConfigurationException, SAXException {
 		this.xmlRowWriter = new XmlRowWriter(out, commentHeader, rootTag, datePattern, timestampPattern, charset);
 		this.entityGraph = entityGraph;
 		this.totalProgress = totalProgress;
 		this.cyclicAggregatedTables = cyclicAggregatedTables;
 		this.session = session;
+		this.batchSize = batchSize;
 	}
 
 	/**
@@ -132,6 +163,13 @@ public class XmlExportTransformer extends AbstractResultSetReader {
 	 */
 	public void readCurrentRow(ResultSet resultSet) throws SQLException {
 		try {
+			if (batchSize > 1) {
+				block.add(new Node(memorize(resultSet), null));
+				if (block.size() >= batchSize) {
+					writeBlock();
+				}
+				return;
+			}
 			writeEntity(table, null, resultSet, new ArrayList<String>());
 		} catch (SAXException e) {
 			throw new RuntimeException(e);
@@ -152,19 +190,7 @@ public class XmlExportTransformer extends AbstractResultSetReader {
 	 */
 	private void writeEntity(final Table table, Association association, final ResultSet resultSet, final List<String> ancestors)
 			throws SQLException, SAXException, ParserConfigurationException, IOException {
-		StringBuilder sb = new StringBuilder(table.getName() + "(");
-		boolean f = true;
-		int i = 0;
-		for (@SuppressWarnings("unused") Column pk : table.primaryKey.getColumns()) {
-			if (!f) {
-				sb.append(", ");
-			}
-			f = false;
-			sb.append(SqlUtil.toSql(SqlUtil.getObject(resultSet, getMetaData(resultSet), "PK" + i++,
-					getTypeCache(table)), session));
-		}
-		sb.append(")");
-		String primaryKey = sb.toString();
+		String primaryKey = getPrimaryKey(table, resultSet, getMetaData(resultSet));
 
 		if (ancestors.contains(primaryKey)) {
 			throw new RuntimeException("cyclic aggregation: " + primaryKey
@@ -175,15 +201,7 @@ public class XmlExportTransformer extends AbstractResultSetReader {
 		
 		TableMapping tableMapping = getTableMapping(table);
 		
-		Map<String, Association> associationMap = associationCache.get(table);
-		if (associationMap == null) {
-			associationMap = new HashMap<String, Association>();
-			for (Association a: table.associations) {
-				associationMap.put(a.getName(), a);
-			}
-			associationCache.put(table, associationMap);
-		}
-		final Map<String, Association> finalAssociationMap = associationMap;
+		final Map<String, Association> finalAssociationMap = getAssociationMap(table);
 		
 		XmlUtil.visitDocumentNodes(tableMapping.template, xmlRowWriter.new XmlWritingNodeVisitor(resultSet, getMetaData(resultSet), table, association, session) {
 			public void visitAssociationElement(String associationName) {
@@ -225,6 +243,213 @@ public class XmlExportTransformer extends AbstractResultSetReader {
 		ancestors.remove(ancestors.size() - 1);
 	}
 
+	/**
+	 * Gets the primary key of an entity as string.
+	 * 
+	 * @param table entity's table
+	 * @param resultSet current row contains the entity
+	 */
+	private String getPrimaryKey(Table table, ResultSet resultSet, ResultSetMetaData resultSetMetaData) throws SQLException {
+		StringBuilder sb = new StringBuilder(table.getName() + "(");
+		boolean f = true;
+		int i = 0;
+		for (@SuppressWarnings("unused") Column pk : table.primaryKey.getColumns()) {
+			if (!f) {
+				sb.append(", ");
+			}
+			f = false;
+			sb.append(SqlUtil.toSql(SqlUtil.getObject(resultSet, resultSetMetaData, "PK" + i++,
+					getTypeCache(table)), session));
+		}
+		sb.append(")");
+		return sb.toString();
+	}
+
+	/**
+	 * Gets the associations of a table by name.
+	 * 
+	 * @param table the table
+	 */
+	private Map<String, Association> getAssociationMap(Table table) {
+		Map<String, Association> associationMap = associationCache.get(table);
+		if (associationMap == null) {
+			associationMap = new HashMap<String, Association>();
+			for (Association a: table.associations) {
+				associationMap.put(a.getName(), a);
+			}
+			associationCache.put(table, associationMap);
+		}
+		return associationMap;
+	}
+
+	/**
+	 * Aggregated associations (written as child elements) per table.
+	 */
+	private Map<Table, Set<Association>> aggregationCache = new HashMap<Table, Set<Association>>();
+
+	/**
+	 * Gets the associations of a table whose destination rows are written as child elements.
+	 * 
+	 * @param table the table
+	 */
+	private Set<Association> getAggregations(Table table) throws ParserConfigurationException, SAXException, IOException {
+		Set<Association> aggregations = aggregationCache.get(table);
+		if (aggregations == null) {
+			final Set<Association> result = new LinkedHashSet<Association>();
+			final Map<String, Association> associationMap = getAssociationMap(table);
+			XmlUtil.visitDocumentNodes(getTableMapping(table).template, new NodeVisitor() {
+				public void visitAssociationElement(String associationName) {
+					Association sa = associationMap.get(associationName);
+					if (sa != null && totalProgress.contains(sa.destination) && sa.getAggregationSchema() != AggregationSchema.NONE) {
+						result.add(sa);
+					}
+				}
+				public void visitComment(String comment) {
+				}
+				public void visitElementEnd(String elementName, boolean isRoot) {
+				}
+				public void visitText(String text) {
+				}
+				public void visitElementStart(String elementName, boolean isRoot, String[] attributeNames, String[] attributeValues) {
+				}
+			});
+			aggregations = result;
+			aggregationCache.put(table, aggregations);
+		}
+		return aggregations;
+	}
+
+	/**
+	 * Result set of the last memorized row and a copy of its meta data.
+	 */
+	private ResultSet lastResultSet;
+	private ResultSetMetaData lastMemorizedMetaData;
+
+	/**
+	 * Memorizes the current row of a result set.
+	 */
+	private ResultSet memorize(ResultSet resultSet) throws SQLException {
+		if (lastResultSet != resultSet) {
+			lastMemorizedMetaData = MemorizedRow.memorize(resultSet.getMetaData());
+			lastResultSet = resultSet;
+		}
+		return MemorizedRow.memorize(resultSet, lastMemorizedMetaData);
+	}
+
+	/**
+	 * Reads the aggregated rows of the rows read so far and writes them as XML hierarchies.
+	 */
+	private void writeBlock() throws SQLException, SAXException, ParserConfigurationException, IOException {
+		if (block.isEmpty()) {
+			return;
+		}
+		readAggregatedRows(table, block);
+		for (Node node: block) {
+			writeNode(table, null, node);
+		}
+		block.clear();
+	}
+
+	/**
+	 * Reads the aggregated rows of some rows of a table (recursively). 
+	 * The rows aggregated by batchSize rows via an association are read with one query. 
+	 * 
+	 * @param table the table
+	 * @param nodes the rows
+	 */
+	private void readAggregatedRows(Table table, List<Node> allNodes) throws SQLException, SAXException, ParserConfigurationException, IOException {
+		// an entity may occur more than once, read its aggregated rows only once
+		Map<String, Node> distinctNodes = new LinkedHashMap<String, Node>();
+		for (Node node: allNodes) {
+			node.primaryKey = getPrimaryKey(table, node.row, node.row.getMetaData());
+			for (Node ancestor = node.parent; ancestor != null; ancestor = ancestor.parent) {
+				if (ancestor.primaryKey.equals(node.primaryKey)) {
+					throw new RuntimeException("cyclic aggregation: " + node.primaryKey
+							+ " aggregates itself");
+				}
+			}
+			if (!distinctNodes.containsKey(node.primaryKey)) {
+				distinctNodes.put(node.primaryKey, node);
+			}
+		}
+		List<Node> nodes = new ArrayList<Node>(distinctNodes.values());
+		Map<Table, List<Node>> aggregatedNodes = new LinkedHashMap<Table, List<Node>>();
+		for (Association sa: getAggregations(table)) {
+			List<Node> destinationNodes = aggregatedNodes.get(sa.destination);
+			if (destinationNodes == null) {
+				destinationNodes = new ArrayList<Node>();
+				aggregatedNodes.put(sa.destination, destinationNodes);
+			}
+			for (int start = 0; start < nodes.size(); start += batchSize) {
+				List<Node> batch = nodes.subList(start, Math.min(nodes.size(), start + batchSize));
+				List<ResultSet> rows = new ArrayList<ResultSet>(batch.size());
+				List<ResultSetReader> readers = new ArrayList<ResultSetReader>(batch.size());
+				final List<Node> finalDestinationNodes = destinationNodes;
+				for (final Node node: batch) {
+					final List<Node> children = new ArrayList<Node>();
+					node.children.put(sa, children);
+					rows.add(node.row);
+					readers.add(new ResultSetReader() {
+						public void readCurrentRow(ResultSet resultSet) throws SQLException {
+							Node child = new Node(memorize(resultSet), node);
+							children.add(child);
+							finalDestinationNodes.add(child);
+						}
+						public void close() {
+						}
+					});
+				}
+				ResultSetMetaData resultSetMetaData = rows.get(0).getMetaData();
+				TableMapping tableMapping = getTableMapping(sa.destination);
+				entityGraph.readDependentEntities(sa.destination, sa, rows, resultSetMetaData, readers, getTypeCache(table), tableMapping.selectionSchema, tableMapping.originalPKAliasPrefix);
+				if (cyclicAggregatedTables.contains(sa.destination)) {
+					entityGraph.markDependentEntitiesAsTraversed(sa, rows, resultSetMetaData, getTypeCache(table));
+				}
+			}
+		}
+		for (Node node: allNodes) {
+			if (node.children.isEmpty()) {
+				node.children.putAll(distinctNodes.get(node.primaryKey).children);
+			}
+		}
+		for (Map.Entry<Table, List<Node>> e: aggregatedNodes.entrySet()) {
+			if (!e.getValue().isEmpty()) {
+				readAggregatedRows(e.getKey(), e.getValue());
+			}
+		}
+	}
+
+	/**
+	 * Writes a memorized row and its aggregated rows as XML hierarchy.
+	 * 
+	 * @param table row's table
+	 * @param association association to parent, <code>null</code> for top-level rows
+	 * @param node the row
+	 */
+	private void writeNode(Table table, Association association, final Node node)
+			throws SQLException, SAXException, ParserConfigurationException, IOException {
+		final Map<String, Association> associationMap = getAssociationMap(table);
+		XmlUtil.visitDocumentNodes(getTableMapping(table).template, xmlRowWriter.new XmlWritingNodeVisitor(node.row, node.row.getMetaData(), table, association, session) {
+			public void visitAssociationElement(String associationName) {
+				Association sa = associationMap.get(associationName);
+				if (sa != null) {
+					List<Node> children = node.children.get(sa);
+					if (children != null) {
+						try {
+							xmlRowWriter.startList(sa);
+							for (Node child: children) {
+								writeNode(sa.destination, sa, child);
+							}
+							xmlRowWriter.endList(sa);
+						} catch (Exception e) {
+							throw new RuntimeException(e);
+						}
+					}
+				}
+			}
+		});
+	}
+
 	/**
 	 * Gets type cache for given table.
 	 * 
@@ -250,14 +475,32 @@ public class XmlExportTransformer extends AbstractResultSetReader {
 	/**
 	 * Closes the XML document.
 	 */
-	public void endDocument() throws SAXException {
+	public void endDocument() throws SAXException, IOException {
 		xmlRowWriter.close();
 	}
 
+	/**
+	 * Stops writing if the export fails. Does nothing if the document is already closed.
+	 */
+	public void stop() {
+		xmlRowWriter.stop();
+	}
+
 	/**
 	 * Flushes the export-reader.
 	 */
 	public void close() {
+		try {
+			writeBlock();
+		} catch (SQLException e) {
+			throw new RuntimeException(e);
+		} catch (SAXException e) {
+			throw new RuntimeException(e);
+		} catch (ParserConfigurationException e) {
+			throw new RuntimeException(e);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
 	}
 	
 	/**
@@ -15,8 +15,8 @@
  */
 package net.sf.jailer.xml;
 
+import java.io.IOException;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
 import java.nio.charset.Charset;
 import java.sql.Blob;
 import java.sql.Clob;
@@ -34,11 +34,13 @@ import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.transform.sax.TransformerHandler;
 import javax.xml.transform.stream.StreamResult;
 
+import net.sf.jailer.CommandLineParser;
 import net.sf.jailer.database.DBMS;
 import net.sf.jailer.database.Session;
 import net.sf.jailer.datamodel.AggregationSchema;
 import net.sf.jailer.datamodel.Association;
 import net.sf.jailer.datamodel.Table;
+import net.sf.jailer.util.AsyncOutputStreamWriter;
 import net.sf.jailer.util.Base64;
 import net.sf.jailer.util.SqlUtil;
 
@@ -57,6 +59,16 @@ public class XmlRowWriter {
 	 * SAX transformer.
 	 */
 	private final TransformerHandler transformerHandler;
+
+	/**
+	 * Writes the XML document, <code>null</code> if the document is written by a {@link StreamingXmlHandler}.
+	 */
+	private final AsyncOutputStreamWriter writer;
+
+	/**
+	 * The stream to write the XML document into.
+	 */
+	private final OutputStream out;
 	
 	/**
 	 * Root tag name.
@@ -96,18 +108,40 @@ public class XmlRowWriter {
 		this.rootTag = rootTag;
 		this.datePattern = new SimpleDateFormat(datePattern);
 		this.timestampPattern = new SimpleDateFormat(timestampPattern);
-		StreamResult streamResult = new StreamResult(new OutputStreamWriter(out, charset));
-		transformerHandler = XmlUtil.createTransformerHandler(commentHeader, rootTag, streamResult, charset);
+		this.out = out;
+		CommandLineParser clp = CommandLineParser.getInstance();
+		if (clp.xmlStreaming) {
+			writer = null;
+			transformerHandler = XmlUtil.createStreamingHandler(commentHeader, rootTag, out, charset, !clp.xmlNoIndent);
+		} else {
+			writer = new AsyncOutputStreamWriter(out, charset);
+			StreamResult streamResult = new StreamResult(writer);
+			transformerHandler = XmlUtil.createTransformerHandler(commentHeader, rootTag, streamResult, charset);
+		}
 	}
 
 	/**
 	 * Closes the writer.
 	 */
-	public void close() throws SAXException {
+	public void close() throws SAXException, IOException {
 		if (rootTag.length() > 0) {
 			transformerHandler.endElement("", "", rootTag);
 		}
         transformerHandler.endDocument();
+        if (writer != null) {
+        	writer.close();
+        } else {
+        	out.close();
+        }
+	}
+
+	/**
+	 * Stops the writer thread, if any. Does nothing if the writer is already closed.
+	 */
+	public void stop() {
+		if (writer != null) {
+			writer.stop();
+		}
 	}
 
 	/**
@@ -221,6 +255,14 @@ public class XmlRowWriter {
 							}
 							return "";
 						}
+
+						// memorized LOBs (see MemorizedRow)
+						if (object instanceof byte[]) {
+							return Base64.encodeBytes((byte[]) object);
+						}
+						if (object instanceof String) {
+							return (String) object;
+						}
 					} else {
 						Object o = SqlUtil.getObject(resultSet, resultSetMetaData, columnName, typeCache);
 						if (returnNull && (o == null || resultSet.wasNull())) {
@@ -16,6 +16,7 @@
 package net.sf.jailer.xml;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.StringReader;
 import java.io.StringWriter;
 import java.nio.charset.Charset;
@@ -223,6 +224,29 @@ public class XmlUtil {
         serializer.setOutputProperty(OutputKeys.METHOD, "xml");
         serializer.setOutputProperty(OutputKeys.INDENT, "yes");
         transformerHandler.setResult(streamResult);
+        startDocument(transformerHandler, commentHeader, rootTag);
+        return transformerHandler;
+	}
+
+	/**
+	 * Creates a {@link StreamingXmlHandler}.
+	 * 
+	 * @param commentHeader the comment header
+	 * @param rootTag the root tag
+	 * @param out stream to write into
+	 * @param indent whether to indent elements
+	 */
+	public static TransformerHandler createStreamingHandler(String commentHeader, String rootTag,
+			OutputStream out, Charset charset, boolean indent) throws SAXException {
+		TransformerHandler transformerHandler = new StreamingXmlHandler(out, charset, indent);
+		startDocument(transformerHandler, commentHeader, rootTag);
+		return transformerHandler;
+	}
+
+	/**
+	 * Starts a document, writes comment header and root tag.
+	 */
+	private static void startDocument(TransformerHandler transformerHandler, String commentHeader, String rootTag) throws SAXException {
         transformerHandler.startDocument();
         String newline = System.getProperty("line.separator");
         if (newline == null) {
@@ -235,7 +259,6 @@ public class XmlUtil {
 		if (rootTag.length() > 0) {
 			transformerHandler.startElement("", "", rootTag, null);
 		}
-        return transformerHandler;
 	}
 
 }
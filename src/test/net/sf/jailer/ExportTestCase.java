@@ -17,6 +17,7 @@ package net.sf.jailer;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import net.sf.jailer.database.Session;
@@ -41,6 +42,7 @@ public class ExportTestCase extends DbmsAwareTestCase {
 	private final String format;
 	private final String scope;
 	private final boolean overwrite;
+	private final String[] extraArguments;
 		
 	/**
 	 * Constructor.
@@ -49,7 +51,19 @@ public class ExportTestCase extends DbmsAwareTestCase {
 	 * @param initialDataset initial data
 	 */
 	public ExportTestCase(String name, File testDir, File datamodelDir, File initialDataset, File expectedResult, String format, String scope, boolean overwrite) {
+		this(name, testDir, datamodelDir, initialDataset, expectedResult, format, scope, overwrite, new String[0]);
+	}
+		
+	/**
+	 * Constructor.
+	 * 
+	 * @param name test case name
+	 * @param initialDataset initial data
+	 * @param extraArguments additional arguments for the export
+	 */
+	public ExportTestCase(String name, File testDir, File datamodelDir, File initialDataset, File expectedResult, String format, String scope, boolean overwrite, String... extraArguments) {
 		super(name);
+		this.extraArguments = extraArguments;
 		this.testDir = testDir;
 		this.datamodelDir = datamodelDir;
 		this.initialDataset = initialDataset;
@@ -142,13 +156,14 @@ public class ExportTestCase extends DbmsAwareTestCase {
 		if (overwrite) {
 			args.add("-upsert-only");
 		}
+		args.addAll(Arrays.asList(extraArguments));
 		System.out.println(args);
 		Jailer.main(args.toArray(new String[0]));
 		return true;
 	}
 
 	public String toString() {
-		return super.toString() + ": " + testDir + ", " + format + ", " + scope;
+		return super.toString() + ": " + testDir + ", " + format + ", " + scope + (extraArguments.length > 0? ", " + Arrays.asList(extraArguments) : "");
 	}
 	
 }
@@ -18,6 +18,7 @@ package net.sf.jailer;
 import java.io.File;
 
 import junit.framework.TestSuite;
+import net.sf.jailer.util.CsvFile;
 
 /**
  * DB-based tests.
@@ -47,11 +48,26 @@ public class GeneralDbmsTestSuite extends TestSuite {
 						suite.addTest(new ExportTestCase("testExport", testDir, new File(baseDir, "datamodel"), new File(baseDir, "initial-dataset.xml"), expectedResult, "SQL", "GLOBAL", false));
 						suite.addTest(new ExportTestCase("testExport", testDir, new File(baseDir, "datamodel"), new File(baseDir, "initial-dataset.xml"), expectedResult, "SQL", "SESSION_LOCAL", true));
 						suite.addTest(new ExportTestCase("testExport", testDir, new File(baseDir, "datamodel"), new File(baseDir, "initial-dataset.xml"), expectedResult, "SQL", "GLOBAL", true));
+						if (!usesPseudoColumns(testDir)) {
+							// the in-memory entity graph must give the same results as the local one
+							for (String scope: new String[] { "LOCAL_DATABASE", "IN_MEMORY" }) {
+								suite.addTest(new ExportTestCase("testExport", testDir, new File(baseDir, "datamodel"), new File(baseDir, "initial-dataset.xml"), expectedResult, "DBUNIT_FLAT_XML", scope, false));
+								suite.addTest(new ExportTestCase("testExport", testDir, new File(baseDir, "datamodel"), new File(baseDir, "initial-dataset.xml"), expectedResult, "SQL", scope, false));
+							}
+						}
 					}
 					expectedResult = new File(testDir, "expected-xml.xml");
 					if (expectedResult.exists()) {
 						suite.addTest(new ExportTestCase("testExport", testDir, new File(baseDir, "datamodel"), new File(baseDir, "initial-dataset.xml"), expectedResult, "XML", "SESSION_LOCAL", false));
 						suite.addTest(new ExportTestCase("testExport", testDir, new File(baseDir, "datamodel"), new File(baseDir, "initial-dataset.xml"), expectedResult, "XML", "GLOBAL", false));
+						if (!usesPseudoColumns(testDir)) {
+							// aggregated rows read in batches
+							suite.addTest(new ExportTestCase("testExport", testDir, new File(baseDir, "datamodel"), new File(baseDir, "initial-dataset.xml"), expectedResult, "XML", "GLOBAL", false, "-xml-batch-size", "3"));
+							// written without JAXP transformer
+							suite.addTest(new ExportTestCase("testExport", testDir, new File(baseDir, "datamodel"), new File(baseDir, "initial-dataset.xml"), expectedResult, "XML", "GLOBAL", false, "-xml-streaming"));
+							suite.addTest(new ExportTestCase("testExport", testDir, new File(baseDir, "datamodel"), new File(baseDir, "initial-dataset.xml"), expectedResult, "XML", "LOCAL_DATABASE", false));
+							suite.addTest(new ExportTestCase("testExport", testDir, new File(baseDir, "datamodel"), new File(baseDir, "initial-dataset.xml"), expectedResult, "XML", "IN_MEMORY", false));
+						}
 					}
 					expectedResult = new File(testDir, "expected-remaining-dataset.xml");
 					if (expectedResult.exists()) {
@@ -63,5 +79,25 @@ public class GeneralDbmsTestSuite extends TestSuite {
 		}
 		return suite;
 	}
+
+	/**
+	 * Checks whether the extraction model of a test uses the pseudo-columns $DISTANCE or $IS_SUBJECT,
+	 * which are not supported by the scopes LOCAL_DATABASE and IN_MEMORY.
+	 */
+	private static boolean usesPseudoColumns(File testDir) {
+		try {
+			for (CsvFile.Line line: new CsvFile(new File(testDir, "extractionmodel.csv")).getLines()) {
+				for (String cell: line.cells) {
+					String c = cell.toUpperCase();
+					if (c.contains("$DISTANCE") || c.contains("$IS_SUBJECT")) {
+						return true;
+					}
+				}
+			}
+			return false;
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+	}
 	
 }
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2007 - 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.jailer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import junit.framework.TestCase;
+import net.sf.jailer.util.ParallelGZIPOutputStream;
+
+/**
+ * Tests for {@link ParallelGZIPOutputStream}.
+ *
+ * @author Ralf Wisser
+ */
+public class ParallelGZIPTestCase extends TestCase {
+
+	public void testRoundTrip() throws Exception {
+		Random random = new Random(4711);
+		for (int length: new int[] { 0, 1, 1000, 32 * 1024, 64 * 1024, 64 * 1024 + 1, 1000000 }) {
+			byte[] data = new byte[length];
+			for (int i = 0; i < length; ++i) {
+				// compressible, but not trivially
+				data[i] = (byte) ("Insert into EMPLOYEE values (".charAt(i % 29) + random.nextInt(3));
+			}
+			for (int threads: new int[] { 1, 4 }) {
+				ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+				ParallelGZIPOutputStream out = new ParallelGZIPOutputStream(compressed, threads, 32 * 1024);
+				int off = 0;
+				while (off < length) {
+					int n = Math.min(length - off, 1 + random.nextInt(10000));
+					out.write(data, off, n);
+					off += n;
+				}
+				out.close();
+				assertTrue(Arrays.equals(data, gunzip(compressed.toByteArray())));
+			}
+		}
+	}
+
+	private byte[] gunzip(byte[] compressed) throws Exception {
+		InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed));
+		ByteArrayOutputStream result = new ByteArrayOutputStream();
+		byte[] buffer = new byte[4096];
+		int n;
+		while ((n = in.read(buffer)) > 0) {
+			result.write(buffer, 0, n);
+		}
+		in.close();
+		return result.toByteArray();
+	}
+
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright 2007 - 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.jailer.database;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for {@link ConnectionPool}.
+ *
+ * @author Ralf Wisser
+ */
+public class ConnectionPoolTestCase extends TestCase {
+
+	private static final long HOUR = 60L * 60L * 1000L;
+
+	private final List<Connection> closed = new ArrayList<Connection>();
+	private ConnectionPool pool;
+
+	@Override
+	protected void setUp() throws Exception {
+		Class.forName("org.h2.Driver");
+		pool = new ConnectionPool(new ConnectionPool.Factory() {
+			public Connection createConnection() throws SQLException {
+				return DriverManager.getConnection("jdbc:h2:mem:", "sa", "");
+			}
+			public void connectionClosed(Connection connection) {
+				closed.add(connection);
+			}
+		});
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		pool.close();
+	}
+
+	public void testReentrancy() throws Exception {
+		Connection c1 = pool.acquire();
+		Connection c2 = pool.acquire();
+		assertSame(c1, c2);
+		assertEquals(1, pool.getInUse());
+		pool.release(c2);
+		assertEquals(1, pool.getInUse());
+		pool.release(c1);
+		assertEquals(0, pool.getInUse());
+
+		// stays bound to the thread
+		assertSame(c1, pool.acquire());
+		pool.release(c1);
+		assertEquals(1, pool.getConnections().size());
+	}
+
+	public void testHandOver() throws Exception {
+		pool.setMaxConnections(1);
+		Connection c = acquireInOtherThread(false);
+		assertSame(c, pool.acquire());
+		pool.release(c);
+		assertEquals(1, pool.getConnections().size());
+	}
+
+	public void testOpenTransactionIsNotHandedOver() throws Exception {
+		pool.setMaxConnections(1);
+		pool.setPinnedTimeout(100);
+		Connection c = acquireInOtherThread(true);
+		assertNoConnection("open transaction");
+		assertEquals(1, pool.getConnections().size());
+
+		pool.evictIdleConnections(System.currentTimeMillis() + HOUR);
+		assertEquals(1, pool.getConnections().size());
+		assertSame(c, pool.getConnections().get(0));
+
+		pool.transactionsEnded();
+		assertSame(c, pool.acquire());
+		c.setAutoCommit(true);
+		pool.release(c);
+		pool.evictIdleConnections(System.currentTimeMillis() + HOUR);
+		assertTrue(pool.getConnections().isEmpty());
+		assertTrue(closed.contains(c));
+	}
+
+	public void testWaitForHandOver() throws Exception {
+		pool.setMaxConnections(1);
+		Connection c = acquireInOtherThread(true);
+		Thread committer = new Thread() {
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(200);
+				} catch (InterruptedException e) {
+					// ignore
+				}
+				pool.transactionsEnded();
+			}
+		};
+		committer.start();
+		assertSame(c, pool.acquire());
+		pool.release(c);
+		committer.join();
+		assertEquals(1, pool.getConnections().size());
+	}
+
+	public void testSessionStateIsKept() throws Exception {
+		final Connection[] connection = new Connection[1];
+		final Object lock = new Object();
+		final boolean[] done = new boolean[1];
+		Thread owner = new Thread() {
+			@Override
+			public void run() {
+				try {
+					Connection c = pool.acquire();
+					pool.keepSessionState(c);
+					pool.release(c);
+					synchronized (lock) {
+						connection[0] = c;
+						lock.notifyAll();
+						while (!done[0]) {
+							lock.wait();
+						}
+					}
+				} catch (Exception e) {
+					throw new RuntimeException(e);
+				}
+			}
+		};
+		owner.setDaemon(true);
+		owner.start();
+		synchronized (lock) {
+			while (connection[0] == null) {
+				lock.wait();
+			}
+		}
+		pool.setMaxConnections(1);
+		pool.setPinnedTimeout(100);
+		assertNoConnection("modified session state");
+		pool.evictIdleConnections(System.currentTimeMillis() + HOUR);
+		assertEquals(1, pool.getConnections().size());
+		assertSame(connection[0], pool.getConnections().get(0));
+
+		// owner terminates, its connection is closed
+		synchronized (lock) {
+			done[0] = true;
+			lock.notifyAll();
+		}
+		owner.join();
+		Connection c = pool.acquire();
+		assertNotSame(connection[0], c);
+		assertTrue(closed.contains(connection[0]));
+		pool.release(c);
+		assertEquals(1, pool.getConnections().size());
+	}
+
+	public void testEviction() throws Exception {
+		Connection c = pool.acquire();
+		pool.evictIdleConnections(System.currentTimeMillis() + HOUR);
+		assertEquals(1, pool.getConnections().size());
+		pool.release(c);
+		pool.evictIdleConnections(System.currentTimeMillis());
+		assertEquals(1, pool.getConnections().size());
+		pool.evictIdleConnections(System.currentTimeMillis() + HOUR);
+		assertTrue(pool.getConnections().isEmpty());
+		assertTrue(closed.contains(c));
+		assertNotSame(c, pool.acquire());
+	}
+
+	/**
+	 * Checks that no connection can be acquired because all connections are bound to other threads.
+	 */
+	private void assertNoConnection(String reason) {
+		try {
+			pool.acquire();
+			fail("connection acquired");
+		} catch (SQLException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains(reason));
+		}
+	}
+
+	/**
+	 * Acquires and releases a connection in a thread which terminates afterwards.
+	 */
+	private Connection acquireInOtherThread(final boolean openTransaction) throws Exception {
+		final Connection[] connection = new Connection[1];
+		final Exception[] exception = new Exception[1];
+		Thread thread = new Thread() {
+			@Override
+			public void run() {
+				try {
+					Connection c = pool.acquire();
+					if (openTransaction) {
+						c.setAutoCommit(false);
+					}
+					pool.release(c);
+					connection[0] = c;
+				} catch (Exception e) {
+					exception[0] = e;
+				}
+			}
+		};
+		thread.start();
+		thread.join();
+		if (exception[0] != null) {
+			throw exception[0];
+		}
+		return connection[0];
+	}
+
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2007 - 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.jailer.datamodel;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+import net.sf.jailer.util.CsvFile;
+
+/**
+ * Tests for {@link DataModelSnapshot}.
+ *
+ * @author Ralf Wisser
+ */
+public class DataModelSnapshotTestCase extends TestCase {
+
+	/**
+	 * Modification time of the CSV files, old enough to be recorded in the snapshot.
+	 */
+	private static final long MODIFIED = (System.currentTimeMillis() - 60000) / 1000 * 1000;
+
+	private File folder;
+	private File snapshotFolder;
+	private File table;
+	private File included;
+
+	@Override
+	protected void setUp() throws Exception {
+		folder = File.createTempFile("datamodel", "");
+		folder.delete();
+		folder.mkdir();
+		snapshotFolder = File.createTempFile("snapshot", "");
+		snapshotFolder.delete();
+		table = new File(folder, "table.csv");
+		included = new File(folder, "included.csv");
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		for (File dir: new File[] { folder, snapshotFolder }) {
+			if (dir.exists()) {
+				for (File file: dir.listFiles()) {
+					file.delete();
+				}
+				dir.delete();
+			}
+		}
+	}
+
+	public void testUnchangedFileIsTakenFromSnapshot() throws Exception {
+		write(table, "A; 1;\nB; 2;\n", MODIFIED);
+		assertEquals("[A:1, B:2]", readAndWriteSnapshot(table));
+		assertTrue(DataModelSnapshot.getSnapshotFile(folder, snapshotFolder).exists());
+		assertEquals(1, folder.listFiles().length);
+
+		// same length and modification time
+		write(table, "X; 1;\nY; 2;\n", MODIFIED);
+		assertEquals("[A:1, B:2]", readAndWriteSnapshot(table));
+	}
+
+	public void testModificationTimeChanged() throws Exception {
+		write(table, "A; 1;\n", MODIFIED);
+		assertEquals("[A:1]", readAndWriteSnapshot(table));
+		write(table, "X; 1;\n", MODIFIED + 1000);
+		assertEquals("[X:1]", readAndWriteSnapshot(table));
+		write(table, "Y; 1;\n", MODIFIED + 1000);
+		assertEquals("[X:1]", readAndWriteSnapshot(table));
+	}
+
+	public void testLengthChanged() throws Exception {
+		write(table, "A; 1;\n", MODIFIED);
+		assertEquals("[A:1]", readAndWriteSnapshot(table));
+		write(table, "A; 12;\n", MODIFIED);
+		assertEquals("[A:12]", readAndWriteSnapshot(table));
+	}
+
+	public void testIncludedFileChanged() throws Exception {
+		write(included, "B; 2;\n", MODIFIED);
+		write(table, "A; 1;\n#include included.csv\n", MODIFIED);
+		assertEquals("[A:1, B:2]", readAndWriteSnapshot(table));
+		write(included, "C; 3;\n", MODIFIED + 1000);
+		assertEquals("[A:1, C:3]", readAndWriteSnapshot(table));
+		included.delete();
+		write(table, "A; 1;\n", MODIFIED + 1000);
+		assertEquals("[A:1]", readAndWriteSnapshot(table));
+	}
+
+	public void testRecentlyModifiedFileIsNotRecorded() throws Exception {
+		write(table, "A; 1;\n", System.currentTimeMillis());
+		long modified = table.lastModified();
+		assertEquals("[A:1]", readAndWriteSnapshot(table));
+		write(table, "X; 1;\n", modified);
+		assertEquals("[X:1]", readAndWriteSnapshot(table));
+	}
+
+	public void testCorruptSnapshot() throws Exception {
+		write(table, "A; 1;\n", MODIFIED);
+		assertEquals("[A:1]", readAndWriteSnapshot(table));
+		File snapshotFile = DataModelSnapshot.getSnapshotFile(folder, snapshotFolder);
+		write(snapshotFile, "\u0000\u0000\u0000\u0001?\u00ff\u00ff\u00ff\u00ff", MODIFIED);
+		write(table, "X; 1;\n", MODIFIED);
+		assertEquals("[X:1]", readAndWriteSnapshot(table));
+	}
+
+	/**
+	 * Reads the lines of a CSV file with a new snapshot and writes the snapshot.
+	 *
+	 * @return first two cells of each line
+	 */
+	private String readAndWriteSnapshot(File csvFile) throws Exception {
+		DataModelSnapshot snapshot = new DataModelSnapshot(folder, snapshotFolder);
+		List<String> cells = new ArrayList<String>();
+		for (CsvFile.Line line: snapshot.getLines(csvFile)) {
+			cells.add(line.cells.get(0) + ":" + line.cells.get(1));
+		}
+		snapshot.write();
+		return cells.toString();
+	}
+
+	private void write(File file, String content, long lastModified) throws Exception {
+		FileWriter out = new FileWriter(file);
+		out.write(content);
+		out.close();
+		file.setLastModified(lastModified);
+	}
+
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2007 - 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.jailer.entitygraph;
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for {@link TopologicalEntitySorter}.
+ *
+ * @author Ralf Wisser
+ */
+public class TopologicalEntitySorterTestCase extends TestCase {
+
+	public void testChain() throws Exception {
+		// 2 -> 1 -> 0
+		assertLevels(new int[] { 0, 1, 2 }, 3, new int[][] { { 1, 0 }, { 2, 1 } });
+	}
+
+	public void testLongestPath() throws Exception {
+		// 3 -> 0, 3 -> 2 -> 1 -> 0, 4 independent
+		assertLevels(new int[] { 0, 1, 2, 3, 0 }, 5, new int[][] { { 3, 0 }, { 3, 2 }, { 2, 1 }, { 1, 0 } });
+	}
+
+	public void testParallelDependencies() throws Exception {
+		assertLevels(new int[] { 0, 1 }, 2, new int[][] { { 1, 0 }, { 1, 0 } });
+	}
+
+	public void testCycles() throws Exception {
+		// 1 <-> 2, 3 -> 1, 1 -> 0, 4 -> 0
+		assertLevels(new int[] { 0, -1, -1, -1, 1 }, 5, new int[][] { { 1, 2 }, { 2, 1 }, { 3, 1 }, { 1, 0 }, { 4, 0 } });
+	}
+
+	public void testNoEntities() throws Exception {
+		assertLevels(new int[0], 0, new int[0][]);
+	}
+
+	private void assertLevels(int[] expected, int n, int[][] dependencies) {
+		int[] from = new int[dependencies.length];
+		int[] to = new int[dependencies.length];
+		for (int i = 0; i < dependencies.length; ++i) {
+			from[i] = dependencies[i][0];
+			to[i] = dependencies[i][1];
+		}
+		assertEquals(Arrays.toString(expected), Arrays.toString(TopologicalEntitySorter.levels(n, from, to, dependencies.length)));
+	}
+
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2007 - 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.jailer.entitygraph.inmemory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+import net.sf.jailer.CommandLineParser;
+import net.sf.jailer.datamodel.Column;
+import net.sf.jailer.datamodel.PrimaryKeyFactory;
+import net.sf.jailer.datamodel.Table;
+
+/**
+ * Tests for {@link EntityStore}.
+ *
+ * @author Ralf Wisser
+ */
+public class EntityStoreTestCase extends TestCase {
+
+	@Override
+	protected void setUp() throws Exception {
+		CommandLineParser.parse(new String[0], true);
+	}
+
+	public void testSelectByBirthday() throws Exception {
+		EntityStore store = new EntityStore(createTable("ID"), 0);
+		for (int i = 0; i < 1000; ++i) {
+			assertTrue(store.add(new String[] { "" + i }, i % 10));
+		}
+		assertFalse(store.add(new String[] { "5" }, 3));
+		assertEquals(100, store.select(3, 3).length);
+		assertEquals(300, store.select(3, 5).length);
+		assertEquals(0, store.select(10, 20).length);
+
+		int[] entities = store.select(7, 7);
+		for (int i = 1; i < entities.length; ++i) {
+			assertTrue(entities[i - 1] < entities[i]);
+		}
+		for (int e: entities) {
+			store.setBirthday(e, EntityStore.REMOVED);
+		}
+		assertEquals(0, store.select(7, 7).length);
+		assertEquals(900, store.select(Integer.MIN_VALUE + 1, Integer.MAX_VALUE).length);
+		assertEquals(900, store.liveSize());
+		assertEquals(-1, store.find(new String[] { "7" }));
+
+		// revive
+		assertTrue(store.add(new String[] { "7" }, -1));
+		assertEquals(1, store.select(-1, -1).length);
+		assertEquals(900, store.liveSize());
+		store.setBirthday(store.find(new String[] { "7" }), 11);
+		assertEquals(0, store.select(-1, -1).length);
+		assertEquals(1, store.select(11, 11).length);
+		assertEquals(901, store.liveSize());
+
+		// switches to string keys
+		assertTrue(store.add(new String[] { "'x'" }, 11));
+		assertEquals(2, store.select(11, 11).length);
+		assertEquals(100, store.select(0, 0).length);
+		assertEquals(store.find(new String[] { "7" }), store.select(11, 11)[0]);
+	}
+
+	public void testSortCompositeKeys() throws Exception {
+		EntityStore store = new EntityStore(createTable("A", "B"), 0);
+		String[][] keys = new String[][] {
+				{ "10", "'b'" },
+				{ "9", "'c'" },
+				{ "10", "'a'" },
+				{ "-2.5", "'z'" },
+				{ "100", "'a'" },
+				{ "null", "'a'" }
+		};
+		for (String[] key: keys) {
+			store.add(key, 1);
+		}
+		int[] entities = store.select(1, 1);
+		store.sort(entities);
+		List<String> sorted = new ArrayList<String>();
+		for (int e: entities) {
+			sorted.add(Arrays.toString(store.getKey(e)));
+		}
+		assertEquals(Arrays.asList("[null, 'a']", "[-2.5, 'z']", "[9, 'c']", "[10, 'a']", "[10, 'b']", "[100, 'a']"), sorted);
+	}
+
+	public void testSortNumericKeys() throws Exception {
+		EntityStore store = new EntityStore(createTable("ID"), 0);
+		for (String key: new String[] { "12", "3", "1.5", "20" }) {
+			store.add(new String[] { key }, 1);
+		}
+		int[] entities = store.select(1, 1);
+		store.sort(entities);
+		List<String> sorted = new ArrayList<String>();
+		for (int e: entities) {
+			sorted.add(store.getKey(e)[0]);
+		}
+		assertEquals(Arrays.asList("1.5", "3", "12", "20"), sorted);
+	}
+
+	private Table createTable(String... pkColumns) {
+		List<Column> columns = new ArrayList<Column>();
+		for (String name: pkColumns) {
+			columns.add(new Column(name, "INTEGER", 0, -1));
+		}
+		return new Table("T", new PrimaryKeyFactory().createPrimaryKey(columns), false);
+	}
+
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2007 - 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.jailer.modelbuilder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+import net.sf.jailer.CommandLineParser;
+import net.sf.jailer.datamodel.Column;
+
+/**
+ * Tests for {@link TableFingerprints}.
+ *
+ * @author Ralf Wisser
+ */
+public class TableFingerprintsTestCase extends TestCase {
+
+	private static final String URL = "jdbc:h2:/tmp/db;MODE=Oracle";
+
+	private File folder;
+
+	@Override
+	protected void setUp() throws Exception {
+		folder = File.createTempFile("fingerprints", "");
+		folder.delete();
+		folder.mkdir();
+		CommandLineParser.parse(new String[] { "-datamodel", folder.getPath() }, true);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		new File(TableFingerprints.getFingerprintFilename()).delete();
+		folder.delete();
+	}
+
+	public void testRoundTrip() throws Exception {
+		List<Column> primaryKey = Arrays.asList(new Column("ID", "INTEGER", 0, -1));
+		List<Column> columns = Arrays.asList(new Column("ID", "INTEGER", 0, -1), new Column("NAME", "VARCHAR", 20, -1));
+		List<String[]> importedKeys = new ArrayList<String[]>();
+		importedKeys.add(new String[] { "S", "B", "ID", "S", "A", "B_ID", "FK_A;B" });
+		importedKeys.add(new String[] { null, "C", "ID", null, "A", "C_ID", null });
+
+		TableFingerprints fingerprints = new TableFingerprints(URL, "S");
+		fingerprints.setFingerprint("A", "a1");
+		assertNull(fingerprints.getPrimaryKey("A"));
+		fingerprints.setPrimaryKey("A", primaryKey);
+		fingerprints.setColumns("A", columns);
+		fingerprints.setImportedKeys("A", importedKeys);
+		fingerprints.setFingerprint("B", "b1");
+		fingerprints.setPrimaryKey("B", primaryKey);
+		fingerprints.write();
+
+		fingerprints = new TableFingerprints(URL, "S");
+		fingerprints.setFingerprint("A", "a1");
+		fingerprints.setFingerprint("B", "b2");
+		assertEquals(primaryKey.toString(), String.valueOf(fingerprints.getPrimaryKey("A")));
+		assertEquals(columns.toString(), String.valueOf(fingerprints.getColumns("A")));
+		List<String[]> keys = fingerprints.getImportedKeys("A");
+		assertEquals(2, keys.size());
+		for (int i = 0; i < keys.size(); ++i) {
+			assertEquals(Arrays.toString(importedKeys.get(i)), Arrays.toString(keys.get(i)));
+		}
+		assertNull(fingerprints.getPrimaryKey("B"));
+		assertNull(fingerprints.getColumns("B"));
+		assertNull(fingerprints.getPrimaryKey("C"));
+	}
+
+	public void testOtherDatabase() throws Exception {
+		TableFingerprints fingerprints = new TableFingerprints(URL, null);
+		fingerprints.setFingerprint("A", "a1");
+		fingerprints.setPrimaryKey("A", Arrays.asList(new Column("ID", "INTEGER", 0, -1)));
+		fingerprints.write();
+
+		fingerprints = new TableFingerprints(URL, null);
+		fingerprints.setFingerprint("A", "a1");
+		assertNotNull(fingerprints.getPrimaryKey("A"));
+
+		fingerprints = new TableFingerprints(URL, "S");
+		fingerprints.setFingerprint("A", "a1");
+		assertNull(fingerprints.getPrimaryKey("A"));
+
+		fingerprints = new TableFingerprints("jdbc:h2:/tmp/other", null);
+		fingerprints.setFingerprint("A", "a1");
+		assertNull(fingerprints.getPrimaryKey("A"));
+	}
+
+}
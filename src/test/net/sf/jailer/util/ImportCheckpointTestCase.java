@@ -0,0 +1,158 @@
+/*
+ * Copyright 2007 - 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.jailer.util;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+import net.sf.jailer.CommandLineParser;
+import net.sf.jailer.database.Session;
+
+/**
+ * Tests for {@link ImportCheckpoint}.
+ *
+ * @author Ralf Wisser
+ */
+public class ImportCheckpointTestCase extends TestCase {
+
+	private File script;
+
+	@Override
+	protected void setUp() throws Exception {
+		CommandLineParser.parse(new String[0], true);
+		script = File.createTempFile("import", ".sql");
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		new File(script.getPath() + ".checkpoint").delete();
+		script.delete();
+	}
+
+	public void testReadWrite() throws Exception {
+		writeScript("Insert into T values(1);\n");
+		ImportCheckpoint checkpoint = new ImportCheckpoint(script);
+		assertFalse(checkpoint.read());
+		List<long[]> ranges = new ArrayList<long[]>();
+		ranges.add(new long[] { 3, 4 });
+		ranges.add(new long[] { 8, 9 });
+		checkpoint.write(5, ranges);
+
+		checkpoint = new ImportCheckpoint(script);
+		assertTrue(checkpoint.read());
+		assertEquals(5, checkpoint.getCommittedLine());
+		assertTrue(checkpoint.isCommitted(2, 5));
+		assertFalse(checkpoint.isCommitted(6, 7));
+		assertTrue(checkpoint.isCommitted(8, 9));
+		assertFalse(checkpoint.isCommitted(8, 10));
+
+		// ranges of the previous import are kept
+		checkpoint.write(6, new ArrayList<long[]>());
+		checkpoint = new ImportCheckpoint(script);
+		assertTrue(checkpoint.read());
+		assertEquals(6, checkpoint.getCommittedLine());
+		assertTrue(checkpoint.isCommitted(8, 9));
+
+		checkpoint.delete();
+		assertFalse(new ImportCheckpoint(script).read());
+	}
+
+	public void testModifiedScript() throws Exception {
+		writeScript("Insert into T values(1);\n");
+		new ImportCheckpoint(script).write(1, new ArrayList<long[]>());
+		writeScript("Insert into T values(1);\nInsert into T values(2);\n");
+		try {
+			new ImportCheckpoint(script).read();
+			fail("modified script not detected");
+		} catch (RuntimeException e) {
+			// expected
+		}
+	}
+
+	public void testResume() throws Exception {
+		assertResume("testResume", 1, 1);
+	}
+
+	public void testResumeConcurrentImport() throws Exception {
+		assertResume("testResumeConcurrentImport", 2, 2);
+	}
+
+	/**
+	 * Imports a script which fails in the middle, then resumes the import.
+	 * Statements executed by the interrupted import must not be executed again.
+	 */
+	private void assertResume(String db, int threads, int batchSize) throws Exception {
+		writeScript(
+				"--#level 0\n" +
+				"Insert into T values(1);\n" +
+				"Insert into T values(2);\n" +
+				"Insert into T values(3);\n" +
+				"--#level 1\n" +
+				"Insert into U values(1);\n" +
+				"--#level 2\n" +
+				"Insert into T values(4);\n" +
+				"Insert into T values(5);\n");
+		Session session = new Session("org.h2.Driver", "jdbc:h2:mem:" + db + ";DB_CLOSE_DELAY=-1", "sa", "");
+		try {
+			session.execute("Create table T(ID integer primary key)");
+			session.setSilent(true);
+			try {
+				SqlScriptExecutor.executeScript(script.getPath(), session, false, threads, batchSize, false);
+				fail("import did not fail");
+			} catch (SQLException e) {
+				// expected, table U doesn't exist
+			}
+			session.setSilent(false);
+			assertEquals(3, count(session, "T"));
+			assertTrue(new File(script.getPath() + ".checkpoint").exists());
+
+			session.execute("Create table U(ID integer primary key)");
+			SqlScriptExecutor.executeScript(script.getPath(), session, false, threads, batchSize, true);
+			assertEquals(5, count(session, "T"));
+			assertEquals(1, count(session, "U"));
+			assertFalse(new File(script.getPath() + ".checkpoint").exists());
+		} finally {
+			session.execute("Drop all objects");
+			session.shutDown();
+		}
+	}
+
+	private long count(Session session, String table) throws SQLException {
+		final long[] count = new long[1];
+		session.executeQuery("Select count(*) from " + table, new Session.AbstractResultSetReader() {
+			public void readCurrentRow(ResultSet resultSet) throws SQLException {
+				count[0] = resultSet.getLong(1);
+			}
+		});
+		return count[0];
+	}
+
+	private void writeScript(String content) throws Exception {
+		long lastModified = script.lastModified();
+		FileWriter out = new FileWriter(script);
+		out.write(content);
+		out.close();
+		if (script.lastModified() == lastModified) {
+			script.setLastModified(lastModified + 1000);
+		}
+	}
+
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2007 - 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.jailer.util;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import junit.framework.TestCase;
+import net.sf.jailer.CommandLineParser;
+import net.sf.jailer.database.Session;
+
+/**
+ * Tests for {@link SqlScriptExecutor}.
+ *
+ * @author Ralf Wisser
+ */
+public class SqlScriptExecutorTestCase extends TestCase {
+
+	private static final int ROWS = 400;
+
+	private File script;
+	private Session session;
+
+	@Override
+	protected void setUp() throws Exception {
+		CommandLineParser.parse(new String[0], true);
+		script = File.createTempFile("import", ".sql");
+		session = new Session("org.h2.Driver", "jdbc:h2:mem:" + getName() + ";DB_CLOSE_DELAY=-1", "sa", "");
+		session.execute("Create table T(ID integer primary key, V integer, S integer)");
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		session.execute("Drop all objects");
+		session.shutDown();
+		script.delete();
+	}
+
+	/**
+	 * A statement changing the session state between two levels is executed by each import thread
+	 * and the levels are still imported concurrently.
+	 */
+	public void testSessionStateBetweenLevels() throws Exception {
+		StringBuilder sb = new StringBuilder();
+		sb.append("-- header\n" + SqlScriptExecutor.LEVELS_MARKED + "\n");
+		appendLevel(sb, 0);
+		sb.append("SET @V = 7;\n");
+		appendLevel(sb, ROWS);
+		writeScript(sb.toString());
+
+		SqlScriptExecutor.executeScript(script.getPath(), session, false, 4, 1, false);
+		assertEquals("" + (2 * ROWS), query("Select count(*) from T"));
+		assertEquals("" + ROWS, query("Select count(*) from T where V = 7"));
+		assertEquals("" + ROWS, query("Select count(*) from T where V is null and ID < " + ROWS));
+		assertTrue(Integer.parseInt(query("Select count(distinct S) from T where V = 7")) > 1);
+	}
+
+	/**
+	 * Scripts without level marks are executed sequentially.
+	 */
+	public void testScriptWithoutLevelMarks() throws Exception {
+		writeScript("SET @V = 7;\nInsert into T values(1, @V, SESSION_ID());\nInsert into T values(2, @V, SESSION_ID());\n");
+		SqlScriptExecutor.executeScript(script.getPath(), session, false, 4, 1, false);
+		assertEquals("2", query("Select count(*) from T where V = 7"));
+		assertEquals("1", query("Select count(distinct S) from T"));
+	}
+
+	private void appendLevel(StringBuilder sb, int firstId) {
+		for (int i = firstId; i < firstId + ROWS; ++i) {
+			sb.append("Insert into T values(" + i + ", @V, SESSION_ID());\n");
+		}
+		sb.append(SqlScriptExecutor.LEVEL_BARRIER + "\n");
+	}
+
+	private String query(String sql) throws SQLException {
+		final String[] result = new String[1];
+		session.executeQuery(sql, new Session.AbstractResultSetReader() {
+			public void readCurrentRow(ResultSet resultSet) throws SQLException {
+				result[0] = resultSet.getString(1);
+			}
+		});
+		return result[0];
+	}
+
+	private void writeScript(String content) throws Exception {
+		FileWriter out = new FileWriter(script);
+		out.write(content);
+		out.close();
+	}
+
+}
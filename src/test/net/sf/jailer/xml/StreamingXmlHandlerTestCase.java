@@ -0,0 +1,157 @@
+/*
+ * Copyright 2007 - 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sf.jailer.xml;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.sax.TransformerHandler;
+import javax.xml.transform.stream.StreamResult;
+
+import junit.framework.TestCase;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+import org.xml.sax.helpers.AttributesImpl;
+
+/**
+ * Tests for {@link StreamingXmlHandler}.
+ *
+ * @author Ralf Wisser
+ */
+public class StreamingXmlHandlerTestCase extends TestCase {
+
+	private static final String TEXT = "1 < 2 && 3 > 2 \"'\u00e4\u20ac\ud83d\ude00\r\n\tx";
+
+	public void testSameAsIdentityTransformerUTF8() throws Exception {
+		assertSameAsIdentityTransformer(Charset.forName("UTF-8"));
+	}
+
+	public void testSameAsIdentityTransformerLatin1() throws Exception {
+		assertSameAsIdentityTransformer(Charset.forName("ISO-8859-1"));
+	}
+
+	public void testComments() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		TransformerHandler handler = XmlUtil.createStreamingHandler("a -- b --- c-", "root", out, Charset.forName("UTF-8"), true);
+		comment(handler, "-");
+		comment(handler, "x--");
+		handler.endElement("", "", "root");
+		handler.endDocument();
+
+		Document document = parse(out.toByteArray());
+		Node root = document.getDocumentElement();
+		assertEquals("\na - - b - - - c- ", root.getPreviousSibling().getNodeValue());
+		assertEquals("- ", root.getFirstChild().getNodeValue());
+		assertEquals("x- - ", root.getLastChild().getNodeValue());
+	}
+
+	public void testIllegalCharacters() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		TransformerHandler handler = XmlUtil.createStreamingHandler("", "root", out, Charset.forName("UTF-8"), true);
+		AttributesImpl atts = new AttributesImpl();
+		atts.addAttribute("", "", "a", "CDATA", "a\u0000b\u001f\r");
+		handler.startElement("", "", "e", atts);
+		characters(handler, "x\u0001\u0008y\ud800\uffff\r");
+		handler.endElement("", "", "e");
+		handler.startElement("", "", "c", null);
+		handler.startCDATA();
+		characters(handler, "\u000b]]");
+		characters(handler, ">\u0000]>");
+		handler.endCDATA();
+		handler.endElement("", "", "c");
+		handler.endElement("", "", "root");
+		handler.endDocument();
+
+		Document document = parse(out.toByteArray());
+		Node root = document.getDocumentElement();
+		assertEquals("ab\r", root.getFirstChild().getAttributes().getNamedItem("a").getNodeValue());
+		assertEquals("xy\r", root.getFirstChild().getTextContent());
+		assertEquals("]]>]>", root.getLastChild().getTextContent());
+	}
+
+	private void assertSameAsIdentityTransformer(Charset charset) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		writeDocument(XmlUtil.createTransformerHandler("header", "root", new StreamResult(out), charset));
+		byte[] expected = out.toByteArray();
+		out = new ByteArrayOutputStream();
+		writeDocument(XmlUtil.createStreamingHandler("header", "root", out, charset, true));
+		byte[] actual = out.toByteArray();
+
+		Node expectedRoot = parse(expected).getDocumentElement();
+		Node actualRoot = parse(actual).getDocumentElement();
+		assertTrue(new String(actual, charset.name()), expectedRoot.isEqualNode(actualRoot));
+	}
+
+	private void writeDocument(TransformerHandler handler) throws Exception {
+		for (int i = 0; i < 3; ++i) {
+			AttributesImpl atts = new AttributesImpl();
+			atts.addAttribute("", "", "id", "CDATA", "" + i);
+			atts.addAttribute("", "", "text", "CDATA", TEXT);
+			handler.startElement("", "", "row", atts);
+			handler.startElement("", "", "text", null);
+			characters(handler, TEXT);
+			handler.endElement("", "", "text");
+			handler.startElement("", "", "cdata", null);
+			handler.startCDATA();
+			characters(handler, TEXT + "]]>" + i + "]]]>");
+			handler.endCDATA();
+			handler.endElement("", "", "cdata");
+			handler.startElement("", "", "empty", null);
+			handler.endElement("", "", "empty");
+			handler.endElement("", "", "row");
+		}
+		handler.endElement("", "", "root");
+		handler.endDocument();
+	}
+
+	private void characters(TransformerHandler handler, String text) throws Exception {
+		handler.characters(text.toCharArray(), 0, text.length());
+	}
+
+	private void comment(TransformerHandler handler, String text) throws Exception {
+		handler.comment(text.toCharArray(), 0, text.length());
+	}
+
+	/**
+	 * Parses a document, CDATA sections are converted into text
+	 * and whitespace between elements is removed.
+	 */
+	private Document parse(byte[] xml) throws Exception {
+		DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+		factory.setCoalescing(true);
+		Document document = factory.newDocumentBuilder().parse(new ByteArrayInputStream(xml));
+		removeWhitespace(document.getDocumentElement());
+		return document;
+	}
+
+	private void removeWhitespace(Node node) {
+		Node child = node.getFirstChild();
+		while (child != null) {
+			Node next = child.getNextSibling();
+			if (child.getNodeType() == Node.TEXT_NODE && child.getNodeValue().trim().length() == 0
+					&& (child.getPreviousSibling() != null || next != null)) {
+				node.removeChild(child);
+			} else {
+				removeWhitespace(child);
+			}
+			child = next;
+		}
+	}
+
+}